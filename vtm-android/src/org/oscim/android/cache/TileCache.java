@@ -37,7 +37,7 @@ import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
 
-public class TileCache implements ITileCache {
+public class TileCache implements ITileCache, ITileCache.Transactional {
 
 	final static org.slf4j.Logger log = LoggerFactory.getLogger(TileCache.class);
 	final static boolean dbg = false;
@@ -226,6 +226,21 @@ public class TileCache implements ITileCache {
 		}
 	}
 
+	/**
+	 * Begin a transaction for the tiles saved by the calling thread, e.g.
+	 * by {@link org.oscim.tiling.cache.WriteBehindTileCache}.
+	 */
+	@Override
+	public void beginTransaction() {
+		mDatabase.beginTransaction();
+	}
+
+	@Override
+	public void endTransaction() {
+		mDatabase.setTransactionSuccessful();
+		mDatabase.endTransaction();
+	}
+
 	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
 	public TileReader getTileApi11(Tile tile) {
 		InputStream in = null;
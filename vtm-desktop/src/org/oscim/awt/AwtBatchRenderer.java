@@ -0,0 +1,304 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.oscim.backend.AssetAdapter;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders a range of tiles to PNG files 'z/x/y.png' with a pool of
+ * {@link AwtTileLoader} and {@link AwtElementRenderer} threads, e.g. to
+ * serve raster tiles of a map file from a server without GL.
+ * <p>
+ * Without output directory the tiles are encoded to memory only, which
+ * makes {@link #main(String[])} a throughput benchmark:
+ * 
+ * <pre>
+ * AwtBatchRenderer theme.xml file.map lat lon minZoom maxZoom [radius threads rounds outdir]
+ * </pre>
+ */
+public class AwtBatchRenderer {
+	static final Logger log = LoggerFactory.getLogger(AwtBatchRenderer.class);
+
+	private final TileSource mTileSource;
+	private final IRenderTheme mTheme;
+
+	private int mThreads = Runtime.getRuntime().availableProcessors();
+	private float mScale = 1;
+	private File mOutput;
+
+	/**
+	 * @param tileSource must be opened.
+	 * @param theme shared by all threads.
+	 */
+	public AwtBatchRenderer(TileSource tileSource, IRenderTheme theme) {
+		mTileSource = tileSource;
+		mTheme = theme;
+	}
+
+	public void setThreads(int threads) {
+		mThreads = Math.max(1, threads);
+	}
+
+	/** scale of the images relative to Tile.SIZE */
+	public void setScale(float scale) {
+		mScale = scale;
+	}
+
+	/** directory for 'z/x/y.png' files, null to encode to memory only. */
+	public void setOutput(File dir) {
+		mOutput = dir;
+	}
+
+	public static class Stats {
+		/** tiles rendered and failed to load */
+		public int tiles, failed;
+		/** nanoseconds summed over all threads */
+		public long load, raster, encode;
+		/** wall clock nanoseconds */
+		public long time;
+		public long bytes;
+
+		void add(Stats s) {
+			tiles += s.tiles;
+			failed += s.failed;
+			load += s.load;
+			raster += s.raster;
+			encode += s.encode;
+			bytes += s.bytes;
+		}
+
+		public double getTilesPerSecond() {
+			return time == 0 ? 0 : tiles / (time / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			int n = Math.max(tiles, 1);
+			return tiles + " tiles in " + (time / 1000000) + "ms, "
+			        + (int) getTilesPerSecond() + " tiles/sec, per tile: load "
+			        + (load / n / 1000) + "us, raster " + (raster / n / 1000)
+			        + "us, png " + (encode / n / 1000) + "us, "
+			        + (bytes / n) + " bytes"
+			        + (failed > 0 ? ", failed " + failed : "");
+		}
+	}
+
+	/**
+	 * Render all tiles from 'minZoom' to 'maxZoom' around lat/lon, within
+	 * 'radius' tiles at 'maxZoom'.
+	 */
+	public Stats render(double lat, double lon, int minZoom, int maxZoom, int radius)
+	        throws IOException {
+		double x = MercatorProjection.longitudeToX(lon);
+		double y = MercatorProjection.latitudeToY(lat);
+
+		List<MapTile> tiles = new ArrayList<MapTile>();
+		for (int z = minZoom; z <= maxZoom; z++) {
+			int r = Math.max(0, radius >> (maxZoom - z));
+			int max = (1 << z) - 1;
+			int tx = (int) (x * (1 << z));
+			int ty = (int) (y * (1 << z));
+			for (int ry = Math.max(0, ty - r); ry <= Math.min(max, ty + r); ry++)
+				for (int rx = Math.max(0, tx - r); rx <= Math.min(max, tx + r); rx++)
+					tiles.add(new MapTile(null, rx, ry, z));
+		}
+		return render(tiles);
+	}
+
+	public Stats render(final List<MapTile> tiles) throws IOException {
+		final AtomicInteger next = new AtomicInteger();
+
+		List<Callable<Stats>> workers = new ArrayList<Callable<Stats>>();
+		for (int i = 0; i < mThreads; i++) {
+			workers.add(new Callable<Stats>() {
+				@Override
+				public Stats call() throws IOException {
+					AwtTileLoader loader = new AwtTileLoader(mTheme,
+					                                         mTileSource.getDataSource());
+					AwtElementRenderer renderer = new AwtElementRenderer(mScale);
+					ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+					Stats s = new Stats();
+					try {
+						for (int i = next.getAndIncrement(); i < tiles.size(); i = next
+						    .getAndIncrement())
+							render(tiles.get(i), loader, renderer, out, s);
+					} finally {
+						loader.destroy();
+					}
+					return s;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+		Stats stats = new Stats();
+		long start = System.nanoTime();
+		try {
+			for (Future<Stats> f : pool.invokeAll(workers))
+				stats.add(f.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		stats.time = System.nanoTime() - start;
+		return stats;
+	}
+
+	private void render(MapTile tile, AwtTileLoader loader, AwtElementRenderer renderer,
+	        ByteArrayOutputStream out, Stats s) throws IOException {
+
+		long t0 = System.nanoTime();
+		if (!loader.load(tile)) {
+			s.failed++;
+			return;
+		}
+		long t1 = System.nanoTime();
+		BufferedImage image;
+		try {
+			image = renderer.render(tile, mTheme.getMapBackground());
+		} finally {
+			AwtTileLoader.release(tile);
+		}
+		long t2 = System.nanoTime();
+
+		/* avoid the file cache of ImageIO streams */
+		out.reset();
+		ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+		ImageIO.write(image, "png", ios);
+		ios.close();
+		long t3 = System.nanoTime();
+
+		if (mOutput != null) {
+			File dir = new File(mOutput, tile.zoomLevel + "/" + tile.tileX);
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("could not create " + dir);
+
+			OutputStream os = new FileOutputStream(new File(dir, tile.tileY + ".png"));
+			try {
+				out.writeTo(os);
+			} finally {
+				os.close();
+			}
+		}
+
+		s.tiles++;
+		s.load += t1 - t0;
+		s.raster += t2 - t1;
+		s.encode += t3 - t2;
+		s.bytes += out.size();
+	}
+
+	/** Opens theme assets, e.g. symbol atlas, relative to a directory. */
+	static class FileAssets extends AssetAdapter {
+		private final File mRoot;
+
+		FileAssets(File root) {
+			mRoot = root;
+		}
+
+		@Override
+		public InputStream openFileAsStream(String name) {
+			try {
+				return new FileInputStream(new File(mRoot, name));
+			} catch (FileNotFoundException e) {
+				log.debug("missing asset {}", name);
+				return null;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 6) {
+			System.out.println("usage: AwtBatchRenderer theme.xml file.map lat lon"
+			        + " minZoom maxZoom [radius threads rounds outdir]");
+			return;
+		}
+		File themeFile = new File(args[0]);
+		double lat = Double.parseDouble(args[2]);
+		double lon = Double.parseDouble(args[3]);
+		int minZoom = Integer.parseInt(args[4]);
+		int maxZoom = Integer.parseInt(args[5]);
+		int radius = args.length > 6 ? Integer.parseInt(args[6]) : 4;
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : 0;
+		int rounds = args.length > 8 ? Integer.parseInt(args[8]) : 3;
+		File output = args.length > 9 ? new File(args[9]) : null;
+
+		AwtGraphics.init();
+		if (AssetAdapter.g == null)
+			AssetAdapter.g = new FileAssets(themeFile.getAbsoluteFile()
+			    .getParentFile().getParentFile());
+
+		IRenderTheme theme = ThemeLoader.load(themeFile.getPath());
+
+		MapFileTileSource tileSource = new MapFileTileSource();
+		tileSource.setMapFile(args[1]);
+		if (!tileSource.open().isSuccess()) {
+			System.out.println("could not open " + args[1]);
+			return;
+		}
+
+		AwtBatchRenderer renderer = new AwtBatchRenderer(tileSource, theme);
+		if (threads > 0)
+			renderer.setThreads(threads);
+
+		/* the first rounds warm up, only the last one writes tiles */
+		for (int i = 0; i < rounds; i++) {
+			renderer.setOutput(i == rounds - 1 ? output : null);
+			Stats s = renderer.render(lat, lon, minZoom, maxZoom, radius);
+			System.out.println("round " + i + ": " + s);
+		}
+
+		tileSource.close();
+		theme.destroy();
+	}
+}
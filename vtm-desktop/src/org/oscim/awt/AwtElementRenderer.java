@@ -0,0 +1,443 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.awt;
+
+import static org.oscim.layers.tile.vector.labeling.LabelLayer.LABEL_DATA;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.vector.labeling.LabelTileData;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.atlas.TextureAtlas.Rect;
+import org.oscim.renderer.elements.ElementLayers;
+import org.oscim.renderer.elements.LineLayer;
+import org.oscim.renderer.elements.LineTexLayer;
+import org.oscim.renderer.elements.PolygonLayer;
+import org.oscim.renderer.elements.RenderElement;
+import org.oscim.renderer.elements.SymbolItem;
+import org.oscim.renderer.elements.TextItem;
+import org.oscim.renderer.elements.VertexItem;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.TextStyle;
+
+/**
+ * Rasterizes the ElementLayers and labels of a tile loaded by
+ * {@link AwtTileLoader} with Java2D, replaying the vertex data the GL
+ * renderers would draw:
+ * <ul>
+ * <li>PolygonLayer: the triangle fan of all polygons is filled even-odd,
+ * which is what the stencil inversion of PolygonLayer.Renderer does.
+ * <li>LineLayer: the union of the triangle strip, round caps become circles.
+ * <li>LineTexLayer: line segments, stippled with a dash pattern.
+ * <li>Labels and symbols are placed greedily in tile space and dropped
+ * when they overlap a previous label or cross the tile border.
+ * </ul>
+ * Colors and fading follow the GL renderers at map scale 1, i.e. the
+ * tile is drawn as it looks at its own zoom level without tilt.
+ * Extrusions and meshes are not drawn.
+ * <p>
+ * The returned image is reused for the next tile, one renderer per thread.
+ */
+public class AwtElementRenderer {
+
+	private static final float COORD_SCALE = MapRenderer.COORD_SCALE;
+	private static final float DIR_SCALE = LineLayer.DIR_SCALE;
+
+	/** alpha of areas and lines at their fade zoom level */
+	private static final float AREA_FADE = 0.3f;
+	private static final float LINE_FADE = 0.2f;
+
+	/** kappa for approximating a quarter circle by a cubic curve */
+	private static final float KAPPA = 0.5523f;
+
+	private final BufferedImage mImage;
+	private final Graphics2D mGraphics;
+	private final int mSize;
+
+	private final Path2D.Float mPath = new Path2D.Float(Path2D.WIND_NON_ZERO, 4096);
+	private final ArrayList<Rectangle2D> mPlaced = new ArrayList<Rectangle2D>();
+
+	private final float[] mVertex = new float[12];
+
+	private int mZoom;
+
+	/**
+	 * @param scale of the image, relative to Tile.SIZE.
+	 */
+	public AwtElementRenderer(float scale) {
+		mSize = (int) (Tile.SIZE * scale);
+		mImage = new BufferedImage(mSize, mSize, BufferedImage.TYPE_INT_ARGB);
+		mGraphics = mImage.createGraphics();
+		mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+		                           RenderingHints.VALUE_ANTIALIAS_ON);
+		mGraphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+		                           RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		mGraphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+		                           RenderingHints.VALUE_STROKE_PURE);
+		mGraphics.scale(scale, scale);
+	}
+
+	public int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * Render 'tile' on 'background' color.
+	 * 
+	 * @return the image, valid until the next call.
+	 */
+	public BufferedImage render(MapTile tile, int background) {
+		Graphics2D g = mGraphics;
+		g.setComposite(AlphaComposite.Src);
+		g.setColor(color(background, 1));
+		g.fillRect(0, 0, Tile.SIZE, Tile.SIZE);
+		g.setComposite(AlphaComposite.SrcOver);
+
+		mZoom = tile.zoomLevel;
+
+		ElementLayers layers = tile.getLayers();
+		if (layers != null) {
+			for (RenderElement l = layers.getBaseLayers(); l != null; l = l.next) {
+				if (l.type == RenderElement.POLYGON)
+					drawPolygons((PolygonLayer) l);
+				else if (l.type == RenderElement.LINE)
+					drawLines((LineLayer) l);
+				else if (l.type == RenderElement.TEXLINE)
+					drawTexLines((LineTexLayer) l);
+			}
+		}
+
+		LabelTileData ld = (LabelTileData) tile.getData(LABEL_DATA);
+		if (ld != null)
+			drawLabels(ld);
+
+		return mImage;
+	}
+
+	private void drawPolygons(PolygonLayer pl) {
+		if (pl.area == null)
+			return;
+
+		AreaStyle a = pl.area.current();
+		int color = a.color;
+		float alpha = 1;
+
+		if (a.fadeScale >= mZoom)
+			alpha = AREA_FADE;
+		else if (a.blendScale > 0 && a.blendScale < mZoom)
+			color = a.blendColor;
+
+		/* all polygons of the layer are one fan, each starting at the
+		 * tile center: even-odd filling of the fan outline gives the
+		 * same result as the stencil buffer */
+		Path2D.Float path = mPath;
+		path.reset();
+		path.setWindingRule(Path2D.WIND_EVEN_ODD);
+
+		boolean first = true;
+		for (VertexItem it = pl.getVertexItems(); it != null; it = it.next) {
+			short[] v = it.vertices;
+			for (int i = 0; i < it.used; i += 2) {
+				float x = v[i] / COORD_SCALE;
+				float y = v[i + 1] / COORD_SCALE;
+				if (first) {
+					path.moveTo(x, y);
+					first = false;
+				} else {
+					path.lineTo(x, y);
+				}
+			}
+		}
+		if (first)
+			return;
+
+		path.closePath();
+		mGraphics.setColor(color(color, alpha));
+		mGraphics.fill(path);
+	}
+
+	private void drawLines(LineLayer ll) {
+		if (ll.line == null)
+			return;
+
+		LineStyle line = ll.line.current();
+
+		if (line.fadeScale > mZoom)
+			return;
+
+		float alpha = (line.fadeScale == mZoom) ? LINE_FADE : 1;
+		Color color = color(line.color, alpha);
+
+		if (!line.outline) {
+			float width = line.fixed ? Math.max(line.width, 1) : ll.scale * line.width;
+			/* like CAP_THIN in LineLayer.Renderer */
+			boolean round = ll.roundCap && ll.scale >= 1.5;
+			fillStrip(ll, width, round, color);
+			return;
+		}
+
+		for (LineLayer ref = ll.outlines; ref != null; ref = ref.outlines) {
+			LineStyle core = ref.line.current();
+			float width = core.fixed ? Math.max(core.width, 1) : ref.scale * core.width;
+			width += line.fixed ? line.width : ll.scale * line.width;
+			fillStrip(ref, width, ref.roundCap, color);
+		}
+	}
+
+	/**
+	 * Fill the triangle strip of 'll' extruded by 'width'. Triangles are
+	 * added with the same orientation so that the non-zero fill of the
+	 * path is their union, without seams between triangles.
+	 */
+	private void fillStrip(LineLayer ll, float width, boolean round, Color color) {
+		Path2D.Float path = mPath;
+		path.reset();
+		path.setWindingRule(Path2D.WIND_NON_ZERO);
+
+		float scale = width / DIR_SCALE;
+		float[] t = mVertex;
+		float capX = Float.NaN, capY = Float.NaN;
+		int n = 0;
+
+		for (VertexItem it = ll.getVertexItems(); it != null; it = it.next) {
+			short[] v = it.vertices;
+			for (int i = 0; i < it.used; i += 4) {
+				float x = v[i] / COORD_SCALE;
+				float y = v[i + 1] / COORD_SCALE;
+
+				/* last two bits of the extrusion are texture coords,
+				 * round cap vertices have t != 1 */
+				boolean cap = (v[i + 3] & 3) != 1;
+
+				/* shift previous vertices: (x, y, cap) */
+				t[0] = t[3];
+				t[1] = t[4];
+				t[2] = t[5];
+				t[3] = t[6];
+				t[4] = t[7];
+				t[5] = t[8];
+				t[6] = x + v[i + 2] * scale;
+				t[7] = y + v[i + 3] * scale;
+				t[8] = cap ? 1 : 0;
+
+				if (round && cap && (x != capX || y != capY)) {
+					addCircle(path, x, y, width);
+					capX = x;
+					capY = y;
+				}
+
+				if (++n < 3)
+					continue;
+
+				if (round && (t[2] + t[5] + t[8]) > 0)
+					continue;
+
+				float area = (t[3] - t[0]) * (t[7] - t[1]) - (t[4] - t[1]) * (t[6] - t[0]);
+				if (area > 1e-6f) {
+					path.moveTo(t[0], t[1]);
+					path.lineTo(t[3], t[4]);
+					path.lineTo(t[6], t[7]);
+					path.closePath();
+				} else if (area < -1e-6f) {
+					path.moveTo(t[0], t[1]);
+					path.lineTo(t[6], t[7]);
+					path.lineTo(t[3], t[4]);
+					path.closePath();
+				}
+			}
+		}
+		if (n < 3)
+			return;
+
+		mGraphics.setColor(color);
+		mGraphics.fill(path);
+	}
+
+	/** add a circle with the orientation of the strip triangles */
+	private static void addCircle(Path2D.Float path, float x, float y, float r) {
+		float k = r * KAPPA;
+		path.moveTo(x + r, y);
+		path.curveTo(x + r, y + k, x + k, y + r, x, y + r);
+		path.curveTo(x - k, y + r, x - r, y + k, x - r, y);
+		path.curveTo(x - r, y - k, x - k, y - r, x, y - r);
+		path.curveTo(x + k, y - r, x + r, y - k, x + r, y);
+		path.closePath();
+	}
+
+	private void drawTexLines(LineTexLayer tl) {
+		if (tl.line == null)
+			return;
+
+		LineStyle line = tl.line.current();
+
+		/* blocks of four vertices (x, y, dx, dy, length, flip), the
+		 * first line segment goes from vertex 0 to 2, the second from
+		 * vertex 1 to 3. */
+		Path2D.Float path = mPath;
+		path.reset();
+		int quad = 0;
+		for (VertexItem it = tl.getVertexItems(); it != null; it = it.next) {
+			short[] v = it.vertices;
+			for (int i = 0; i + 24 <= it.used; i += 24, quad++) {
+				if (quad < tl.evenQuads) {
+					path.moveTo(v[i] / COORD_SCALE, v[i + 1] / COORD_SCALE);
+					path.lineTo(v[i + 12] / COORD_SCALE, v[i + 13] / COORD_SCALE);
+				}
+				if (quad < tl.oddQuads) {
+					path.moveTo(v[i + 6] / COORD_SCALE, v[i + 7] / COORD_SCALE);
+					path.lineTo(v[i + 18] / COORD_SCALE, v[i + 19] / COORD_SCALE);
+				}
+			}
+		}
+		if (quad == 0)
+			return;
+
+		float width = tl.width * 2;
+		Graphics2D g = mGraphics;
+		g.setColor(color(line.color, 1));
+		g.setStroke(new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
+		g.draw(path);
+
+		if (line.stipple > 0) {
+			float[] dash = { line.stipple, line.stipple };
+			g.setColor(color(line.stippleColor, 1));
+			g.setStroke(new BasicStroke(width * line.stippleWidth, BasicStroke.CAP_BUTT,
+			                            BasicStroke.JOIN_BEVEL, 1, dash, 0));
+			g.draw(path);
+		}
+	}
+
+	private void drawLabels(LabelTileData ld) {
+		mPlaced.clear();
+
+		for (SymbolItem it = ld.symbols.head(); it != null; it = it.next)
+			drawSymbol(it);
+
+		for (TextItem it = ld.labels.head(); it != null; it = it.next)
+			drawText(it);
+	}
+
+	private void drawSymbol(SymbolItem it) {
+		BufferedImage image;
+		int sx = 0, sy = 0, w, h;
+
+		if (it.texRegion != null) {
+			image = ((AwtBitmap) it.texRegion.atlas.texture.bitmap).bitmap;
+			Rect r = it.texRegion.rect;
+			sx = r.x;
+			sy = r.y;
+			w = r.w;
+			h = r.h;
+		} else if (it.bitmap != null) {
+			image = ((AwtBitmap) it.bitmap).bitmap;
+			w = image.getWidth();
+			h = image.getHeight();
+		} else {
+			return;
+		}
+
+		float x = it.x - w / 2f;
+		float y = it.y - h / 2f;
+		if (it.offset != null) {
+			x = it.x - w * it.offset.x;
+			y = it.y - h * it.offset.y;
+		}
+
+		if (!place(new Rectangle2D.Float(x, y, w, h)))
+			return;
+
+		int dx = Math.round(x);
+		int dy = Math.round(y);
+		mGraphics.drawImage(image, dx, dy, dx + w, dy + h,
+		                    sx, sy, sx + w, sy + h, null);
+	}
+
+	private void drawText(TextItem it) {
+		TextStyle text = it.text;
+		AwtPaint paint = (AwtPaint) text.paint;
+		AwtPaint stroke = (AwtPaint) text.stroke;
+
+		Font font = paint.font;
+		FontRenderContext frc = mGraphics.getFontRenderContext();
+		TextLayout layout = new TextLayout(it.string, font, frc);
+
+		float w = layout.getAdvance();
+		float h = layout.getAscent() + layout.getDescent();
+
+		AffineTransform t = new AffineTransform();
+		if (text.caption) {
+			t.translate(it.x, it.y + text.dy);
+		} else {
+			/* WayDecorator orders x1, y1 -> x2, y2 left to right */
+			t.translate(it.x, it.y);
+			t.rotate(Math.atan2(it.y2 - it.y1, it.x2 - it.x1));
+		}
+		Rectangle2D box = t.createTransformedShape(
+		        new Rectangle2D.Float(-w / 2, -h / 2, w, h)).getBounds2D();
+
+		if (!place(box))
+			return;
+
+		/* center the text at the label position */
+		t.translate(-w / 2, h / 2 - layout.getDescent());
+		Shape outline = layout.getOutline(t);
+
+		Graphics2D g = mGraphics;
+		if (stroke != null && stroke.stroke != null) {
+			g.setColor(stroke.color);
+			g.setStroke(stroke.stroke);
+			g.draw(outline);
+		}
+		g.setColor(paint.color);
+		g.fill(outline);
+	}
+
+	/** @return true when 'box' is in the tile and free. */
+	private boolean place(Rectangle2D box) {
+		if (box.getMinX() < 0 || box.getMinY() < 0
+		        || box.getMaxX() > Tile.SIZE || box.getMaxY() > Tile.SIZE)
+			return false;
+
+		for (int i = 0, n = mPlaced.size(); i < n; i++)
+			if (mPlaced.get(i).intersects(box))
+				return false;
+
+		mPlaced.add(box);
+		return true;
+	}
+
+	private static Color color(int color, float alpha) {
+		int a = (int) (((color >>> 24) & 0xff) * alpha);
+		return new Color((color >> 16) & 0xff, (color >> 8) & 0xff, color & 0xff, a);
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.awt;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.oscim.backend.AssetAdapter;
+import org.oscim.theme.BinaryThemeBuilder;
+import org.oscim.theme.BinaryThemeWriter;
+import org.oscim.theme.ExternalRenderTheme;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+
+/**
+ * Compile a render theme to the binary format read by
+ * {@link ThemeLoader#load(org.oscim.theme.ThemeFile, File)}, e.g. to ship
+ * it next to the XML theme.
+ * 
+ * Usage: AwtThemeCompiler theme.xml theme.bin [assetdir]
+ * <p>
+ * Asset paths of the theme, i.e. of its symbols and textures, are
+ * resolved relative to 'assetdir', by default the current directory.
+ */
+public class AwtThemeCompiler {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: AwtThemeCompiler theme.xml theme.bin [assetdir]");
+			return;
+		}
+		File themeFile = new File(args[0]);
+		File out = new File(args[1]);
+		File assets = new File(args.length > 2 ? args[2] : ".");
+
+		AwtGraphics.init();
+		if (AssetAdapter.g == null)
+			AssetAdapter.g = new AwtBatchRenderer.FileAssets(assets.getAbsoluteFile());
+
+		ExternalRenderTheme theme = new ExternalRenderTheme(themeFile.getPath());
+		BinaryThemeWriter.compile(theme, out);
+
+		/* check that the file can be read back */
+		IRenderTheme t = BinaryThemeBuilder.read(out, BinaryThemeBuilder
+		    .hash(Files.readAllBytes(themeFile.toPath())));
+
+		System.out.println("wrote " + out + " (" + out.length() + " bytes)"
+		        + (t == null ? " FAILED" : ""));
+	}
+}
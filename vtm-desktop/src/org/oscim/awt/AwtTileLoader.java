@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.awt;
+
+import static org.oscim.layers.tile.vector.labeling.LabelLayer.LABEL_DATA;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.vector.VectorTileBuilder;
+import org.oscim.layers.tile.vector.VectorTileLoader;
+import org.oscim.layers.tile.vector.labeling.LabelTileData;
+import org.oscim.layers.tile.vector.labeling.LabelTileLoaderHook;
+import org.oscim.renderer.elements.ElementLayers;
+import org.oscim.renderer.elements.SymbolItem;
+import org.oscim.renderer.elements.TextItem;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the ElementLayers and labels of a tile like {@link VectorTileLoader}
+ * but without a Map, TileManager or GL context, for rendering tiles with
+ * {@link AwtElementRenderer}. Extrusions are not loaded.
+ * <p>
+ * Each thread needs its own loader.
+ */
+public class AwtTileLoader implements ITileDataSink {
+	static final Logger log = LoggerFactory.getLogger(AwtTileLoader.class);
+
+	private final IRenderTheme mTheme;
+	private final ITileDataSource mDataSource;
+	private final LabelTileLoaderHook mLabelHook = new LabelTileLoaderHook();
+
+	private final VectorTileBuilder mBuilder = new VectorTileBuilder() {
+		@Override
+		public void renderSymbol(SymbolStyle symbol) {
+			mLabelHook.render(mTile, mLayers, mElement, symbol, 0);
+		}
+
+		@Override
+		public void renderText(TextStyle text) {
+			mLabelHook.render(mTile, mLayers, mElement, text, 0);
+		}
+	};
+
+	private MapTile mTile;
+	private QueryResult mResult;
+
+	public AwtTileLoader(IRenderTheme theme, ITileDataSource dataSource) {
+		mTheme = theme;
+		mDataSource = dataSource;
+	}
+
+	/**
+	 * Query the data source for 'tile' and add the ElementLayers and
+	 * LabelTileData to the tile. Release them with {@link #release(MapTile)}.
+	 * 
+	 * @return true on success.
+	 */
+	public boolean load(MapTile tile) {
+		mTile = tile;
+
+		ElementLayers layers = new ElementLayers();
+		tile.data = layers;
+		mBuilder.begin(tile, layers);
+		mResult = null;
+
+		try {
+			mDataSource.query(tile, this);
+		} catch (Exception e) {
+			log.debug("{} {}", tile, e.getMessage());
+			mResult = QueryResult.FAILED;
+		}
+
+		boolean success = mResult == QueryResult.SUCCESS;
+		if (!success)
+			release(tile);
+
+		mTile = null;
+		mBuilder.end();
+		return success;
+	}
+
+	/**
+	 * Release the data added by {@link #load(MapTile)}.
+	 */
+	public static void release(MapTile tile) {
+		ElementLayers layers = tile.getLayers();
+		if (layers != null)
+			layers.clear();
+
+		LabelTileData ld = (LabelTileData) tile.getData(LABEL_DATA);
+		if (ld != null) {
+			TextItem.pool.releaseAll(ld.labels.clear());
+			SymbolItem.pool.releaseAll(ld.symbols.clear());
+		}
+		tile.data = null;
+	}
+
+	public void destroy() {
+		mDataSource.destroy();
+	}
+
+	@Override
+	public void process(MapElement element) {
+		RenderStyle[] style = mTheme.matchElement(element.type, element.tags,
+		                                          mTile.zoomLevel);
+		mBuilder.render(element, style, mTheme.getLevels());
+	}
+
+	@Override
+	public void setTileImage(Bitmap bitmap) {
+	}
+
+	@Override
+	public void completed(QueryResult result) {
+		mResult = result;
+	}
+}
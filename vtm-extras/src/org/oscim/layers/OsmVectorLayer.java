@@ -13,7 +13,7 @@ public class OsmVectorLayer extends AbstractVectorLayer<OsmElement> {
 
 	@Override
 	protected void processFeatures(Task t, BoundingBox b) {
-
+		processIndex(t, b);
 	}
 
 }
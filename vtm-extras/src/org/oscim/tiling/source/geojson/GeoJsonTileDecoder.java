@@ -29,11 +29,14 @@ import static org.oscim.core.MercatorProjection.longitudeToX;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
+import org.oscim.core.StringPool;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.source.ITileDecoder;
@@ -46,7 +49,12 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 
-public class GeoJsonTileDecoder implements ITileDecoder {
+/**
+ * Decodes GeoJSON tiles from bytes. In streaming mode (see
+ * {@link GeoJsonTileSource#setStreaming(boolean)}) properties are passed as
+ * TagSet of interned Tags instead of a Map of Strings and Numbers.
+ */
+public class GeoJsonTileDecoder implements ITileDecoder.BufferDecoder {
 	static final Logger log = LoggerFactory.getLogger(GeoJsonTileDecoder.class);
 
 	private final MapElement mMapElement;
@@ -54,6 +62,18 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 	private final LinkedHashMap<String, Object> mTagMap;
 	private final JsonFactory mJsonFactory;
 
+	/** properties in streaming mode */
+	private final TagSet mProperties;
+
+	/** recently used property Tags, by key and value */
+	private final static int TAG_CACHE_SIZE = 256;
+	private final Tag[] mTagCache;
+
+	private boolean mStreaming;
+
+	/** copy of direct ByteBuffers */
+	private byte[] mBuffer;
+
 	private final static char[] FIELD_FEATURES = "features".toCharArray();
 	private final static char[] FIELD_GEOMETRY = "geometry".toCharArray();
 	private final static char[] FIELD_PROPERTIES = "properties".toCharArray();
@@ -75,6 +95,8 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 		mTileSource = tileSource;
 		mTagMap = new LinkedHashMap<String, Object>();
 		mJsonFactory = new JsonFactory();
+		mProperties = new TagSet();
+		mTagCache = new Tag[TAG_CACHE_SIZE];
 
 		mMapElement = new MapElement();
 		mMapElement.layer = 5;
@@ -82,13 +104,33 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 
 	@Override
 	public boolean decode(Tile tile, ITileDataSink sink, InputStream is) throws IOException {
+		/* byte based parser, detects the encoding itself */
+		return decode(tile, sink, mJsonFactory.createParser(is));
+	}
+
+	@Override
+	public boolean decode(Tile tile, ITileDataSink sink, ByteBuffer buf) throws IOException {
+		int length = buf.remaining();
+
+		if (buf.hasArray())
+			return decode(tile, sink, mJsonFactory.createParser(buf.array(),
+			                                                    buf.arrayOffset() + buf.position(),
+			                                                    length));
+
+		if (mBuffer == null || mBuffer.length < length)
+			mBuffer = new byte[length];
+
+		buf.duplicate().get(mBuffer, 0, length);
+		return decode(tile, sink, mJsonFactory.createParser(mBuffer, 0, length));
+	}
+
+	private boolean decode(Tile tile, ITileDataSink sink, JsonParser jp) throws IOException {
 		mTileDataSink = sink;
 		mTileScale = 1 << tile.zoomLevel;
 		mTileX = tile.tileX / mTileScale;
 		mTileY = tile.tileY / mTileScale;
 		mTileScale *= Tile.SIZE;
-
-		JsonParser jp = mJsonFactory.createParser(new InputStreamReader(is));
+		mStreaming = mTileSource.isStreaming();
 
 		for (JsonToken t; (t = jp.nextToken()) != null;) {
 			if (t == FIELD_NAME) {
@@ -115,6 +157,7 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 		mMapElement.clear();
 		mMapElement.tags.clear();
 		mTagMap.clear();
+		mProperties.clear();
 
 		for (JsonToken t; (t = jp.nextToken()) != null;) {
 			if (t == FIELD_NAME) {
@@ -134,7 +177,10 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 		}
 
 		//add tag information
-		mTileSource.decodeTags(mMapElement, mTagMap);
+		if (mStreaming)
+			mTileSource.decodeTags(mMapElement, mProperties);
+		else
+			mTileSource.decodeTags(mMapElement, mTagMap);
 		if (mMapElement.tags.numTags == 0)
 			return;
 
@@ -154,7 +200,12 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 				String text = jp.getCurrentName();
 
 				t = jp.nextToken();
-				if (t == VALUE_STRING) {
+				if (t == START_OBJECT || t == START_ARRAY) {
+					jp.skipChildren();
+				} else if (mStreaming) {
+					if (t == VALUE_STRING || t == VALUE_NUMBER_INT)
+						mProperties.add(getTag(text, jp));
+				} else if (t == VALUE_STRING) {
 					mTagMap.put(text, jp.getText());
 				} else if (t == VALUE_NUMBER_INT) {
 					mTagMap.put(text, jp.getNumberValue());
@@ -166,6 +217,26 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 		}
 	}
 
+	/**
+	 * @return Tag for the field name 'key' and the current value of 'jp',
+	 *         without allocation when the Tag was used recently.
+	 */
+	private Tag getTag(String key, JsonParser jp) throws IOException {
+		/* field names are usually interned by the parser already */
+		key = StringPool.intern(key);
+		String value = StringPool.intern(jp.getTextCharacters(),
+		                                 jp.getTextOffset(),
+		                                 jp.getTextLength());
+
+		int slot = (key.hashCode() * 31 + value.hashCode()) & (TAG_CACHE_SIZE - 1);
+		Tag tag = mTagCache[slot];
+		if (tag == null || tag.key != key || tag.value != value) {
+			tag = new Tag(key, value);
+			mTagCache[slot] = tag;
+		}
+		return tag;
+	}
+
 	private void parseGeometry(JsonParser jp)
 	        throws JsonParseException, IOException {
 
@@ -17,16 +17,20 @@
 package org.oscim.tiling.source.geojson;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.source.UrlTileDataSource;
 import org.oscim.tiling.source.UrlTileSource;
 
 public abstract class GeoJsonTileSource extends UrlTileSource {
 
+	private boolean mStreaming;
+
 	public GeoJsonTileSource(String url) {
 		super(url, "/{Z}/{X}/{Y}.json");
 		Map<String, String> opt = new HashMap<String, String>();
@@ -51,9 +55,39 @@ public abstract class GeoJsonTileSource extends UrlTileSource {
 		return null;
 	}
 
+	/**
+	 * Pass properties to decodeTags(MapElement, TagSet) instead of
+	 * decodeTags(MapElement, Map). This avoids creating Strings, Numbers
+	 * and Map entries for each feature.
+	 */
+	public void setStreaming(boolean streaming) {
+		mStreaming = streaming;
+	}
+
+	public boolean isStreaming() {
+		return mStreaming;
+	}
+
 	/** allow overriding tag handling */
 	public abstract void decodeTags(MapElement mapElement, Map<String, Object> properties);
 
+	/**
+	 * Tag handling in streaming mode. 'properties' holds the string and
+	 * integer properties as Tags with interned key and value. The TagSet
+	 * is reused for the next feature, its Tags are not and can be added
+	 * to the mapElement.
+	 * 
+	 * By default the properties are passed as Map of Strings to
+	 * decodeTags(MapElement, Map).
+	 */
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < properties.numTags; i++)
+			map.put(properties.tags[i].key, properties.tags[i].value);
+
+		decodeTags(mapElement, map);
+	}
+
 	public Tag rewriteTag(String key, Object value) {
 
 		if (value == null)
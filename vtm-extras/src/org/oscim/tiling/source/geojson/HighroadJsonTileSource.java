@@ -20,6 +20,7 @@ import java.util.Map;
 
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +33,7 @@ public class HighroadJsonTileSource extends GeoJsonTileSource {
 
 	public HighroadJsonTileSource() {
 		super("http://tile.openstreetmap.us/vectiles-highroad");
+		setStreaming(true);
 	}
 
 	@Override
@@ -83,6 +85,70 @@ public class HighroadJsonTileSource extends GeoJsonTileSource {
 
 	}
 
+	@Override
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+		Tag highway = null;
+		boolean isLink = false;
+
+		mapElement.layer = 5;
+
+		/* keys and values are interned. numbers are passed as their text,
+		 * skip them for highway and railway like the Map variant does. */
+		for (int i = 0; i < properties.numTags; i++) {
+			Tag tag = properties.tags[i];
+			String key = tag.key;
+			String value = tag.value;
+
+			if (value == "no")
+				continue;
+
+			if (key == "highway") {
+				if (!isInteger(value))
+					highway = tag;
+			}
+			else if (key == "is_link") {
+				isLink = (value == "yes");
+			}
+			else if (key == "is_tunnel") {
+				mapElement.tags.add(mTagTunnel);
+			}
+			else if (key == "is_bridge") {
+				mapElement.tags.add(mTagBridge);
+			}
+			else if (key == "sort_key") {
+				try {
+					mapElement.layer = 5 + Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+				}
+			}
+			else if (key == "railway") {
+				if (!isInteger(value))
+					mapElement.tags.add(tag);
+			}
+		}
+
+		if (highway == null)
+			return;
+
+		if (isLink)
+			highway = new Tag("highway", highway.value + "_link");
+
+		mapElement.tags.add(highway);
+	}
+
+	private static boolean isInteger(String value) {
+		int len = value.length();
+		if (len == 0)
+			return false;
+
+		for (int i = (value.charAt(0) == '-' && len > 1) ? 1 : 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public Tag rewriteTag(String key, Object value) {
 		if ("kind".equals(key))
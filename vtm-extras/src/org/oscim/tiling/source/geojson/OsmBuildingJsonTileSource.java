@@ -20,11 +20,13 @@ import java.util.Map;
 
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 
 public class OsmBuildingJsonTileSource extends GeoJsonTileSource {
 
 	public OsmBuildingJsonTileSource() {
 		super("http://tile.openstreetmap.us/vectiles-buildings");
+		setStreaming(true);
 	}
 
 	Tag mTagBuilding = new Tag("building", "yes");
@@ -35,4 +37,11 @@ public class OsmBuildingJsonTileSource extends GeoJsonTileSource {
 		mapElement.tags.add(mTagBuilding);
 
 	}
+
+	@Override
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+
+		mapElement.tags.add(mTagBuilding);
+
+	}
 }
@@ -22,6 +22,7 @@ import java.util.Map;
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ public class OsmLanduseJsonTileSource extends GeoJsonTileSource {
 
 	public OsmLanduseJsonTileSource() {
 		super("http://tile.openstreetmap.us/vectiles-land-usages");
+		setStreaming(true);
 	}
 
 	private static LinkedHashMap<String, Tag> mappings =
@@ -109,7 +111,7 @@ public class OsmLanduseJsonTileSource extends GeoJsonTileSource {
 
 			Tag tag = mappings.get(value);
 			if (tag == null) {
-				System.out.println("unmatched " + value);
+				log.debug("unmatched {}", value);
 			} else {
 				mapElement.tags.add(tag);
 			}
@@ -117,6 +119,20 @@ public class OsmLanduseJsonTileSource extends GeoJsonTileSource {
 		}
 	}
 
+	@Override
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+		String value = properties.getValue("kind");
+		if (value == null)
+			return;
+
+		Tag tag = mappings.get(value);
+		if (tag == null) {
+			log.debug("unmatched {}", value);
+		} else {
+			mapElement.tags.add(tag);
+		}
+	}
+
 	@Override
 	public void postGeomHook(MapElement mapElement) {
 		//if (mapElement.type != GeometryType.POLY) {
@@ -20,11 +20,13 @@ import java.util.Map;
 
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 
 public class OsmWaterJsonTileSource extends GeoJsonTileSource {
 
 	public OsmWaterJsonTileSource() {
 		super("http://tile.openstreetmap.us/vectiles-water-areas");
+		setStreaming(true);
 	}
 
 	Tag mTagWater = new Tag("natural", "water");
@@ -35,4 +37,11 @@ public class OsmWaterJsonTileSource extends GeoJsonTileSource {
 		mapElement.tags.add(mTagWater);
 
 	}
+
+	@Override
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+
+		mapElement.tags.add(mTagWater);
+
+	}
 }
@@ -4,11 +4,13 @@ import java.util.Map;
 
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
 
 public class RiverJsonTileSource extends GeoJsonTileSource {
 
 	public RiverJsonTileSource() {
 		super("http://www.somebits.com:8001/rivers");
+		setStreaming(true);
 	}
 
 	Tag mTagWater = new Tag("waterway", "river");
@@ -19,4 +21,11 @@ public class RiverJsonTileSource extends GeoJsonTileSource {
 		mapElement.tags.add(mTagWater);
 
 	}
+
+	@Override
+	public void decodeTags(MapElement mapElement, TagSet properties) {
+
+		mapElement.tags.add(mTagWater);
+
+	}
 }
@@ -132,7 +132,7 @@ public class TileDecoder extends PbfDecoder {
 
 			switch (tag) {
 				case TAG_LAYER_KEYS:
-					keys.add(decodeString());
+					keys.add(decodeInternedString());
 					break;
 
 				case TAG_LAYER_VALUES:
@@ -150,7 +150,7 @@ public class TileDecoder extends PbfDecoder {
 					break;
 
 				case TAG_LAYER_NAME:
-					name = decodeString();
+					name = decodeInternedString();
 					break;
 
 				case TAG_LAYER_EXTENT:
@@ -562,7 +562,7 @@ public class TileDecoder extends PbfDecoder {
 
 			switch (tag) {
 				case TAG_VALUE_STRING:
-					value = decodeString();
+					value = decodeInternedString();
 					break;
 
 				case TAG_VALUE_UINT:
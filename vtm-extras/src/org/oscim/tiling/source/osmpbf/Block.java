@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import static org.oscim.tiling.source.osmpbf.PbfBlockDecoder.grow;
+
+/**
+ * Nodes, tagged nodes and ways of one PBF block, or of all blocks merged
+ * by {@link #append(Block)}. Node coordinates are projected, tags are ids
+ * of the {@link TagPool} and way refs are still OSM node ids.
+ */
+final class Block {
+
+	long[] nodeIds = new long[256];
+	int[] nodeX = new int[256];
+	int[] nodeY = new int[256];
+	int numNodes;
+
+	/** index of the node of each POI */
+	int[] poiNodes = new int[16];
+	/** start of the tags of each POI in poiTags, numPois + 1 entries */
+	int[] poiTagOffsets = new int[17];
+	int[] poiTags = new int[32];
+	int numPois;
+	int numPoiTags;
+
+	long[] wayIds = new long[16];
+	/** start of the tags of each way in wayTags, numWays + 1 entries */
+	int[] wayTagOffsets = new int[17];
+	int[] wayTags = new int[32];
+	/** start of the refs of each way in wayRefs, numWays + 1 entries */
+	int[] wayRefOffsets = new int[17];
+	long[] wayRefs = new long[256];
+	int numWays;
+	int numWayTags;
+	int numWayRefs;
+
+	int addNode(long id, int x, int y) {
+		int n = numNodes;
+		if (n == nodeIds.length) {
+			nodeIds = grow(nodeIds, n + 1);
+			nodeX = grow(nodeX, n + 1);
+			nodeY = grow(nodeY, n + 1);
+		}
+		nodeIds[n] = id;
+		nodeX[n] = x;
+		nodeY[n] = y;
+		numNodes = n + 1;
+		return n;
+	}
+
+	void startPoi(int node) {
+		if (numPois == poiNodes.length)
+			poiNodes = grow(poiNodes, numPois + 1);
+		if (numPois + 2 > poiTagOffsets.length)
+			poiTagOffsets = grow(poiTagOffsets, numPois + 2);
+
+		poiNodes[numPois++] = node;
+		poiTagOffsets[numPois] = numPoiTags;
+	}
+
+	void addPoiTag(int tag) {
+		if (numPoiTags == poiTags.length)
+			poiTags = grow(poiTags, numPoiTags + 1);
+
+		poiTags[numPoiTags++] = tag;
+		poiTagOffsets[numPois] = numPoiTags;
+	}
+
+	void startWay(long id) {
+		if (numWays == wayIds.length)
+			wayIds = grow(wayIds, numWays + 1);
+		if (numWays + 2 > wayTagOffsets.length) {
+			wayTagOffsets = grow(wayTagOffsets, numWays + 2);
+			wayRefOffsets = grow(wayRefOffsets, numWays + 2);
+		}
+		wayIds[numWays++] = id;
+		wayTagOffsets[numWays] = numWayTags;
+		wayRefOffsets[numWays] = numWayRefs;
+	}
+
+	void addWayTag(int tag) {
+		if (numWayTags == wayTags.length)
+			wayTags = grow(wayTags, numWayTags + 1);
+
+		wayTags[numWayTags++] = tag;
+		wayTagOffsets[numWays] = numWayTags;
+	}
+
+	void addWayRef(long ref) {
+		if (numWayRefs == wayRefs.length)
+			wayRefs = grow(wayRefs, numWayRefs + 1);
+
+		wayRefs[numWayRefs++] = ref;
+		wayRefOffsets[numWays] = numWayRefs;
+	}
+
+	/**
+	 * Append all elements of block 'b'.
+	 */
+	void append(Block b) {
+		int n = numNodes + b.numNodes;
+		if (n > nodeIds.length) {
+			nodeIds = grow(nodeIds, n);
+			nodeX = grow(nodeX, n);
+			nodeY = grow(nodeY, n);
+		}
+		System.arraycopy(b.nodeIds, 0, nodeIds, numNodes, b.numNodes);
+		System.arraycopy(b.nodeX, 0, nodeX, numNodes, b.numNodes);
+		System.arraycopy(b.nodeY, 0, nodeY, numNodes, b.numNodes);
+
+		n = numPois + b.numPois;
+		if (n > poiNodes.length)
+			poiNodes = grow(poiNodes, n);
+		if (n + 1 > poiTagOffsets.length)
+			poiTagOffsets = grow(poiTagOffsets, n + 1);
+		if (numPoiTags + b.numPoiTags > poiTags.length)
+			poiTags = grow(poiTags, numPoiTags + b.numPoiTags);
+
+		for (int i = 0; i < b.numPois; i++) {
+			poiNodes[numPois + i] = numNodes + b.poiNodes[i];
+			poiTagOffsets[numPois + i + 1] = numPoiTags + b.poiTagOffsets[i + 1];
+		}
+		System.arraycopy(b.poiTags, 0, poiTags, numPoiTags, b.numPoiTags);
+
+		n = numWays + b.numWays;
+		if (n > wayIds.length)
+			wayIds = grow(wayIds, n);
+		if (n + 1 > wayTagOffsets.length) {
+			wayTagOffsets = grow(wayTagOffsets, n + 1);
+			wayRefOffsets = grow(wayRefOffsets, n + 1);
+		}
+		if (numWayTags + b.numWayTags > wayTags.length)
+			wayTags = grow(wayTags, numWayTags + b.numWayTags);
+		if (numWayRefs + b.numWayRefs > wayRefs.length)
+			wayRefs = grow(wayRefs, numWayRefs + b.numWayRefs);
+
+		System.arraycopy(b.wayIds, 0, wayIds, numWays, b.numWays);
+		for (int i = 0; i < b.numWays; i++) {
+			wayTagOffsets[numWays + i + 1] = numWayTags + b.wayTagOffsets[i + 1];
+			wayRefOffsets[numWays + i + 1] = numWayRefs + b.wayRefOffsets[i + 1];
+		}
+		System.arraycopy(b.wayTags, 0, wayTags, numWayTags, b.numWayTags);
+		System.arraycopy(b.wayRefs, 0, wayRefs, numWayRefs, b.numWayRefs);
+
+		numNodes += b.numNodes;
+		numPois += b.numPois;
+		numPoiTags += b.numPoiTags;
+		numWays += b.numWays;
+		numWayTags += b.numWayTags;
+		numWayRefs += b.numWayRefs;
+	}
+}
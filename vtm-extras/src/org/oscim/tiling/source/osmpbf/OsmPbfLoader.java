@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an OSM PBF extract into an {@link OsmPbfStore}.
+ * <p>
+ * The calling thread reads the blobs of the file and merges the decoded
+ * blocks in file order, while the blocks are uncompressed and decoded by
+ * an executor. Unlike {@link org.oscim.utils.osmpbf.OsmPbfReader} no
+ * objects are created per node or way.
+ */
+public class OsmPbfLoader {
+	static final Logger log = LoggerFactory.getLogger(OsmPbfLoader.class);
+
+	/** limits of the PBF format */
+	static final int MAX_HEADER_SIZE = 64 * 1024;
+	static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * Load the extract on the calling thread.
+	 */
+	public static OsmPbfStore load(InputStream is) throws IOException {
+		return load(is, null, 1);
+	}
+
+	/**
+	 * Load the extract, decoding blocks in parallel.
+	 * <p>
+	 * The calling thread runs queued tasks that the executor has not
+	 * started yet, so the executor can be shared with other work.
+	 * 
+	 * @param executor
+	 *            executor for decoding blocks, null to decode on the calling
+	 *            thread.
+	 * @param parallelism
+	 *            maximum number of threads decoding blocks.
+	 */
+	public static OsmPbfStore load(InputStream is, Executor executor, int parallelism)
+	        throws IOException {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism < 1");
+
+		long start = System.currentTimeMillis();
+
+		DataInputStream in = new DataInputStream(is);
+		final TagPool tagPool = new TagPool();
+		PbfBlockDecoder decoder = new PbfBlockDecoder(tagPool);
+
+		Block result = new Block();
+		ArrayDeque<FutureTask<Block>> pending = new ArrayDeque<FutureTask<Block>>();
+		int maxPending = executor == null ? 0 : parallelism * 2;
+		boolean header = false;
+
+		try {
+			while (true) {
+				int b = in.read();
+				if (b < 0)
+					break;
+
+				int headerSize = b << 24 | in.readUnsignedByte() << 16
+				        | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+				if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE)
+					throw new IOException("invalid blob header size " + headerSize);
+
+				byte[] blobHeader = new byte[headerSize];
+				in.readFully(blobHeader);
+				int blobSize = decoder.decodeBlobHeader(blobHeader);
+				if (blobSize > MAX_BLOB_SIZE)
+					throw new IOException("invalid blob size " + blobSize);
+
+				final byte[] blob = new byte[blobSize];
+				in.readFully(blob);
+
+				if ("OSMHeader".equals(decoder.blobType)) {
+					decoder.decodeHeader(blob);
+					header = true;
+					continue;
+				}
+				if (!"OSMData".equals(decoder.blobType))
+					continue;
+
+				if (!header)
+					throw new IOException("missing OSMHeader");
+
+				if (maxPending == 0) {
+					result.append(decoder.decodeData(blob));
+					continue;
+				}
+
+				FutureTask<Block> task = new FutureTask<Block>(new Callable<Block>() {
+					@Override
+					public Block call() throws IOException {
+						return new PbfBlockDecoder(tagPool).decodeData(blob);
+					}
+				});
+				pending.add(task);
+				executor.execute(task);
+
+				if (pending.size() >= maxPending)
+					merge(result, pending.poll());
+			}
+
+			while (!pending.isEmpty())
+				merge(result, pending.poll());
+
+		} catch (EOFException e) {
+			throw new IOException("truncated file");
+		} finally {
+			/* on error: skip tasks not started by the executor */
+			for (FutureTask<Block> f : pending)
+				f.cancel(false);
+		}
+
+		long decoded = System.currentTimeMillis();
+
+		OsmPbfStore store = new OsmPbfStore(result, tagPool.toArray(), executor, parallelism);
+
+		log.debug("loaded {} nodes, {} ways, {} tags in {}ms (build {}ms)",
+		          store.numNodes, store.numWays, store.tags.length,
+		          System.currentTimeMillis() - start,
+		          System.currentTimeMillis() - decoded);
+
+		if (store.missingRefs > 0)
+			log.debug("{} refs to missing nodes", store.missingRefs);
+
+		return store;
+	}
+
+	private static void merge(Block result, FutureTask<Block> task) throws IOException {
+		/* run it here when not started yet */
+		task.run();
+		result.append(OsmPbfStore.get(task));
+	}
+}
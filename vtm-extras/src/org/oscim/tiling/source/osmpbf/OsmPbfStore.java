@@ -0,0 +1,545 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.oscim.core.Tag;
+
+/**
+ * Compact in-memory store of the nodes and ways of an OSM extract, created
+ * by {@link OsmPbfLoader}.
+ * <p>
+ * Nodes are kept in arrays sorted by id with their Mercator coordinates in
+ * fixed point, 2^30 units per map side. Ways reference nodes by index and
+ * all elements share one interned {@link Tag} per distinct key/value pair.
+ * Ways and tagged nodes are indexed by cells of zoom level
+ * {@link #INDEX_ZOOM} for tile queries. Relations are not stored.
+ */
+public class OsmPbfStore {
+
+	/** bits of fixed point coordinates */
+	static final int COORD_BITS = 30;
+	static final double COORD_SCALE = 1 << COORD_BITS;
+
+	/** zoom level of the cells of the spatial index */
+	public static final int INDEX_ZOOM = 14;
+	static final int CELL_SHIFT = COORD_BITS - INDEX_ZOOM;
+
+	/** ways covering more cells are tested by each query */
+	static final int MAX_CELLS = 64;
+
+	/** default layer, i.e. OSM layer 0 */
+	static final int DEFAULT_LAYER = 5;
+
+	static final byte FLAG_AREA = 1;
+
+	/** minimum number of items per parallel task */
+	private static final int MIN_CHUNK = 1 << 14;
+
+	final Tag[] tags;
+
+	/** sorted node ids */
+	final long[] nodeIds;
+	final int[] nodeX;
+	final int[] nodeY;
+	final int numNodes;
+
+	/** node index of tagged nodes */
+	final int[] poiNodes;
+	final int[] poiTagOffsets;
+	final int[] poiTags;
+	final int numPois;
+
+	final long[] wayIds;
+	final int[] wayTagOffsets;
+	final int[] wayTags;
+	/** start of the nodes of each way in wayNodes, numWays + 1 entries */
+	final int[] wayNodeOffsets;
+	/** node indices of ways */
+	final int[] wayNodes;
+	/** minX, minY, maxX, maxY of each way */
+	final int[] wayBox;
+	final byte[] wayFlags;
+	final byte[] wayLayer;
+	final int numWays;
+
+	/** number of way refs to nodes missing in the extract */
+	final int missingRefs;
+
+	final CellIndex wayIndex;
+	final CellIndex poiIndex;
+	/** ways covering more than MAX_CELLS cells */
+	final int[] largeWays;
+
+	/**
+	 * Ids of the items in each cell of {@link OsmPbfStore#INDEX_ZOOM}, in
+	 * compressed row format.
+	 */
+	static final class CellIndex {
+		/** sorted keys of non-empty cells */
+		final int[] keys;
+		/** start of the items of each cell, keys.length + 1 entries */
+		final int[] offsets;
+		final int[] items;
+
+		/**
+		 * @param cells
+		 *            cell key << 32 | item, sorted in place.
+		 */
+		CellIndex(long[] cells, int size) {
+			Arrays.sort(cells, 0, size);
+
+			int numKeys = 0;
+			for (int i = 0; i < size; i++)
+				if (i == 0 || (cells[i] >>> 32) != (cells[i - 1] >>> 32))
+					numKeys++;
+
+			keys = new int[numKeys];
+			offsets = new int[numKeys + 1];
+			items = new int[size];
+
+			int k = -1;
+			for (int i = 0; i < size; i++) {
+				int key = (int) (cells[i] >>> 32);
+				if (k < 0 || keys[k] != key) {
+					keys[++k] = key;
+					offsets[k] = i;
+				}
+				items[i] = (int) cells[i];
+			}
+			offsets[numKeys] = size;
+		}
+
+		/**
+		 * @return position of the first cell with key >= 'key'.
+		 */
+		int find(int key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? -i - 1 : i;
+		}
+	}
+
+	static int cellKey(int cx, int cy) {
+		return cx << INDEX_ZOOM | cy;
+	}
+
+	/**
+	 * @return the fixed point value of a projected coordinate in [0,1].
+	 */
+	static int toFixed(double v) {
+		int max = (1 << COORD_BITS) - 1;
+		return Math.max(0, Math.min(max, (int) (v * COORD_SCALE)));
+	}
+
+	/**
+	 * Build the store from the merged blocks of an extract. Way refs are
+	 * resolved in parallel when an executor is passed.
+	 */
+	OsmPbfStore(Block b, Tag[] tags, Executor executor, int parallelism)
+	        throws IOException {
+		this.tags = tags;
+
+		numNodes = b.numNodes;
+		numPois = b.numPois;
+
+		/* nodes */
+		long[] ids = Arrays.copyOf(b.nodeIds, numNodes);
+		int[] pois = Arrays.copyOf(b.poiNodes, numPois);
+
+		boolean sorted = true;
+		for (int i = 1; i < numNodes; i++) {
+			if (ids[i] < ids[i - 1]) {
+				sorted = false;
+				break;
+			}
+		}
+		if (sorted) {
+			nodeX = Arrays.copyOf(b.nodeX, numNodes);
+			nodeY = Arrays.copyOf(b.nodeY, numNodes);
+		} else {
+			int[] perm = new int[numNodes];
+			for (int i = 0; i < numNodes; i++)
+				perm[i] = i;
+
+			sort(ids, perm, 0, numNodes);
+
+			nodeX = new int[numNodes];
+			nodeY = new int[numNodes];
+			int[] rank = new int[numNodes];
+			for (int i = 0; i < numNodes; i++) {
+				nodeX[i] = b.nodeX[perm[i]];
+				nodeY[i] = b.nodeY[perm[i]];
+				rank[perm[i]] = i;
+			}
+			for (int i = 0; i < numPois; i++)
+				pois[i] = rank[pois[i]];
+		}
+		nodeIds = ids;
+		b.nodeIds = null;
+		b.nodeX = b.nodeY = null;
+
+		poiNodes = pois;
+		poiTagOffsets = Arrays.copyOf(b.poiTagOffsets, numPois + 1);
+		poiTags = Arrays.copyOf(b.poiTags, b.numPoiTags);
+
+		/* resolve way refs to node indices */
+		final long[] refs = b.wayRefs;
+		final int[] nodes = new int[b.numWayRefs];
+		parallel(executor, parallelism, b.numWayRefs, new Chunk() {
+			@Override
+			public void run(int from, int to) {
+				long[] ids = nodeIds;
+				for (int i = from; i < to; i++) {
+					int n = Arrays.binarySearch(ids, refs[i]);
+					nodes[i] = n < 0 ? -1 : n;
+				}
+			}
+		});
+		b.wayRefs = null;
+
+		/* remove missing refs and ways with less than two nodes */
+		int[] nodeOffsets = new int[b.numWays + 1];
+		int[] tagOffsets = new int[b.numWays + 1];
+		long[] wIds = new long[b.numWays];
+		int[] wTags = b.wayTags;
+		int ways = 0, numNodeRefs = 0, numTags = 0, missing = 0;
+
+		for (int w = 0; w < b.numWays; w++) {
+			int start = numNodeRefs;
+			for (int i = b.wayRefOffsets[w], end = b.wayRefOffsets[w + 1]; i < end; i++) {
+				int n = nodes[i];
+				if (n < 0)
+					missing++;
+				else if (numNodeRefs == start || nodes[numNodeRefs - 1] != n)
+					nodes[numNodeRefs++] = n;
+			}
+			if (numNodeRefs - start < 2) {
+				numNodeRefs = start;
+				continue;
+			}
+			for (int i = b.wayTagOffsets[w], end = b.wayTagOffsets[w + 1]; i < end; i++)
+				wTags[numTags++] = wTags[i];
+
+			wIds[ways++] = b.wayIds[w];
+			nodeOffsets[ways] = numNodeRefs;
+			tagOffsets[ways] = numTags;
+		}
+		numWays = ways;
+		missingRefs = missing;
+		wayIds = Arrays.copyOf(wIds, ways);
+		wayNodeOffsets = Arrays.copyOf(nodeOffsets, ways + 1);
+		wayNodes = Arrays.copyOf(nodes, numNodeRefs);
+		wayTagOffsets = Arrays.copyOf(tagOffsets, ways + 1);
+		wayTags = Arrays.copyOf(wTags, numTags);
+
+		/* bounding boxes, flags and spatial index */
+		wayBox = new int[ways * 4];
+		wayFlags = new byte[ways];
+		wayLayer = new byte[ways];
+
+		long[] cells = new long[Math.max(16, ways * 2)];
+		int numCells = 0;
+		int[] large = new int[16];
+		int numLarge = 0;
+
+		for (int w = 0; w < ways; w++) {
+			int start = wayNodeOffsets[w], end = wayNodeOffsets[w + 1];
+			int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+			int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+			for (int i = start; i < end; i++) {
+				int x = nodeX[wayNodes[i]], y = nodeY[wayNodes[i]];
+				minX = Math.min(minX, x);
+				minY = Math.min(minY, y);
+				maxX = Math.max(maxX, x);
+				maxY = Math.max(maxY, y);
+			}
+			wayBox[w * 4 + 0] = minX;
+			wayBox[w * 4 + 1] = minY;
+			wayBox[w * 4 + 2] = maxX;
+			wayBox[w * 4 + 3] = maxY;
+
+			boolean closed = end - start > 3 && wayNodes[start] == wayNodes[end - 1];
+			if (closed && hasAreaTags(w))
+				wayFlags[w] |= FLAG_AREA;
+
+			wayLayer[w] = (byte) getLayer(w);
+
+			int cx0 = minX >>> CELL_SHIFT, cx1 = maxX >>> CELL_SHIFT;
+			int cy0 = minY >>> CELL_SHIFT, cy1 = maxY >>> CELL_SHIFT;
+			if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS) {
+				if (numLarge == large.length)
+					large = PbfBlockDecoder.grow(large, numLarge + 1);
+				large[numLarge++] = w;
+				continue;
+			}
+			for (int cx = cx0; cx <= cx1; cx++) {
+				for (int cy = cy0; cy <= cy1; cy++) {
+					if (numCells == cells.length)
+						cells = PbfBlockDecoder.grow(cells, numCells + 1);
+					cells[numCells++] = (long) cellKey(cx, cy) << 32 | w;
+				}
+			}
+		}
+		wayIndex = new CellIndex(cells, numCells);
+		largeWays = Arrays.copyOf(large, numLarge);
+
+		numCells = 0;
+		for (int p = 0; p < numPois; p++) {
+			int n = poiNodes[p];
+			int key = cellKey(nodeX[n] >>> CELL_SHIFT, nodeY[n] >>> CELL_SHIFT);
+			if (numCells == cells.length)
+				cells = PbfBlockDecoder.grow(cells, numCells + 1);
+			cells[numCells++] = (long) key << 32 | p;
+		}
+		poiIndex = new CellIndex(cells, numCells);
+	}
+
+	/**
+	 * Closed ways are areas unless tagged 'area=no' or as highway or
+	 * barrier without 'area=yes'.
+	 */
+	private boolean hasAreaTags(int way) {
+		boolean line = false;
+		for (int i = wayTagOffsets[way], end = wayTagOffsets[way + 1]; i < end; i++) {
+			Tag t = tags[wayTags[i]];
+			if ("area".equals(t.key))
+				return !Tag.VALUE_NO.equals(t.value);
+			if (Tag.KEY_HIGHWAY.equals(t.key) || "barrier".equals(t.key))
+				line = true;
+		}
+		return !line;
+	}
+
+	private int getLayer(int way) {
+		for (int i = wayTagOffsets[way], end = wayTagOffsets[way + 1]; i < end; i++) {
+			Tag t = tags[wayTags[i]];
+			if (!"layer".equals(t.key))
+				continue;
+			try {
+				int layer = Integer.parseInt(t.value.trim());
+				return DEFAULT_LAYER + Math.max(-5, Math.min(5, layer));
+			} catch (NumberFormatException e) {
+				break;
+			}
+		}
+		return DEFAULT_LAYER;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public int getNumWays() {
+		return numWays;
+	}
+
+	/** @return the number of nodes with tags */
+	public int getNumPois() {
+		return numPois;
+	}
+
+	/** @return the number of distinct tags */
+	public int getNumTags() {
+		return tags.length;
+	}
+
+	/**
+	 * @return the index of the node with 'id', or -1 when not contained.
+	 */
+	public int getNodeIndex(long id) {
+		int n = Arrays.binarySearch(nodeIds, id);
+		return n < 0 ? -1 : n;
+	}
+
+	/**
+	 * @return the index of the way with 'id', or -1 when not contained.
+	 *         Searches all ways.
+	 */
+	public int getWayIndex(long id) {
+		for (int w = 0; w < numWays; w++)
+			if (wayIds[w] == id)
+				return w;
+		return -1;
+	}
+
+	/**
+	 * @return the projected x coordinate of a node in [0,1].
+	 */
+	public double getNodeX(int node) {
+		return nodeX[node] / COORD_SCALE;
+	}
+
+	/**
+	 * @return the projected y coordinate of a node in [0,1].
+	 */
+	public double getNodeY(int node) {
+		return nodeY[node] / COORD_SCALE;
+	}
+
+	/**
+	 * @return the node indices of 'way'.
+	 */
+	public int[] getWayNodes(int way) {
+		return Arrays.copyOfRange(wayNodes, wayNodeOffsets[way], wayNodeOffsets[way + 1]);
+	}
+
+	/**
+	 * @return the tags of 'way', instances are shared by all elements.
+	 */
+	public Tag[] getWayTags(int way) {
+		int start = wayTagOffsets[way];
+		Tag[] result = new Tag[wayTagOffsets[way + 1] - start];
+		for (int i = 0; i < result.length; i++)
+			result[i] = tags[wayTags[start + i]];
+		return result;
+	}
+
+	/**
+	 * @return true when the closed 'way' is rendered as polygon.
+	 */
+	public boolean isArea(int way) {
+		return (wayFlags[way] & FLAG_AREA) != 0;
+	}
+
+	/** @return the number of way refs to nodes missing in the extract */
+	public int getMissingRefs() {
+		return missingRefs;
+	}
+
+	interface Chunk {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Run 'chunk' for ranges of [0, size) on the executor and the calling
+	 * thread. Tasks not started by the executor are run by the calling
+	 * thread.
+	 */
+	static void parallel(Executor executor, int parallelism, int size, final Chunk chunk)
+	        throws IOException {
+		int tasks = Math.min(parallelism, size / MIN_CHUNK);
+		if (executor == null || tasks < 2) {
+			chunk.run(0, size);
+			return;
+		}
+		ArrayList<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>(tasks);
+		for (int t = 1; t < tasks; t++) {
+			final int from = (int) ((long) size * t / tasks);
+			final int to = (int) ((long) size * (t + 1) / tasks);
+			FutureTask<Void> f = new FutureTask<Void>(new Callable<Void>() {
+				@Override
+				public Void call() {
+					chunk.run(from, to);
+					return null;
+				}
+			});
+			futures.add(f);
+			executor.execute(f);
+		}
+		chunk.run(0, size / tasks);
+
+		for (FutureTask<Void> f : futures) {
+			f.run();
+			get(f);
+		}
+	}
+
+	/**
+	 * @return the result of 'f', rethrowing its exception.
+	 */
+	static <T> T get(FutureTask<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Sort 'keys' and 'values' by keys.
+	 */
+	static void sort(long[] keys, int[] values, int from, int to) {
+		while (to - from > 16) {
+			int mid = (from + to) >>> 1;
+			/* median of three */
+			if (keys[mid] < keys[from])
+				swap(keys, values, mid, from);
+			if (keys[to - 1] < keys[from])
+				swap(keys, values, to - 1, from);
+			if (keys[to - 1] < keys[mid])
+				swap(keys, values, to - 1, mid);
+			long pivot = keys[mid];
+
+			int i = from, j = to - 1;
+			while (i <= j) {
+				while (keys[i] < pivot)
+					i++;
+				while (keys[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(keys, values, i++, j--);
+			}
+			/* recurse into the smaller part */
+			if (j - from < to - i) {
+				sort(keys, values, from, j + 1);
+				from = i;
+			} else {
+				sort(keys, values, i, to);
+				to = j + 1;
+			}
+		}
+		for (int i = from + 1; i < to; i++) {
+			long k = keys[i];
+			int v = values[i];
+			int j = i - 1;
+			while (j >= from && keys[j] > k) {
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			keys[j + 1] = k;
+			values[j + 1] = v;
+		}
+	}
+
+	private static void swap(long[] keys, int[] values, int a, int b) {
+		long k = keys[a];
+		keys[a] = keys[b];
+		keys[b] = k;
+		int v = values[a];
+		values[a] = values[b];
+		values[b] = v;
+	}
+}
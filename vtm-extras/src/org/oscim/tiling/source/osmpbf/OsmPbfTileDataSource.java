@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import static org.oscim.tiling.source.osmpbf.OsmPbfStore.CELL_SHIFT;
+import static org.oscim.tiling.source.osmpbf.OsmPbfStore.COORD_BITS;
+import static org.oscim.tiling.source.osmpbf.OsmPbfStore.FLAG_AREA;
+import static org.oscim.tiling.source.osmpbf.OsmPbfStore.cellKey;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSink.QueryResult;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.osmpbf.OsmPbfStore.CellIndex;
+import org.oscim.utils.geom.TileClipper;
+
+/**
+ * Passes the ways and tagged nodes of an {@link OsmPbfStore} that
+ * intersect a tile to the ITileDataSink. Ways are clipped to the tile
+ * with a margin and points closer than {@link #MIN_DISTANCE} pixel to the
+ * previous point are skipped.
+ */
+public class OsmPbfTileDataSource implements ITileDataSource {
+
+	/** clip margin in pixel, larger than half of the widest line */
+	static final int CLIP_MARGIN = 16;
+
+	/** minimum distance of points in pixel */
+	static final float MIN_DISTANCE = 0.5f;
+
+	private final OsmPbfStore mStore;
+	private final MapElement mElem = new MapElement();
+	private final TileClipper mClipper = new TileClipper(-CLIP_MARGIN, -CLIP_MARGIN,
+	                                                     Tile.SIZE + CLIP_MARGIN,
+	                                                     Tile.SIZE + CLIP_MARGIN);
+
+	/* tile bounds in fixed point coordinates, inclusive */
+	private int mMinX, mMinY, mMaxX, mMaxY;
+	private double mScale;
+
+	public OsmPbfTileDataSource(OsmPbfStore store) {
+		mStore = store;
+	}
+
+	@Override
+	public void query(MapTile tile, ITileDataSink sink) {
+		int shift = COORD_BITS - tile.zoomLevel;
+		if (shift < 0) {
+			sink.completed(QueryResult.FAILED);
+			return;
+		}
+		mMinX = tile.tileX << shift;
+		mMinY = tile.tileY << shift;
+		mMaxX = mMinX + ((1 << shift) - 1);
+		mMaxY = mMinY + ((1 << shift) - 1);
+		mScale = Tile.SIZE / (double) (1L << shift);
+
+		OsmPbfStore s = mStore;
+		int cx0 = mMinX >>> CELL_SHIFT, cx1 = mMaxX >>> CELL_SHIFT;
+		int cy0 = mMinY >>> CELL_SHIFT, cy1 = mMaxY >>> CELL_SHIFT;
+
+		/* ways in more than one cell are passed for the first cell
+		 * they share with the tile */
+		CellIndex index = s.wayIndex;
+		for (int cx = cx0; cx <= cx1; cx++) {
+			int end = cellKey(cx, cy1);
+			for (int k = index.find(cellKey(cx, cy0)); k < index.keys.length; k++) {
+				int key = index.keys[k];
+				if (key > end)
+					break;
+				int cy = key & ((1 << OsmPbfStore.INDEX_ZOOM) - 1);
+
+				for (int i = index.offsets[k], n = index.offsets[k + 1]; i < n; i++) {
+					int w = index.items[i];
+					int wcx = s.wayBox[w * 4 + 0] >>> CELL_SHIFT;
+					int wcy = s.wayBox[w * 4 + 1] >>> CELL_SHIFT;
+					if (cx == Math.max(cx0, wcx) && cy == Math.max(cy0, wcy))
+						processWay(w, sink);
+				}
+			}
+		}
+		for (int w : s.largeWays)
+			processWay(w, sink);
+
+		index = s.poiIndex;
+		for (int cx = cx0; cx <= cx1; cx++) {
+			int end = cellKey(cx, cy1);
+			for (int k = index.find(cellKey(cx, cy0)); k < index.keys.length; k++) {
+				if (index.keys[k] > end)
+					break;
+				for (int i = index.offsets[k], n = index.offsets[k + 1]; i < n; i++)
+					processPoi(index.items[i], sink);
+			}
+		}
+
+		sink.completed(QueryResult.SUCCESS);
+	}
+
+	private void processWay(int w, ITileDataSink sink) {
+		OsmPbfStore s = mStore;
+		int[] box = s.wayBox;
+		int minX = box[w * 4 + 0], minY = box[w * 4 + 1];
+		int maxX = box[w * 4 + 2], maxY = box[w * 4 + 3];
+
+		if (maxX < mMinX || minX > mMaxX || maxY < mMinY || minY > mMaxY)
+			return;
+
+		/* smaller than one pixel */
+		if ((maxX - minX) * mScale < 1 && (maxY - minY) * mScale < 1)
+			return;
+
+		boolean area = (s.wayFlags[w] & FLAG_AREA) != 0;
+
+		MapElement e = mElem;
+		e.clear();
+		if (area)
+			e.startPolygon();
+		else
+			e.startLine();
+
+		int start = s.wayNodeOffsets[w];
+		int end = s.wayNodeOffsets[w + 1];
+		/* polygons are closed implicitly */
+		if (area)
+			end--;
+
+		int[] nodes = s.wayNodes;
+		float px = 0, py = 0;
+		int numPoints = 0;
+		for (int i = start; i < end; i++) {
+			int n = nodes[i];
+			float x = (float) ((s.nodeX[n] - mMinX) * mScale);
+			float y = (float) ((s.nodeY[n] - mMinY) * mScale);
+
+			if (numPoints > 0 && i < end - 1
+			        && Math.abs(x - px) < MIN_DISTANCE
+			        && Math.abs(y - py) < MIN_DISTANCE)
+				continue;
+
+			e.addPoint(x, y);
+			px = x;
+			py = y;
+			numPoints++;
+		}
+		if (numPoints < (area ? 3 : 2))
+			return;
+
+		if (!mClipper.clip(e))
+			return;
+
+		setTags(e, s.wayTagOffsets, s.wayTags, w);
+		e.setLayer(s.wayLayer[w]);
+		sink.process(e);
+	}
+
+	private void processPoi(int p, ITileDataSink sink) {
+		OsmPbfStore s = mStore;
+		int n = s.poiNodes[p];
+		int x = s.nodeX[n], y = s.nodeY[n];
+		if (x < mMinX || x > mMaxX || y < mMinY || y > mMaxY)
+			return;
+
+		MapElement e = mElem;
+		e.clear();
+		e.startPoints();
+		e.addPoint((float) ((x - mMinX) * mScale), (float) ((y - mMinY) * mScale));
+
+		setTags(e, s.poiTagOffsets, s.poiTags, p);
+		e.setLayer(OsmPbfStore.DEFAULT_LAYER);
+		sink.process(e);
+	}
+
+	private void setTags(MapElement e, int[] offsets, int[] ids, int item) {
+		e.tags.clear();
+		for (int i = offsets[item], end = offsets[item + 1]; i < end; i++)
+			e.tags.add(mStore.tags[ids[i]]);
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TileSource for OSM PBF extracts, e.g. to back a VectorTileLayer
+ * directly. The extract is loaded into an {@link OsmPbfStore} by
+ * {@link #open()}, or an already loaded store is passed to the
+ * constructor.
+ */
+public class OsmPbfTileSource extends TileSource {
+	static final Logger log = LoggerFactory.getLogger(OsmPbfTileSource.class);
+
+	private OsmPbfStore mStore;
+	private final boolean mLoaded;
+
+	public OsmPbfTileSource() {
+		mLoaded = false;
+	}
+
+	public OsmPbfTileSource(OsmPbfStore store) {
+		mStore = store;
+		mLoaded = true;
+	}
+
+	public boolean setPbfFile(String filename) {
+		setOption("file", filename);
+
+		File file = new File(filename);
+		return file.isFile() && file.canRead();
+	}
+
+	public OsmPbfStore getStore() {
+		return mStore;
+	}
+
+	@Override
+	public ITileDataSource getDataSource() {
+		if (mStore == null)
+			return null;
+
+		return new OsmPbfTileDataSource(mStore);
+	}
+
+	@Override
+	public OpenResult open() {
+		if (mStore != null)
+			return OpenResult.SUCCESS;
+
+		if (!options.containsKey("file"))
+			return new OpenResult("no pbf file set");
+
+		File file = new File(options.get("file"));
+		if (!file.isFile() || !file.canRead())
+			return new OpenResult("cannot read file: " + file);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1) : null;
+		InputStream is = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+			mStore = OsmPbfLoader.load(is, executor, threads);
+		} catch (IOException e) {
+			log.error(file + ": " + e.getMessage());
+			return new OpenResult(e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(is);
+			if (executor != null)
+				executor.shutdown();
+		}
+		return OpenResult.SUCCESS;
+	}
+
+	@Override
+	public void close() {
+		/* keep a store passed to the constructor */
+		if (!mLoaded)
+			mStore = null;
+	}
+}
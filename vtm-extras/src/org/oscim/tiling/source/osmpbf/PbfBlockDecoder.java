@@ -0,0 +1,573 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.oscim.core.MercatorProjection;
+
+/**
+ * Decodes one blob of an OSM PBF file into a {@link Block} of primitive
+ * arrays. Only the fields needed for rendering are read: ids, coordinates
+ * and tags of nodes and the tags and node references of ways. Relations
+ * and metadata are skipped.
+ *
+ * Instances are not thread-safe, each decoding task uses its own.
+ */
+final class PbfBlockDecoder {
+
+	/* wire types */
+	private static final int VARINT = 0;
+	private static final int FIXED64 = 1;
+	private static final int BYTES = 2;
+	private static final int FIXED32 = 5;
+
+	/** the decoded block data */
+	private byte[] buf;
+	private int pos;
+
+	private final TagPool mTagPool;
+
+	/** strings of the current block */
+	private String[] mStrings;
+
+	/** global tag ids of key/value string pairs of the current block */
+	private final HashMap<Long, Integer> mTagIds = new HashMap<Long, Integer>();
+
+	private long mLatOffset;
+	private long mLonOffset;
+	private int mGranularity;
+
+	private Block mBlock;
+
+	/** type of the last decoded BlobHeader */
+	String blobType;
+
+	/* temporary arrays for packed fields */
+	private long[] mLongs = new long[64];
+	private long[] mLongs2 = new long[64];
+	private long[] mLongs3 = new long[64];
+	private int[] mInts = new int[64];
+	private int[] mInts2 = new int[64];
+	private int mNumLongs;
+	private int mNumInts;
+
+	PbfBlockDecoder(TagPool tagPool) {
+		mTagPool = tagPool;
+	}
+
+	/**
+	 * Decode a BlobHeader.
+	 *
+	 * @return the size of the following blob, the type is set to
+	 *         {@link #blobType}.
+	 */
+	int decodeBlobHeader(byte[] header) throws IOException {
+		setInput(header, 0);
+		int end = header.length;
+		int size = -1;
+		blobType = null;
+		while (pos < end) {
+			int tag = readVarint32();
+			if (tag == (1 << 3 | BYTES))
+				blobType = readString();
+			else if (tag == (3 << 3 | VARINT))
+				size = readVarint32();
+			else
+				skip(tag);
+		}
+		if (blobType == null || size < 0)
+			throw new IOException("invalid blob header");
+
+		return size;
+	}
+
+	/**
+	 * Decode an 'OSMData' blob.
+	 */
+	Block decodeData(byte[] blob) throws IOException {
+		byte[] data = uncompress(blob);
+		mBlock = new Block();
+		mTagIds.clear();
+		decodePrimitiveBlock(data);
+		Block block = mBlock;
+		mBlock = null;
+		mStrings = null;
+		buf = null;
+		return block;
+	}
+
+	/**
+	 * Decode an 'OSMHeader' blob and check its required features.
+	 */
+	void decodeHeader(byte[] blob) throws IOException {
+		byte[] data = uncompress(blob);
+		setInput(data, 0);
+		int end = data.length;
+		while (pos < end) {
+			int tag = readVarint32();
+			if (tag == (4 << 3 | BYTES)) {
+				String feature = readString();
+				if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes"))
+					throw new IOException("unsupported feature: " + feature);
+			} else {
+				skip(tag);
+			}
+		}
+	}
+
+	/** @return the uncompressed data of a Blob message */
+	private byte[] uncompress(byte[] blob) throws IOException {
+		setInput(blob, 0);
+		int end = blob.length;
+
+		int rawSize = -1;
+		int dataPos = -1, dataLen = 0;
+		boolean zlib = false;
+
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | BYTES:
+					dataLen = readVarint32();
+					dataPos = pos;
+					zlib = false;
+					pos += dataLen;
+					break;
+				case 2 << 3 | VARINT:
+					rawSize = readVarint32();
+					break;
+				case 3 << 3 | BYTES:
+					dataLen = readVarint32();
+					dataPos = pos;
+					zlib = true;
+					pos += dataLen;
+					break;
+				default:
+					if ((tag >>> 3) > 3)
+						throw new IOException("unsupported blob compression");
+					skip(tag);
+			}
+		}
+		if (dataPos < 0 || pos > end)
+			throw new IOException("invalid blob");
+
+		if (!zlib) {
+			byte[] data = new byte[dataLen];
+			System.arraycopy(blob, dataPos, data, 0, dataLen);
+			return data;
+		}
+
+		if (rawSize < 0)
+			throw new IOException("missing raw size");
+		if (rawSize > OsmPbfLoader.MAX_BLOB_SIZE)
+			throw new IOException("blob too large: " + rawSize);
+
+		byte[] data = new byte[rawSize];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(blob, dataPos, dataLen);
+			int size = 0;
+			while (size < rawSize) {
+				int n = inflater.inflate(data, size, rawSize - size);
+				/* finished early, truncated or needs a dictionary */
+				if (n == 0)
+					throw new IOException("invalid zlib data");
+				size += n;
+			}
+			if (size != rawSize)
+				throw new IOException("invalid zlib data");
+		} catch (DataFormatException e) {
+			throw new IOException("invalid zlib data: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		return data;
+	}
+
+	private void decodePrimitiveBlock(byte[] data) throws IOException {
+		setInput(data, 0);
+		int end = data.length;
+
+		mLatOffset = 0;
+		mLonOffset = 0;
+		mGranularity = 100;
+
+		/* groups may come before the coordinate offsets */
+		int[] groups = mInts2;
+		int numGroups = 0;
+
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | BYTES:
+					decodeStringTable(readVarint32() + pos);
+					break;
+				case 2 << 3 | BYTES:
+					int len = readVarint32();
+					if (numGroups + 2 > groups.length)
+						groups = grow(groups, numGroups + 2);
+					groups[numGroups++] = pos;
+					groups[numGroups++] = len;
+					pos += len;
+					break;
+				case 17 << 3 | VARINT:
+					mGranularity = readVarint32();
+					break;
+				case 19 << 3 | VARINT:
+					mLatOffset = readVarint64();
+					break;
+				case 20 << 3 | VARINT:
+					mLonOffset = readVarint64();
+					break;
+				default:
+					skip(tag);
+			}
+		}
+		if (mStrings == null)
+			mStrings = new String[0];
+
+		/* mInts2 is used by the groups */
+		mInts2 = new int[64];
+
+		for (int i = 0; i < numGroups; i += 2) {
+			pos = groups[i];
+			decodeGroup(groups[i] + groups[i + 1]);
+		}
+	}
+
+	private void decodeStringTable(int end) throws IOException {
+		String[] strings = new String[64];
+		int n = 0;
+		while (pos < end) {
+			int tag = readVarint32();
+			if (tag == (1 << 3 | BYTES)) {
+				if (n == strings.length) {
+					String[] tmp = new String[n * 2];
+					System.arraycopy(strings, 0, tmp, 0, n);
+					strings = tmp;
+				}
+				strings[n++] = readString();
+			} else {
+				skip(tag);
+			}
+		}
+		mStrings = new String[n];
+		System.arraycopy(strings, 0, mStrings, 0, n);
+	}
+
+	private void decodeGroup(int end) throws IOException {
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | BYTES:
+					decodeNode(readVarint32() + pos);
+					break;
+				case 2 << 3 | BYTES:
+					decodeDenseNodes(readVarint32() + pos);
+					break;
+				case 3 << 3 | BYTES:
+					decodeWay(readVarint32() + pos);
+					break;
+				default:
+					skip(tag);
+			}
+		}
+	}
+
+	private void decodeNode(int end) throws IOException {
+		long id = 0, lat = 0, lon = 0;
+		int numKeys = 0, numVals = 0;
+
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | VARINT:
+					id = deZigZag(readVarint64());
+					break;
+				case 2 << 3 | BYTES:
+					readPackedInts(readVarint32() + pos);
+					mInts2 = swap(mInts2);
+					numKeys = mNumInts;
+					break;
+				case 3 << 3 | BYTES:
+					readPackedInts(readVarint32() + pos);
+					numVals = mNumInts;
+					break;
+				case 8 << 3 | VARINT:
+					lat = deZigZag(readVarint64());
+					break;
+				case 9 << 3 | VARINT:
+					lon = deZigZag(readVarint64());
+					break;
+				default:
+					skip(tag);
+			}
+		}
+		Block b = mBlock;
+		int node = b.addNode(id, projectX(lon), projectY(lat));
+
+		int numTags = Math.min(numKeys, numVals);
+		if (numTags == 0)
+			return;
+
+		b.startPoi(node);
+		for (int i = 0; i < numTags; i++)
+			b.addPoiTag(tagId(mInts2[i], mInts[i]));
+	}
+
+	private void decodeDenseNodes(int end) throws IOException {
+		int numIds = 0, numLats = 0, numLons = 0, numKeysVals = 0;
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | BYTES:
+					readPackedLongs(readVarint32() + pos);
+					numIds = mNumLongs;
+					mLongs2 = swapLongs(mLongs2);
+					break;
+				case 8 << 3 | BYTES:
+					readPackedLongs(readVarint32() + pos);
+					numLats = mNumLongs;
+					mLongs3 = swapLongs(mLongs3);
+					break;
+				case 9 << 3 | BYTES:
+					readPackedLongs(readVarint32() + pos);
+					numLons = mNumLongs;
+					break;
+				case 10 << 3 | BYTES:
+					readPackedInts(readVarint32() + pos);
+					numKeysVals = mNumInts;
+					break;
+				default:
+					skip(tag);
+			}
+		}
+		if (numIds != numLats || numIds != numLons)
+			throw new IOException("invalid dense nodes");
+
+		long[] ids = mLongs2;
+		long[] lats = mLongs3;
+		long[] lons = mLongs;
+		int[] keysVals = mInts;
+
+		Block b = mBlock;
+		long id = 0, lat = 0, lon = 0;
+		int kv = 0;
+
+		for (int i = 0; i < numIds; i++) {
+			id += deZigZag(ids[i]);
+			lat += deZigZag(lats[i]);
+			lon += deZigZag(lons[i]);
+
+			int node = b.addNode(id, projectX(lon), projectY(lat));
+
+			/* keys_vals is empty when no node has tags */
+			if (kv >= numKeysVals)
+				continue;
+
+			if (keysVals[kv] != 0) {
+				b.startPoi(node);
+				while (kv + 1 < numKeysVals && keysVals[kv] != 0) {
+					b.addPoiTag(tagId(keysVals[kv], keysVals[kv + 1]));
+					kv += 2;
+				}
+			}
+			/* skip delimiter */
+			kv++;
+		}
+	}
+
+	private void decodeWay(int end) throws IOException {
+		long id = 0;
+		int numKeys = 0, numVals = 0, numRefs = 0;
+
+		while (pos < end) {
+			int tag = readVarint32();
+			switch (tag) {
+				case 1 << 3 | VARINT:
+					id = readVarint64();
+					break;
+				case 2 << 3 | BYTES:
+					readPackedInts(readVarint32() + pos);
+					mInts2 = swap(mInts2);
+					numKeys = mNumInts;
+					break;
+				case 3 << 3 | BYTES:
+					readPackedInts(readVarint32() + pos);
+					numVals = mNumInts;
+					break;
+				case 8 << 3 | BYTES:
+					readPackedLongs(readVarint32() + pos);
+					numRefs = mNumLongs;
+					break;
+				default:
+					skip(tag);
+			}
+		}
+
+		Block b = mBlock;
+		b.startWay(id);
+
+		int numTags = Math.min(numKeys, numVals);
+		for (int i = 0; i < numTags; i++)
+			b.addWayTag(tagId(mInts2[i], mInts[i]));
+
+		long ref = 0;
+		for (int i = 0; i < numRefs; i++) {
+			ref += deZigZag(mLongs[i]);
+			b.addWayRef(ref);
+		}
+	}
+
+	private int tagId(int key, int val) throws IOException {
+		if (key < 0 || key >= mStrings.length || val < 0 || val >= mStrings.length)
+			throw new IOException("invalid string id");
+
+		Long k = Long.valueOf((long) key << 32 | val);
+		Integer id = mTagIds.get(k);
+		if (id == null) {
+			id = Integer.valueOf(mTagPool.intern(mStrings[key], mStrings[val]));
+			mTagIds.put(k, id);
+		}
+		return id.intValue();
+	}
+
+	private int projectX(long lon) {
+		double deg = 1e-9 * (mLonOffset + (long) mGranularity * lon);
+		return OsmPbfStore.toFixed(MercatorProjection.longitudeToX(deg));
+	}
+
+	private int projectY(long lat) {
+		double deg = 1e-9 * (mLatOffset + (long) mGranularity * lat);
+		deg = Math.max(-MercatorProjection.LATITUDE_MAX,
+		               Math.min(MercatorProjection.LATITUDE_MAX, deg));
+		return OsmPbfStore.toFixed(MercatorProjection.latitudeToY(deg));
+	}
+
+	/* protobuf primitives */
+
+	private void setInput(byte[] data, int offset) {
+		buf = data;
+		pos = offset;
+	}
+
+	private int readVarint32() throws IOException {
+		return (int) readVarint64();
+	}
+
+	private long readVarint64() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (pos >= buf.length)
+				throw new IOException("truncated varint");
+
+			byte b = buf[pos++];
+			result |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return result;
+		}
+		throw new IOException("invalid varint");
+	}
+
+	private String readString() throws IOException {
+		int len = readVarint32();
+		if (len < 0 || pos + len > buf.length)
+			throw new IOException("invalid string length");
+
+		String s = new String(buf, pos, len, "UTF-8");
+		pos += len;
+		return s;
+	}
+
+	private void readPackedLongs(int end) throws IOException {
+		/* keep the previous arrays when swapped out */
+		long[] values = mLongs;
+		int n = 0;
+		while (pos < end) {
+			if (n == values.length)
+				values = grow(values, n + 1);
+			values[n++] = readVarint64();
+		}
+		mLongs = values;
+		mNumLongs = n;
+	}
+
+	private void readPackedInts(int end) throws IOException {
+		int[] values = mInts;
+		int n = 0;
+		while (pos < end) {
+			if (n == values.length)
+				values = grow(values, n + 1);
+			values[n++] = readVarint32();
+		}
+		mInts = values;
+		mNumInts = n;
+	}
+
+	/** swap mInts with 'other', @return the previous mInts */
+	private int[] swap(int[] other) {
+		int[] tmp = mInts;
+		mInts = other;
+		return tmp;
+	}
+
+	/** swap mLongs with 'other', @return the previous mLongs */
+	private long[] swapLongs(long[] other) {
+		long[] tmp = mLongs;
+		mLongs = other;
+		return tmp;
+	}
+
+	private void skip(int tag) throws IOException {
+		switch (tag & 7) {
+			case VARINT:
+				readVarint64();
+				break;
+			case FIXED64:
+				pos += 8;
+				break;
+			case BYTES:
+				pos += readVarint32();
+				break;
+			case FIXED32:
+				pos += 4;
+				break;
+			default:
+				throw new IOException("invalid wire type " + (tag & 7));
+		}
+	}
+
+	private static long deZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	static int[] grow(int[] array, int size) {
+		int[] tmp = new int[Math.max(size, array.length * 2)];
+		System.arraycopy(array, 0, tmp, 0, array.length);
+		return tmp;
+	}
+
+	static long[] grow(long[] array, int size) {
+		long[] tmp = new long[Math.max(size, array.length * 2)];
+		System.arraycopy(array, 0, tmp, 0, array.length);
+		return tmp;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.oscim.core.Tag;
+
+/**
+ * Maps each distinct key/value pair of an extract to one shared {@link Tag}
+ * and a global id. Shared by all decoding tasks of a load.
+ */
+final class TagPool {
+
+	private final HashMap<Tag, Integer> mIds = new HashMap<Tag, Integer>();
+	private final ArrayList<Tag> mTags = new ArrayList<Tag>();
+
+	/**
+	 * @return the id of the tag 'key'='value'.
+	 */
+	synchronized int intern(String key, String value) {
+		Tag tag = new Tag(key, value);
+		Integer id = mIds.get(tag);
+		if (id != null)
+			return id.intValue();
+
+		int newId = mTags.size();
+		mTags.add(tag);
+		mIds.put(tag, Integer.valueOf(newId));
+		return newId;
+	}
+
+	synchronized Tag[] toArray() {
+		return mTags.toArray(new Tag[mTags.size()]);
+	}
+}
@@ -22,6 +22,10 @@ import java.io.InputStream;
 import org.openstreetmap.osmosis.osmbinary.file.BlockInputStream;
 import org.oscim.core.osm.OsmData;
 
+/**
+ * Reads an extract into OsmData objects. To render an extract use
+ * {@link org.oscim.tiling.source.osmpbf.OsmPbfTileSource}.
+ */
 public class OsmPbfReader {
 
 	public static OsmData process(InputStream is) {
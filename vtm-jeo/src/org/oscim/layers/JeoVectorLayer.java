@@ -5,12 +5,14 @@ import java.io.IOException;
 import org.jeo.data.Query;
 import org.jeo.data.VectorDataset;
 import org.jeo.feature.Feature;
-import org.jeo.geom.Geom;
 import org.jeo.map.CartoCSS;
 import org.jeo.map.RGB;
 import org.jeo.map.Rule;
 import org.jeo.map.RuleList;
 import org.jeo.map.Style;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.jeo.JeoUtils;
 import org.oscim.map.Map;
 import org.oscim.renderer.elements.LineLayer;
@@ -20,19 +22,34 @@ import org.oscim.theme.styles.LineStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 
-public class JeoVectorLayer extends JtsLayer {
+/**
+ * Draws the features of a VectorDataset with a CartoCSS Style. The
+ * features are read once into the index of the layer.
+ */
+public class JeoVectorLayer extends JtsLayer<JeoVectorLayer.Item> {
 
 	public static final Logger log = LoggerFactory.getLogger(JeoVectorLayer.class);
 	static final boolean dbg = false;
 
+	/** Feature with the style Rule it matched */
+	protected static class Item {
+		public final Feature feature;
+		public final Rule rule;
+
+		Item(Feature feature, Rule rule) {
+			this.feature = feature;
+			this.rule = rule;
+		}
+	}
+
 	private final VectorDataset mDataset;
 	private final RuleList mRules;
 
-	protected double mDropPointDistance = 0.01;
+	private boolean mLoaded;
 
 	public JeoVectorLayer(Map map, VectorDataset data, Style style) {
 		super(map);
@@ -46,20 +63,21 @@ public class JeoVectorLayer extends JtsLayer {
 	}
 
 	@Override
-	protected void processFeatures(Task t, Envelope b) {
-		if (mDropPointDistance > 0) {
-			/* reduce lines points min distance */
-			mMinX = ((b.getMaxX() - b.getMinX()) / mMap.getWidth());
-			mMinY = ((b.getMaxY() - b.getMinY()) / mMap.getHeight());
-			mMinX *= mDropPointDistance;
-			mMinY *= mDropPointDistance;
+	protected void processFeatures(Task t, BoundingBox b) {
+		/* running on worker thread */
+		if (!mLoaded) {
+			mLoaded = true;
+			loadFeatures();
 		}
+		super.processFeatures(t, b);
+	}
 
+	/**
+	 * Add the features of the dataset which match a rule to the index.
+	 */
+	protected void loadFeatures() {
 		try {
-			Query q = new Query().bounds(b);
-			if (dbg)
-				log.debug("query {}", b);
-			for (Feature f : mDataset.cursor(q)) {
+			for (Feature f : mDataset.cursor(new Query())) {
 				if (dbg)
 					log.debug("feature {}", f);
 
@@ -72,33 +90,25 @@ public class JeoVectorLayer extends JtsLayer {
 					continue;
 
 				Geometry g = f.geometry();
-				if (g == null)
+				if (g == null || g.isEmpty())
+					continue;
+
+				GeometryType type = typeOf(g);
+				if (type == GeometryType.NONE)
 					continue;
 
-				switch (Geom.Type.from(g)) {
-					case POINT:
-						addPoint(t, f, r, g);
-						break;
-					case MULTIPOINT:
-						for (int i = 0, n = g.getNumGeometries(); i < n; i++)
-							addPoint(t, f, r, g.getGeometryN(i));
-						break;
-					case LINESTRING:
-						addLine(t, f, r, g);
-						break;
-					case MULTILINESTRING:
-						for (int i = 0, n = g.getNumGeometries(); i < n; i++)
-							addLine(t, f, r, g.getGeometryN(i));
-						break;
-					case POLYGON:
-						addPolygon(t, f, r, g);
-						break;
-					case MULTIPOLYGON:
-						for (int i = 0, n = g.getNumGeometries(); i < n; i++)
-							addPolygon(t, f, r, g.getGeometryN(i));
-						break;
-					default:
-						break;
+				Item item = new Item(f, r);
+
+				if (type != GeometryType.LINE) {
+					add(item, g);
+					continue;
+				}
+				/* add the parts of (multi-) lines separately,
+				 * closed parts are drawn as polygons */
+				for (int i = 0; i < g.getNumGeometries(); i++) {
+					LineString line = (LineString) g.getGeometryN(i);
+					if (!line.isEmpty())
+						add(item, toPolygon(line));
 				}
 			}
 		} catch (IOException e) {
@@ -106,13 +116,35 @@ public class JeoVectorLayer extends JtsLayer {
 		}
 	}
 
-	protected void addLine(Task t, Feature f, Rule rule, Geometry g) {
+	/**
+	 * @return a polygon for closed lines, otherwise 'line'.
+	 */
+	private static Geometry toPolygon(LineString line) {
+		if (!line.isClosed() || line.getNumPoints() <= 3)
+			return line;
 
-		if (((LineString) g).isClosed()) {
-			addPolygon(t, f, rule, g);
-			return;
+		GeometryFactory gf = line.getFactory();
+		return gf.createPolygon(gf.createLinearRing(line.getCoordinates()), null);
+	}
+
+	@Override
+	protected void addFeature(Task t, Item item, GeometryBuffer g) {
+		switch (g.type) {
+			case POINT:
+				addPoint(t, item.feature, item.rule, g);
+				break;
+			case LINE:
+				addLine(t, item.feature, item.rule, g);
+				break;
+			case POLY:
+				addPolygon(t, item.feature, item.rule, g);
+				break;
+			default:
+				break;
 		}
+	}
 
+	protected void addLine(Task t, Feature f, Rule rule, GeometryBuffer g) {
 		LineLayer ll = t.layers.getLineLayer(2);
 		if (ll.line == null) {
 			RGB color = rule.color(f, CartoCSS.LINE_COLOR, RGB.black);
@@ -121,10 +153,10 @@ public class JeoVectorLayer extends JtsLayer {
 			ll.setDropDistance(0.5f);
 		}
 
-		addLine(t, g, ll);
+		ll.addLine(g);
 	}
 
-	protected void addPolygon(Task t, Feature f, Rule rule, Geometry g) {
+	protected void addPolygon(Task t, Feature f, Rule rule, GeometryBuffer g) {
 
 		LineLayer ll = t.layers.getLineLayer(1);
 
@@ -141,10 +173,11 @@ public class JeoVectorLayer extends JtsLayer {
 			mesh.area = new AreaStyle(color);
 		}
 
-		addPolygon(t, g, mesh, ll);
+		ll.addLine(g);
+		mesh.addMesh(g);
 	}
 
-	protected void addPoint(Task t, Feature f, Rule rule, Geometry g) {
+	protected void addPoint(Task t, Feature f, Rule rule, GeometryBuffer g) {
 
 	}
 }
@@ -1,23 +1,26 @@
 package org.oscim.layers;
 
-import org.jeo.geom.CoordinatePath;
 import org.oscim.core.BoundingBox;
-import org.oscim.core.GeometryBuffer;
-import org.oscim.core.MapPosition;
+import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MercatorProjection;
-import org.oscim.core.Tile;
 import org.oscim.layers.vector.AbstractVectorLayer;
+import org.oscim.layers.vector.FeatureIndex.Feature;
 import org.oscim.map.Map;
-import org.oscim.renderer.elements.LineLayer;
-import org.oscim.renderer.elements.MeshLayer;
-import org.oscim.utils.geom.SimplifyDP;
-import org.oscim.utils.geom.SimplifyVW;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-
-public abstract class JtsLayer extends AbstractVectorLayer<Geometry> {
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Lineal;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.geom.Puntal;
+
+/**
+ * Vector layer for JTS geometries. Geometries are added to the index of
+ * AbstractVectorLayer with add(), subclasses assign the clipped and
+ * simplified geometries to layers in addFeature().
+ */
+public abstract class JtsLayer<T> extends AbstractVectorLayer<T> {
 
 	public JtsLayer(Map map) {
 		super(map);
@@ -25,78 +28,101 @@ public abstract class JtsLayer extends AbstractVectorLayer<Geometry> {
 
 	@Override
 	protected void processFeatures(Task t, BoundingBox bbox) {
-		processFeatures(t, new Envelope(bbox.getMinLongitude(), bbox.getMaxLongitude(),
-		                                bbox.getMinLatitude(), bbox.getMaxLatitude()));
+		processIndex(t, bbox);
+	}
 
+	/**
+	 * @return POINT, LINE or POLY for (multi-) points, lines and polygons,
+	 *         NONE for other geometries.
+	 */
+	protected static GeometryType typeOf(Geometry g) {
+		if (g instanceof Puntal)
+			return GeometryType.POINT;
+		if (g instanceof Lineal)
+			return GeometryType.LINE;
+		if (g instanceof Polygonal)
+			return GeometryType.POLY;
+
+		return GeometryType.NONE;
 	}
 
-	protected abstract void processFeatures(Task t, Envelope e);
-
-	protected int transformPath(MapPosition pos, GeometryBuffer g, CoordinatePath path) {
-
-		double scale = pos.scale * Tile.SIZE / UNSCALE_COORD;
-		int cnt = 0;
-		O: while (path.hasNext()) {
-			Coordinate c = path.next();
-			float x = (float) ((MercatorProjection.longitudeToX(c.x) - pos.x) * scale);
-			float y = (float) ((MercatorProjection.latitudeToY(c.y) - pos.y) * scale);
-
-			switch (path.getStep()) {
-				case MOVE_TO:
-					if (g.isPoly())
-						g.startPolygon();
-					else if (g.isLine())
-						g.startLine();
-
-					cnt++;
-					g.addPoint(x, y);
-					break;
-				case LINE_TO:
-					cnt++;
-					g.addPoint(x, y);
-					break;
-				case CLOSE:
-					//g.addPoint(x, y);
-					//if (g.type == GeometryType.POLY)
-					break;
-				case STOP:
-					break O;
+	/**
+	 * Add a geometry with WGS84 coordinates to the index, call update()
+	 * when done.
+	 *
+	 * @return the added feature, to be passed to remove()
+	 */
+	public Feature<T> add(T item, Geometry g) {
+		GeometryType type = typeOf(g);
+		if (type == GeometryType.NONE)
+			throw new IllegalArgumentException("unsupported geometry " + g.getGeometryType());
+
+		int numGeoms = g.getNumGeometries();
+
+		/* number of coordinates and index entries. rings are added
+		 * without the closing point, polygons separated by 0 */
+		int numPoints = 0;
+		int numIndex = 0;
+		for (int i = 0; i < numGeoms; i++) {
+			Geometry part = g.getGeometryN(i);
+			if (part.isEmpty())
+				continue;
+
+			if (type == GeometryType.POLY) {
+				Polygon poly = (Polygon) part;
+				int rings = 1 + poly.getNumInteriorRing();
+				numPoints += part.getNumPoints() - rings;
+				numIndex += rings + 1;
+			} else {
+				numPoints += part.getNumPoints();
+				numIndex++;
 			}
 		}
-		return cnt;
-	}
-
-	SimplifyDP mSimpDP = new SimplifyDP();
-	SimplifyVW mSimpVW = new SimplifyVW();
-
-	protected void addPolygon(Task t, Geometry g, MeshLayer ml, LineLayer ll) {
-		mGeom.clear();
-		mGeom.startPolygon();
-
-		CoordinatePath p = CoordinatePath.create(g);
-		if (mMinX > 0 || mMinY > 0)
-			p.generalize(mMinX, mMinY);
-
-		if (transformPath(t.position, mGeom, p) < 3)
-			return;
 
-		if (!mClipper.clip(mGeom))
-			return;
-
-		mSimpVW.simplify(mGeom, 0.1f);
-		mSimpDP.simplify(mGeom, 0.5f);
+		double[] points = new double[numPoints * 2];
+		short[] index = new short[numIndex];
+		int pos = 0;
+		int idx = 0;
+
+		for (int i = 0; i < numGeoms; i++) {
+			Geometry part = g.getGeometryN(i);
+			if (part.isEmpty())
+				continue;
+
+			if (type == GeometryType.POINT) {
+				pos = project(part.getCoordinates(), part.getNumPoints(), points, pos);
+				index[0] = (short) pos;
+				idx = 1;
+			} else if (type == GeometryType.LINE) {
+				int start = pos;
+				pos = project(part.getCoordinates(), part.getNumPoints(), points, pos);
+				index[idx++] = (short) (pos - start);
+			} else {
+				Polygon poly = (Polygon) part;
+				if (idx > 0)
+					index[idx++] = 0;
+
+				for (int r = -1; r < poly.getNumInteriorRing(); r++) {
+					LineString ring = (r < 0) ? poly.getExteriorRing()
+					        : poly.getInteriorRingN(r);
+
+					int start = pos;
+					pos = project(ring.getCoordinates(), ring.getNumPoints() - 1, points, pos);
+					index[idx++] = (short) (pos - start);
+				}
+			}
+		}
+		if (idx < index.length)
+			index[idx] = -1;
 
-		ll.addLine(mGeom);
-		ml.addMesh(mGeom);
+		return add(item, type, points, index);
 	}
 
-	protected void addLine(Task t, Geometry g, LineLayer ll) {
-		mGeom.clear();
-		mGeom.startLine();
-
-		CoordinatePath p = CoordinatePath.create(g);
-		transformPath(t.position, mGeom, p);
-
-		ll.addLine(mGeom);
+	private static int project(Coordinate[] c, int length, double[] points, int pos) {
+		for (int i = 0; i < length; i++) {
+			points[pos++] = MercatorProjection.longitudeToX(c[i].x);
+			points[pos++] = MercatorProjection.latitudeToY(c[i].y);
+		}
+		return pos;
 	}
 }
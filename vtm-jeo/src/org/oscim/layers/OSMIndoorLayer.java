@@ -9,6 +9,8 @@ import org.jeo.map.RGB;
 import org.jeo.map.Rule;
 import org.jeo.map.Style;
 import org.oscim.backend.canvas.Color;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeometryBuffer;
 import org.oscim.jeo.JeoUtils;
 import org.oscim.map.Map;
 import org.oscim.renderer.elements.LineLayer;
@@ -20,10 +22,6 @@ import org.oscim.theme.styles.LineStyle;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.theme.styles.TextStyle.TextBuilder;
 
-import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.LineString;
-
 public class OSMIndoorLayer extends JeoVectorLayer {
 
 	protected TextLayer mTextLayer;
@@ -39,7 +37,7 @@ public class OSMIndoorLayer extends JeoVectorLayer {
 	public boolean[] activeLevels = new boolean[10];
 
 	@Override
-	protected void processFeatures(Task t, Envelope b) {
+	protected void processFeatures(Task t, BoundingBox b) {
 		mTextLayer = t.layers.addTextLayer(new TextLayer());
 
 		super.processFeatures(t, b);
@@ -49,13 +47,8 @@ public class OSMIndoorLayer extends JeoVectorLayer {
 		mTextLayer.clearLabels();
 	}
 
-	protected void addLine(Task t, Feature f, Rule rule, Geometry g) {
-
-		if (((LineString) g).isClosed()) {
-			addPolygon(t, f, rule, g);
-			return;
-		}
-
+	@Override
+	protected void addLine(Task t, Feature f, Rule rule, GeometryBuffer g) {
 		int level = getLevel(f);
 
 		LineLayer ll = t.layers.getLineLayer(level * 3 + 2);
@@ -67,10 +60,11 @@ public class OSMIndoorLayer extends JeoVectorLayer {
 			ll.setDropDistance(0);
 		}
 
-		addLine(t, g, ll);
+		ll.addLine(g);
 	}
 
-	protected void addPolygon(Task t, Feature f, Rule rule, Geometry g) {
+	@Override
+	protected void addPolygon(Task t, Feature f, Rule rule, GeometryBuffer g) {
 		int level = getLevel(f);
 
 		LineLayer ll = t.layers.getLineLayer(level * 3 + 1);
@@ -100,17 +94,18 @@ public class OSMIndoorLayer extends JeoVectorLayer {
 			mesh.heightOffset = level * 4f;
 		}
 
-		addPolygon(t, g, mesh, ll);
+		ll.addLine(g);
+		mesh.addMesh(g);
 
 		if (active) {
 			Object o = f.get("name");
 			if (o instanceof String) {
 				float x = 0;
 				float y = 0;
-				int n = mGeom.index[0];
+				int n = g.index[0];
 				for (int i = 0; i < n;) {
-					x += mGeom.points[i++];
-					y += mGeom.points[i++];
+					x += g.points[i++];
+					y += g.points[i++];
 				}
 
 				TextItem ti = TextItem.pool.get();
@@ -122,7 +117,7 @@ public class OSMIndoorLayer extends JeoVectorLayer {
 	}
 
 	@Override
-	protected void addPoint(Task t, Feature f, Rule rule, Geometry g) {
+	protected void addPoint(Task t, Feature f, Rule rule, GeometryBuffer g) {
 
 	}
 
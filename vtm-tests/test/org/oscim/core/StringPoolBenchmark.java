@@ -0,0 +1,56 @@
+package org.oscim.core;
+
+/**
+ * Compare StringPool with String.intern() for a working set of tag
+ * strings, as decoded from tiles (UTF-8 bytes) and as passed to the
+ * Tag constructor (String).
+ */
+public class StringPoolBenchmark {
+
+	static final int STRINGS = 2000;
+	static final int ITERATIONS = 2000;
+
+	static volatile Object sink;
+
+	public static void main(String[] args) throws Exception {
+		String[] strings = new String[STRINGS];
+		byte[][] bytes = new byte[STRINGS][];
+		for (int i = 0; i < STRINGS; i++) {
+			strings[i] = (i % 2 == 0 ? "key:" : "value_") + i;
+			bytes[i] = strings[i].getBytes("UTF-8");
+		}
+
+		for (int round = 0; round < 3; round++) {
+			long t = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++)
+				for (byte[] b : bytes)
+					sink = new String(b, 0, b.length, "UTF-8").intern();
+			long decodeIntern = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++)
+				for (byte[] b : bytes)
+					sink = StringPool.intern(b, 0, b.length);
+			long poolBytes = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++)
+				for (String s : strings)
+					sink = s.intern();
+			long intern = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++)
+				for (String s : strings)
+					sink = StringPool.intern(s);
+			long poolString = System.nanoTime() - t;
+
+			double ops = (double) ITERATIONS * STRINGS;
+			System.out.println(String.format(
+			    "bytes: %.1fns new String().intern() vs %.1fns pool, "
+			            + "string: %.1fns intern() vs %.1fns pool",
+			    decodeIntern / ops, poolBytes / ops,
+			    intern / ops, poolString / ops));
+		}
+	}
+}
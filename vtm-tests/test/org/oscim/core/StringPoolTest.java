@@ -0,0 +1,118 @@
+package org.oscim.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+
+	static final String[] STRINGS = {
+	        "", "highway", "name:de", "wert ä", "Straße", "東京都",
+	        "🗺 map", "üࠀ￿" };
+
+	static byte[] utf8(String s) throws Exception {
+		return s.getBytes("UTF-8");
+	}
+
+	@Test
+	public void shouldHashLikeString() throws Exception {
+		for (String s : STRINGS) {
+			byte[] b = utf8(s);
+			assertEquals(s, s.hashCode(), StringPool.hash(b, 0, b.length));
+		}
+	}
+
+	@Test
+	public void shouldReturnInternedStrings() throws Exception {
+		for (String s : STRINGS) {
+			String copy = new String(s.toCharArray());
+			assertSame(s.intern(), StringPool.intern(copy));
+
+			byte[] b = utf8(s);
+			assertSame(s.intern(), StringPool.intern(b, 0, b.length));
+		}
+		assertSame(Tag.KEY_NAME, new Tag(new String("name"), "x").key);
+	}
+
+	@Test
+	public void shouldDecodeByteRanges() throws Exception {
+		byte[] b = utf8("xxhighwayxx");
+		String s = StringPool.intern(b, 2, 7);
+		assertSame("highway", s);
+
+		/* same bytes at another offset */
+		b = utf8("highway:foo");
+		assertSame(s, StringPool.intern(b, 0, 7));
+		assertSame("highway:foo", StringPool.intern(b, 0, b.length));
+	}
+
+	@Test
+	public void shouldDecodeCharRanges() throws Exception {
+		char[] c = "xxwaterwayxx".toCharArray();
+		String s = StringPool.intern(c, 2, 8);
+		assertSame("waterway", s);
+		assertSame(s, StringPool.intern("waterway".toCharArray(), 0, 8));
+
+		/* same entry as from bytes */
+		assertSame(s, StringPool.intern(utf8("waterway"), 0, 8));
+
+		c = "Straße".toCharArray();
+		assertSame("Straße", StringPool.intern(c, 0, c.length));
+		assertSame("Straße", StringPool.intern(utf8("Straße"), 0, utf8("Straße").length));
+	}
+
+	@Test
+	public void shouldHandleMalformedInput() throws Exception {
+		byte[] b = { 'a', (byte) 0xc3, 'b', (byte) 0xe2, (byte) 0x82 };
+		String expected = new String(b, "UTF-8").intern();
+		assertSame(expected, StringPool.intern(b, 0, b.length));
+		assertSame(expected, StringPool.intern(b, 0, b.length));
+
+		/* truncated sequence at end of range */
+		assertSame(new String(b, 0, 2, "UTF-8").intern(), StringPool.intern(b, 0, 2));
+	}
+
+	@Test
+	public void shouldStayConsistentWhenEntriesAreReplaced() throws Exception {
+		/* more strings than slots */
+		for (int i = 0; i < 100000; i++) {
+			byte[] b = utf8("k" + i);
+			assertSame(("k" + i).intern(), StringPool.intern(b, 0, b.length));
+		}
+		for (int i = 0; i < 100000; i += 1000)
+			assertSame(("k" + i).intern(), StringPool.intern("k" + i));
+	}
+
+	@Test
+	public void shouldBeThreadSafe() throws Exception {
+		final AtomicBoolean failed = new AtomicBoolean();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 50000; i++) {
+							String s = "v" + ((i * 31 + seed) % 20000);
+							byte[] b = utf8(s);
+							if (StringPool.intern(b, 0, b.length) != s.intern())
+								failed.set(true);
+						}
+					} catch (Exception e) {
+						failed.set(true);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertTrue(!failed.get());
+	}
+}
@@ -0,0 +1,91 @@
+package org.oscim.layers.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.layers.tile.MapTile.State.NONE;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JobQueueTest {
+
+	static MapTile tile(int x, float distance) {
+		MapTile t = new MapTile(null, x, 0, 10);
+		t.distance = distance;
+		return t;
+	}
+
+	@Test
+	public void shouldPollByDistance() {
+		Random r = new Random(1);
+		MapTile[] tiles = new MapTile[100];
+		for (int i = 0; i < tiles.length; i++)
+			tiles[i] = tile(i, r.nextFloat());
+
+		JobQueue q = new JobQueue();
+		q.setJobs(tiles);
+		assertEquals(100, q.size());
+
+		float prev = -1;
+		MapTile t;
+		int cnt = 0;
+		while ((t = q.poll()) != null) {
+			assertTrue(t.distance >= prev);
+			assertEquals(LOADING, t.state);
+			prev = t.distance;
+			cnt++;
+		}
+		assertEquals(100, cnt);
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void shouldKeepQueuedJobs() {
+		MapTile a = tile(0, 3);
+		MapTile b = tile(1, 2);
+		MapTile c = tile(2, 1);
+
+		JobQueue q = new JobQueue();
+		q.setJobs(new MapTile[] { a, b, c });
+
+		/* 'c' is being loaded */
+		assertSame(c, q.poll());
+
+		/* 'a' moved closer, 'b' is no longer needed */
+		a.distance = 0;
+		MapTile d = tile(3, 1);
+		q.setJobs(new MapTile[] { a, c, d, d, a });
+
+		assertEquals(2, q.size());
+		assertEquals(NONE, b.state);
+		assertEquals(LOADING, c.state);
+
+		assertSame(a, q.poll());
+		assertSame(d, q.poll());
+		assertNull(q.poll());
+	}
+
+	@Test
+	public void shouldSkipCanceledJobs() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+
+		JobQueue q = new JobQueue();
+		q.setJobs(new MapTile[] { a, b });
+
+		/* removed from cache */
+		a.state = CANCEL;
+
+		assertSame(b, q.poll());
+		assertNull(q.poll());
+
+		q.setJobs(new MapTile[] { b });
+		q.clear();
+		assertTrue(q.isEmpty());
+	}
+}
@@ -0,0 +1,253 @@
+package org.oscim.layers.tile;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.map.Map;
+import org.oscim.theme.ThemeMatchBenchmark;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+
+/**
+ * Replays a fixed list of tiles through the VectorTileLoaders of a
+ * VectorTileLayer and reports the time spent in each loading stage,
+ * collected by a {@link TileManager.LoadListener}.
+ *
+ * Usage: TileLoadBenchmark [tiles.txt] [map file] [theme.xml] [threads]
+ *
+ * The tile list contains one tile per line: 'zoom x y'. Without tile list
+ * (or '-') the tiles around Berlin from zoom 8 to 16 are used, without
+ * map file tiles with random elements are generated.
+ */
+public class TileLoadBenchmark {
+
+	static final int ROUNDS = 10;
+	static final int WARMUP = 3;
+
+	static final String DEFAULT_THEME =
+	        "../vtm-themes/resources/assets/styles/default.xml";
+
+	static final String[] TAGS = {
+	        "highway=residential", "highway=primary", "highway=footway",
+	        "building=yes", "landuse=residential", "natural=water",
+	        "waterway=river", "railway=rail", "amenity=cafe"
+	};
+
+	/** generates the same random elements for each query of a tile */
+	static class RandomTileSource extends TileSource {
+		@Override
+		public ITileDataSource getDataSource() {
+			return new ITileDataSource() {
+				final MapElement e = new MapElement();
+
+				@Override
+				public void query(MapTile tile, ITileDataSink sink) {
+					Random r = new Random(tile.hashCode());
+					for (int i = 0; i < 500; i++) {
+						String[] tag = TAGS[r.nextInt(TAGS.length)].split("=");
+						e.clear();
+						e.tags.clear();
+						e.tags.add(new Tag(tag[0], tag[1]));
+
+						float x = r.nextFloat() * Tile.SIZE;
+						float y = r.nextFloat() * Tile.SIZE;
+						if (tag[0].equals("amenity")) {
+							e.startPoints();
+							e.addPoint(x, y);
+						} else if (tag[0].equals("highway")
+						        || tag[0].equals("waterway")
+						        || tag[0].equals("railway")) {
+							e.startLine();
+							for (int p = 0; p < 20; p++) {
+								e.addPoint(x, y);
+								x += r.nextFloat() * 40 - 20;
+								y += r.nextFloat() * 40 - 20;
+							}
+						} else {
+							float s = 4 + r.nextFloat() * 40;
+							e.startPolygon();
+							e.addPoint(x, y);
+							e.addPoint(x + s, y);
+							e.addPoint(x + s, y + s);
+							e.addPoint(x, y + s);
+						}
+						sink.process(e);
+					}
+					sink.completed(ITileDataSink.QueryResult.SUCCESS);
+				}
+
+				@Override
+				public void destroy() {
+				}
+			};
+		}
+
+		@Override
+		public OpenResult open() {
+			return OpenResult.SUCCESS;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static class Breakdown implements TileManager.LoadListener {
+		int tiles, failed, cacheHits;
+		long queue, fetch, decode, theme, build, load;
+		long elements, vertices;
+
+		@Override
+		public synchronized void onTileLoaded(TileLoadMetrics m) {
+			if (!m.success) {
+				failed++;
+				return;
+			}
+			tiles++;
+			if (m.cacheHit)
+				cacheHits++;
+
+			queue += m.queueNanos;
+			fetch += m.fetchNanos;
+			decode += m.decodeNanos;
+			theme += m.themeNanos;
+			build += m.buildNanos;
+			load += m.loadNanos;
+			elements += m.elements;
+			vertices += m.vertices;
+		}
+
+		synchronized int count() {
+			return tiles + failed;
+		}
+
+		synchronized void reset() {
+			tiles = failed = cacheHits = 0;
+			queue = fetch = decode = theme = build = load = 0;
+			elements = vertices = 0;
+		}
+
+		void print(String name, long nanos) {
+			System.out.println(name + "\t" + nanos / 1e6 / tiles + " ms\t"
+			        + Math.round(100.0 * nanos / load) + "%");
+		}
+
+		synchronized void print(long wallNanos) {
+			System.out.println("tiles: " + tiles + ", failed: " + failed
+			        + ", cache hits: " + cacheHits);
+			if (tiles == 0)
+				return;
+
+			System.out.println("tiles/s: " + tiles * 1e9 / wallNanos);
+			System.out.println("queue\t" + queue / 1e6 / tiles + " ms");
+			print("fetch", fetch);
+			print("decode", decode);
+			print("theme", theme);
+			print("build", build);
+			System.out.println("load\t" + load / 1e6 / tiles + " ms");
+			System.out.println("elements/tile: " + elements / tiles
+			        + ", vertices/tile: " + vertices / tiles);
+		}
+	}
+
+	static ArrayList<int[]> readTiles(String file) throws Exception {
+		ArrayList<int[]> tiles = new ArrayList<int[]>();
+		BufferedReader r = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = r.readLine()) != null) {
+			String[] t = line.trim().split("\\s+");
+			if (t.length != 3)
+				continue;
+			tiles.add(new int[] {
+			        Integer.parseInt(t[0]),
+			        Integer.parseInt(t[1]),
+			        Integer.parseInt(t[2]) });
+		}
+		r.close();
+		return tiles;
+	}
+
+	static ArrayList<int[]> defaultTiles() {
+		double x = MercatorProjection.longitudeToX(13.4);
+		double y = MercatorProjection.latitudeToY(52.5);
+		ArrayList<int[]> tiles = new ArrayList<int[]>();
+		for (int z = 8; z <= 16; z++) {
+			int tx = (int) (x * (1 << z));
+			int ty = (int) (y * (1 << z));
+			for (int dy = -2; dy <= 2; dy++)
+				for (int dx = -2; dx <= 2; dx++)
+					tiles.add(new int[] { z, tx + dx, ty + dy });
+		}
+		return tiles;
+	}
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<int[]> tileList = (args.length > 0 && !args[0].equals("-"))
+		        ? readTiles(args[0]) : defaultTiles();
+
+		TileSource tileSource;
+		if (args.length > 1 && !args[1].equals("-")) {
+			MapFileTileSource mapFile = new MapFileTileSource();
+			mapFile.setMapFile(args[1]);
+			tileSource = mapFile;
+		} else {
+			tileSource = new RandomTileSource();
+		}
+
+		String theme = args.length > 2 ? args[2] : DEFAULT_THEME;
+		int threads = args.length > 3 ? Integer.parseInt(args[3])
+		        : Runtime.getRuntime().availableProcessors();
+
+		/* the renderer is not used, it needs GL */
+		Map map = mock(Map.class);
+		VectorTileLayer layer = new VectorTileLayer(map, new TileManager(map, 0, 20, 100),
+		                                            mock(VectorTileRenderer.class));
+		layer.setTileSource(tileSource);
+		layer.setRenderTheme(ThemeMatchBenchmark.loadTheme(theme));
+
+		TileLoaderPool pool = new TileLoaderPool(threads, 1);
+		layer.setLoaderPool(pool);
+
+		TileManager tm = layer.getManager();
+		Breakdown breakdown = new Breakdown();
+		tm.addLoadListener(breakdown);
+
+		System.out.println(tileList.size() + " tiles, " + threads + " threads");
+
+		long start = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			if (round == WARMUP) {
+				breakdown.reset();
+				start = System.nanoTime();
+			}
+
+			MapTile[] tiles = new MapTile[tileList.size()];
+			for (int i = 0; i < tiles.length; i++) {
+				int[] t = tileList.get(i);
+				tiles[i] = new MapTile(null, t[1], t[2], t[0]);
+				tiles[i].distance = i;
+			}
+
+			int expected = breakdown.count() + tiles.length;
+			tm.jobQueue.setJobs(tiles);
+			pool.schedule();
+			while (breakdown.count() < expected)
+				Thread.sleep(1);
+		}
+		breakdown.print(System.nanoTime() - start);
+
+		pool.shutdown();
+		tileSource.close();
+	}
+}
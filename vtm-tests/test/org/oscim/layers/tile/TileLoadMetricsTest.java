@@ -0,0 +1,124 @@
+package org.oscim.layers.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
+import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.oscim.core.MapElement;
+import org.oscim.map.Map;
+
+public class TileLoadMetricsTest {
+
+	static class TestLoader extends TileLoader {
+		TileLoadMetrics seen;
+
+		TestLoader(TileManager tileManager) {
+			super(tileManager);
+		}
+
+		@Override
+		protected boolean loadTile(MapTile tile) {
+			seen = TileLoadMetrics.get(this);
+			if (seen != null) {
+				seen.beginFetch();
+				sleep(2);
+				seen.endFetch();
+			}
+			sleep(2);
+			completed(tile.tileX == 0 ? SUCCESS : FAILED);
+			return true;
+		}
+
+		@Override
+		public void process(MapElement element) {
+		}
+
+		@Override
+		public void cleanup() {
+		}
+	}
+
+	static class Recorder implements TileManager.LoadListener {
+		final List<String> loaded = new ArrayList<String>();
+		long fetch, load, queue;
+
+		@Override
+		public void onTileLoaded(TileLoadMetrics m) {
+			loaded.add(m.tile.tileX + " " + m.success);
+			fetch = m.fetchNanos;
+			load = m.loadNanos;
+			queue = m.queueNanos;
+
+			assertEquals(m.loadNanos, m.fetchNanos + m.decodeNanos
+			        + m.themeNanos + m.buildNanos);
+		}
+	}
+
+	static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	static MapTile[] queue(TileManager tm, int num) {
+		MapTile[] tiles = new MapTile[num];
+		for (int i = 0; i < num; i++)
+			tiles[i] = new MapTile(null, i, 0, 10);
+
+		tm.jobQueue.setJobs(tiles);
+		for (int i = 0; i < num; i++)
+			tiles[i] = tm.jobQueue.poll();
+
+		return tiles;
+	}
+
+	@Test
+	public void shouldReportMetrics() {
+		TileManager tm = new TileManager(mock(Map.class), 0, 20, 100);
+		TestLoader loader = new TestLoader(tm);
+		Recorder r = new Recorder();
+		tm.addLoadListener(r);
+
+		MapTile[] tiles = queue(tm, 2);
+		sleep(2);
+		loader.run(tiles, 2);
+
+		assertEquals(2, r.loaded.size());
+		assertEquals("0 true", r.loaded.get(0));
+		assertEquals("1 false", r.loaded.get(1));
+
+		assertTrue(r.fetch >= 2000000);
+		assertTrue(r.load >= r.fetch + 2000000);
+		assertTrue(r.queue >= 2000000);
+	}
+
+	@Test
+	public void shouldNotCollectWithoutListener() {
+		TileManager tm = new TileManager(mock(Map.class), 0, 20, 100);
+		TestLoader loader = new TestLoader(tm);
+		Recorder r = new Recorder();
+		tm.addLoadListener(r);
+		tm.removeLoadListener(r);
+
+		loader.run(queue(tm, 1), 1);
+		assertNull(loader.seen);
+		assertTrue(r.loaded.isEmpty());
+		assertFalse(tm.hasLoadListener());
+
+		tm.addLoadListener(r);
+		loader.run(queue(tm, 1), 1);
+		assertNotNull(loader.seen);
+		assertNull(loader.mMetrics);
+		assertEquals(1, r.loaded.size());
+	}
+}
@@ -0,0 +1,162 @@
+package org.oscim.layers.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.oscim.map.Map;
+
+public class TileLoaderPoolTest {
+
+	static class TestLayer extends TileLayer {
+		final String name;
+		final List<String> loaded;
+		boolean blocking;
+
+		TestLayer(Map map, TileLoaderPool pool, String name, List<String> loaded) {
+			super(map, new TileManager(map, 0, 20, 100), new TileRenderer() {
+			});
+			this.name = name;
+			this.loaded = loaded;
+			setLoaderPool(pool);
+			initLoader(2);
+		}
+
+		@Override
+		protected TileLoader createLoader() {
+			return new TileLoader(mTileManager) {
+				@Override
+				protected boolean loadTile(MapTile tile) {
+					loaded.add(name + " " + Thread.currentThread().getName());
+					completed(SUCCESS);
+					return true;
+				}
+
+				@Override
+				protected boolean isBlocking() {
+					return blocking;
+				}
+
+				@Override
+				public void cleanup() {
+				}
+			};
+		}
+
+		void addJobs(int num) {
+			MapTile[] tiles = new MapTile[num];
+			for (int i = 0; i < num; i++) {
+				tiles[i] = new MapTile(null, i, 0, 10);
+				tiles[i].distance = i;
+			}
+			mTileManager.jobQueue.setJobs(tiles);
+		}
+	}
+
+	static void await(List<String> loaded, int completed) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			if (loaded.size() >= completed)
+				return;
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void shouldAlternateLayers() throws Exception {
+		TileLoaderPool pool = new TileLoaderPool(1);
+		Map map = mock(Map.class);
+		List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+
+		TestLayer a = new TestLayer(map, pool, "a", loaded);
+		TestLayer b = new TestLayer(map, pool, "b", loaded);
+		a.addJobs(4);
+		b.addJobs(4);
+
+		pool.schedule();
+		await(loaded, 8);
+
+		assertEquals(0, a.mTileManager.jobQueue.size());
+		assertEquals(0, b.mTileManager.jobQueue.size());
+
+		assertEquals(8, loaded.size());
+		for (int i = 0; i < 8; i++)
+			assertTrue(loaded.get(i).startsWith(i % 2 == 0 ? "a " : "b "));
+
+		pool.shutdown();
+	}
+
+	@Test
+	public void shouldRunBlockingLoadersOnIoThreads() throws Exception {
+		TileLoaderPool pool = new TileLoaderPool(1, 1);
+		Map map = mock(Map.class);
+		List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+
+		TestLayer a = new TestLayer(map, pool, "a", loaded);
+		TestLayer b = new TestLayer(map, pool, "b", loaded);
+		b.blocking = true;
+		a.addJobs(2);
+		b.addJobs(2);
+
+		pool.schedule();
+		await(loaded, 4);
+
+		assertEquals(4, loaded.size());
+		for (String l : loaded) {
+			if (l.startsWith("a "))
+				assertTrue(l.contains("-cpu-"));
+			else
+				assertTrue(l.contains("-io-"));
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void shouldCountJobs() throws Exception {
+		TileLoaderPool pool = new TileLoaderPool(1, 1);
+		Map map = mock(Map.class);
+		List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+
+		TestLayer a = new TestLayer(map, pool, "a", loaded);
+		a.pauseLoaders(true);
+		a.addJobs(4);
+		assertEquals(4, pool.getStats(null).queued);
+
+		a.resumeLoaders();
+		for (int i = 0; i < 500 && pool.getStats(null).completed < 4; i++)
+			Thread.sleep(10);
+
+		TileLoaderPool.Stats stats = pool.getStats(null);
+		assertEquals(4, stats.completed);
+		assertEquals(0, stats.queued);
+		assertEquals(0, stats.waiting);
+		assertEquals(0, stats.loading);
+		pool.shutdown();
+	}
+
+	@Test
+	public void shouldNotStartPausedLoaders() throws Exception {
+		TileLoaderPool pool = new TileLoaderPool(1);
+		Map map = mock(Map.class);
+		List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+
+		TestLayer a = new TestLayer(map, pool, "a", loaded);
+		a.pauseLoaders(true);
+		a.addJobs(2);
+
+		pool.schedule();
+		Thread.sleep(50);
+		assertEquals(0, loaded.size());
+		assertEquals(2, a.mTileManager.jobQueue.size());
+
+		a.resumeLoaders();
+		await(loaded, 2);
+		assertEquals(2, loaded.size());
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,171 @@
+package org.oscim.layers.tile.vector.labeling;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.theme.styles.TextStyle.TextBuilder;
+import org.mockito.Mockito;
+
+/**
+ * Replays a label set and compares the time per relabel frame of the
+ * linear overlap test with the LabelGrid lookup.
+ *
+ * Usage: LabelGridBenchmark [labels.txt] [frames]
+ *
+ * The recorded label set contains one label per line:
+ * 'w x y x1 y1 width' for way labels or 'c x y width' for captions,
+ * in screen coordinates relative to the map center. Without file a
+ * dense set of labels for a z17 city view is generated.
+ */
+public class LabelGridBenchmark {
+
+	final static int EXTENTS = 1200;
+
+	static TextStyle wayText;
+	static TextStyle captionText;
+
+	static ArrayList<float[]> generate(int num) {
+		Random r = new Random(17);
+		ArrayList<float[]> labels = new ArrayList<float[]>();
+		for (int i = 0; i < num; i++) {
+			float x = (r.nextFloat() * 2 - 1) * EXTENTS;
+			float y = (r.nextFloat() * 2 - 1) * EXTENTS;
+			float width = 20 + r.nextFloat() * 120;
+			if (r.nextInt(3) == 0) {
+				labels.add(new float[] { 1, x, y, width });
+			} else {
+				double a = r.nextFloat() * Math.PI;
+				float dx = (float) Math.cos(a) * width;
+				float dy = (float) Math.sin(a) * width;
+				labels.add(new float[] { 0, x, y, x - dx, y - dy, width });
+			}
+		}
+		return labels;
+	}
+
+	static ArrayList<float[]> read(String file) throws IOException {
+		ArrayList<float[]> labels = new ArrayList<float[]>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] v = line.trim().split("\\s+");
+				if (v.length < 4)
+					continue;
+				float[] l = new float[v.length];
+				l[0] = v[0].equals("c") ? 1 : 0;
+				for (int i = 1; i < v.length; i++)
+					l[i] = Float.parseFloat(v[i]);
+				labels.add(l);
+			}
+		} finally {
+			in.close();
+		}
+		return labels;
+	}
+
+	static Label[] createLabels(ArrayList<float[]> recorded, float ox, float oy) {
+		Label[] labels = new Label[recorded.size()];
+		for (int i = 0; i < labels.length; i++) {
+			float[] v = recorded.get(i);
+			if (v[0] == 1) {
+				labels[i] = LabelGridTest.captionLabel(captionText,
+				                                       v[1] + ox, v[2] + oy, v[3]);
+			} else {
+				float x = v[1] + ox, y = v[2] + oy;
+				float angle = (float) Math.atan2(y - (v[4] + oy), x - (v[3] + ox));
+				labels[i] = LabelGridTest.wayLabel(wayText, x, y, angle, v[5]);
+			}
+		}
+		return labels;
+	}
+
+	/** first-fit placement like LabelPlacement, returns number of placed labels */
+	static int placeLinear(Label[] labels) {
+		ArrayList<Label> placed = new ArrayList<Label>();
+		O: for (Label l : labels) {
+			boolean way = !l.text.caption;
+			for (int i = 0, n = placed.size(); i < n; i++) {
+				Label o = placed.get(i);
+				if (way && !Label.bboxOverlaps(l, o, 100))
+					continue;
+				if (l.bbox.overlaps(o.bbox))
+					continue O;
+			}
+			placed.add(l);
+		}
+		return placed.size();
+	}
+
+	static int placeGrid(LabelGrid grid, Label[] labels) {
+		grid.reset(EXTENTS);
+		int cnt = 0;
+		O: for (Label l : labels) {
+			boolean way = !l.text.caption;
+			int n = grid.query(l, way ? 100 : 0);
+			for (int i = 0; i < n; i++) {
+				Label o = grid.results[i];
+				if (way && !Label.bboxOverlaps(l, o, 100))
+					continue;
+				if (l.bbox.overlaps(o.bbox)) {
+					grid.clearResults(n);
+					continue O;
+				}
+			}
+			grid.clearResults(n);
+			grid.add(l);
+			cnt++;
+		}
+		return cnt;
+	}
+
+	public static void main(String[] args) throws IOException {
+		CanvasAdapter.g = Mockito.mock(CanvasAdapter.class);
+		Mockito.when(CanvasAdapter.g.getPaint()).thenReturn(Mockito.mock(Paint.class));
+
+		wayText = new TextBuilder().build();
+		wayText.fontHeight = 12;
+		captionText = new TextBuilder().setCaption(true).build();
+		captionText.fontHeight = 14;
+
+		ArrayList<float[]> recorded = args.length > 0 ? read(args[0]) : generate(8000);
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		/* pan a bit each frame */
+		Label[][] replay = new Label[frames][];
+		for (int f = 0; f < frames; f++)
+			replay[f] = createLabels(recorded, f * 3, f * 2);
+
+		LabelGrid grid = new LabelGrid();
+
+		/* warm up */
+		for (int f = 0; f < frames; f++) {
+			placeLinear(replay[f]);
+			placeGrid(grid, replay[f]);
+		}
+
+		long linear = 0, indexed = 0;
+		for (int f = 0; f < frames; f++) {
+			long t = System.nanoTime();
+			int a = placeLinear(replay[f]);
+			linear += System.nanoTime() - t;
+
+			t = System.nanoTime();
+			int b = placeGrid(grid, replay[f]);
+			indexed += System.nanoTime() - t;
+
+			if (a != b)
+				System.out.println("frame " + f + " placed " + a + " / " + b);
+		}
+
+		System.out.println(recorded.size() + " labels, " + frames + " frames");
+		System.out.println("linear: " + (linear / frames / 1000) + "us/frame");
+		System.out.println("grid:   " + (indexed / frames / 1000) + "us/frame");
+	}
+}
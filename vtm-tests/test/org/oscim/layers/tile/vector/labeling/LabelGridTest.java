@@ -0,0 +1,181 @@
+package org.oscim.layers.tile.vector.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.theme.styles.TextStyle.TextBuilder;
+import org.oscim.utils.geom.OBB2D;
+
+public class LabelGridTest {
+	private TextStyle wayText;
+	private TextStyle captionText;
+
+	@Before
+	public void setUp() throws Exception {
+		CanvasAdapter.g = mock(CanvasAdapter.class);
+		when(CanvasAdapter.g.getPaint()).thenReturn(mock(Paint.class));
+
+		wayText = new TextBuilder().build();
+		wayText.fontHeight = 12;
+
+		captionText = new TextBuilder().setCaption(true).build();
+		captionText.fontHeight = 14;
+	}
+
+	static Label wayLabel(TextStyle text, float x, float y, float angle, float width) {
+		Label l = new Label();
+		l.text = text;
+		l.width = width;
+		l.x = x;
+		l.y = y;
+
+		float w = (float) Math.cos(angle) * width / 2;
+		float h = (float) Math.sin(angle) * width / 2;
+		l.x1 = x - w;
+		l.y1 = y - h;
+		l.x2 = x + w;
+		l.y2 = y + h;
+
+		l.bbox = new OBB2D(l.x, l.y, l.x1, l.y1, width + 3, text.fontHeight + 3);
+		return l;
+	}
+
+	static Label captionLabel(TextStyle text, float x, float y, float width) {
+		Label l = new Label();
+		l.text = text;
+		l.width = width;
+		l.x = x;
+		l.y = y;
+
+		l.bbox = new OBB2D();
+		l.bbox.setNormalized(x, y, 1, 0, width + 5, text.fontHeight + 5, 0);
+		return l;
+	}
+
+	Label randomLabel(Random r, int extents) {
+		float x = (r.nextFloat() * 2 - 1) * extents * 1.2f;
+		float y = (r.nextFloat() * 2 - 1) * extents * 1.2f;
+		float width = 10 + r.nextFloat() * 150;
+
+		if (r.nextInt(4) == 0)
+			return captionLabel(captionText, x, y, width);
+
+		return wayLabel(wayText, x, y, (float) (r.nextFloat() * Math.PI), width);
+	}
+
+	@Test
+	public void shouldFindAllOverlappingLabels() {
+		Random r = new Random(42);
+		int extents = 800;
+
+		LabelGrid grid = new LabelGrid();
+		grid.reset(extents);
+
+		ArrayList<Label> labels = new ArrayList<Label>();
+		for (int i = 0; i < 2000; i++) {
+			Label l = randomLabel(r, extents);
+			labels.add(l);
+			grid.add(l);
+		}
+
+		for (int i = 0; i < 500; i++) {
+			Label l = randomLabel(r, extents);
+			boolean way = !l.text.caption;
+
+			int cnt = grid.query(l, way ? 100 : 0);
+			HashSet<Label> found = new HashSet<Label>();
+			for (int j = 0; j < cnt; j++)
+				assertTrue(found.add(grid.results[j]));
+
+			for (Label o : labels) {
+				boolean overlaps = l.bbox.overlaps(o.bbox);
+				if (way)
+					overlaps = Label.bboxOverlaps(l, o, 100) && overlaps;
+
+				if (overlaps)
+					assertTrue(found.contains(o));
+			}
+			grid.clearResults(cnt);
+		}
+	}
+
+	@Test
+	public void shouldRemoveLabels() {
+		LabelGrid grid = new LabelGrid();
+		grid.reset(500);
+
+		Label a = wayLabel(wayText, 0, 0, 0, 200);
+		Label b = wayLabel(wayText, 10, 10, 0, 200);
+		grid.add(a);
+		grid.add(b);
+
+		Label q = wayLabel(wayText, 5, 5, 0, 50);
+		assertEquals(2, grid.query(q, 100));
+
+		grid.remove(a);
+		assertEquals(1, grid.query(q, 100));
+		assertTrue(grid.results[0] == b);
+
+		grid.clear();
+		assertEquals(0, grid.query(q, 100));
+	}
+
+	@Test
+	public void shouldReturnManyCandidatesInInsertionOrder() {
+		LabelGrid grid = new LabelGrid();
+		grid.reset(500);
+
+		/* spread over several cells */
+		ArrayList<Label> labels = new ArrayList<Label>();
+		for (int i = 0; i < 200; i++) {
+			Label l = captionLabel(captionText, (i * 37) % 200 - 100, (i * 53) % 200 - 100, 20);
+			labels.add(l);
+			grid.add(l);
+		}
+
+		Label q = captionLabel(captionText, 0, 0, 250);
+		int cnt = grid.query(q, 0);
+		assertTrue(cnt > 64);
+		assertTrue(grid.results.length >= cnt);
+
+		for (int i = 1; i < cnt; i++)
+			assertTrue(grid.results[i - 1].order < grid.results[i].order);
+
+		grid.clearResults(cnt);
+	}
+
+	static Label wayLabel(TextStyle text, String string, float x, float y, int active) {
+		Label l = wayLabel(text, x, y, 0, 40);
+		l.string = string;
+		l.active = active;
+		return l;
+	}
+
+	@Test
+	public void shouldCheckOverlapWithManyCandidates() {
+		LabelPlacement placement = new LabelPlacement(null, null);
+		placement.mGrid.reset(500);
+
+		/* near, but not overlapping the new label */
+		for (int i = 0; i < 100; i++)
+			placement.addLabel(wayLabel(wayText, "l" + i, (i % 10) * 20 - 100, 30 + (i / 10) * 5, 0));
+
+		Label l = wayLabel(wayText, "new", 0, 0, 1);
+		assertEquals(0, placement.checkOverlap(l));
+
+		/* overlapping label is found after more than 64 candidates */
+		placement.addLabel(wayLabel(wayText, "old", 5, 2, 0));
+		assertEquals(1, placement.checkOverlap(l));
+	}
+}
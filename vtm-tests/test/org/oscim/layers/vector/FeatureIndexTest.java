@@ -0,0 +1,254 @@
+package org.oscim.layers.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+import org.oscim.layers.vector.FeatureIndex.Feature;
+
+public class FeatureIndexTest {
+
+	static final int ZOOM = 10;
+	static final double PX = 1.0 / (Tile.SIZE << ZOOM);
+
+	FeatureIndex<Integer> index;
+	MapPosition origin;
+
+	/** collects the items and geometries of a query */
+	static class Collect implements FeatureIndex.Callback<Integer> {
+		final HashSet<Integer> items = new HashSet<Integer>();
+		final ArrayList<float[]> points = new ArrayList<float[]>();
+
+		@Override
+		public void process(Feature<Integer> f, GeometryBuffer g) {
+			items.add(f.get());
+			float[] p = new float[g.pointPos];
+			System.arraycopy(g.points, 0, p, 0, g.pointPos);
+			points.add(p);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		index = new FeatureIndex<Integer>(1024);
+		origin = new MapPosition();
+		origin.setZoomLevel(ZOOM);
+		origin.x = 0.5;
+		origin.y = 0.5;
+	}
+
+	/** add a square of 'size' pixels at x,y pixels relative to origin */
+	Feature<Integer> addSquare(int id, double x, double y, double size) {
+		double x1 = 0.5 + x * PX, y1 = 0.5 + y * PX;
+		double x2 = x1 + size * PX, y2 = y1 + size * PX;
+		return index.add(id, GeometryType.POLY,
+		                 new double[] { x1, y1, x2, y1, x2, y2, x1, y2 },
+		                 new short[] { 8 });
+	}
+
+	/** 10x10 squares of 10px, every 100px from -500 */
+	void addGrid() {
+		for (int y = 0; y < 10; y++)
+			for (int x = 0; x < 10; x++)
+				addSquare(y * 10 + x, x * 100 - 500, y * 100 - 500, 10);
+	}
+
+	int query(Collect c, double x1, double y1, double x2, double y2) {
+		double scale = origin.scale * Tile.SIZE;
+		return index.query(origin, scale,
+		                   0.5 + x1 * PX, 0.5 + y1 * PX,
+		                   0.5 + x2 * PX, 0.5 + y2 * PX, c);
+	}
+
+	/** @return ids of grid squares overlapping the pixel box */
+	static HashSet<Integer> expected(double x1, double y1, double x2, double y2) {
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for (int y = 0; y < 10; y++)
+			for (int x = 0; x < 10; x++) {
+				double sx = x * 100 - 500, sy = y * 100 - 500;
+				if (sx <= x2 && sx + 10 >= x1 && sy <= y2 && sy + 10 >= y1)
+					ids.add(y * 10 + x);
+			}
+		return ids;
+	}
+
+	@Test
+	public void shouldQueryOverlappingFeatures() {
+		addGrid();
+		assertEquals(100, index.size());
+
+		Collect c = new Collect();
+		query(c, -250, -250, 250, 250);
+		assertEquals(expected(-250, -250, 250, 250), c.items);
+		assertEquals(25, c.items.size());
+	}
+
+	@Test
+	public void shouldOnlyProcessNewFeaturesWhenPanning() {
+		addGrid();
+
+		Collect c = new Collect();
+		assertEquals(25, query(c, -250, -250, 250, 250));
+
+		c = new Collect();
+		assertEquals(0, query(c, -250, -250, 250, 250));
+		assertEquals(25, c.items.size());
+
+		/* pan by 200px, two new columns */
+		c = new Collect();
+		assertEquals(10, query(c, -50, -250, 450, 250));
+		assertEquals(expected(-50, -250, 450, 250), c.items);
+
+		/* back again */
+		c = new Collect();
+		assertEquals(0, query(c, -250, -250, 250, 250));
+		assertEquals(25, c.items.size());
+	}
+
+	@Test
+	public void shouldReuseClippedGeometry() {
+		addGrid();
+
+		Collect first = new Collect();
+		query(first, -250, -250, 250, 250);
+		Collect second = new Collect();
+		query(second, -250, -250, 250, 250);
+
+		assertEquals(first.points.size(), second.points.size());
+		for (int i = 0; i < first.points.size(); i++)
+			assertTrue(java.util.Arrays.equals(first.points.get(i), second.points.get(i)));
+	}
+
+	@Test
+	public void shouldProcessAllOnNewOrigin() {
+		addGrid();
+
+		query(new Collect(), -250, -250, 250, 250);
+
+		origin.x += 10 * PX;
+		Collect c = new Collect();
+		assertEquals(25, query(c, -250, -250, 250, 250));
+
+		index.invalidate();
+		assertEquals(25, query(new Collect(), -250, -250, 250, 250));
+	}
+
+	@Test
+	public void shouldTransformRelativeToOrigin() {
+		index.add(1, GeometryType.POINT,
+		          new double[] { 0.5 + 100 * PX, 0.5 - 50 * PX }, new short[] { 2 });
+		/* outside of clip region */
+		index.add(2, GeometryType.POINT,
+		          new double[] { 0.5 + 2000 * PX, 0.5 }, new short[] { 2 });
+
+		Collect c = new Collect();
+		query(c, -3000, -3000, 3000, 3000);
+
+		assertEquals(1, c.points.size());
+		assertEquals(100, c.points.get(0)[0], 0.01);
+		assertEquals(-50, c.points.get(0)[1], 0.01);
+	}
+
+	@Test
+	public void shouldKeepPrecisionOfLargeFeatures() {
+		origin.setZoomLevel(20);
+		origin.x = 0.9;
+		origin.y = 0.9;
+		double px = 1.0 / (Tile.SIZE << 20);
+
+		/* relative to the feature origin at 0,0 */
+		index.add(1, GeometryType.POINT,
+		          new double[] { 0, 0, 0.9 + 100 * px, 0.9 - 50 * px },
+		          new short[] { 4 });
+
+		Collect c = new Collect();
+		double scale = origin.scale * Tile.SIZE;
+		index.query(origin, scale, 0.9 - 500 * px, 0.9 - 500 * px,
+		            0.9 + 500 * px, 0.9 + 500 * px, c);
+
+		assertEquals(1, c.points.size());
+		assertEquals(2, c.points.get(0).length);
+		assertEquals(100, c.points.get(0)[0], 0.01);
+		assertEquals(-50, c.points.get(0)[1], 0.01);
+	}
+
+	@Test
+	public void shouldClipToExtent() {
+		addSquare(1, -2000, -10, 4000);
+
+		Collect c = new Collect();
+		query(c, -100, -100, 100, 100);
+
+		float[] p = c.points.get(0);
+		for (int i = 0; i < p.length; i++) {
+			assertTrue(p[i] >= -1024 && p[i] <= 1024);
+		}
+	}
+
+	@Test
+	public void shouldSimplifyPerZoomLevel() {
+		/* line of 101 points every 0.3 pixel with 1/10 pixel zigzag at ZOOM */
+		int n = 101;
+		double[] points = new double[n * 2];
+		for (int i = 0; i < n; i++) {
+			points[i * 2] = 0.5 + (i - 50) * 0.3 * PX;
+			points[i * 2 + 1] = 0.5 + (i % 2) * 0.1 * PX;
+		}
+		index.add(1, GeometryType.LINE, points, new short[] { (short) (n * 2) });
+
+		Collect c = new Collect();
+		query(c, -100, -100, 100, 100);
+		assertEquals(4, c.points.get(0).length);
+
+		/* 1/10 pixel is 3.2 pixel at ZOOM + 5 */
+		origin.setZoomLevel(ZOOM + 5);
+		c = new Collect();
+		query(c, -100, -100, 100, 100);
+		assertEquals(n * 2, c.points.get(0).length);
+	}
+
+	@Test
+	public void shouldDropSmallFeatures() {
+		addSquare(1, 0, 0, 8);
+
+		Collect c = new Collect();
+		query(c, -100, -100, 100, 100);
+		assertEquals(1, c.items.size());
+
+		/* 1/4 pixel */
+		origin.setZoomLevel(ZOOM - 5);
+		c = new Collect();
+		query(c, -100, -100, 100, 100);
+		assertEquals(0, c.items.size());
+	}
+
+	@Test
+	public void shouldRemoveFeatures() {
+		ArrayList<Feature<Integer>> features = new ArrayList<Feature<Integer>>();
+		/* all in the same tree node */
+		for (int i = 0; i < 10; i++)
+			features.add(addSquare(i, -10, -10, 20));
+
+		assertTrue(index.remove(features.get(9)));
+		assertTrue(index.remove(features.get(0)));
+		assertTrue(index.remove(features.get(5)));
+		assertFalse(index.remove(features.get(5)));
+		assertEquals(7, index.size());
+
+		Collect c = new Collect();
+		query(c, -100, -100, 100, 100);
+		assertEquals(7, c.items.size());
+		assertFalse(c.items.contains(0));
+		assertFalse(c.items.contains(5));
+		assertFalse(c.items.contains(9));
+	}
+}
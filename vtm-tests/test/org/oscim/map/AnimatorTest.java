@@ -0,0 +1,71 @@
+package org.oscim.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+
+public class AnimatorTest {
+	private Animator animator;
+	private MapPosition start;
+	private MapPosition target;
+
+	@Before
+	public void setUp() throws Exception {
+		CanvasAdapter.dpi = 240;
+		animator = new Animator(Mockito.mock(Map.class));
+		start = new MapPosition();
+		target = new MapPosition();
+	}
+
+	@Test
+	public void shouldHaveNoTargetWithoutAnimation() {
+		assertFalse(animator.getTargetPosition(target));
+	}
+
+	@Test
+	public void shouldGetTargetOfFling() {
+		animator.animateFling(-100, 50, -1000, 1000, -1000, 1000);
+		assertTrue(animator.getTargetPosition(target));
+
+		double tileScale = start.scale * Tile.SIZE;
+		assertEquals(start.x + 100 / tileScale, target.x, 1e-9);
+		assertEquals(start.y - 50 / tileScale, target.y, 1e-9);
+		assertEquals(start.scale, target.scale, 0);
+	}
+
+	@Test
+	public void shouldGetTargetOfZoom() {
+		animator.animateZoom(300, 4, 0, 0);
+		assertTrue(animator.getTargetPosition(target));
+
+		assertEquals(start.scale * 4, target.scale, 1e-9);
+		assertEquals(2, target.zoomLevel);
+		assertEquals(start.x, target.x, 0);
+		assertEquals(start.y, target.y, 0);
+	}
+
+	@Test
+	public void shouldKeepPivotFixedWhenZooming() {
+		animator.animateZoom(300, 2, 64, 0);
+		assertTrue(animator.getTargetPosition(target));
+
+		/* pivot is at the same map position before and after */
+		double before = start.x + 64 / (start.scale * Tile.SIZE);
+		double after = target.x + 64 / (target.scale * Tile.SIZE);
+		assertEquals(before, after, 1e-9);
+	}
+
+	@Test
+	public void shouldHaveNoTargetWhenCanceled() {
+		animator.animateZoom(300, 2, 0, 0);
+		animator.cancel();
+		assertFalse(animator.getTargetPosition(target));
+	}
+}
@@ -0,0 +1,88 @@
+package org.oscim.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.oscim.renderer.FrameProfiler.Stats;
+
+public class FrameProfilerTest {
+
+	static class TestRenderer extends LayerRenderer {
+		@Override
+		protected void update(GLViewport viewport) {
+		}
+
+		@Override
+		protected void render(GLViewport viewport) {
+		}
+	}
+
+	static void frame(FrameProfiler p, LayerRenderer[] layers, int draws, int bytes) {
+		p.beginFrame();
+		p.setLayers(layers);
+		for (int i = 0; i < layers.length; i++) {
+			p.beginLayer();
+			GLState.drawCalls += draws;
+			GLState.stateChanges += 1;
+			p.layerUpdated(i);
+			FrameProfiler.countUpload(bytes);
+			p.layerRendered(i);
+		}
+		p.endFrame();
+	}
+
+	@Test
+	public void shouldCountFrames() {
+		FrameProfiler p = new FrameProfiler();
+		LayerRenderer[] layers = { new TestRenderer(), new TestRenderer() };
+
+		Stats s = p.getStats(null);
+		assertEquals(0, s.frames);
+
+		frame(p, layers, 3, 100);
+		frame(p, layers, 5, 200);
+
+		s = p.getStats(s);
+		assertEquals(2, s.frames);
+		assertEquals(10, s.drawCalls);
+		assertEquals(2, s.stateChanges);
+		assertEquals(400, s.uploadBytes);
+		assertEquals(8, s.avgDrawCalls, 0);
+		assertEquals(300, s.avgUploadBytes, 0);
+
+		assertEquals(2, s.layers.length);
+		assertEquals(TestRenderer.class.getName(), s.layers[0]);
+		assertTrue(s.maxFrameNanos >= s.avgFrameNanos);
+
+		int frames = 0;
+		for (int h : s.histogram)
+			frames += h;
+		assertEquals(2, frames);
+	}
+
+	@Test
+	public void shouldKeepHistory() {
+		FrameProfiler p = new FrameProfiler();
+		LayerRenderer[] layers = { new TestRenderer() };
+
+		for (int i = 0; i < FrameProfiler.HISTORY + 10; i++)
+			frame(p, layers, i < 10 ? 100 : 1, 0);
+
+		Stats s = p.getStats(null);
+		assertEquals(FrameProfiler.HISTORY, s.frames);
+		assertEquals(1, s.avgDrawCalls, 0);
+	}
+
+	@Test
+	public void shouldResetWhenLayersChange() {
+		FrameProfiler p = new FrameProfiler();
+		frame(p, new LayerRenderer[] { new TestRenderer() }, 1, 0);
+		frame(p, new LayerRenderer[] { new TestRenderer(), new TestRenderer() }, 1, 0);
+
+		Stats s = p.getStats(null);
+		assertEquals(1, s.frames);
+		assertEquals(2, s.layers.length);
+		assertEquals(2, s.updateNanos.length);
+	}
+}
@@ -0,0 +1,54 @@
+package org.oscim.renderer.elements;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Compare the time spent on the render thread to assemble the vertices
+ * of a dense tile with and without ElementLayers.prepare() on the loader
+ * thread.
+ */
+public class ElementLayersBenchmark {
+
+	static final int ITERATIONS = 200;
+	static final int LINES = 5000;
+
+	public static void main(String[] args) {
+		ElementLayers layers = ElementLayersTest.createLayers(LINES);
+		int size = layers.getSize() + ElementLayersTest.FILL.length;
+		layers.clear();
+
+		ShortBuffer sbuf = ByteBuffer.allocateDirect(size * 2)
+		    .order(ByteOrder.nativeOrder())
+		    .asShortBuffer();
+
+		for (int round = 0; round < 3; round++) {
+			long compile = 0, prepare = 0, upload = 0;
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				layers = ElementLayersTest.createLayers(LINES);
+				long t = System.nanoTime();
+				sbuf.clear();
+				sbuf.put(ElementLayersTest.FILL);
+				layers.compile(sbuf, true);
+				compile += System.nanoTime() - t;
+				layers.clear();
+
+				layers = ElementLayersTest.createLayers(LINES);
+				t = System.nanoTime();
+				layers.prepare(ElementLayersTest.FILL);
+				long t2 = System.nanoTime();
+				ByteBuffer buf = layers.compilePrepared();
+				upload += System.nanoTime() - t2;
+				prepare += t2 - t;
+				ElementLayers.releaseBuffer(buf);
+				layers.clear();
+			}
+			System.out.println(size * 2 / 1024 + "kb per tile, render thread: "
+			        + compile / ITERATIONS / 1000 + "us compile vs "
+			        + upload / ITERATIONS / 1000 + "us prepared, loader: "
+			        + prepare / ITERATIONS / 1000 + "us prepare");
+		}
+	}
+}
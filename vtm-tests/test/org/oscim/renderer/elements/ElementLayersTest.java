@@ -0,0 +1,162 @@
+package org.oscim.renderer.elements;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import org.junit.Test;
+import org.oscim.renderer.ElementRenderer;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+
+public class ElementLayersTest {
+
+	static final short[] FILL = { 0, 4096, 4096, 4096, 0, 0, 4096, 0 };
+
+	/** @return layers with enough vertices to fill several pool items */
+	static ElementLayers createLayers(int lines) {
+		ElementLayers layers = new ElementLayers();
+		LineStyle line = new LineStyle(0xff000000, 2);
+
+		for (int i = 0; i < lines; i++) {
+			float[] points = new float[] {
+			        i, 0, 100 + i, 50, 200, 400 - i, 10 + i, 300 };
+
+			layers.addPolygonLayer(0, new AreaStyle(0xff00ff00))
+			    .addPolygon(points, new short[] { 8 });
+			layers.addLineLayer(1, line)
+			    .addLine(points, 8, false);
+			layers.getLineTexLayer(2)
+			    .addLine(points, new short[] { 8 });
+			layers.addLineLayer(3, line)
+			    .addLine(points, 8, true);
+		}
+		return layers;
+	}
+
+	static short[] toArray(ShortBuffer sbuf) {
+		short[] s = new short[sbuf.remaining()];
+		sbuf.get(s);
+		return s;
+	}
+
+	static int[] offsets(ElementLayers layers) {
+		int n = 0;
+		for (RenderElement l = layers.getBaseLayers(); l != null; l = l.next)
+			n++;
+		int[] offsets = new int[n + 2];
+		n = 0;
+		for (RenderElement l = layers.getBaseLayers(); l != null; l = l.next)
+			offsets[n++] = l.offset;
+		offsets[n++] = layers.offset[0];
+		offsets[n++] = layers.offset[1];
+		return offsets;
+	}
+
+	@Test
+	public void shouldPrepareSameDataAsCompile() {
+		ElementLayers expected = createLayers(500);
+		int size = expected.getSize() + FILL.length;
+
+		ShortBuffer sbuf = ShortBuffer.allocate(size);
+		sbuf.put(FILL);
+		expected.compile(sbuf, true);
+		assertEquals(size, sbuf.position());
+		sbuf.flip();
+
+		ElementLayers layers = createLayers(500);
+		assertEquals(expected.getSize(), layers.getSize());
+		layers.prepare(FILL);
+		assertTrue(layers.isPrepared());
+
+		/* vertices are owned by the buffer now */
+		for (RenderElement l = layers.getBaseLayers(); l != null; l = l.next)
+			assertEquals(null, l.vertexItems);
+
+		ByteBuffer buf = layers.compilePrepared();
+		assertFalse(layers.isPrepared());
+		assertEquals(size * 2, buf.limit());
+		assertArrayEquals(offsets(expected), offsets(layers));
+
+		short[] data = toArray(buf.asShortBuffer());
+		short[] exp = toArray(sbuf);
+		/* skip the unwritten vertex after LineTexLayer */
+		for (RenderElement l = layers.getBaseLayers(); l != null; l = l.next) {
+			if (l.type != RenderElement.TEXLINE)
+				continue;
+			int end = l.offset / 2 + l.numVertices * 6;
+			for (int i = end - 6; i < end; i++)
+				data[i] = exp[i];
+		}
+		assertArrayEquals(exp, data);
+
+		ElementLayers.releaseBuffer(buf);
+		layers.clear();
+		expected.clear();
+	}
+
+	@Test
+	public void shouldReuseReleasedBuffers() {
+		ElementLayers layers = createLayers(10);
+		layers.prepare(null);
+		ByteBuffer buf = layers.compilePrepared();
+		ElementLayers.releaseBuffer(buf);
+
+		layers = createLayers(10);
+		layers.prepare(null);
+		ByteBuffer buf2 = layers.compilePrepared();
+		assertTrue(buf == buf2);
+		ElementLayers.releaseBuffer(buf2);
+	}
+
+	@Test
+	public void shouldReleasePreparedBufferOnClear() {
+		ElementLayers layers = createLayers(10);
+		layers.prepare(FILL);
+		assertTrue(layers.isPrepared());
+		layers.clear();
+		assertFalse(layers.isPrepared());
+	}
+
+	@Test
+	public void shouldReleaseVertexArrayBufferOnClear() {
+		ElementLayers layers = createLayers(10);
+		layers.useVBO = false;
+		int size = layers.getSize();
+		ElementRenderer.prepareLayers(layers, true);
+		assertTrue(ElementRenderer.uploadLayers(layers, size, true));
+
+		ByteBuffer buf = layers.vertexArrayBuffer;
+		layers.clear();
+		assertEquals(null, layers.vertexArrayBuffer);
+
+		layers = createLayers(10);
+		layers.prepare(FILL);
+		ByteBuffer buf2 = layers.compilePrepared();
+		assertTrue(buf == buf2);
+		ElementLayers.releaseBuffer(buf2);
+	}
+
+	@Test
+	public void shouldAccountMemoryUsage() {
+		ElementLayers layers = createLayers(100);
+		int vertexBytes = layers.getSize() * 2;
+
+		/* vertices are held in pool items of VertexItem.SIZE */
+		int usage = layers.getMemoryUsage();
+		assertTrue(usage >= vertexBytes);
+		assertTrue(usage < vertexBytes + 4 * VertexItem.SIZE * 2);
+
+		/* prepared buffer replaces the vertex items */
+		layers.prepare(FILL);
+		usage = layers.getMemoryUsage();
+		assertTrue(usage >= vertexBytes + FILL.length * 2);
+
+		layers.clear();
+		assertEquals(0, layers.getMemoryUsage());
+	}
+}
@@ -0,0 +1,272 @@
+package org.oscim.theme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.renderer.atlas.TextureRegion;
+import org.oscim.renderer.elements.TextureItem;
+import org.oscim.theme.IRenderTheme.ThemeException;
+import org.oscim.theme.ThemeMatchBenchmark.Element;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.styles.RenderStyle;
+
+public class BinaryThemeTest {
+	static final String[] THEMES = {
+	        "default.xml", "tronrender.xml", "newtron.xml", "osmarender.xml"
+	};
+
+	static class BytesTheme implements ThemeFile {
+		private static final long serialVersionUID = 1L;
+		final byte[] data;
+
+		BytesTheme(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public InputStream getRenderThemeAsStream() {
+			return new ByteArrayInputStream(data);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		CanvasAdapter.g = mock(CanvasAdapter.class);
+		when(CanvasAdapter.g.getPaint()).thenReturn(mock(Paint.class));
+		when(CanvasAdapter.g.loadBitmapAsset(anyString())).thenReturn(mock(Bitmap.class));
+	}
+
+	static File tmpFile() throws IOException {
+		File f = File.createTempFile("theme", ".bin");
+		f.delete();
+		f.deleteOnExit();
+		return f;
+	}
+
+	/** all fields of a style, compared instead of the instances */
+	static void describe(Object o, StringBuilder sb) {
+		if (o == null) {
+			sb.append("null");
+			return;
+		}
+		if (o instanceof TextureRegion) {
+			TextureRegion r = (TextureRegion) o;
+			sb.append(r.rect.x).append(',').append(r.rect.y).append(',')
+			    .append(r.rect.w).append(',').append(r.rect.h);
+			return;
+		}
+		if (o instanceof TextureItem || o instanceof Paint) {
+			sb.append(o.getClass().getSimpleName());
+			return;
+		}
+		if (!(o instanceof RenderStyle)) {
+			sb.append(o);
+			return;
+		}
+		sb.append(o.getClass().getSimpleName()).append('{');
+		try {
+			for (Class<?> c = o.getClass(); c != RenderStyle.class; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (Modifier.isStatic(f.getModifiers()))
+						continue;
+					f.setAccessible(true);
+					sb.append(f.getName()).append('=');
+					Object v = f.get(o);
+					if (v instanceof float[]) {
+						for (float x : (float[]) v)
+							sb.append(x).append(' ');
+					} else {
+						describe(v, sb);
+					}
+					sb.append(';');
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		sb.append('}');
+	}
+
+	static String describe(RenderStyle[] styles) {
+		StringBuilder sb = new StringBuilder();
+		if (styles != null)
+			for (RenderStyle s : styles)
+				describe(s, sb);
+		return sb.toString();
+	}
+
+	static void assertSameTheme(IRenderTheme expected, IRenderTheme actual) {
+		assertEquals(expected.getMapBackground(), actual.getMapBackground());
+		assertEquals(expected.getLevels(), actual.getLevels());
+
+		Random r = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			Element e = ThemeMatchBenchmark.randomElement(r);
+			int zoom = r.nextInt(20);
+			String a = describe(expected.matchElement(e.type, e.tags, zoom));
+			String b = describe(actual.matchElement(e.type, e.tags, zoom));
+			assertEquals(a, b);
+		}
+	}
+
+	@Test
+	public void shouldRestoreThemes() throws IOException {
+		for (String name : THEMES) {
+			IRenderTheme xml = ThemeMatchBenchmark.loadTheme(RuleIndexTest.STYLES + name);
+			File bin = tmpFile();
+
+			ThemeFile theme = new ExternalRenderTheme(RuleIndexTest.STYLES + name);
+			BinaryThemeWriter.compile(theme, bin);
+			assertTrue(bin.length() > 0);
+
+			IRenderTheme restored = ThemeLoader.load(theme, bin);
+			assertNotNull(restored);
+			assertSameTheme(xml, restored);
+			bin.delete();
+		}
+	}
+
+	@Test
+	public void shouldShareStyles() throws IOException {
+		/* text style with 'use' is one instance in both rules */
+		String xml = "<rendertheme xmlns='http://opensciencemap.org/rendertheme' version='1'>"
+		        + "<style-text id='t' k='name' size='12' fill='#ff000000' />"
+		        + "<m k='highway'><line stroke='#ff00ff00' width='2' /><text use='t' /></m>"
+		        + "<m k='railway' v='rail'><text use='t' /></m>"
+		        + "</rendertheme>";
+
+		File bin = tmpFile();
+		BinaryThemeWriter.compile(new BytesTheme(xml.getBytes("UTF-8")), bin);
+
+		RenderTheme t = (RenderTheme) BinaryThemeBuilder.read(bin, BinaryThemeBuilder
+		    .hash(xml.getBytes("UTF-8")));
+		assertNotNull(t);
+
+		ArrayList<Rule> rules = RuleIndexTest.getRules(t);
+		assertEquals(2, rules.size());
+		assertEquals(2, rules.get(0).styles.length);
+		assertTrue(rules.get(0).styles[1] == rules.get(1).styles[0]);
+		assertFalse(rules.get(0).styles[0] == rules.get(1).styles[0]);
+		bin.delete();
+	}
+
+	@Test
+	public void shouldFallBackToXml() throws IOException {
+		String name = RuleIndexTest.STYLES + THEMES[0];
+		IRenderTheme xml = ThemeMatchBenchmark.loadTheme(name);
+		byte[] data = ThemeLoader.readTheme(new ExternalRenderTheme(name));
+
+		/* no binary theme yet: parse XML and write it */
+		File bin = tmpFile();
+		IRenderTheme t = ThemeLoader.load(new BytesTheme(data), bin);
+		assertSameTheme(xml, t);
+		assertTrue(bin.exists());
+		long hash = BinaryThemeBuilder.hash(data);
+		assertNotNull(BinaryThemeBuilder.read(bin, hash));
+
+		/* changed XML: hash does not match */
+		byte[] changed = new byte[data.length + 1];
+		System.arraycopy(data, 0, changed, 0, data.length);
+		changed[data.length] = '\n';
+		assertNull(BinaryThemeBuilder.read(bin, BinaryThemeBuilder.hash(changed)));
+
+		t = ThemeLoader.load(new BytesTheme(changed), bin);
+		assertSameTheme(xml, t);
+		assertNotNull(BinaryThemeBuilder.read(bin, BinaryThemeBuilder.hash(changed)));
+
+		/* truncated binary */
+		RandomAccessFile f = new RandomAccessFile(bin, "rw");
+		f.setLength(f.length() / 2);
+		f.close();
+		t = ThemeLoader.load(new BytesTheme(changed), bin);
+		assertSameTheme(xml, t);
+		assertNotNull(BinaryThemeBuilder.read(bin, BinaryThemeBuilder.hash(changed)));
+
+		/* not a binary theme */
+		FileOutputStream out = new FileOutputStream(bin);
+		out.write(data, 0, 100);
+		out.close();
+		assertNull(BinaryThemeBuilder.read(bin, hash));
+		t = ThemeLoader.load(new BytesTheme(data), bin);
+		assertSameTheme(xml, t);
+
+		bin.delete();
+	}
+
+	@Test
+	public void shouldFallBackOnCorruptContent() throws IOException {
+		String name = RuleIndexTest.STYLES + THEMES[0];
+		IRenderTheme xml = ThemeMatchBenchmark.loadTheme(name);
+		byte[] data = ThemeLoader.readTheme(new ExternalRenderTheme(name));
+		long hash = BinaryThemeBuilder.hash(data);
+
+		File bin = tmpFile();
+		ThemeLoader.load(new BytesTheme(data), bin);
+		RandomAccessFile f = new RandomAccessFile(bin, "r");
+		byte[] valid = new byte[(int) f.length()];
+		f.readFully(valid);
+		f.close();
+
+		/* negative string count after the header */
+		byte[] corrupt = valid.clone();
+		corrupt[28] = (byte) 0xff;
+		assertCorrupt(corrupt, hash);
+
+		/* flip bytes in the body, keep the header valid */
+		Random random = new Random(0);
+		for (int i = 0; i < 200; i++) {
+			corrupt = valid.clone();
+			for (int j = 0; j < 8; j++) {
+				int pos = 16 + random.nextInt(corrupt.length - 16);
+				corrupt[pos] = (byte) random.nextInt(256);
+			}
+			try {
+				BinaryThemeBuilder.read(ByteBuffer.wrap(corrupt), hash);
+			} catch (ThemeException e) {
+				/* expected */
+			}
+			if (i % 20 == 0) {
+				FileOutputStream out = new FileOutputStream(bin);
+				out.write(corrupt);
+				out.close();
+				assertNotNull(ThemeLoader.load(new BytesTheme(data), bin));
+			}
+		}
+
+		/* the last fall back wrote a valid file */
+		assertSameTheme(xml, BinaryThemeBuilder.read(bin, hash));
+		bin.delete();
+	}
+
+	static void assertCorrupt(byte[] data, long hash) {
+		try {
+			BinaryThemeBuilder.read(ByteBuffer.wrap(data), hash);
+		} catch (ThemeException e) {
+			return;
+		}
+		throw new AssertionError("no ThemeException");
+	}
+}
@@ -0,0 +1,109 @@
+package org.oscim.theme;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.oscim.core.Tag;
+import org.oscim.theme.ThemeMatchBenchmark.Element;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.styles.RenderStyle;
+
+public class RuleIndexTest {
+	static final String STYLES = "../vtm-themes/resources/assets/styles/";
+
+	/** rule traversal without index */
+	static boolean matchReference(Rule rule, int type, Tag[] tags, int zoomLevel,
+	        ArrayList<RenderStyle> result) {
+
+		if (((rule.element & type) == 0) || ((rule.zoom & zoomLevel) == 0)
+		        || !rule.matchesTags(tags))
+			return false;
+
+		boolean matched = false;
+		for (Rule r : rule.subRules) {
+			if (rule.selectFirstMatch) {
+				if (matched ^ r.selectWhenMatched)
+					continue;
+			} else if (r.selectWhenMatched && !matched) {
+				continue;
+			}
+			if (matchReference(r, type, tags, zoomLevel, result))
+				matched = true;
+		}
+
+		if (rule.styles == Rule.EMPTY_STYLE)
+			return matched;
+
+		for (RenderStyle s : rule.styles)
+			result.add(s);
+
+		return true;
+	}
+
+	static ArrayList<Rule> getRules(RenderTheme theme) {
+		final ArrayList<Rule> rules = new ArrayList<Rule>();
+		theme.traverseRules(new RuleVisitor() {
+			@Override
+			public void apply(Rule r) {
+				rules.add(r);
+			}
+		});
+		return rules;
+	}
+
+	static void matchReference(ArrayList<Rule> rules, int type, Tag[] tags, int zoomLevel,
+	        ArrayList<RenderStyle> result) {
+		for (Rule rule : rules)
+			matchReference(rule, type, tags, zoomLevel, result);
+	}
+
+	void compare(String file) throws Exception {
+		RenderTheme theme = (RenderTheme) ThemeMatchBenchmark.loadTheme(STYLES + file);
+
+		ArrayList<Rule> rules = getRules(theme);
+
+		ArrayList<RenderStyle> expected = new ArrayList<RenderStyle>();
+		ArrayList<RenderStyle> result = new ArrayList<RenderStyle>();
+
+		Random r = new Random(file.hashCode());
+		for (int i = 0; i < 20000; i++) {
+			Element e = ThemeMatchBenchmark.randomElement(r);
+			Tag[] tags = e.tags.asArray();
+			int type = 1 << (e.type.nativeInt - 1);
+			int zoom = 1 << r.nextInt(21);
+
+			expected.clear();
+			matchReference(rules, type, tags, zoom, expected);
+
+			result.clear();
+			theme.matchRules(type, tags, zoom, result);
+
+			assertEquals(file + " " + e.tags + " z:" + zoom, expected, result);
+		}
+		theme.destroy();
+	}
+
+	@Test
+	public void shouldMatchDefaultTheme() throws Exception {
+		compare("default.xml");
+	}
+
+	@Test
+	public void shouldMatchOsmarenderTheme() throws Exception {
+		compare("osmarender.xml");
+	}
+
+	@Test
+	public void shouldMatchNewtronTheme() throws Exception {
+		compare("newtron.xml");
+	}
+
+	@Test
+	public void shouldMatchTronrenderTheme() throws Exception {
+		compare("tronrender.xml");
+	}
+}
@@ -0,0 +1,84 @@
+package org.oscim.theme;
+
+import java.util.ArrayList;
+
+import org.oscim.core.Tag;
+import org.oscim.theme.ThemeMatchBenchmark.Element;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.styles.RenderStyle;
+
+/**
+ * Compares the cold-cache matching of the rule tree traversal with the
+ * RuleIndex lookup, i.e. the cost of the first tile loads.
+ *
+ * Usage: RuleMatchBenchmark [theme.xml] [tags.txt]
+ */
+public class RuleMatchBenchmark {
+
+	static long traverse(ArrayList<Rule> rules, ArrayList<Element> elements,
+	        ArrayList<RenderStyle> result) {
+		long matches = 0;
+		for (int i = 0; i < elements.size(); i++) {
+			Element e = elements.get(i);
+			Tag[] tags = e.tags.asArray();
+			int type = 1 << (e.type.nativeInt - 1);
+			result.clear();
+			RuleIndexTest.matchReference(rules, type, tags, 1 << (12 + i % 6), result);
+			matches += result.size();
+		}
+		return matches;
+	}
+
+	static long indexed(RenderTheme theme, ArrayList<Element> elements,
+	        ArrayList<RenderStyle> result) {
+		long matches = 0;
+		for (int i = 0; i < elements.size(); i++) {
+			Element e = elements.get(i);
+			Tag[] tags = e.tags.asArray();
+			int type = 1 << (e.type.nativeInt - 1);
+			result.clear();
+			theme.matchRules(type, tags, 1 << (12 + i % 6), result);
+			matches += result.size();
+		}
+		return matches;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String themeFile = args.length > 0 ? args[0] : ThemeMatchBenchmark.DEFAULT_THEME;
+		RenderTheme theme = (RenderTheme) ThemeMatchBenchmark.loadTheme(themeFile);
+		ArrayList<Rule> rules = RuleIndexTest.getRules(theme);
+
+		/* every element is a cache miss */
+		ArrayList<Element> elements = args.length > 1
+		        ? ThemeMatchBenchmark.read(args[1])
+		        : ThemeMatchBenchmark.generate(20000, 20000, 1);
+
+		ArrayList<RenderStyle> result = new ArrayList<RenderStyle>();
+
+		/* warm up */
+		for (int i = 0; i < 10; i++) {
+			traverse(rules, elements, result);
+			indexed(theme, elements, result);
+		}
+
+		int rounds = 50;
+		long a = 0, b = 0, tTraverse = 0, tIndexed = 0;
+		for (int i = 0; i < rounds; i++) {
+			long t = System.nanoTime();
+			a += traverse(rules, elements, result);
+			tTraverse += System.nanoTime() - t;
+
+			t = System.nanoTime();
+			b += indexed(theme, elements, result);
+			tIndexed += System.nanoTime() - t;
+		}
+		if (a != b)
+			System.out.println("result mismatch " + a + " / " + b);
+
+		long n = (long) rounds * elements.size();
+		System.out.println(elements.size() + " elements, " + rules.size() + " rules");
+		System.out.println("traverse: " + (tTraverse / n) + "ns/match");
+		System.out.println("indexed:  " + (tIndexed / n) + "ns/match");
+		theme.destroy();
+	}
+}
@@ -0,0 +1,201 @@
+package org.oscim.theme;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+
+/**
+ * Replays the element tag sequences of a tile set against a RenderTheme
+ * from several threads, like the TileLoaders do, and reports matches/sec.
+ *
+ * Usage: ThemeMatchBenchmark [theme.xml] [tags.txt] [threads]
+ *
+ * The recorded tag sequence contains one element per line:
+ * 'point|line|poly key=value key=value ...'. Without file a sequence is
+ * generated from common OSM tags.
+ */
+public class ThemeMatchBenchmark {
+
+	static final String DEFAULT_THEME =
+	        "../vtm-themes/resources/assets/styles/default.xml";
+
+	static final String[][] COMMON_TAGS = {
+	        { "highway", "residential", "service", "footway", "primary",
+	                "secondary", "tertiary", "motorway", "track", "path",
+	                "unclassified", "cycleway", "steps", "living_street" },
+	        { "building", "yes", "house", "residential", "commercial" },
+	        { "landuse", "residential", "forest", "grass", "farmland",
+	                "industrial", "meadow", "retail", "cemetery" },
+	        { "natural", "water", "wood", "scrub", "coastline", "tree" },
+	        { "waterway", "stream", "river", "canal", "ditch" },
+	        { "amenity", "parking", "school", "restaurant", "bench", "cafe" },
+	        { "leisure", "park", "pitch", "garden", "playground" },
+	        { "railway", "rail", "tram", "subway", "station" },
+	        { "boundary", "administrative" },
+	        { "tunnel", "yes" },
+	        { "bridge", "yes" },
+	        { "oneway", "yes" },
+	        { "layer", "1", "-1" },
+	        { "name", "A", "B", "C", "D" },
+	        { "access", "private", "destination" },
+	};
+
+	public static IRenderTheme loadTheme(String file) throws IOException {
+		CanvasAdapter.g = mock(CanvasAdapter.class);
+		when(CanvasAdapter.g.getPaint()).thenReturn(mock(Paint.class));
+		when(CanvasAdapter.g.loadBitmapAsset(anyString())).thenReturn(mock(Bitmap.class));
+
+		return ThemeLoader.load(new FileInputStream(file));
+	}
+
+	static class Element {
+		GeometryType type;
+		TagSet tags = new TagSet();
+	}
+
+	static Element randomElement(Random r) {
+		Element e = new Element();
+		int t = r.nextInt(3);
+		e.type = t == 0 ? GeometryType.POINT
+		        : (t == 1 ? GeometryType.LINE : GeometryType.POLY);
+
+		String[] main = COMMON_TAGS[r.nextInt(8)];
+		e.tags.add(new Tag(main[0], main[1 + r.nextInt(main.length - 1)]));
+
+		for (int j = r.nextInt(3); j > 0; j--) {
+			String[] extra = COMMON_TAGS[8 + r.nextInt(COMMON_TAGS.length - 8)];
+			if (e.tags.containsKey(extra[0]))
+				continue;
+			e.tags.add(new Tag(extra[0], extra[1 + r.nextInt(extra.length - 1)]));
+		}
+		return e;
+	}
+
+	/**
+	 * Elements of real tiles use a few hundred distinct tag sets and come
+	 * in runs of similar features.
+	 */
+	public static ArrayList<Element> generate(int num, int distinct, long seed) {
+		Random r = new Random(seed);
+
+		Element[] vocabulary = new Element[distinct];
+		for (int i = 0; i < distinct; i++)
+			vocabulary[i] = randomElement(r);
+
+		ArrayList<Element> elements = new ArrayList<Element>();
+		Element prev = null;
+
+		for (int i = 0; i < num; i++) {
+			if (prev == null || r.nextInt(3) != 0) {
+				/* prefer common elements */
+				int n = r.nextInt(distinct);
+				prev = vocabulary[r.nextInt(n + 1)];
+			}
+			elements.add(prev);
+		}
+		return elements;
+	}
+
+	static ArrayList<Element> read(String file) throws IOException {
+		ArrayList<Element> elements = new ArrayList<Element>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] v = line.trim().split("\\s+");
+				if (v.length < 2)
+					continue;
+				Element e = new Element();
+				if (v[0].equals("point"))
+					e.type = GeometryType.POINT;
+				else if (v[0].equals("line"))
+					e.type = GeometryType.LINE;
+				else
+					e.type = GeometryType.POLY;
+
+				for (int i = 1; i < v.length; i++) {
+					int sep = v[i].indexOf('=');
+					if (sep > 0)
+						e.tags.add(new Tag(v[i].substring(0, sep), v[i].substring(sep + 1)));
+				}
+				elements.add(e);
+			}
+		} finally {
+			in.close();
+		}
+		return elements;
+	}
+
+	static long replay(IRenderTheme theme, ArrayList<Element> elements, int rounds) {
+		long matches = 0;
+		for (int i = 0; i < rounds; i++) {
+			int zoom = 12 + (i % 6);
+			for (Element e : elements) {
+				if (theme.matchElement(e.type, e.tags, zoom) != null)
+					matches++;
+			}
+		}
+		return matches;
+	}
+
+	/** TileLoader threads are long-lived, keep the same threads for all runs */
+	static double run(ExecutorService pool, final IRenderTheme theme,
+	        final ArrayList<Element> elements, int threads, final int rounds)
+	        throws Exception {
+
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+
+		long t = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			results.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					replay(theme, elements, rounds);
+				}
+			}));
+		}
+		for (Future<?> f : results)
+			f.get();
+		t = System.nanoTime() - t;
+
+		return (double) threads * rounds * elements.size() / (t / 1e9);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String themeFile = args.length > 0 ? args[0] : DEFAULT_THEME;
+		IRenderTheme theme = loadTheme(themeFile);
+
+		ArrayList<Element> elements = args.length > 1 ? read(args[1]) : generate(20000, 400, 1);
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		ExecutorService pool = Executors.newFixedThreadPool(maxThreads);
+
+		/* warm up */
+		for (int i = 0; i < 5; i++)
+			run(pool, theme, elements, maxThreads, 10);
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			double rate = run(pool, theme, elements, threads, 200);
+			System.out.println(threads + " threads: " + (long) rate + " matches/sec");
+		}
+		pool.shutdown();
+		theme.destroy();
+	}
+}
@@ -0,0 +1,211 @@
+package org.oscim.tiling.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache.BufferedTileReader;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+public class DiskTileCacheTest {
+	File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("tilecache", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	static byte[] data(Tile t, int size) {
+		byte[] b = new byte[size];
+		for (int i = 0; i < size; i++)
+			b[i] = (byte) (t.tileX + t.tileY * 7 + i);
+		return b;
+	}
+
+	static void write(DiskTileCache cache, Tile t, int size) throws IOException {
+		TileWriter w = cache.writeTile(t);
+		OutputStream os = w.getOutputStream();
+		os.write(data(t, size));
+		w.complete(true);
+	}
+
+	static boolean check(DiskTileCache cache, Tile t, int size) throws IOException {
+		TileReader r = cache.getTile(t);
+		if (r == null)
+			return false;
+
+		assertEquals(size, r.getBytes());
+		InputStream is = r.getInputStream();
+		byte[] expect = data(t, size);
+		for (int i = 0; i < size; i++)
+			assertEquals(expect[i], (byte) is.read());
+		assertEquals(-1, is.read());
+		return true;
+	}
+
+	@Test
+	public void shouldReuseReadBuffers() throws IOException {
+		DiskTileCache cache = new DiskTileCache(dir);
+		Tile a = new Tile(1, 2, (byte) 3);
+		Tile b = new Tile(2, 1, (byte) 3);
+		write(cache, a, 1000);
+		write(cache, b, 2000);
+
+		BufferedTileReader r = (BufferedTileReader) cache.getTile(a);
+		ByteBuffer buf = r.getBuffer();
+		assertEquals(1000, buf.remaining());
+		byte[] expect = data(a, 1000);
+		for (int i = 0; i < 1000; i++)
+			assertEquals(expect[i], buf.get(buf.position() + i));
+
+		/* buffer is in use until the stream is closed */
+		BufferedTileReader r2 = (BufferedTileReader) cache.getTile(b);
+		assertTrue(r2.getBuffer().array() != buf.array());
+
+		r.getInputStream().close();
+		r.getInputStream().close();
+		r2.getInputStream().close();
+
+		BufferedTileReader r3 = (BufferedTileReader) cache.getTile(b);
+		assertSame(r2.getBuffer().array(), r3.getBuffer().array());
+		assertEquals(2000, r3.getBuffer().remaining());
+		r3.getInputStream().close();
+
+		/* the first buffer was released only once */
+		BufferedTileReader r4 = (BufferedTileReader) cache.getTile(a);
+		BufferedTileReader r5 = (BufferedTileReader) cache.getTile(a);
+		BufferedTileReader r6 = (BufferedTileReader) cache.getTile(a);
+		assertSame(r2.getBuffer().array(), r4.getBuffer().array());
+		assertSame(buf.array(), r5.getBuffer().array());
+		assertTrue(r6.getBuffer().array() != buf.array());
+		assertTrue(check(cache, b, 2000));
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldReadWrittenTiles() throws IOException {
+		DiskTileCache cache = new DiskTileCache(dir);
+		Tile a = new Tile(1, 2, (byte) 3);
+		Tile b = new Tile(2, 1, (byte) 3);
+
+		write(cache, a, 100);
+		assertNull(cache.getTile(b));
+
+		TileWriter w = cache.writeTile(b);
+		w.getOutputStream().write(1);
+		w.complete(false);
+		assertNull(cache.getTile(b));
+
+		assertTrue(check(cache, a, 100));
+		cache.dispose();
+
+		/* reopen */
+		cache = new DiskTileCache(dir);
+		assertEquals(1, cache.getTileCount());
+		assertTrue(check(cache, a, 100));
+
+		/* replace */
+		write(cache, a, 50);
+		assertTrue(check(cache, a, 50));
+		cache.dispose();
+
+		cache = new DiskTileCache(dir);
+		assertTrue(check(cache, a, 50));
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldEnforceCacheSize() throws IOException {
+		long max = 4 << 20;
+		DiskTileCache cache = new DiskTileCache(dir, max);
+		Tile first = new Tile(0, 0, (byte) 16);
+		write(cache, first, 10000);
+
+		for (int i = 1; i < 2000; i++) {
+			write(cache, new Tile(i, 0, (byte) 16), 10000);
+			/* keep first tile in use */
+			assertTrue(check(cache, first, 10000));
+			assertTrue(cache.getCacheSize() <= max);
+		}
+		assertTrue(check(cache, new Tile(1999, 0, (byte) 16), 10000));
+		assertNull(cache.getTile(new Tile(1, 0, (byte) 16)));
+
+		cache.setCacheSize(max / 4);
+		assertTrue(cache.getCacheSize() <= max / 4);
+		assertTrue(check(cache, first, 10000));
+
+		long size = 0;
+		for (File f : dir.listFiles())
+			size += f.length();
+		assertEquals(cache.getCacheSize(), size);
+		cache.dispose();
+
+		/* reopen with remaining tiles */
+		cache = new DiskTileCache(dir, max / 4);
+		assertTrue(check(cache, first, 10000));
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldRecoverFromIncompleteWrite() throws IOException {
+		DiskTileCache cache = new DiskTileCache(dir);
+		Tile a = new Tile(1, 2, (byte) 3);
+		Tile b = new Tile(2, 1, (byte) 3);
+		write(cache, a, 100);
+		write(cache, b, 100);
+		cache.dispose();
+
+		/* cut 'b' */
+		File seg = new File(dir, "0.seg");
+		RandomAccessFile f = new RandomAccessFile(seg, "rw");
+		f.setLength(f.length() - 10);
+		f.close();
+
+		cache = new DiskTileCache(dir);
+		assertTrue(check(cache, a, 100));
+		assertNull(cache.getTile(b));
+		assertEquals(DiskTileCache.HEADER_SIZE + 100, seg.length());
+
+		write(cache, b, 100);
+		assertTrue(check(cache, b, 100));
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldDetectCorruptTiles() throws IOException {
+		DiskTileCache cache = new DiskTileCache(dir);
+		Tile a = new Tile(1, 2, (byte) 3);
+		write(cache, a, 100);
+
+		RandomAccessFile f = new RandomAccessFile(new File(dir, "0.seg"), "rw");
+		f.seek(DiskTileCache.HEADER_SIZE + 10);
+		f.write(0xff);
+		f.close();
+
+		assertNull(cache.getTile(a));
+		assertEquals(0, cache.getTileCount());
+		cache.dispose();
+	}
+}
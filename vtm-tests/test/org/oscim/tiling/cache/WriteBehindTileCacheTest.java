@@ -0,0 +1,251 @@
+package org.oscim.tiling.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+public class WriteBehindTileCacheTest {
+
+	/** in-memory cache, writes wait for 'gate' */
+	static class MemoryCache implements ITileCache, ITileCache.Transactional {
+		final HashMap<Long, byte[]> tiles = new HashMap<Long, byte[]>();
+		final CountDownLatch gate;
+		int transactions;
+		int writes;
+		boolean inTransaction;
+		boolean outsideTransaction;
+
+		MemoryCache(CountDownLatch gate) {
+			this.gate = gate;
+		}
+
+		@Override
+		public TileWriter writeTile(final Tile tile) {
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			return new TileWriter() {
+				@Override
+				public Tile getTile() {
+					return tile;
+				}
+
+				@Override
+				public OutputStream getOutputStream() {
+					return os;
+				}
+
+				@Override
+				public void complete(boolean success) {
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					synchronized (MemoryCache.this) {
+						if (!inTransaction)
+							outsideTransaction = true;
+						writes++;
+						tiles.put(DiskTileCache.key(tile), os.toByteArray());
+					}
+				}
+			};
+		}
+
+		@Override
+		public synchronized TileReader getTile(final Tile tile) {
+			final byte[] data = tiles.get(DiskTileCache.key(tile));
+			if (data == null)
+				return null;
+
+			return new TileReader() {
+				@Override
+				public Tile getTile() {
+					return tile;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					return new ByteArrayInputStream(data);
+				}
+
+				@Override
+				public int getBytes() {
+					return data.length;
+				}
+			};
+		}
+
+		@Override
+		public void setCacheSize(long size) {
+		}
+
+		@Override
+		public synchronized void beginTransaction() {
+			inTransaction = true;
+			transactions++;
+		}
+
+		@Override
+		public synchronized void endTransaction() {
+			inTransaction = false;
+		}
+	}
+
+	static byte[] data(Tile t, int version) {
+		byte[] b = new byte[100];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) (t.tileX + t.tileY * 7 + i + version);
+		return b;
+	}
+
+	static void write(ITileCache cache, Tile t, int version) throws IOException {
+		TileWriter w = cache.writeTile(t);
+		w.getOutputStream().write(data(t, version));
+		w.complete(true);
+	}
+
+	static byte[] read(ITileCache cache, Tile t) throws IOException {
+		TileReader r = cache.getTile(t);
+		if (r == null)
+			return null;
+
+		InputStream is = r.getInputStream();
+		byte[] b = new byte[r.getBytes()];
+		int n = 0;
+		while (n < b.length)
+			n += is.read(b, n, b.length - n);
+		is.close();
+		return b;
+	}
+
+	static Tile tile(int i) {
+		return new Tile(i, i * 3, (byte) 14);
+	}
+
+	@Test
+	public void shouldWriteBatches() throws Exception {
+		MemoryCache mem = new MemoryCache(new CountDownLatch(0));
+		WriteBehindTileCache cache = new WriteBehindTileCache(mem, 64, 8);
+
+		for (int i = 0; i < 50; i++)
+			write(cache, tile(i), 0);
+
+		cache.flush();
+		assertEquals(0, cache.getQueueSize());
+		assertEquals(50, mem.writes);
+		assertTrue(mem.transactions >= 50 / 8);
+		assertTrue(!mem.outsideTransaction);
+
+		for (int i = 0; i < 50; i++)
+			assertArrayEquals(data(tile(i), 0), mem.tiles.get(DiskTileCache.key(tile(i))));
+
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldReadQueuedTiles() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		MemoryCache mem = new MemoryCache(gate);
+		WriteBehindTileCache cache = new WriteBehindTileCache(mem, 16, 4);
+
+		write(cache, tile(1), 0);
+		assertNull(mem.getTile(tile(1)));
+		assertArrayEquals(data(tile(1), 0), read(cache, tile(1)));
+		assertNull(cache.getTile(tile(2)));
+
+		gate.countDown();
+		cache.flush();
+		assertNotNull(mem.getTile(tile(1)));
+		assertArrayEquals(data(tile(1), 0), read(cache, tile(1)));
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldCoalesceWrites() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		MemoryCache mem = new MemoryCache(gate);
+		WriteBehindTileCache cache = new WriteBehindTileCache(mem, 4, 1);
+
+		/* first write blocks the writer */
+		write(cache, tile(0), 0);
+		for (int v = 0; v < 10; v++)
+			for (int i = 1; i < 4; i++)
+				write(cache, tile(i), v);
+
+		assertEquals(4, cache.getQueueSize());
+		assertArrayEquals(data(tile(2), 9), read(cache, tile(2)));
+
+		gate.countDown();
+		cache.flush();
+		assertEquals(4, mem.writes);
+		for (int i = 1; i < 4; i++)
+			assertArrayEquals(data(tile(i), 9), read(mem, tile(i)));
+
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldBlockWhenFull() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		MemoryCache mem = new MemoryCache(gate);
+		final WriteBehindTileCache cache = new WriteBehindTileCache(mem, 4, 2);
+
+		for (int i = 0; i < 4; i++)
+			write(cache, tile(i), 0);
+
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					write(cache, tile(10), 0);
+				} catch (IOException e) {
+					return;
+				}
+				done.countDown();
+			}
+		};
+		t.start();
+
+		/* queue is full */
+		assertTrue(!done.await(200, TimeUnit.MILLISECONDS));
+
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		cache.flush();
+		assertEquals(5, mem.writes);
+		cache.dispose();
+	}
+
+	@Test
+	public void shouldWriteThroughAfterDispose() throws Exception {
+		MemoryCache mem = new MemoryCache(new CountDownLatch(0));
+		WriteBehindTileCache cache = new WriteBehindTileCache(mem);
+
+		for (int i = 0; i < 10; i++)
+			write(cache, tile(i), 0);
+
+		cache.dispose();
+		assertEquals(10, mem.writes);
+
+		write(cache, tile(20), 0);
+		assertEquals(11, mem.writes);
+		assertEquals(0, cache.getQueueSize());
+	}
+}
@@ -0,0 +1,237 @@
+package org.oscim.tiling.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+
+public class LwHttpPipelineTest {
+	private MockHttpServer server;
+
+	@After
+	public void tearDown() throws Exception {
+		if (server != null)
+			server.close();
+	}
+
+	static class TestTile extends MapTile {
+		TestTile(int x, int y, int z) {
+			super(null, x, y, z);
+		}
+
+		void cancel() {
+			state = State.CANCEL;
+		}
+	}
+
+	/** stores the body of each decoded tile */
+	static class BodyDecoder implements ITileDecoder {
+		final ArrayList<String> bodies = new ArrayList<String>();
+
+		@Override
+		public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
+		        throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int len;
+			while ((len = is.read(buf)) >= 0)
+				out.write(buf, 0, len);
+
+			bodies.add(out.toString());
+			return true;
+		}
+	}
+
+	static class Sink implements ITileDataSink {
+		int success;
+		int failed;
+
+		@Override
+		public void process(MapElement element) {
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+			if (result == QueryResult.SUCCESS)
+				success++;
+			else
+				failed++;
+		}
+	}
+
+	static class TestTileSource extends UrlTileSource {
+		final BodyDecoder decoder = new BodyDecoder();
+
+		TestTileSource(String url) {
+			super(url, "/{Z}/{X}/{Y}.vtm");
+		}
+
+		@Override
+		public ITileDataSource getDataSource() {
+			return new UrlTileDataSource(this, decoder, getHttpEngine());
+		}
+	}
+
+	static TestTile[] tiles(int count) {
+		TestTile[] tiles = new TestTile[count];
+		for (int i = 0; i < count; i++)
+			tiles[i] = new TestTile(i, i + 1, 10);
+		return tiles;
+	}
+
+	static String path(Tile t) {
+		return "/tiles/" + t.zoomLevel + "/" + t.tileX + "/" + t.tileY + ".vtm";
+	}
+
+	/**
+	 * Load tiles in batches of the data source batch size, like the
+	 * TileLoader does.
+	 */
+	static void load(UrlTileDataSource ds, MapTile[] tiles, ITileDataSink sink) {
+		int batch = ds.getBatchSize();
+		MapTile[] next = new MapTile[batch];
+
+		for (int i = 0; i < tiles.length; i += batch) {
+			int n = Math.min(batch, tiles.length - i);
+			System.arraycopy(tiles, i, next, 0, n);
+			ds.setNextTiles(next, n);
+			for (int j = 0; j < n; j++)
+				ds.query(next[j], sink);
+			ds.setNextTiles(null, 0);
+		}
+	}
+
+	@Test
+	public void shouldReadPipelinedResponsesInOrder() throws Exception {
+		server = new MockHttpServer(0, 1000);
+		TestTileSource source = new TestTileSource(server.getUrl());
+		UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+		Sink sink = new Sink();
+
+		TestTile[] tiles = tiles(8);
+		load(ds, tiles, sink);
+		ds.destroy();
+
+		assertEquals(8, sink.success);
+		assertEquals(1, server.connections.get());
+		assertEquals(8, server.requests.get());
+
+		for (int i = 0; i < tiles.length; i++) {
+			String body = new String(server.body(path(tiles[i])));
+			assertEquals(body, source.decoder.bodies.get(i));
+		}
+	}
+
+	@Test
+	public void shouldSkipCanceledTilesWithoutReconnect() throws Exception {
+		server = new MockHttpServer(0, 1000);
+		TestTileSource source = new TestTileSource(server.getUrl());
+		UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+		Sink sink = new Sink();
+
+		TestTile[] tiles = tiles(4);
+		ds.setNextTiles(tiles, 4);
+
+		/* sends requests for all tiles */
+		ds.query(tiles[0], sink);
+		assertEquals(4, server.awaitRequests(4, 1000));
+
+		/* canceled after the request was sent */
+		tiles[1].cancel();
+		ds.query(tiles[2], sink);
+		ds.query(tiles[3], sink);
+		ds.setNextTiles(null, 0);
+
+		/* next batch on the same connection */
+		TestTile t = new TestTile(7, 7, 7);
+		ds.query(t, sink);
+		ds.destroy();
+
+		assertEquals(4, sink.success);
+		assertEquals(0, sink.failed);
+		assertEquals(1, server.connections.get());
+		assertEquals(new String(server.body(path(tiles[2]))), source.decoder.bodies.get(1));
+		assertEquals(new String(server.body(path(t))), source.decoder.bodies.get(3));
+	}
+
+	@Test
+	public void shouldNotRequestCanceledTiles() throws Exception {
+		server = new MockHttpServer(0, 100);
+		TestTileSource source = new TestTileSource(server.getUrl());
+		UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+		Sink sink = new Sink();
+
+		TestTile[] tiles = tiles(4);
+		tiles[2].cancel();
+		ds.setNextTiles(tiles, 4);
+		ds.query(tiles[0], sink);
+
+		/* no further request */
+		assertEquals(3, server.awaitRequests(4, 200));
+		ds.destroy();
+	}
+
+	@Test
+	public void shouldResendWhenServerClosesConnection() throws Exception {
+		server = new MockHttpServer(0, 1000);
+		server.closeAfter = 3;
+		TestTileSource source = new TestTileSource(server.getUrl());
+		UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+		Sink sink = new Sink();
+
+		TestTile[] tiles = tiles(8);
+		load(ds, tiles, sink);
+		ds.destroy();
+
+		assertEquals(8, sink.success);
+		assertTrue(server.connections.get() > 1);
+		for (int i = 0; i < tiles.length; i++) {
+			String body = new String(server.body(path(tiles[i])));
+			assertEquals(body, source.decoder.bodies.get(i));
+		}
+	}
+
+	/** @return number of round-trips to load 'count' tiles */
+	static int roundTrips(int depth, int count) throws Exception {
+		MockHttpServer server = new MockHttpServer(20, 1000);
+		try {
+			TestTileSource source = new TestTileSource(server.getUrl());
+			UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+			ds.setPipelineDepth(depth);
+			Sink sink = new Sink();
+
+			load(ds, tiles(count), sink);
+			ds.destroy();
+
+			assertEquals(count, sink.success);
+			assertEquals(count, server.requests.get());
+			assertEquals(1, server.connections.get());
+
+			return server.roundTrips.get();
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void shouldShareRoundTrips() throws Exception {
+		assertEquals(16, roundTrips(1, 16));
+		assertEquals(4, roundTrips(4, 16));
+	}
+}
@@ -0,0 +1,173 @@
+package org.oscim.tiling.source;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server on localhost which answers each GET with a
+ * body derived from the request path. Every response is delayed by the
+ * simulated round-trip time from the arrival of its request, responses
+ * on one connection are written in order of the requests.
+ */
+class MockHttpServer {
+	private final ServerSocket mServer;
+	private final long mRtt;
+	private final int mBodySize;
+
+	/** send 'Connection: close' after this number of responses, 0 never */
+	volatile int closeAfter;
+
+	final AtomicInteger connections = new AtomicInteger();
+	final AtomicInteger requests = new AtomicInteger();
+
+	/** requests which arrived while no response was pending on their
+	 * connection, i.e. the number of round-trips the client waited for */
+	final AtomicInteger roundTrips = new AtomicInteger();
+
+	/**
+	 * @param rtt simulated round-trip time in ms
+	 * @param bodySize size of the response body in bytes
+	 */
+	MockHttpServer(long rtt, int bodySize) throws IOException {
+		mRtt = rtt;
+		mBodySize = bodySize;
+		mServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+		Thread t = new Thread("MockHttpServer") {
+			@Override
+			public void run() {
+				while (!mServer.isClosed()) {
+					try {
+						serve(mServer.accept());
+					} catch (IOException e) {
+						/* closed */
+					}
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + mServer.getLocalPort() + "/tiles";
+	}
+
+	void close() throws IOException {
+		mServer.close();
+	}
+
+	/**
+	 * Wait until 'count' requests were received or timeout.
+	 * 
+	 * @return number of received requests
+	 */
+	int awaitRequests(int count, long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while (requests.get() < count && System.currentTimeMillis() < end)
+			Thread.sleep(1);
+		return requests.get();
+	}
+
+	/** @return the body sent for 'path' */
+	byte[] body(String path) {
+		byte[] p = path.getBytes();
+		byte[] body = new byte[Math.max(mBodySize, p.length)];
+		for (int i = 0; i < body.length; i++)
+			body[i] = p[i % p.length];
+		return body;
+	}
+
+	static class Request {
+		final String path;
+		final long due;
+
+		Request(String path, long due) {
+			this.path = path;
+			this.due = due;
+		}
+	}
+
+	private void serve(final Socket socket) throws IOException {
+		connections.incrementAndGet();
+		socket.setTcpNoDelay(true);
+
+		final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+		final AtomicInteger pending = new AtomicInteger();
+		final BufferedReader in = new BufferedReader(
+		        new InputStreamReader(socket.getInputStream()));
+
+		Thread reader = new Thread("MockHttpServer-read") {
+			@Override
+			public void run() {
+				try {
+					String line;
+					String path = null;
+					while ((line = in.readLine()) != null) {
+						if (line.startsWith("GET ")) {
+							path = line.split(" ")[1];
+						} else if (line.length() == 0 && path != null) {
+							requests.incrementAndGet();
+							if (pending.getAndIncrement() == 0)
+								roundTrips.incrementAndGet();
+							queue.put(new Request(path, System.currentTimeMillis() + mRtt));
+							path = null;
+						}
+					}
+				} catch (Exception e) {
+					/* closed */
+				}
+			}
+		};
+
+		Thread writer = new Thread("MockHttpServer-write") {
+			@Override
+			public void run() {
+				try {
+					OutputStream out = socket.getOutputStream();
+					for (int n = 1;; n++) {
+						Request r = queue.take();
+						long wait = r.due - System.currentTimeMillis();
+						if (wait > 0)
+							Thread.sleep(wait);
+
+						boolean close = (closeAfter > 0 && n == closeAfter);
+						byte[] body = body(r.path);
+						String header = "HTTP/1.1 200 OK\r\n"
+						        + "Content-Length: " + body.length + "\r\n"
+						        + (close ? "Connection: close\r\n" : "")
+						        + "\r\n";
+						byte[] h = header.getBytes();
+						byte[] response = new byte[h.length + body.length];
+						System.arraycopy(h, 0, response, 0, h.length);
+						System.arraycopy(body, 0, response, h.length, body.length);
+						/* before writing, the client may send the next
+						 * request as soon as it has read the response */
+						pending.decrementAndGet();
+						out.write(response);
+						out.flush();
+						if (close)
+							break;
+					}
+				} catch (Exception e) {
+					/* closed */
+				}
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+		};
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+	}
+}
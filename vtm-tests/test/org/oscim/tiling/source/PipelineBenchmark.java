@@ -0,0 +1,69 @@
+package org.oscim.tiling.source;
+
+import static org.oscim.tiling.source.LwHttpPipelineTest.load;
+import static org.oscim.tiling.source.LwHttpPipelineTest.tiles;
+
+import org.oscim.tiling.source.LwHttpPipelineTest.Sink;
+import org.oscim.tiling.source.LwHttpPipelineTest.TestTileSource;
+
+/**
+ * Measures tiles/sec of a UrlTileDataSource with LwHttp against a local
+ * MockHttpServer at simulated round-trip times, with and without
+ * pipelining of requests.
+ *
+ * Usage: PipelineBenchmark [tiles] [rtt ms...]
+ */
+public class PipelineBenchmark {
+
+	/** @return tiles/sec */
+	static double measure(long rtt, int depth, int count) throws Exception {
+		MockHttpServer server = new MockHttpServer(rtt, 20000);
+		try {
+			TestTileSource source = new TestTileSource(server.getUrl());
+			UrlTileDataSource ds = (UrlTileDataSource) source.getDataSource();
+			ds.setPipelineDepth(depth);
+			Sink sink = new Sink();
+
+			long t = System.nanoTime();
+			load(ds, tiles(count), sink);
+			t = System.nanoTime() - t;
+			ds.destroy();
+
+			if (sink.success != count)
+				throw new IllegalStateException("failed " + sink.failed);
+
+			return count / (t / 1e9);
+		} finally {
+			server.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+
+		long[] rtts = { 0, 10, 50, 100 };
+		if (args.length > 1) {
+			rtts = new long[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				rtts[i - 1] = Long.parseLong(args[i]);
+		}
+		int[] depths = { 1, 2, 4, LwHttp.MAX_PENDING };
+
+		/* warm up */
+		measure(0, 4, 500);
+
+		System.out.print("rtt(ms)");
+		for (int depth : depths)
+			System.out.print("\tdepth " + depth);
+		System.out.println("\t(tiles/sec)");
+
+		for (long rtt : rtts) {
+			System.out.print(rtt);
+			for (int depth : depths) {
+				double rate = measure(rtt, depth, count);
+				System.out.print("\t" + (int) rate);
+			}
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package org.oscim.tiling.source.geojson;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+/**
+ * Compare GeoJsonTileDecoder with properties as Map and in streaming
+ * mode, from InputStream and from ByteBuffer.
+ *
+ * Pass a directory of tiles named 'z_x_y.json' to use as corpus,
+ * otherwise synthetic highroad tiles are used.
+ */
+public class GeoJsonDecoderBenchmark {
+
+	static final int ITERATIONS = 20;
+
+	static class Sink implements ITileDataSink {
+		int points;
+
+		@Override
+		public void process(MapElement element) {
+			points += element.pointPos;
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	interface Run {
+		void decode(GeoJsonTileDecoder decoder, Tile tile, byte[] data, Sink sink)
+		        throws IOException;
+	}
+
+	static final Run STREAM = new Run() {
+		@Override
+		public void decode(GeoJsonTileDecoder decoder, Tile tile, byte[] data, Sink sink)
+		        throws IOException {
+			decoder.decode(tile, sink, new ByteArrayInputStream(data));
+		}
+	};
+
+	static final Run BUFFER = new Run() {
+		@Override
+		public void decode(GeoJsonTileDecoder decoder, Tile tile, byte[] data, Sink sink)
+		        throws IOException {
+			decoder.decode(tile, sink, ByteBuffer.wrap(data));
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<Tile> tiles = new ArrayList<Tile>();
+		ArrayList<byte[]> corpus = new ArrayList<byte[]>();
+
+		if (args.length > 0) {
+			for (File f : new File(args[0]).listFiles()) {
+				String[] zxy = f.getName().replace(".json", "").split("_");
+				if (zxy.length != 3)
+					continue;
+				tiles.add(new Tile(Integer.parseInt(zxy[1]), Integer.parseInt(zxy[2]),
+				                   Byte.parseByte(zxy[0])));
+				corpus.add(readFile(f));
+			}
+		} else {
+			for (int i = 0; i < 50; i++) {
+				tiles.add(GeoJsonTileDecoderTest.TILE);
+				corpus.add(GeoJsonTileDecoderTest.createTile(500, i));
+			}
+		}
+
+		long bytes = 0;
+		for (byte[] b : corpus)
+			bytes += b.length;
+		System.out.println(corpus.size() + " tiles, " + bytes / corpus.size() + " bytes per tile");
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println(String.format("map stream:       %s",
+			                                 run(false, STREAM, tiles, corpus)));
+			System.out.println(String.format("streaming stream: %s",
+			                                 run(true, STREAM, tiles, corpus)));
+			System.out.println(String.format("streaming buffer: %s",
+			                                 run(true, BUFFER, tiles, corpus)));
+		}
+	}
+
+	static String run(boolean streaming, Run run, ArrayList<Tile> tiles,
+	        ArrayList<byte[]> corpus) throws IOException {
+
+		HighroadJsonTileSource source = new HighroadJsonTileSource();
+		source.setStreaming(streaming);
+		GeoJsonTileDecoder decoder = new GeoJsonTileDecoder(source);
+		Sink sink = new Sink();
+
+		long alloc = allocatedBytes();
+		long t = System.nanoTime();
+
+		for (int n = 0; n < ITERATIONS; n++)
+			for (int i = 0; i < corpus.size(); i++)
+				run.decode(decoder, tiles.get(i), corpus.get(i), sink);
+
+		t = System.nanoTime() - t;
+		alloc = allocatedBytes() - alloc;
+
+		int count = ITERATIONS * corpus.size();
+		return String.format("%.2fms/tile, %dkB garbage/tile",
+		                     t / 1e6 / count, alloc / 1024 / count);
+	}
+
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean)
+			    .getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	static byte[] readFile(File f) throws IOException {
+		byte[] data = new byte[(int) f.length()];
+		FileInputStream is = new FileInputStream(f);
+		try {
+			int pos = 0, len;
+			while (pos < data.length && (len = is.read(data, pos, data.length - pos)) >= 0)
+				pos += len;
+		} finally {
+			is.close();
+		}
+		return data;
+	}
+}
@@ -0,0 +1,209 @@
+package org.oscim.tiling.source.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+public class GeoJsonTileDecoderTest {
+
+	static final String[] HIGHWAYS = {
+	        "motorway", "primary", "secondary", "residential", "service", "footway"
+	};
+
+	/**
+	 * @return highroad-like tile with 'features' lines, polygons and
+	 *         multi-lines with string, integer and nested properties.
+	 */
+	static byte[] createTile(int features, long seed) throws Exception {
+		Random r = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"type\":\"FeatureCollection\",\"features\":[");
+
+		for (int i = 0; i < features; i++) {
+			if (i > 0)
+				sb.append(',');
+
+			String type = (i % 10 == 3) ? "Polygon" : (i % 10 == 7) ? "MultiLineString" : "LineString";
+			boolean nested = !type.equals("LineString");
+
+			sb.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"")
+			    .append(type).append("\",\"coordinates\":");
+			if (nested)
+				sb.append('[');
+			sb.append('[');
+
+			double lon = 13.38 + r.nextDouble() * 0.02;
+			double lat = 52.50 + r.nextDouble() * 0.01;
+			for (int j = 0, n = 4 + r.nextInt(30); j < n; j++) {
+				if (j > 0)
+					sb.append(',');
+				sb.append('[').append(lon).append(',').append(lat).append(']');
+				lon += r.nextGaussian() * 1e-4;
+				lat += r.nextGaussian() * 1e-4;
+			}
+			sb.append(']');
+			if (nested)
+				sb.append(']');
+
+			sb.append("},\"properties\":{");
+			sb.append("\"highway\":\"").append(HIGHWAYS[r.nextInt(HIGHWAYS.length)]).append('"');
+			sb.append(",\"is_link\":\"").append(r.nextInt(5) == 0 ? "yes" : "no").append('"');
+			sb.append(",\"is_tunnel\":\"").append(r.nextInt(10) == 0 ? "yes" : "no").append('"');
+			sb.append(",\"sort_key\":").append(r.nextInt(10) - 5);
+			sb.append(",\"osm_id\":").append(r.nextInt(1 << 24));
+			sb.append(",\"name\":\"Straße ").append(r.nextInt(100)).append('"');
+			if (i % 5 == 0)
+				sb.append(",\"other\":{\"railway\":\"rail\",\"list\":[1,2]}");
+			if (i % 20 == 1)
+				sb.append(",\"railway\":\"tram\"");
+			sb.append("}}");
+		}
+		sb.append("]}");
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	/** records all elements as string */
+	static class Sink implements ITileDataSink {
+		final ArrayList<String> elements = new ArrayList<String>();
+
+		@Override
+		public void process(MapElement e) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(e.type).append(' ').append(e.layer).append(' ');
+			for (int i = 0; i < e.tags.numTags; i++)
+				sb.append(e.tags.tags[i]);
+			sb.append(' ');
+			for (int i = 0; i < e.indexPos + 1; i++)
+				sb.append(e.index[i]).append(';');
+			for (int i = 0; i < e.pointPos; i++)
+				sb.append(e.points[i]).append(',');
+			elements.add(sb.toString());
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	static final Tile TILE = new Tile(8802, 5373, (byte) 14);
+
+	static Sink decode(boolean streaming, byte[] data) throws Exception {
+		HighroadJsonTileSource source = new HighroadJsonTileSource();
+		source.setStreaming(streaming);
+		Sink sink = new Sink();
+		assertTrue(new GeoJsonTileDecoder(source)
+		    .decode(TILE, sink, new ByteArrayInputStream(data)));
+		return sink;
+	}
+
+	@Test
+	public void shouldDecodeStreamingLikeMap() throws Exception {
+		byte[] data = createTile(200, 1);
+
+		Sink map = decode(false, data);
+		Sink streaming = decode(true, data);
+
+		assertEquals(200, map.elements.size());
+		assertEquals(map.elements, streaming.elements);
+	}
+
+	@Test
+	public void shouldSkipIntegerValuesLikeMap() throws Exception {
+		String line = "\"geometry\":{\"type\":\"LineString\","
+		        + "\"coordinates\":[[13.38,52.5],[13.39,52.51]]}";
+		byte[] data = ("{\"type\":\"FeatureCollection\",\"features\":["
+		        + "{\"type\":\"Feature\"," + line
+		        + ",\"properties\":{\"highway\":5,\"railway\":3}},"
+		        + "{\"type\":\"Feature\"," + line
+		        + ",\"properties\":{\"highway\":\"primary\",\"railway\":7}}"
+		        + "]}").getBytes("UTF-8");
+
+		Sink map = decode(false, data);
+		Sink streaming = decode(true, data);
+
+		/* the first has no tags left */
+		assertEquals(1, map.elements.size());
+		assertEquals(map.elements, streaming.elements);
+		for (String e : streaming.elements)
+			assertTrue(e, !e.contains("railway"));
+	}
+
+	@Test
+	public void shouldSkipNestedProperties() throws Exception {
+		byte[] data = createTile(10, 2);
+		for (String e : decode(true, data).elements)
+			assertTrue(e, !e.contains("railway,rail]"));
+	}
+
+	@Test
+	public void shouldDecodeBuffers() throws Exception {
+		byte[] data = createTile(50, 3);
+		Sink expected = decode(true, data);
+
+		HighroadJsonTileSource source = new HighroadJsonTileSource();
+		GeoJsonTileDecoder decoder = new GeoJsonTileDecoder(source);
+
+		/* heap buffer at offset */
+		byte[] padded = new byte[data.length + 10];
+		System.arraycopy(data, 0, padded, 5, data.length);
+		ByteBuffer buf = ByteBuffer.wrap(padded, 5, data.length).slice();
+
+		Sink sink = new Sink();
+		assertTrue(decoder.decode(TILE, sink, buf));
+		assertEquals(expected.elements, sink.elements);
+		assertEquals(0, buf.position());
+
+		/* direct buffer */
+		buf = ByteBuffer.allocateDirect(data.length);
+		buf.put(data).flip();
+
+		sink = new Sink();
+		assertTrue(decoder.decode(TILE, sink, buf));
+		assertEquals(expected.elements, sink.elements);
+	}
+
+	@Test
+	public void shouldReuseInternedTags() throws Exception {
+		final ArrayList<MapElement> elements = new ArrayList<MapElement>();
+		HighroadJsonTileSource source = new HighroadJsonTileSource() {
+			@Override
+			public void decodeTags(MapElement mapElement, org.oscim.core.TagSet properties) {
+				assertSame("highway", properties.tags[0].key);
+				assertSame(properties.getValue("highway").intern(),
+				           properties.getValue("highway"));
+
+				super.decodeTags(mapElement, properties);
+				MapElement e = new MapElement();
+				e.tags.set(mapElement.tags.asArray());
+				elements.add(e);
+			}
+		};
+		byte[] data = createTile(100, 4);
+		assertTrue(new GeoJsonTileDecoder(source)
+		    .decode(TILE, new Sink(), new ByteArrayInputStream(data)));
+
+		/* same property Tag instances for same key and value */
+		for (MapElement a : elements) {
+			for (MapElement b : elements) {
+				if (a.tags.tags[0].toString().equals(b.tags.tags[0].toString())
+				        && a.tags.tags[0].value.indexOf("_link") < 0)
+					assertSame(a.tags.tags[0], b.tags.tags[0]);
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSource;
+
+public class LatitudeTableTest {
+
+	static double divy(int zoom) {
+		return (Tile.SIZE << zoom) / (Math.PI * 4);
+	}
+
+	@Test
+	public void shouldStayWithinErrorBound() {
+		Random r = new Random(1);
+		LatitudeTable table = new LatitudeTable();
+		double maxError = 0;
+
+		for (int zoom = 0; zoom <= 22; zoom++) {
+			double divy = divy(zoom);
+
+			/* ranges of 1 to 64 blocks at base zoom levels up to 14 */
+			for (int n = 0; n < 100; n++) {
+				int baseZoom = Math.min(zoom, r.nextInt(15));
+				long tileY = (long) (r.nextDouble() * (1 << baseZoom));
+				long rows = Math.min(1 + r.nextInt(64), (1 << baseZoom) - tileY);
+
+				double maxLat = Projection.tileYToLatitude(tileY, baseZoom) * 1e6;
+				double minLat = Projection.tileYToLatitude(tileY + rows, baseZoom) * 1e6;
+				if (!table.set(minLat, maxLat, divy))
+					continue;
+
+				for (int i = 0; i < 100; i++) {
+					double lat = minLat + r.nextDouble() * (maxLat - minLat);
+					assertTrue(table.contains(lat));
+
+					double error = Math.abs(table.project(lat)
+					        - LatitudeTable.exact(lat, divy));
+					maxError = Math.max(maxError, error);
+				}
+				assertEquals(LatitudeTable.exact(maxLat, divy), table.project(maxLat), 1e-6);
+				assertEquals(LatitudeTable.exact(minLat, divy), table.project(minLat), 1e-6);
+			}
+		}
+		assertTrue("max error " + maxError, maxError <= LatitudeTable.MAX_ERROR);
+	}
+
+	@Test
+	public void shouldNotCoverPoles() {
+		LatitudeTable table = new LatitudeTable();
+		assertFalse(table.set(80e6, 90e6, divy(10)));
+		assertFalse(table.contains(85e6));
+
+		assertTrue(table.set(50e6, 51e6, divy(10)));
+		assertFalse(table.contains(49e6));
+		assertFalse(table.contains(52e6));
+
+		/* too many entries needed */
+		assertFalse(table.set(-80e6, 80e6, divy(20)));
+	}
+
+	static ArrayList<ElementRecorder> query(MapFileTileSource source) {
+		ITileDataSource db = source.getDataSource();
+		ArrayList<ElementRecorder> result = new ArrayList<ElementRecorder>();
+		for (MapTile tile : MapDatabaseTest.tiles()) {
+			ElementRecorder r = new ElementRecorder();
+			db.query(tile, r);
+			result.add(r);
+		}
+		db.destroy();
+		return result;
+	}
+
+	@Test
+	public void shouldProjectWays() throws Exception {
+		File file = TestMapFile.write(1);
+		MapFileTileSource source = new MapFileTileSource();
+		source.setMapFile(file.getPath());
+		assertTrue(source.open().isSuccess());
+		ArrayList<ElementRecorder> exact = query(source);
+
+		source.setFastProjection(true);
+		ArrayList<ElementRecorder> fast = query(source);
+		source.close();
+
+		int points = 0;
+		for (int i = 0; i < exact.size(); i++) {
+			ElementRecorder a = exact.get(i), b = fast.get(i);
+			assertEquals(a.size(), b.size());
+			for (int j = 0; j < a.size(); j++) {
+				MapElement e = a.get(j), f = b.get(j);
+				assertEquals(e.pointPos, f.pointPos);
+				/* float precision of tile coordinates. Polygons are clipped
+				 * to the tile, the error of intersections depends on the
+				 * slope of the clipped segment */
+				double max = e.isPoly() ? 1 : LatitudeTable.MAX_ERROR;
+				for (int k = 0; k < e.pointPos; k++) {
+					double eps = Math.ulp(Math.abs(e.points[k])) * 2;
+					assertEquals(e.points[k], f.points[k], max + eps);
+				}
+				points += e.pointPos;
+			}
+		}
+		assertTrue(points > 1000);
+	}
+}
@@ -0,0 +1,155 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+
+public class MapDatabaseTest {
+
+	/** records all elements as string */
+	static class Sink implements ITileDataSink {
+		final ArrayList<String> elements = new ArrayList<String>();
+		QueryResult result;
+
+		@Override
+		public void process(MapElement e) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(e.type).append(' ').append(e.layer).append(' ');
+			for (int i = 0; i < e.tags.numTags; i++)
+				sb.append(e.tags.tags[i]);
+			sb.append(' ');
+			/* index is not used for points */
+			for (int i = 0; !e.isPoint() && i < e.index.length && e.index[i] >= 0; i++)
+				sb.append(e.index[i]).append(';');
+			for (int i = 0; i < e.pointPos; i++)
+				sb.append(e.points[i]).append(',');
+			elements.add(sb.toString());
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+			this.result = result;
+		}
+	}
+
+	File file;
+	ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		file = TestMapFile.write(1);
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	MapFileTileSource open(boolean mapped) {
+		MapFileTileSource source = new MapFileTileSource();
+		source.setMapFile(file.getPath());
+		source.setMemoryMapped(mapped);
+		assertTrue(source.open().isSuccess());
+		return source;
+	}
+
+	/** tiles at zoom 5 to 10 around the center of the map */
+	static ArrayList<MapTile> tiles() {
+		double x = MercatorProjection.longitudeToX(13.5);
+		double y = MercatorProjection.latitudeToY(51.5);
+		ArrayList<MapTile> tiles = new ArrayList<MapTile>();
+		for (int z = 5; z <= 10; z++) {
+			int tx = (int) (x * (1 << z));
+			int ty = (int) (y * (1 << z));
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dx = -1; dx <= 1; dx++)
+					tiles.add(new MapTile(null, tx + dx, ty + dy, z));
+		}
+		return tiles;
+	}
+
+	static ArrayList<Sink> query(MapFileTileSource source) {
+		ITileDataSource db = source.getDataSource();
+		ArrayList<Sink> result = new ArrayList<Sink>();
+		for (MapTile tile : tiles()) {
+			Sink sink = new Sink();
+			db.query(tile, sink);
+			assertEquals(ITileDataSink.QueryResult.SUCCESS, sink.result);
+			result.add(sink);
+		}
+		db.destroy();
+		return result;
+	}
+
+	static void assertSame(ArrayList<Sink> expected, ArrayList<Sink> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.get(i).elements, actual.get(i).elements);
+	}
+
+	@Test
+	public void shouldDecodeBlocks() {
+		MapFileTileSource source = open(false);
+		ArrayList<Sink> serial = query(source);
+
+		/* zoom 5 tile contains most blocks */
+		assertTrue(serial.get(4).elements.size() > 500);
+		/* at base zoom only one block */
+		assertTrue(serial.get(serial.size() - 5).elements.size() > 0);
+		source.close();
+	}
+
+	@Test
+	public void shouldDecodeSameInParallel() {
+		MapFileTileSource source = open(false);
+		ArrayList<Sink> serial = query(source);
+
+		source.setBlockExecutor(executor, 4);
+		assertSame(serial, query(source));
+		source.close();
+
+		source = open(true);
+		source.setBlockExecutor(executor, 4);
+		assertSame(serial, query(source));
+		source.close();
+	}
+
+	@Test
+	public void shouldDecodeWithoutExecutorThreads() {
+		MapFileTileSource source = open(false);
+		ArrayList<Sink> serial = query(source);
+
+		/* jobs are never started */
+		source.setBlockExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+			}
+		}, 4);
+		assertSame(serial, query(source));
+
+		executor.shutdown();
+		source.setBlockExecutor(executor, 4);
+		assertSame(serial, query(source));
+		source.close();
+	}
+}
@@ -0,0 +1,103 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedReadBufferTest {
+	private static final int NUM = 10000;
+	private static final int OFFSET = 17;
+
+	private File file;
+	private int length;
+	private int[] values;
+
+	static void writeUnsigned(ByteArrayOutputStream out, int v) {
+		while ((v & ~0x7f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+	static void writeSigned(ByteArrayOutputStream out, int v) {
+		int sign = v < 0 ? 0x40 : 0;
+		v = Math.abs(v);
+		while ((v & ~0x3f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v | sign);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		Random r = new Random(1);
+		values = new int[NUM];
+		for (int i = 0; i < NUM; i++)
+			values[i] = r.nextInt() >> r.nextInt(32);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		/* some garbage before the block */
+		for (int i = 0; i < OFFSET; i++)
+			out.write(0xff);
+
+		for (int i = 0; i < NUM; i++) {
+			writeSigned(out, values[i]);
+			writeUnsigned(out, values[i] & 0x0fffffff);
+			out.write(values[i] >> 24);
+			out.write(values[i] >> 16);
+			out.write(values[i] >> 8);
+			out.write(values[i]);
+		}
+		byte[] str = "Straße".getBytes("UTF-8");
+		writeUnsigned(out, str.length);
+		out.write(str);
+
+		byte[] data = out.toByteArray();
+		length = data.length - OFFSET;
+
+		file = File.createTempFile("vtm", ".map");
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(data);
+		fos.close();
+	}
+
+	@Test
+	public void shouldDecodeSameAsReadBuffer() throws Exception {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		ReadBuffer rb = new ReadBuffer(in);
+		assertEquals(true, rb.readFromFile(OFFSET, length));
+
+		MappedReadBuffer mb = new MappedReadBuffer(new MappedFile(file));
+		assertEquals(true, mb.readFromFile(OFFSET, length));
+		assertEquals(length, mb.getBufferSize());
+
+		for (int i = 0; i < NUM; i++) {
+			int v = rb.readSignedInt();
+			assertEquals(values[i], v);
+			assertEquals(v, mb.readSignedInt());
+			assertEquals(rb.readUnsignedInt(), mb.readUnsignedInt());
+			assertEquals(rb.readInt(), mb.readInt());
+		}
+		assertEquals("Straße", rb.readUTF8EncodedString());
+		assertEquals("Straße", mb.readUTF8EncodedString());
+		assertEquals(rb.getBufferPosition(), mb.getBufferPosition());
+
+		in.close();
+	}
+
+	@Test
+	public void shouldFailOutsideOfFile() throws Exception {
+		MappedReadBuffer mb = new MappedReadBuffer(new MappedFile(file));
+		assertEquals(false, mb.readFromFile(OFFSET, length + 1));
+	}
+}
@@ -0,0 +1,183 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink.QueryResult;
+import org.oscim.tiling.ITileDataSource;
+
+public class OverviewCacheTest {
+
+	static final int MAX_ZOOM = 8;
+
+	File file;
+	File cacheFile;
+
+	@Before
+	public void setUp() throws Exception {
+		file = TestMapFile.write(1);
+		cacheFile = File.createTempFile("vtm", ".overview");
+		cacheFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		cacheFile.delete();
+	}
+
+	MapFileTileSource open(File mapFile, boolean cached) {
+		MapFileTileSource source = new MapFileTileSource();
+		source.setMapFile(mapFile.getPath());
+		if (cached)
+			source.setOverviewCache(cacheFile, MAX_ZOOM);
+		assertTrue(source.open().isSuccess());
+		return source;
+	}
+
+	static class Recorder extends ElementRecorder {
+		QueryResult result;
+
+		@Override
+		public void completed(QueryResult result) {
+			this.result = result;
+		}
+	}
+
+	static ArrayList<Recorder> query(MapFileTileSource source) {
+		ITileDataSource db = source.getDataSource();
+		ArrayList<Recorder> result = new ArrayList<Recorder>();
+		for (MapTile tile : MapDatabaseTest.tiles()) {
+			Recorder r = new Recorder();
+			db.query(tile, r);
+			assertEquals(QueryResult.SUCCESS, r.result);
+			result.add(r);
+		}
+		db.destroy();
+		return result;
+	}
+
+	static void assertSimilar(ArrayList<Recorder> expected, ArrayList<Recorder> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			ElementRecorder a = expected.get(i), b = actual.get(i);
+			assertEquals(a.size(), b.size());
+
+			for (int j = 0; j < a.size(); j++) {
+				MapElement e = a.get(j), f = b.get(j);
+				assertEquals(e.type, f.type);
+				assertEquals(e.layer, f.layer);
+				assertEquals(e.tags.numTags, f.tags.numTags);
+				for (int t = 0; t < e.tags.numTags; t++) {
+					assertEquals(e.tags.tags[t].key, f.tags.tags[t].key);
+					assertEquals(e.tags.tags[t].value, f.tags.tags[t].value);
+				}
+				if (!e.isPoint()) {
+					for (int k = 0; k < e.index.length && e.index[k] >= 0; k++)
+						assertEquals(e.index[k], f.index[k]);
+				}
+				assertEquals(e.pointPos, f.pointPos);
+				for (int k = 0; k < e.pointPos; k++)
+					assertEquals(e.points[k], f.points[k], 0.5 / OverviewCache.COORD_SCALE);
+			}
+		}
+	}
+
+	@Test
+	public void shouldReplayFromCache() {
+		MapFileTileSource source = open(file, false);
+		ArrayList<Recorder> expected = query(source);
+		source.close();
+
+		/* fill the cache */
+		source = open(file, true);
+		assertEquals(0, source.mOverviewCache.size());
+		assertSimilar(expected, query(source));
+		/* tiles at zoom 5 to 8 */
+		assertEquals(4 * 9, source.mOverviewCache.size());
+
+		assertSimilar(expected, query(source));
+		source.close();
+
+		/* reopen */
+		source = open(file, true);
+		assertEquals(4 * 9, source.mOverviewCache.size());
+		assertSimilar(expected, query(source));
+		source.close();
+	}
+
+	@Test
+	public void shouldUseTagsOfMapFile() {
+		MapFileTileSource source = open(file, true);
+		query(source);
+		ElementRecorder cached = query(source).get(4);
+
+		List<Tag> tags = new ArrayList<Tag>();
+		tags.addAll(Arrays.asList(source.fileInfo.poiTags));
+		tags.addAll(Arrays.asList(source.fileInfo.wayTags));
+
+		/* first tag is always one of the map file */
+		for (int i = 0; i < cached.size(); i++) {
+			Tag tag = cached.get(i).tags.tags[0];
+			assertSame(tag, tags.get(tags.indexOf(tag)));
+		}
+		source.close();
+	}
+
+	@Test
+	public void shouldBuildCache() {
+		MapFileTileSource source = open(file, true);
+		int tiles = source.buildOverviewCache();
+		assertTrue(tiles > 9 * 4);
+		assertEquals(tiles, source.mOverviewCache.size());
+		assertEquals(0, source.buildOverviewCache());
+		source.close();
+	}
+
+	@Test
+	public void shouldClearCacheOfOtherMapFile() throws Exception {
+		MapFileTileSource source = open(file, true);
+		query(source);
+		assertTrue(source.mOverviewCache.size() > 0);
+		source.close();
+
+		/* different size */
+		File other = TestMapFile.write(2);
+		assertTrue(other.length() != file.length());
+
+		source = open(other, true);
+		assertEquals(0, source.mOverviewCache.size());
+		source.close();
+	}
+
+	@Test
+	public void shouldDropPartialRecord() throws Exception {
+		MapFileTileSource source = open(file, true);
+		query(source);
+		int size = source.mOverviewCache.size();
+		source.close();
+
+		RandomAccessFile f = new RandomAccessFile(cacheFile, "rw");
+		f.setLength(f.length() - 3);
+		f.close();
+
+		source = open(file, true);
+		assertEquals(size - 1, source.mOverviewCache.size());
+		/* and add it again */
+		query(source);
+		assertEquals(size, source.mOverviewCache.size());
+		source.close();
+	}
+}
@@ -0,0 +1,94 @@
+package org.oscim.tiling.source.mapfile;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+
+/**
+ * Compare query latency of low zoom tiles with serial and parallel block
+ * decoding.
+ *
+ * Pass a map file and 'lat lon' of the center to use, otherwise a
+ * synthetic map file is used.
+ */
+public class ParallelBlocksBenchmark {
+
+	static final int ITERATIONS = 20;
+
+	static class Sink implements ITileDataSink {
+		int points;
+
+		@Override
+		public void process(MapElement element) {
+			points += element.pointPos;
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String file;
+		double lat = 51.5, lon = 13.5;
+		if (args.length > 0) {
+			file = args[0];
+			if (args.length > 2) {
+				lat = Double.parseDouble(args[1]);
+				lon = Double.parseDouble(args[2]);
+			}
+		} else {
+			file = TestMapFile.write(1).getPath();
+		}
+
+		ArrayList<MapTile> tiles = new ArrayList<MapTile>();
+		double x = MercatorProjection.longitudeToX(lon);
+		double y = MercatorProjection.latitudeToY(lat);
+		for (int z = 5; z <= 8; z++)
+			tiles.add(new MapTile(null, (int) (x * (1 << z)), (int) (y * (1 << z)), z));
+
+		int cores = Math.max(4, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(cores);
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("serial:     " + run(file, null, 0, tiles));
+			for (int p = 2; p <= cores; p *= 2)
+				System.out.println("parallel " + p + ": " + run(file, executor, p, tiles));
+		}
+		executor.shutdown();
+	}
+
+	static String run(String file, ExecutorService executor, int parallelism,
+	        ArrayList<MapTile> tiles) {
+		MapFileTileSource source = new MapFileTileSource();
+		source.setMapFile(file);
+		source.open();
+		source.setBlockExecutor(executor, parallelism);
+
+		ITileDataSource db = source.getDataSource();
+		Sink sink = new Sink();
+		StringBuilder sb = new StringBuilder();
+
+		for (MapTile tile : tiles) {
+			long t = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++)
+				db.query(tile, sink);
+			t = System.nanoTime() - t;
+			sb.append(String.format(" z%d %.2fms", tile.zoomLevel, t / 1e6 / ITERATIONS));
+		}
+		db.destroy();
+		source.close();
+		return sb.toString();
+	}
+}
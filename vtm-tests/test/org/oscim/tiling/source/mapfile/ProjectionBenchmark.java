@@ -0,0 +1,116 @@
+package org.oscim.tiling.source.mapfile;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSource;
+
+/**
+ * Compare the exact latitude projection with LatitudeTable, for random
+ * latitudes of one block and for queries of a map file.
+ *
+ * Pass a map file and 'lat lon' of the center to use, otherwise a
+ * synthetic map file is used.
+ */
+public class ProjectionBenchmark {
+
+	static final int ITERATIONS = 20;
+	static final int NUM_POINTS = 1 << 20;
+
+	static double sink;
+
+	static void projectPoints() {
+		Random r = new Random(1);
+		double divy = (256 << 16) / (Math.PI * 4);
+
+		/* one block at base zoom 14 */
+		long tileY = (long) (MercatorProjection.latitudeToY(52.5) * (1 << 14));
+		double maxLat = Projection.tileYToLatitude(tileY, 14) * 1e6;
+		double minLat = Projection.tileYToLatitude(tileY + 1, 14) * 1e6;
+
+		double[] lat = new double[NUM_POINTS];
+		for (int i = 0; i < NUM_POINTS; i++)
+			lat[i] = minLat + r.nextDouble() * (maxLat - minLat);
+
+		LatitudeTable table = new LatitudeTable();
+
+		for (int it = 0; it < ITERATIONS; it++) {
+			long start = System.nanoTime();
+			double sum = 0;
+			for (int i = 0; i < NUM_POINTS; i++)
+				sum += LatitudeTable.exact(lat[i], divy);
+			long exact = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			table.set(minLat, maxLat, divy);
+			for (int i = 0; i < NUM_POINTS; i++)
+				if (table.contains(lat[i]))
+					sum -= table.project(lat[i]);
+			long fast = System.nanoTime() - start;
+			sink += sum;
+
+			if (it == ITERATIONS - 1)
+				System.out.println("project: exact " + (double) exact / NUM_POINTS
+				        + " ns, table " + (double) fast / NUM_POINTS + " ns");
+		}
+	}
+
+	static long query(MapFileTileSource source, ArrayList<MapTile> tiles) {
+		ITileDataSource db = source.getDataSource();
+		ParallelBlocksBenchmark.Sink s = new ParallelBlocksBenchmark.Sink();
+		long start = System.nanoTime();
+		for (MapTile tile : tiles)
+			db.query(tile, s);
+		long time = System.nanoTime() - start;
+		db.destroy();
+		return time;
+	}
+
+	public static void main(String[] args) throws Exception {
+		projectPoints();
+
+		String file;
+		double lat = 51.5, lon = 13.5;
+		if (args.length > 0) {
+			file = args[0];
+			if (args.length > 2) {
+				lat = Double.parseDouble(args[1]);
+				lon = Double.parseDouble(args[2]);
+			}
+		} else {
+			file = TestMapFile.write(1).getPath();
+		}
+
+		ArrayList<MapTile> tiles = new ArrayList<MapTile>();
+		double x = MercatorProjection.longitudeToX(lon);
+		double y = MercatorProjection.latitudeToY(lat);
+		for (int z = 8; z <= 16; z++) {
+			int tx = (int) (x * (1 << z));
+			int ty = (int) (y * (1 << z));
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dx = -1; dx <= 1; dx++)
+					tiles.add(new MapTile(null, tx + dx, ty + dy, z));
+		}
+
+		MapFileTileSource source = new MapFileTileSource();
+		source.setMapFile(file);
+		if (!source.open().isSuccess()) {
+			System.out.println("could not open " + file);
+			return;
+		}
+
+		long exact = 0, fast = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			source.setFastProjection(false);
+			exact = query(source, tiles);
+			source.setFastProjection(true);
+			fast = query(source, tiles);
+		}
+		System.out.println("query " + tiles.size() + " tiles: exact "
+		        + exact / 1e6 + " ms, table " + fast / 1e6 + " ms");
+
+		source.close();
+	}
+}
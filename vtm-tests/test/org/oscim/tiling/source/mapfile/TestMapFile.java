@@ -0,0 +1,201 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.oscim.tiling.source.mapfile.MappedReadBufferTest.writeSigned;
+import static org.oscim.tiling.source.mapfile.MappedReadBufferTest.writeUnsigned;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+
+/**
+ * Writes a version 3 map file with one sub-file and random POIs, lines
+ * and polygons in each block.
+ */
+class TestMapFile {
+
+	static final String[] POI_TAGS = { "amenity=cafe", "shop=bakery" };
+
+	static final String[] WAY_TAGS = {
+	        "highway=primary", "highway=residential", "building=yes", "natural=water"
+	};
+
+	/** bounding box in microdegrees */
+	static final int MIN_LAT = 50000000, MIN_LON = 11000000;
+	static final int MAX_LAT = 53000000, MAX_LON = 16000000;
+
+	static final byte BASE_ZOOM = 10;
+	static final byte MIN_ZOOM = 0;
+	static final byte MAX_ZOOM = 12;
+
+	/** every n-th block is empty */
+	static final int EMPTY_BLOCKS = 7;
+
+	static File write(long seed) throws IOException {
+		int left = (int) Projection.longitudeToTileX(MIN_LON / 1e6, BASE_ZOOM);
+		int right = (int) Projection.longitudeToTileX(MAX_LON / 1e6, BASE_ZOOM);
+		int top = (int) Projection.latitudeToTileY(MAX_LAT / 1e6, BASE_ZOOM);
+		int bottom = (int) Projection.latitudeToTileY(MIN_LAT / 1e6, BASE_ZOOM);
+
+		int cols = right - left + 1;
+		int rows = bottom - top + 1;
+		int numBlocks = cols * rows;
+
+		Random r = new Random(seed);
+
+		/* blocks relative to sub-file start, after the index */
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		long[] pointers = new long[numBlocks];
+		int indexSize = numBlocks * SubFileParameter.BYTES_PER_INDEX_ENTRY;
+
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				int block = row * cols + col;
+				pointers[block] = indexSize + blocks.size();
+				if (block % EMPTY_BLOCKS == EMPTY_BLOCKS - 1)
+					continue;
+
+				int lat = (int) (Projection.tileYToLatitude(top + row, BASE_ZOOM) * 1e6);
+				int lon = (int) (Projection.tileXToLongitude(left + col, BASE_ZOOM) * 1e6);
+				int latSpan = lat - (int) (Projection.tileYToLatitude(top + row + 1, BASE_ZOOM) * 1e6);
+				int lonSpan = (int) (Projection.tileXToLongitude(left + col + 1, BASE_ZOOM) * 1e6) - lon;
+
+				blocks.write(createBlock(r, latSpan, lonSpan));
+			}
+		}
+
+		ByteArrayOutputStream subFile = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(subFile);
+		for (int i = 0; i < numBlocks; i++) {
+			long p = pointers[i];
+			out.write((int) (p >> 32));
+			out.writeInt((int) p);
+		}
+		blocks.writeTo(subFile);
+
+		byte[] magic = "mapsforge binary OSM".getBytes("UTF-8");
+
+		/* header fields after magic bytes and header size */
+		ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		DataOutputStream f = new DataOutputStream(fields);
+		f.writeInt(3);
+		int fileSizePos = fields.size();
+		f.writeLong(0);
+		f.writeLong(1400000000000L);
+		f.writeInt(MIN_LAT);
+		f.writeInt(MIN_LON);
+		f.writeInt(MAX_LAT);
+		f.writeInt(MAX_LON);
+		f.writeShort(256);
+		writeString(fields, "Mercator");
+		f.writeByte(0);
+		f.writeShort(POI_TAGS.length);
+		for (String t : POI_TAGS)
+			writeString(fields, t);
+		f.writeShort(WAY_TAGS.length);
+		for (String t : WAY_TAGS)
+			writeString(fields, t);
+		f.writeByte(1);
+		f.writeByte(BASE_ZOOM);
+		f.writeByte(MIN_ZOOM);
+		f.writeByte(MAX_ZOOM);
+		int startAddress = magic.length + 4 + fields.size() + 16;
+		f.writeLong(startAddress);
+		f.writeLong(subFile.size());
+
+		byte[] data = fields.toByteArray();
+		long fileSize = startAddress + subFile.size();
+		for (int i = 0; i < 8; i++)
+			data[fileSizePos + i] = (byte) (fileSize >> (56 - i * 8));
+
+		File file = File.createTempFile("vtm", ".map");
+		file.deleteOnExit();
+		out = new DataOutputStream(new FileOutputStream(file));
+		out.write(magic);
+		out.writeInt(data.length);
+		out.write(data);
+		subFile.writeTo(out);
+		out.close();
+
+		return file;
+	}
+
+	static byte[] createBlock(Random r, int latSpan, int lonSpan) throws IOException {
+		int zoomLevels = MAX_ZOOM - MIN_ZOOM + 1;
+		int numPois = 1 + r.nextInt(4);
+		int numWays = 2 + r.nextInt(6);
+
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		/* all elements are visible from MIN_ZOOM */
+		for (int z = 0; z < zoomLevels; z++) {
+			writeUnsigned(block, z == 0 ? numPois : 0);
+			writeUnsigned(block, z == 0 ? numWays : 0);
+		}
+
+		ByteArrayOutputStream pois = new ByteArrayOutputStream();
+		for (int i = 0; i < numPois; i++) {
+			writeSigned(pois, -r.nextInt(latSpan));
+			writeSigned(pois, r.nextInt(lonSpan));
+			pois.write(r.nextInt(11) << 4 | 1);
+			writeUnsigned(pois, r.nextInt(POI_TAGS.length));
+			boolean name = r.nextBoolean();
+			pois.write(name ? 0x80 : 0);
+			if (name)
+				writeString(pois, "poi " + r.nextInt(100));
+		}
+		writeUnsigned(block, pois.size());
+		pois.writeTo(block);
+
+		for (int i = 0; i < numWays; i++) {
+			ByteArrayOutputStream way = new ByteArrayOutputStream();
+			int tag = r.nextInt(WAY_TAGS.length);
+			boolean poly = tag >= 2;
+
+			way.write(r.nextInt(11) << 4 | 1);
+			writeUnsigned(way, tag);
+			boolean name = r.nextBoolean();
+			way.write(name ? 0x80 : 0);
+			if (name)
+				writeString(way, "way " + r.nextInt(100));
+
+			/* one coordinate block, single delta */
+			writeUnsigned(way, 1);
+			int lat = -r.nextInt(latSpan);
+			int lon = r.nextInt(lonSpan);
+			if (poly) {
+				int w = 1 + r.nextInt(lonSpan / 4), h = 1 + r.nextInt(latSpan / 4);
+				writeUnsigned(way, 5);
+				writeSigned(way, lat);
+				writeSigned(way, lon);
+				int[] d = { 0, w, -h, 0, 0, -w, h, 0 };
+				for (int j = 0; j < d.length; j++)
+					writeSigned(way, d[j]);
+			} else {
+				int n = 2 + r.nextInt(20);
+				writeUnsigned(way, n);
+				writeSigned(way, lat);
+				writeSigned(way, lon);
+				for (int j = 1; j < n; j++) {
+					writeSigned(way, r.nextInt(latSpan / 10) - latSpan / 20);
+					writeSigned(way, r.nextInt(lonSpan / 10) - lonSpan / 20);
+				}
+			}
+			/* way size after the size, including the tile bitmask */
+			writeUnsigned(block, way.size() + 2);
+			block.write(0xff);
+			block.write(0xff);
+			way.writeTo(block);
+		}
+		return block.toByteArray();
+	}
+
+	static void writeString(ByteArrayOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes("UTF-8");
+		writeUnsigned(out, b.length);
+		out.write(b);
+	}
+}
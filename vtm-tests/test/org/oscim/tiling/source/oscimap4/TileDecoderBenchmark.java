@@ -0,0 +1,74 @@
+package org.oscim.tiling.source.oscimap4;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+/**
+ * Compares decoding of oscimap4 tiles from InputStream and from heap and
+ * direct ByteBuffers.
+ *
+ * Usage: TileDecoderBenchmark [lines per tile]
+ */
+public class TileDecoderBenchmark {
+
+	static class CountSink implements ITileDataSink {
+		long points;
+
+		@Override
+		public void process(MapElement element) {
+			points += element.pointPos;
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		byte[] data = TileDecoderTest.createTile(lines);
+
+		ByteBuffer heap = ByteBuffer.wrap(data);
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data);
+		direct.flip();
+
+		Tile tile = new Tile(0, 0, (byte) 0);
+		TileDecoder decoder = new TileDecoder();
+		CountSink sink = new CountSink();
+
+		int rounds = 200;
+		for (int r = 0; r < 3; r++) {
+			long t = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				decoder.decode(tile, sink, new ByteArrayInputStream(data));
+			long tStream = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				decoder.decode(tile, sink, heap);
+			long tHeap = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			for (int i = 0; i < rounds; i++)
+				decoder.decode(tile, sink, direct);
+			long tDirect = System.nanoTime() - t;
+
+			System.out.println(data.length + " bytes/tile: stream "
+			        + (tStream / rounds / 1000) + "us, heap buffer "
+			        + (tHeap / rounds / 1000) + "us, direct buffer "
+			        + (tDirect / rounds / 1000) + "us");
+		}
+		if (sink.points == 0)
+			System.out.println("no points");
+	}
+}
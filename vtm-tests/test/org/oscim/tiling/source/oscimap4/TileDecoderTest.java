@@ -0,0 +1,220 @@
+package org.oscim.tiling.source.oscimap4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+public class TileDecoderTest {
+
+	/** minimal protobuf writer for oscimap4 tiles */
+	static class Writer {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Writer varint(int val) {
+			while ((val & ~0x7f) != 0) {
+				out.write((val & 0x7f) | 0x80);
+				val >>>= 7;
+			}
+			out.write(val);
+			return this;
+		}
+
+		Writer field(int tag, int val) {
+			return varint(tag << 3).varint(val);
+		}
+
+		Writer bytes(int tag, byte[] data) {
+			varint(tag << 3 | 2).varint(data.length);
+			out.write(data, 0, data.length);
+			return this;
+		}
+
+		Writer packed(int tag, int... vals) {
+			Writer w = new Writer();
+			for (int v : vals)
+				w.varint(v);
+			return bytes(tag, w.out.toByteArray());
+		}
+
+		static int zigzag(int v) {
+			return (v << 1) ^ (v >> 31);
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * @return tile with custom and predefined tags, 'lines' lines
+	 *         and a point.
+	 */
+	static byte[] createTile(int lines) {
+		Writer w = new Writer();
+		w.field(1, 4);
+		w.field(11, 2);
+		w.field(12, 1);
+		w.field(13, 1);
+		w.bytes(14, "custom".getBytes());
+		w.bytes(15, "wert ä".getBytes());
+		/* tag 0: custom key and value, tag 1: access=yes */
+		w.packed(16, Tags.ATTRIB_OFFSET, Tags.ATTRIB_OFFSET, 0, 0);
+
+		for (int i = 0; i < lines; i++) {
+			Writer e = new Writer();
+			e.field(1, 1);
+			e.field(2, 2);
+			e.packed(11, 0, 1);
+			e.packed(12, 3);
+			e.packed(13,
+			         Writer.zigzag(i * 8), Writer.zigzag(16),
+			         Writer.zigzag(400), Writer.zigzag(-8),
+			         Writer.zigzag(-100000), Writer.zigzag(i));
+			e.field(21, i % 10);
+			w.bytes(21, e.toByteArray());
+		}
+
+		Writer p = new Writer();
+		p.packed(11, 1);
+		p.packed(13, Writer.zigzag(64), Writer.zigzag(128));
+		w.bytes(23, p.toByteArray());
+
+		byte[] msg = w.toByteArray();
+		ByteBuffer buf = ByteBuffer.allocate(4 + msg.length);
+		buf.putInt(msg.length);
+		buf.put(msg);
+		return buf.array();
+	}
+
+	/** records all elements as string */
+	static class Sink implements ITileDataSink {
+		final ArrayList<String> elements = new ArrayList<String>();
+
+		@Override
+		public void process(MapElement e) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(e.type).append(' ').append(e.layer).append(' ');
+			sb.append(e.tags.toString()).append(' ');
+			for (int i = 0; i < e.pointPos; i++)
+				sb.append(e.points[i]).append(',');
+			elements.add(sb.toString());
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	static final Tile TILE = new Tile(1, 2, (byte) 3);
+
+	Sink decodeStream(byte[] data) throws IOException {
+		Sink sink = new Sink();
+		assertTrue(new TileDecoder().decode(TILE, sink, new ByteArrayInputStream(data)));
+		return sink;
+	}
+
+	Sink decodeBuffer(TileDecoder decoder, ByteBuffer buf) throws IOException {
+		Sink sink = new Sink();
+		int position = buf.position();
+		assertTrue(decoder.decode(TILE, sink, buf));
+		assertEquals(position, buf.position());
+		return sink;
+	}
+
+	@Test
+	public void shouldDecodeHeapBufferLikeStream() throws Exception {
+		byte[] data = createTile(100);
+		Sink expected = decodeStream(data);
+		assertEquals(101, expected.elements.size());
+
+		Sink sink = decodeBuffer(new TileDecoder(), ByteBuffer.wrap(data));
+		assertEquals(expected.elements, sink.elements);
+	}
+
+	@Test
+	public void shouldDecodeBufferAtOffset() throws Exception {
+		byte[] data = createTile(10);
+		Sink expected = decodeStream(data);
+
+		byte[] padded = new byte[data.length + 20];
+		System.arraycopy(data, 0, padded, 7, data.length);
+
+		/* position and array offset */
+		ByteBuffer buf = ByteBuffer.wrap(padded, 3, data.length + 4);
+		buf = buf.slice();
+		buf.position(4);
+		buf.limit(4 + data.length);
+
+		Sink sink = decodeBuffer(new TileDecoder(), buf);
+		assertEquals(expected.elements, sink.elements);
+	}
+
+	@Test
+	public void shouldDecodeDirectBuffer() throws Exception {
+		byte[] data = createTile(2000);
+		Sink expected = decodeStream(data);
+
+		ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+		buf.put(data);
+		buf.flip();
+
+		Sink sink = decodeBuffer(new TileDecoder(), buf);
+		assertEquals(expected.elements, sink.elements);
+	}
+
+	@Test
+	public void shouldSwitchBetweenInputs() throws Exception {
+		byte[] small = createTile(5);
+		byte[] large = createTile(3000);
+		Sink expectedSmall = decodeStream(small);
+		Sink expectedLarge = decodeStream(large);
+
+		TileDecoder decoder = new TileDecoder();
+		for (int i = 0; i < 3; i++) {
+			Sink s = new Sink();
+			assertTrue(decoder.decode(TILE, s, new ByteArrayInputStream(large)));
+			assertEquals(expectedLarge.elements, s.elements);
+
+			ByteBuffer buf = ByteBuffer.wrap(small);
+			assertEquals(expectedSmall.elements, decodeBuffer(decoder, buf).elements);
+
+			/* the input array must not be touched */
+			assertEquals(small.length, buf.limit());
+			assertTrue(java.util.Arrays.equals(createTile(5), small));
+		}
+	}
+
+	@Test
+	public void shouldFailOnTruncatedBuffer() throws Exception {
+		byte[] data = createTile(10);
+		byte[] padded = new byte[data.length + 100];
+		System.arraycopy(data, 0, padded, 0, data.length);
+		/* garbage after the truncated message */
+		for (int i = data.length - 20; i < padded.length; i++)
+			padded[i] = (byte) 0x85;
+
+		ByteBuffer buf = ByteBuffer.wrap(padded, 0, data.length - 20);
+		boolean failed;
+		try {
+			failed = !new TileDecoder().decode(TILE, new Sink(), buf);
+		} catch (IOException e) {
+			failed = true;
+		}
+		assertTrue(failed);
+	}
+}
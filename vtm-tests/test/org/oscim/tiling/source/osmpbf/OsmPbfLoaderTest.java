@@ -0,0 +1,457 @@
+package org.oscim.tiling.source.osmpbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+
+public class OsmPbfLoaderTest {
+
+	static final double LAT = 52.5;
+	static final double LON = 13.4;
+
+	/** minimal protobuf writer */
+	static class Proto {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Proto varint(long v) {
+			while ((v & ~0x7fL) != 0) {
+				out.write((int) (v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			out.write((int) v);
+			return this;
+		}
+
+		Proto uint(int field, long v) {
+			return varint(field << 3).varint(v);
+		}
+
+		Proto sint(int field, long v) {
+			return uint(field, (v << 1) ^ (v >> 63));
+		}
+
+		Proto bytes(int field, byte[] b) {
+			varint(field << 3 | 2).varint(b.length);
+			out.write(b, 0, b.length);
+			return this;
+		}
+
+		Proto string(int field, String s) {
+			try {
+				return bytes(field, s.getBytes("UTF-8"));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		Proto message(int field, Proto p) {
+			return bytes(field, p.toByteArray());
+		}
+
+		Proto packed(int field, long[] values, boolean zigzag) {
+			Proto p = new Proto();
+			for (long v : values)
+				p.varint(zigzag ? (v << 1) ^ (v >> 63) : v);
+			return message(field, p);
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+
+	/** writes an OSM PBF file */
+	static class PbfWriter {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		boolean compress;
+		/** preset zlib dictionary, not allowed by the format */
+		byte[] dictionary;
+		/** raw size to write instead of the actual size */
+		int rawSize = -1;
+
+		void blob(String type, byte[] data) {
+			Proto blob = new Proto();
+			if (compress) {
+				Deflater deflater = new Deflater();
+				if (dictionary != null)
+					deflater.setDictionary(dictionary);
+				deflater.setInput(data);
+				deflater.finish();
+				byte[] buf = new byte[data.length + 64];
+				int size = deflater.deflate(buf);
+				deflater.end();
+				byte[] zlib = new byte[size];
+				System.arraycopy(buf, 0, zlib, 0, size);
+				blob.uint(2, rawSize < 0 ? data.length : rawSize).bytes(3, zlib);
+			} else {
+				blob.bytes(1, data);
+			}
+			byte[] b = blob.toByteArray();
+			byte[] header = new Proto().string(1, type).uint(3, b.length).toByteArray();
+			out.write(header.length >>> 24);
+			out.write(header.length >>> 16);
+			out.write(header.length >>> 8);
+			out.write(header.length);
+			out.write(header, 0, header.length);
+			out.write(b, 0, b.length);
+		}
+
+		void header() {
+			blob("OSMHeader", new Proto()
+			    .string(4, "OsmSchema-V0.6")
+			    .string(4, "DenseNodes")
+			    .toByteArray());
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+
+	/** one PrimitiveBlock with dense nodes and ways */
+	static class BlockWriter {
+		final ArrayList<String> strings = new ArrayList<String>();
+		final ArrayList<long[]> nodes = new ArrayList<long[]>();
+		final ArrayList<int[]> nodeTags = new ArrayList<int[]>();
+		final Proto ways = new Proto();
+
+		BlockWriter() {
+			strings.add("");
+		}
+
+		int string(String s) {
+			int i = strings.indexOf(s);
+			if (i < 0) {
+				i = strings.size();
+				strings.add(s);
+			}
+			return i;
+		}
+
+		/** add node with coordinates in 100 nanodegrees */
+		void node(long id, double lat, double lon, String... tags) {
+			nodes.add(new long[] { id, Math.round(lat * 1e7), Math.round(lon * 1e7) });
+			int[] kv = new int[tags.length];
+			for (int i = 0; i < tags.length; i++)
+				kv[i] = string(tags[i]);
+			nodeTags.add(kv);
+		}
+
+		void way(long id, long[] refs, String... tags) {
+			Proto way = new Proto().uint(1, id);
+			long[] keys = new long[tags.length / 2];
+			long[] vals = new long[tags.length / 2];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = string(tags[i * 2]);
+				vals[i] = string(tags[i * 2 + 1]);
+			}
+			way.packed(2, keys, false).packed(3, vals, false);
+
+			long[] delta = new long[refs.length];
+			for (int i = 0; i < refs.length; i++)
+				delta[i] = refs[i] - (i > 0 ? refs[i - 1] : 0);
+			way.packed(8, delta, true);
+			ways.message(3, way);
+		}
+
+		byte[] toByteArray() {
+			Proto block = new Proto();
+			Proto table = new Proto();
+			for (String s : strings)
+				table.string(1, s);
+			block.message(1, table);
+
+			if (!nodes.isEmpty()) {
+				int n = nodes.size();
+				long[] ids = new long[n], lats = new long[n], lons = new long[n];
+				long[] prev = { 0, 0, 0 };
+				ArrayList<Long> kv = new ArrayList<Long>();
+				for (int i = 0; i < n; i++) {
+					long[] node = nodes.get(i);
+					ids[i] = node[0] - prev[0];
+					lats[i] = node[1] - prev[1];
+					lons[i] = node[2] - prev[2];
+					prev = node;
+					for (int t : nodeTags.get(i))
+						kv.add((long) t);
+					kv.add(0L);
+				}
+				long[] keysVals = new long[kv.size()];
+				for (int i = 0; i < keysVals.length; i++)
+					keysVals[i] = kv.get(i);
+
+				Proto dense = new Proto()
+				    .packed(1, ids, true)
+				    .packed(8, lats, true)
+				    .packed(9, lons, true)
+				    .packed(10, keysVals, false);
+				block.message(2, new Proto().message(2, dense));
+			}
+			if (ways.out.size() > 0)
+				block.bytes(2, ways.toByteArray());
+
+			/* granularity 100 nanodegrees */
+			block.uint(17, 100);
+			return block.toByteArray();
+		}
+	}
+
+	static byte[] createFile(boolean compress) {
+		PbfWriter w = new PbfWriter();
+		w.compress = compress;
+		w.header();
+
+		BlockWriter b = new BlockWriter();
+		for (int i = 0; i < 8; i++)
+			b.node(1 + i, LAT + (i / 4) * 0.0005, LON + (i % 4) * 0.0005);
+		b.node(9, LAT + 0.0002, LON + 0.0002, "amenity", "cafe", "name", "Test");
+		w.blob("OSMData", b.toByteArray());
+
+		/* a second block with other string ids and unsorted nodes */
+		b = new BlockWriter();
+		b.node(201, LAT, LON + 1.1);
+		b.node(200, LAT, LON - 0.4);
+		b.node(301, LAT - 0.001, LON + 0.03);
+		b.node(300, LAT - 0.001, LON + 0.001);
+		b.node(302, LAT - 0.002, LON + 0.001, "name", "Test");
+		b.way(10, new long[] { 1, 2, 3, 4 }, "highway", "residential");
+		b.way(11, new long[] { 5, 6, 7, 8, 5 }, "building", "yes");
+		b.way(12, new long[] { 1, 999 }, "highway", "residential");
+		b.way(13, new long[] { 200, 201 }, "highway", "primary", "layer", "1");
+		b.way(14, new long[] { 300, 301 }, "highway", "service");
+		b.way(15, new long[] { 1, 2, 6, 1 }, "highway", "pedestrian");
+		w.blob("OSMData", b.toByteArray());
+
+		return w.toByteArray();
+	}
+
+	static class Recorder implements ITileDataSink {
+		final ArrayList<MapElement> elements = new ArrayList<MapElement>();
+		QueryResult result;
+
+		@Override
+		public void process(MapElement element) {
+			MapElement e = new MapElement();
+			e.startPoints();
+			e.type = element.type;
+			e.points = element.points.clone();
+			e.index = element.index.clone();
+			e.pointPos = element.pointPos;
+			e.indexPos = element.indexPos;
+			e.layer = element.layer;
+			e.tags.set(element.tags.asArray());
+			elements.add(e);
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+			this.result = result;
+		}
+
+		MapElement get(String key, String value) {
+			MapElement result = null;
+			for (MapElement e : elements) {
+				if (e.tags.contains(key, value)) {
+					assertTrue("duplicate " + key + "=" + value, result == null);
+					result = e;
+				}
+			}
+			return result;
+		}
+	}
+
+	static Recorder query(OsmPbfStore store, double lat, double lon, int zoom) {
+		int x = (int) (MercatorProjection.longitudeToX(lon) * (1 << zoom));
+		int y = (int) (MercatorProjection.latitudeToY(lat) * (1 << zoom));
+		ITileDataSource db = new OsmPbfTileSource(store).getDataSource();
+		Recorder r = new Recorder();
+		db.query(new MapTile(null, x, y, zoom), r);
+		db.destroy();
+		return r;
+	}
+
+	@Test
+	public void shouldLoadNodesAndWays() throws IOException {
+		OsmPbfStore store = OsmPbfLoader.load(new ByteArrayInputStream(createFile(true)));
+
+		assertEquals(14, store.getNumNodes());
+		assertEquals(2, store.getNumPois());
+		/* way 12 has only one existing node */
+		assertEquals(5, store.getNumWays());
+		assertEquals(-1, store.getWayIndex(12));
+		assertEquals(1, store.getMissingRefs());
+
+		int n = store.getNodeIndex(6);
+		assertEquals(MercatorProjection.longitudeToX(LON + 0.0005), store.getNodeX(n), 1e-8);
+		assertEquals(MercatorProjection.latitudeToY(LAT + 0.0005), store.getNodeY(n), 1e-8);
+
+		/* nodes of the second block are sorted */
+		n = store.getNodeIndex(200);
+		assertEquals(MercatorProjection.longitudeToX(LON - 0.4), store.getNodeX(n), 1e-8);
+		assertEquals(n + 1, store.getNodeIndex(201));
+
+		int w = store.getWayIndex(11);
+		int[] nodes = store.getWayNodes(w);
+		assertEquals(5, nodes.length);
+		assertEquals(store.getNodeIndex(5), nodes[0]);
+		assertEquals(store.getNodeIndex(8), nodes[3]);
+		assertEquals(nodes[0], nodes[4]);
+		assertTrue(store.isArea(w));
+
+		assertTrue(!store.isArea(store.getWayIndex(15)));
+		assertTrue(!store.isArea(store.getWayIndex(10)));
+
+		/* tags are shared between blocks */
+		assertEquals(8, store.getNumTags());
+		Tag[] tags = store.getWayTags(store.getWayIndex(13));
+		assertEquals(new Tag("highway", "primary"), tags[0]);
+		assertSame(tags[0], store.getWayTags(store.getWayIndex(13))[0]);
+	}
+
+	@Test
+	public void shouldQueryTiles() throws IOException {
+		OsmPbfStore store = OsmPbfLoader.load(new ByteArrayInputStream(createFile(false)));
+
+		for (int zoom : new int[] { 8, 12, 14, 16 }) {
+			Recorder r = query(store, LAT + 0.0002, LON + 0.0002, zoom);
+			assertEquals(ITileDataSink.QueryResult.SUCCESS, r.result);
+
+			MapElement poi = r.get("amenity", "cafe");
+			assertNotNull(poi);
+			assertTrue(poi.isPoint());
+			assertEquals("Test", poi.tags.getValue("name"));
+
+			/* ways smaller than a pixel are skipped */
+			if (zoom < 14)
+				continue;
+
+			MapElement road = r.get("highway", "residential");
+			assertNotNull(road);
+			assertTrue(road.isLine());
+			assertEquals(4, road.getNumPoints());
+
+			MapElement building = r.get("building", "yes");
+			assertNotNull(building);
+			assertTrue(building.isPoly());
+			/* closing point is implicit */
+			assertEquals(4, building.getNumPoints());
+
+			/* closed highways are lines */
+			MapElement pedestrian = r.get("highway", "pedestrian");
+			assertTrue(pedestrian.isLine());
+			assertEquals(4, pedestrian.getNumPoints());
+		}
+
+		/* way 13 crosses more than MAX_CELLS cells */
+		for (int zoom : new int[] { 6, 10, 14 }) {
+			Recorder r = query(store, LAT, LON + 0.5, zoom);
+			MapElement primary = r.get("highway", "primary");
+			assertNotNull(primary);
+			assertEquals(6, primary.layer);
+		}
+
+		/* way 14 crosses two cells, it is passed once */
+		Recorder r = query(store, LAT, LON, 10);
+		assertNotNull(r.get("highway", "service"));
+	}
+
+	@Test
+	public void shouldLoadInParallel() throws Exception {
+		PbfWriter w = new PbfWriter();
+		w.compress = true;
+		w.header();
+
+		int id = 1, wayId = 1;
+		for (int block = 0; block < 40; block++) {
+			BlockWriter b = new BlockWriter();
+			int first = id;
+			for (int i = 0; i < 1000; i++, id++)
+				b.node(id, LAT + (id % 100) * 1e-4, LON + (id / 100) * 1e-4,
+				       (i % 100) == 0 ? new String[] { "amenity", "cafe" } : new String[0]);
+
+			/* ways also reference nodes of the previous block */
+			for (int i = 0; i < 100; i++) {
+				long[] refs = new long[10];
+				for (int j = 0; j < 10; j++)
+					refs[j] = first + i * 10 + j - (block > 0 ? 500 : 0);
+				b.way(wayId++, refs, "highway", "residential");
+			}
+			w.blob("OSMData", b.toByteArray());
+		}
+		byte[] file = w.toByteArray();
+
+		OsmPbfStore serial = OsmPbfLoader.load(new ByteArrayInputStream(file));
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		OsmPbfStore parallel = OsmPbfLoader.load(new ByteArrayInputStream(file), executor, 4);
+		executor.shutdown();
+
+		assertEquals(40000, serial.getNumNodes());
+		assertEquals(400, serial.getNumPois());
+		assertEquals(4000, serial.getNumWays());
+		assertEquals(2, serial.getNumTags());
+
+		assertEquals(serial.getNumNodes(), parallel.getNumNodes());
+		assertEquals(serial.getNumWays(), parallel.getNumWays());
+		assertArrayEquals(serial.nodeIds, parallel.nodeIds);
+		assertArrayEquals(serial.nodeX, parallel.nodeX);
+		assertArrayEquals(serial.wayNodes, parallel.wayNodes);
+		assertArrayEquals(serial.wayTags, parallel.wayTags);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailOnTruncatedFile() throws IOException {
+		byte[] file = createFile(true);
+		byte[] truncated = new byte[file.length - 10];
+		System.arraycopy(file, 0, truncated, 0, truncated.length);
+		OsmPbfLoader.load(new ByteArrayInputStream(truncated));
+	}
+
+	static byte[] createCompressedFile(byte[] dictionary, int rawSize) {
+		PbfWriter w = new PbfWriter();
+		w.compress = true;
+		w.header();
+		w.dictionary = dictionary;
+		w.rawSize = rawSize;
+
+		BlockWriter b = new BlockWriter();
+		b.node(1, LAT, LON, new String[] { "amenity", "cafe" });
+		w.blob("OSMData", b.toByteArray());
+		return w.toByteArray();
+	}
+
+	@Test(expected = IOException.class, timeout = 10000)
+	public void shouldFailOnPresetDictionary() throws IOException {
+		byte[] file = createCompressedFile("amenity".getBytes(), -1);
+		OsmPbfLoader.load(new ByteArrayInputStream(file));
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailOnOversizedBlob() throws IOException {
+		byte[] file = createCompressedFile(null, Integer.MAX_VALUE);
+		OsmPbfLoader.load(new ByteArrayInputStream(file));
+	}
+}
@@ -0,0 +1,142 @@
+package org.oscim.utils;
+
+import java.util.Random;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.elements.VertexItem;
+
+/**
+ * Compare EarClipper with libtess for building and landuse shaped
+ * polygons. Pass the directory containing libvtm-jni as
+ * -Djava.library.path to include the native tessellator.
+ */
+public class TessellatorBenchmark {
+
+	static final int POLYGONS = 2000;
+	static final int ITERATIONS = 20;
+
+	/** buildings: rectangles with notches, some with a courtyard */
+	static GeometryBuffer[] buildings(Random r) {
+		GeometryBuffer[] geoms = new GeometryBuffer[POLYGONS];
+		for (int n = 0; n < POLYGONS; n++) {
+			GeometryBuffer g = new GeometryBuffer(64, 4);
+			float x = r.nextInt(3000), y = r.nextInt(3000);
+			float w = 20 + r.nextInt(80), h = 20 + r.nextInt(80);
+			int notches = r.nextInt(4);
+
+			g.startPolygon();
+			g.addPoint(x, y);
+			for (int i = 1; i <= notches; i++) {
+				float nx = x + w * i / (notches + 1);
+				g.addPoint(nx, y);
+				g.addPoint(nx, y + 5);
+				g.addPoint(nx + 3, y + 5);
+				g.addPoint(nx + 3, y);
+			}
+			g.addPoint(x + w, y);
+			g.addPoint(x + w, y + h);
+			g.addPoint(x, y + h);
+
+			if (n % 10 == 0) {
+				g.startHole();
+				g.addPoint(x + w / 4, y + h / 4);
+				g.addPoint(x + w / 4, y + h * 3 / 4);
+				g.addPoint(x + w * 3 / 4, y + h * 3 / 4);
+				g.addPoint(x + w * 3 / 4, y + h / 4);
+			}
+			geoms[n] = g;
+		}
+		return geoms;
+	}
+
+	/** landuse: large irregular polygons with a few holes */
+	static GeometryBuffer[] landuse(Random r) {
+		GeometryBuffer[] geoms = new GeometryBuffer[POLYGONS / 20];
+		for (int n = 0; n < geoms.length; n++) {
+			GeometryBuffer g = new GeometryBuffer(4096, 8);
+			int points = 100 + r.nextInt(900);
+			ring(g, r, points, 2000, 2000, 1800, false);
+			for (int h = 0; h < 3; h++) {
+				g.startHole();
+				ring(g, r, 20, 1000 + h * 900, 2000, 150, true);
+			}
+			geoms[n] = g;
+		}
+		return geoms;
+	}
+
+	static void ring(GeometryBuffer g, Random r, int points, float cx, float cy,
+	        float radius, boolean hole) {
+		if (!hole)
+			g.startPolygon();
+		for (int i = 0; i < points; i++) {
+			double a = 2 * Math.PI * i / points * (hole ? -1 : 1);
+			double d = radius * (0.7 + 0.3 * r.nextDouble());
+			g.addPoint((float) (cx + Math.cos(a) * d), (float) (cy + Math.sin(a) * d));
+		}
+	}
+
+	static GeometryBuffer[] copy(GeometryBuffer[] geoms) {
+		GeometryBuffer[] c = new GeometryBuffer[geoms.length];
+		for (int i = 0; i < geoms.length; i++) {
+			c[i] = new GeometryBuffer(geoms[i].points.length, geoms[i].index.length);
+			System.arraycopy(geoms[i].points, 0, c[i].points, 0, geoms[i].points.length);
+			System.arraycopy(geoms[i].index, 0, c[i].index, 0, geoms[i].index.length);
+			c[i].pointPos = geoms[i].pointPos;
+			c[i].indexPos = geoms[i].indexPos;
+			c[i].type = geoms[i].type;
+		}
+		return c;
+	}
+
+	/** @return microseconds per polygon */
+	static double run(GeometryBuffer[] geoms) {
+		long time = 0;
+		for (int n = 0; n < ITERATIONS; n++) {
+			/* tessellate() scales the input points */
+			GeometryBuffer[] input = copy(geoms);
+			VertexItem points = VertexItem.pool.get();
+			VertexItem tris = VertexItem.pool.get();
+
+			long t = System.nanoTime();
+			for (GeometryBuffer g : input) {
+				Tessellator.tessellate(g, 1, points, tris, 0);
+				points.next = VertexItem.pool.releaseAll(points.next);
+				tris.next = VertexItem.pool.releaseAll(tris.next);
+				points.used = 0;
+				tris.used = 0;
+			}
+			VertexItem.pool.release(points);
+			VertexItem.pool.release(tris);
+			time += System.nanoTime() - t;
+		}
+		return time / 1000.0 / ITERATIONS / geoms.length;
+	}
+
+	public static void main(String[] args) {
+		boolean jni;
+		try {
+			System.loadLibrary("vtm-jni");
+			jni = true;
+		} catch (UnsatisfiedLinkError e) {
+			System.out.println("vtm-jni not found, only EarClipper");
+			jni = false;
+		}
+
+		Random r = new Random(1);
+		GeometryBuffer[] buildings = buildings(r);
+		GeometryBuffer[] landuse = landuse(r);
+
+		for (int round = 0; round < 3; round++) {
+			Tessellator.USE_JNI = false;
+			String result = String.format("EarClipper: %.2fus building, %.2fus landuse",
+			                              run(buildings), run(landuse));
+			if (jni) {
+				Tessellator.USE_JNI = true;
+				result += String.format(" | libtess: %.2fus building, %.2fus landuse",
+				                        run(buildings), run(landuse));
+			}
+			System.out.println(result);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.oscim.utils.geom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.elements.VertexItem;
+import org.oscim.utils.Tessellator;
+
+public class EarClipperTest {
+
+	/** @return signed area of ring, positive when counter-clockwise */
+	static double area(float[] p, int pos, int len) {
+		double sum = 0;
+		for (int i = pos, j = pos + len - 2; i < pos + len; j = i, i += 2)
+			sum += (double) p[j] * p[i + 1] - (double) p[i] * p[j + 1];
+		return sum / 2;
+	}
+
+	/** @return indices from item chain */
+	static short[] indices(VertexItem items) {
+		short[] idx = new short[items.getSize()];
+		int n = 0;
+		for (VertexItem it = items; it != null; it = it.next) {
+			System.arraycopy(it.vertices, 0, idx, n, it.used);
+			n += it.used;
+		}
+		return idx;
+	}
+
+	/** @return signed area of all triangles */
+	static double area(float[] p, int pos, short[] idx) {
+		double sum = 0;
+		float[] t = new float[6];
+		for (int i = 0; i < idx.length; i += 3) {
+			for (int j = 0; j < 3; j++) {
+				t[j * 2] = p[pos + idx[i + j] * 2];
+				t[j * 2 + 1] = p[pos + idx[i + j] * 2 + 1];
+			}
+			sum += area(t, 0, 6);
+		}
+		return sum;
+	}
+
+	static double triangulate(float[] points, short[] index, int rings, int expectedIndices) {
+		VertexItem out = VertexItem.pool.get();
+		int cnt = new EarClipper().triangulate(points, 0, index, 0, rings, out, 0);
+		short[] idx = indices(out);
+		VertexItem.pool.releaseAll(out);
+
+		assertEquals(idx.length, cnt);
+		if (expectedIndices >= 0)
+			assertEquals(expectedIndices, cnt);
+
+		return area(points, 0, idx);
+	}
+
+	@Test
+	public void shouldTriangulateSquareInBothWindings() {
+		float[] ccw = { 0, 0, 10, 0, 10, 10, 0, 10 };
+		float[] cw = { 0, 0, 0, 10, 10, 10, 10, 0 };
+		short[] index = { 8 };
+
+		assertEquals(100, triangulate(ccw, index, 1, 6), 1e-9);
+		assertEquals(-100, triangulate(cw, index, 1, 6), 1e-9);
+	}
+
+	@Test
+	public void shouldTriangulateConcavePolygon() {
+		/* 'U' shape */
+		float[] p = { 0, 0, 30, 0, 30, 30, 20, 30, 20, 10, 10, 10, 10, 30, 0, 30 };
+		double a = area(p, 0, p.length);
+		assertEquals(a, triangulate(p, new short[] { 16 }, 1, 18), 1e-9);
+	}
+
+	@Test
+	public void shouldBridgeHoles() {
+		float[] p = {
+		        0, 0, 100, 0, 100, 100, 0, 100,
+		        /* holes in either winding */
+		        10, 10, 10, 30, 30, 30, 30, 10,
+		        60, 60, 80, 60, 80, 80, 60, 80 };
+		short[] index = { 8, 8, 8 };
+
+		double expected = 100 * 100 - 2 * 20 * 20;
+		/* n + 2 * holes - 2 triangles */
+		assertEquals(expected, triangulate(p, index, 3, 3 * (12 + 4 - 2)), 1e-9);
+	}
+
+	@Test
+	public void shouldIgnoreDuplicatePoints() {
+		/* explicitly closed with repeated point */
+		float[] p = { 0, 0, 10, 0, 10, 0, 10, 10, 0, 10, 0, 0 };
+		assertEquals(100, triangulate(p, new short[] { 12 }, 1, -1), 1e-9);
+	}
+
+	/** @return random star shaped polygon around cx,cy */
+	static float[] star(Random r, int n, float cx, float cy, float radius) {
+		float[] p = new float[n * 2];
+		for (int i = 0; i < n; i++) {
+			double a = 2 * Math.PI * i / n;
+			double d = radius * (0.5 + 0.5 * r.nextDouble());
+			p[i * 2] = (float) Math.floor(cx + Math.cos(a) * d);
+			p[i * 2 + 1] = (float) Math.floor(cy + Math.sin(a) * d);
+		}
+		return p;
+	}
+
+	@Test
+	public void shouldTriangulateLargePolygons() {
+		Random r = new Random(1);
+		for (int n : new int[] { 50, 200, 1000, 5000 }) {
+			float[] p = star(r, n, 2000, 2000, 1900);
+			double a = area(p, 0, p.length);
+			assertEquals(a, triangulate(p, new short[] { (short) p.length }, 1, -1),
+			             Math.abs(a) * 1e-9);
+		}
+	}
+
+	@Test
+	public void shouldTessellateMeshWithoutJni() {
+		boolean useJni = Tessellator.USE_JNI;
+		Tessellator.USE_JNI = false;
+		try {
+			GeometryBuffer geom = new GeometryBuffer(32, 4);
+			geom.startPolygon();
+			geom.addPoint(0, 0);
+			geom.addPoint(10, 0);
+			geom.addPoint(10, 10);
+			geom.addPoint(0, 10);
+			geom.startPolygon();
+			geom.addPoint(20, 0);
+			geom.addPoint(30, 0);
+			geom.addPoint(25, 10);
+
+			VertexItem points = VertexItem.pool.get();
+			VertexItem tris = VertexItem.pool.get();
+			int cnt = Tessellator.tessellate(geom, 8, points, tris, 5);
+
+			assertEquals(9, cnt);
+			/* all points of both polygons are added, scaled */
+			assertEquals(14, points.getSize());
+			assertEquals(80, points.vertices[2]);
+			assertEquals(160, points.vertices[8]);
+
+			short[] idx = indices(tris);
+			for (short i : idx)
+				assertTrue(i >= 5 && i < 5 + 7);
+			/* second polygon */
+			assertTrue(idx[6] >= 9 && idx[7] >= 9 && idx[8] >= 9);
+
+			VertexItem.pool.releaseAll(points);
+			VertexItem.pool.releaseAll(tris);
+		} finally {
+			Tessellator.USE_JNI = useJni;
+		}
+	}
+
+	@Test
+	public void shouldMapExtrusionIndicesWithoutJni() {
+		boolean useJni = Tessellator.USE_JNI;
+		Tessellator.USE_JNI = false;
+		try {
+			/* outline with odd number of points and a hole */
+			float[] p = {
+			        0, 0, 100, 0, 100, 100, 50, 150, 0, 100,
+			        10, 10, 10, 30, 30, 30, 30, 10 };
+			short[] index = { 10, 8 };
+
+			VertexItem tris = VertexItem.pool.get();
+			int cnt = Tessellator.tessellate(p, 0, 18, index, 0, 2, 1, tris);
+			short[] idx = indices(tris);
+			assertEquals(cnt, idx.length);
+
+			for (short i : idx) {
+				/* vertices of extrusion outline: 2 per point + 2 for odd
+				 * outline, roof vertices are odd. */
+				assertTrue((i & 1) == 1);
+				assertTrue(i >= 1 && i <= 1 + 2 * 9 + 2);
+				/* skipped pair after the outline */
+				assertTrue(i != 1 + 10 && i != 1 + 11);
+			}
+			VertexItem.pool.releaseAll(tris);
+		} finally {
+			Tessellator.USE_JNI = useJni;
+		}
+	}
+}
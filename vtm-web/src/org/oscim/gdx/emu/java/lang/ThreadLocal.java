@@ -0,0 +1,31 @@
+package java.lang;
+
+/**
+ * There is only one thread in the browser.
+ */
+public class ThreadLocal<T> {
+	private boolean initialized;
+	private T value;
+
+	protected T initialValue() {
+		return null;
+	}
+
+	public T get() {
+		if (!initialized) {
+			value = initialValue();
+			initialized = true;
+		}
+		return value;
+	}
+
+	public void set(T value) {
+		this.value = value;
+		initialized = true;
+	}
+
+	public void remove() {
+		value = null;
+		initialized = false;
+	}
+}
@@ -21,6 +21,7 @@ import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.renderer.MapRenderer;
 import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +82,18 @@ public abstract class TileLoader implements ITileDataSink {
 		mPausing = false;
 	}
 
+	protected ITileDataSource getTileDataSource() {
+		return null;
+	}
+
+	protected boolean isBlocking() {
+		return false;
+	}
+
+	boolean isIdle() {
+		return !mWorking && !mPausing;
+	}
+
 	protected boolean mWorking;
 	protected MapTile mTile;
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import java.util.ArrayList;
+
+/**
+ * TileLoaders load asynchronously on the main thread, scheduling just
+ * notifies all loaders.
+ */
+public class TileLoaderPool {
+
+	private static TileLoaderPool sDefault;
+
+	public static TileLoaderPool getDefault() {
+		if (sDefault == null)
+			sDefault = new TileLoaderPool();
+
+		return sDefault;
+	}
+
+	private final ArrayList<TileLayer> mLayers = new ArrayList<TileLayer>();
+
+	void add(TileLayer layer) {
+		if (!mLayers.contains(layer))
+			mLayers.add(layer);
+	}
+
+	void remove(TileLayer layer) {
+		mLayers.remove(layer);
+	}
+
+	public void schedule() {
+		for (TileLayer l : mLayers) {
+			if (l.mTileLoader == null)
+				continue;
+
+			for (TileLoader loader : l.mTileLoader) {
+				if (loader.isIdle())
+					loader.go();
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.core;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A bounded cache in front of String.intern() for tag keys and values.
+ *
+ * Strings returned by intern() are always the String.intern() instance,
+ * so they can be compared by identity with strings of the theme and
+ * {@link Tag} constants. Lookups from UTF-8 encoded bytes do not allocate
+ * a String when the string is in the pool.
+ *
+ * The pool does not lock: entries are immutable and each slot is only
+ * replaced as a whole. A thread that misses an entry written by another
+ * thread just calls String.intern() once more.
+ */
+public final class StringPool {
+
+	private final static String CHARSET_UTF8 = "UTF-8";
+
+	/** number of slots, power of two */
+	private final static int SIZE = 1 << 13;
+	/** slots per set which can hold strings of the same hash slot */
+	private final static int WAYS = 4;
+	private final static int MASK = SIZE - WAYS;
+
+	private final static class Entry {
+		final String string;
+		final byte[] bytes;
+		final int hash;
+
+		Entry(String string, byte[] bytes, int hash) {
+			this.string = string;
+			this.bytes = bytes;
+			this.hash = hash;
+		}
+	}
+
+	private final static Entry[] sEntries = new Entry[SIZE];
+
+	private StringPool() {
+	}
+
+	/**
+	 * @return String.intern() of 's', or null when 's' is null.
+	 */
+	public static String intern(String s) {
+		if (s == null)
+			return null;
+
+		int hash = s.hashCode();
+		int slot = slot(hash);
+		Entry[] entries = sEntries;
+
+		for (int i = slot, end = slot + WAYS; i < end; i++) {
+			Entry e = entries[i];
+			if (e == null)
+				break;
+			if (e.hash == hash && (e.string == s || e.string.equals(s)))
+				return e.string;
+		}
+
+		String result = s.intern();
+		add(new Entry(result, getBytes(result), hash), slot);
+		return result;
+	}
+
+	/**
+	 * Get the interned String for the UTF-8 encoded 'length' bytes at
+	 * 'offset' of 'data'.
+	 *
+	 * @return String.intern() of the decoded string.
+	 */
+	public static String intern(byte[] data, int offset, int length) {
+		int hash = hash(data, offset, length);
+		int slot = slot(hash);
+		Entry[] entries = sEntries;
+
+		for (int i = slot, end = slot + WAYS; i < end; i++) {
+			Entry e = entries[i];
+			if (e == null)
+				break;
+			if (e.hash == hash && equals(e.bytes, data, offset, length))
+				return e.string;
+		}
+
+		String result;
+		try {
+			result = new String(data, offset, length, CHARSET_UTF8).intern();
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		byte[] bytes = new byte[length];
+		System.arraycopy(data, offset, bytes, 0, length);
+
+		add(new Entry(result, bytes, hash), slot);
+		return result;
+	}
+
+	/**
+	 * Get the interned String for 'length' chars at 'offset' of 'data'.
+	 *
+	 * @return String.intern() of the string.
+	 */
+	public static String intern(char[] data, int offset, int length) {
+		int hash = 0;
+		for (int i = offset, end = offset + length; i < end; i++)
+			hash = 31 * hash + data[i];
+
+		int slot = slot(hash);
+		Entry[] entries = sEntries;
+
+		for (int i = slot, end = slot + WAYS; i < end; i++) {
+			Entry e = entries[i];
+			if (e == null)
+				break;
+			if (e.hash == hash && equals(e.string, data, offset, length))
+				return e.string;
+		}
+
+		String result = new String(data, offset, length).intern();
+		add(new Entry(result, getBytes(result), hash), slot);
+		return result;
+	}
+
+	private static void add(Entry e, int slot) {
+		/* use the first free slot of the set, otherwise drop
+		 * the least recently added entry */
+		Entry[] entries = sEntries;
+		for (int i = slot, end = slot + WAYS; i < end; i++) {
+			if (entries[i] == null) {
+				entries[i] = e;
+				return;
+			}
+		}
+		for (int i = slot + WAYS - 1; i > slot; i--)
+			entries[i] = entries[i - 1];
+
+		entries[slot] = e;
+	}
+
+	private static int slot(int hash) {
+		/* murmur3 finalizer, String hashes of similar strings
+		 * only differ in the low bits */
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		hash *= 0xc2b2ae35;
+		hash ^= (hash >>> 16);
+		return hash & MASK;
+	}
+
+	private static boolean equals(byte[] a, byte[] data, int offset, int length) {
+		if (a.length != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+			if (a[i] != data[offset + i])
+				return false;
+
+		return true;
+	}
+
+	private static boolean equals(String s, char[] data, int offset, int length) {
+		if (s.length() != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+			if (s.charAt(i) != data[offset + i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Calculate String.hashCode() of the UTF-8 encoded string. Malformed
+	 * input yields an arbitrary hash: equal byte sequences still get the
+	 * same hash, only String lookups will not find them.
+	 */
+	static int hash(byte[] data, int offset, int length) {
+		int h = 0;
+		int end = offset + length;
+
+		for (int i = offset; i < end;) {
+			int c = data[i++];
+
+			if (c >= 0) {
+				h = 31 * h + c;
+				continue;
+			}
+
+			int n;
+			if ((c & 0xe0) == 0xc0) {
+				c &= 0x1f;
+				n = 1;
+			} else if ((c & 0xf0) == 0xe0) {
+				c &= 0x0f;
+				n = 2;
+			} else if ((c & 0xf8) == 0xf0) {
+				c &= 0x07;
+				n = 3;
+			} else {
+				h = 31 * h + (c & 0xff);
+				continue;
+			}
+
+			if (i + n > end)
+				n = end - i;
+
+			for (; n > 0; n--)
+				c = (c << 6) | (data[i++] & 0x3f);
+
+			if (c < 0x10000) {
+				h = 31 * h + c;
+			} else {
+				/* surrogate pair */
+				c -= 0x10000;
+				h = 31 * h + (0xd800 | (c >> 10));
+				h = 31 * h + (0xdc00 | (c & 0x3ff));
+			}
+		}
+		return h;
+	}
+
+	private static byte[] getBytes(String s) {
+		try {
+			return s.getBytes(CHARSET_UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
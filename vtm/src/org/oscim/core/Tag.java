@@ -19,6 +19,8 @@ package org.oscim.core;
 
 /**
  * A tag represents an immutable key-value pair. Keys are always intern().
+ * 
+ * @see StringPool
  */
 
 public class Tag {
@@ -68,8 +70,8 @@ public class Tag {
 	 *            the value of the tag.
 	 */
 	public Tag(String key, String value) {
-		this.key = (key == null ? null : key.intern());
-		this.value = (value == null ? null : value.intern());
+		this.key = StringPool.intern(key);
+		this.value = StringPool.intern(value);
 		this.intern = true;
 	}
 
@@ -82,10 +84,10 @@ public class Tag {
 	 *            true when value string should be intern()alized.
 	 */
 	public Tag(String key, String value, boolean intern) {
-		this.key = key.intern();
+		this.key = StringPool.intern(key);
 
 		if (intern)
-			this.value = (value == null ? null : value.intern());
+			this.value = StringPool.intern(value);
 		else
 			this.value = value;
 
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers;
+
+import org.oscim.map.Map;
+import org.oscim.renderer.FrameProfilerRenderer;
+import org.oscim.renderer.MapRenderer;
+
+/**
+ * Overlay showing frame times, per layer timings and GL counters of
+ * the render thread. Profiling is enabled while this layer is enabled.
+ */
+public class FrameProfilerLayer extends GenericLayer {
+
+	public FrameProfilerLayer(Map map) {
+		super(map, new FrameProfilerRenderer());
+		MapRenderer.getProfiler().setEnabled(true);
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		super.setEnabled(enabled);
+		MapRenderer.getProfiler().setEnabled(enabled);
+	}
+
+	@Override
+	public void onDetach() {
+		MapRenderer.getProfiler().setEnabled(false);
+	}
+}
@@ -17,74 +17,167 @@
  */
 package org.oscim.layers.tile;
 
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
 import static org.oscim.layers.tile.MapTile.State.LOADING;
 import static org.oscim.layers.tile.MapTile.State.NONE;
 
 /**
  * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * 
+ * Jobs are kept in a binary heap ordered by MapTile.distance. When the
+ * visible tiles change the queue is updated in place: tiles which are
+ * still needed keep their LOADING state and the heap is rebuilt with
+ * the new distances, tiles which are no longer needed are dropped.
  */
 public class JobQueue {
 
-	private int mCurrentJob = 0;
-	private MapTile[] mJobs;
+	/** jobIndex of tiles which are dropped unless passed again to setJobs */
+	private final static int DROP = -2;
+
+	private MapTile[] mJobs = new MapTile[32];
+	private MapTile[] mTmp = new MapTile[32];
+	private int mSize;
 
 	/**
 	 * @param tiles
 	 *            the jobs to be added to this queue.
 	 */
-	public synchronized void setJobs(MapTile[] tiles) {
-		for (MapTile t : tiles)
-			t.state = LOADING;
+	public void setJobs(MapTile[] tiles) {
+		setJobs(tiles, tiles.length);
+	}
+
+	/**
+	 * Replace the jobs of this queue. Queued tiles which are not contained
+	 * in 'tiles' are removed and set to state NONE. Tiles which are
+	 * currently loaded (state != NONE and not queued) are skipped.
+	 * 
+	 * @param tiles
+	 *            the jobs to be in this queue, with updated distance.
+	 *            May contain duplicates.
+	 */
+	public synchronized void setJobs(MapTile[] tiles, int size) {
+		MapTile[] jobs = mJobs;
+		int oldSize = mSize;
 
-		mJobs = tiles;
-		mCurrentJob = 0;
+		for (int i = 0; i < oldSize; i++)
+			jobs[i].jobIndex = DROP;
+
+		if (mTmp.length < size)
+			mTmp = new MapTile[size + (size >> 1)];
+
+		MapTile[] heap = mTmp;
+		int n = 0;
+		long now = System.nanoTime();
+
+		for (int i = 0; i < size; i++) {
+			MapTile t = tiles[i];
+			if (t.jobIndex == DROP) {
+				/* still needed */
+			} else if (t.jobIndex < 0 && t.state == NONE) {
+				t.state = LOADING;
+				t.jobTime = now;
+			} else {
+				/* duplicate or currently loading */
+				continue;
+			}
+			t.jobIndex = n;
+			heap[n++] = t;
+		}
+
+		for (int i = 0; i < oldSize; i++) {
+			MapTile t = jobs[i];
+			if (t.jobIndex == DROP) {
+				t.jobIndex = -1;
+				if (t.state == LOADING)
+					t.state = NONE;
+			}
+			jobs[i] = null;
+		}
+
+		mTmp = jobs;
+		mJobs = heap;
+		mSize = n;
+
+		for (int i = (n >> 1) - 1; i >= 0; i--)
+			siftDown(i);
 	}
 
 	/**
 	 * Removes all jobs from this queue.
 	 */
 	public synchronized void clear() {
-		if (mJobs == null) {
-			mCurrentJob = 0;
-			return;
-		}
-		MapTile[] tiles = mJobs;
+		MapTile[] jobs = mJobs;
 
-		for (int i = mCurrentJob, n = mJobs.length; i < n; i++) {
-			tiles[i].state = NONE;
-			tiles[i] = null;
+		for (int i = 0; i < mSize; i++) {
+			MapTile t = jobs[i];
+			t.jobIndex = -1;
+			if (t.state == LOADING)
+				t.state = NONE;
+			jobs[i] = null;
 		}
-		mCurrentJob = 0;
-		mJobs = null;
+		mSize = 0;
 	}
 
 	/**
 	 * @return true if this queue contains no jobs, false otherwise.
 	 */
 	public synchronized boolean isEmpty() {
-		return (mJobs == null);
+		return mSize == 0;
+	}
+
+	/**
+	 * @return the number of queued jobs.
+	 */
+	public synchronized int size() {
+		return mSize;
 	}
 
 	/**
 	 * @return the most important job from this queue or null, if empty.
 	 */
 	public synchronized MapTile poll() {
-		if (mJobs == null)
-			return null;
+		while (mSize > 0) {
+			MapTile t = mJobs[0];
+			t.jobIndex = -1;
+
+			MapTile last = mJobs[--mSize];
+			mJobs[mSize] = null;
+			if (mSize > 0) {
+				mJobs[0] = last;
+				last.jobIndex = 0;
+				siftDown(0);
+			}
+
+			/* removed from TileManager cache while queued */
+			if (t.state == CANCEL)
+				continue;
 
-		if (mCurrentJob == 0) {
-			int len = mJobs.length;
-			if (len > 1)
-				TileDistanceSort.sort(mJobs, 0, len);
+			return t;
 		}
+		return null;
+	}
 
-		MapTile t = mJobs[mCurrentJob];
-		mJobs[mCurrentJob] = null;
+	private void siftDown(int pos) {
+		MapTile[] jobs = mJobs;
+		int size = mSize;
+		MapTile t = jobs[pos];
 
-		if (++mCurrentJob == mJobs.length)
-			mJobs = null;
+		int half = size >> 1;
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			MapTile c = jobs[child];
+			int right = child + 1;
+			if (right < size && jobs[right].distance < c.distance)
+				c = jobs[child = right];
 
-		return t;
+			if (t.distance <= c.distance)
+				break;
 
+			jobs[pos] = c;
+			c.jobIndex = pos;
+			pos = child;
+		}
+		jobs[pos] = t;
+		t.jobIndex = pos;
 	}
 }
@@ -68,6 +68,14 @@ public class MapTile extends Tile {
 		Object id;
 
 		protected abstract void dispose();
+
+		/**
+		 * @return estimated number of bytes held by this TileData,
+		 *         e.g. in vertices, buffer objects and textures.
+		 */
+		protected int getMemoryUsage() {
+			return 0;
+		}
 	}
 
 	public MapTile(TileNode node, int tileX, int tileY, int zoomLevel) {
@@ -121,6 +129,33 @@ public class MapTile extends Tile {
 	 */
 	int lastDraw = 0;
 
+	/**
+	 * Position in {@link JobQueue}, -1 when not queued
+	 */
+	int jobIndex = -1;
+
+	/**
+	 * Time in ns when the tile was added to {@link JobQueue}
+	 */
+	long jobTime;
+
+	/**
+	 * Bytes of this tile accounted by {@link TileManager}
+	 */
+	int memory;
+
+	/**
+	 * Last update of {@link TileManager} in which the tile was visible
+	 */
+	int lastVisible;
+
+	/**
+	 * Distance weighted by the time since the tile was visible, by which
+	 * {@link TileManager} removes tiles from cache. Kept apart from
+	 * 'distance', the priority of the tile in {@link JobQueue}.
+	 */
+	float cacheDistance;
+
 	/**
 	 * Pointer to access relatives in {@link QuadTree}
 	 */
@@ -249,6 +284,16 @@ public class MapTile extends Tile {
 		return (ElementLayers) data;
 	}
 
+	/**
+	 * @return estimated number of bytes held by the data of this tile.
+	 */
+	public int getMemoryUsage() {
+		int size = 0;
+		for (TileData d = data; d != null; d = d.next)
+			size += d.getMemoryUsage();
+		return size;
+	}
+
 	public TileData getData(Object id) {
 		for (TileData d = data; d != null; d = d.next)
 			if (d.id == id)
@@ -39,6 +39,20 @@ public class TileDistanceSort extends TimSort<MapTile> {
 		}
 	}
 
+	/**
+	 * Sort by {@link MapTile#cacheDistance}, null last.
+	 */
+	static void sortByCacheDistance(MapTile[] a, int lo, int hi) {
+		int nRemaining = hi - lo;
+		if (nRemaining < 2) {
+			return;
+		}
+
+		synchronized (INSTANCE) {
+			INSTANCE.doSort(a, CacheDistanceComparator, lo, hi);
+		}
+	}
+
 	final static Comparator<MapTile> DistanceComparator = new Comparator<MapTile>() {
 		@Override
 		public int compare(MapTile a, MapTile b) {
@@ -60,4 +74,26 @@ public class TileDistanceSort extends TimSort<MapTile> {
 			return 0;
 		}
 	};
+
+	final static Comparator<MapTile> CacheDistanceComparator = new Comparator<MapTile>() {
+		@Override
+		public int compare(MapTile a, MapTile b) {
+			if (a == null) {
+				if (b == null)
+					return 0;
+
+				return 1;
+			}
+			if (b == null)
+				return -1;
+
+			if (a.cacheDistance < b.cacheDistance) {
+				return -1;
+			}
+			if (a.cacheDistance > b.cacheDistance) {
+				return 1;
+			}
+			return 0;
+		}
+	};
 }
@@ -41,6 +41,9 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 
 	protected TileLoader[] mTileLoader;
 
+	/** runs the TileLoaders, shared with other TileLayers */
+	private TileLoaderPool mLoaderPool = TileLoaderPool.getDefault();
+
 	public TileLayer(Map map, TileManager tileManager, TileRenderer renderer) {
 		super(map);
 		renderer.setTileManager(tileManager);
@@ -59,19 +62,50 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 	protected void initLoader(int numLoaders) {
 		mTileLoader = new TileLoader[numLoaders];
 
-		for (int i = 0; i < numLoaders; i++) {
+		for (int i = 0; i < numLoaders; i++)
 			mTileLoader[i] = createLoader();
-			mTileLoader[i].start();
-		}
+
+		mLoaderPool.add(this);
+	}
+
+	/**
+	 * @return a loader which is not running or paused, or null
+	 */
+	TileLoader getIdleLoader() {
+		if (mTileLoader == null)
+			return null;
+
+		for (TileLoader loader : mTileLoader)
+			if (loader.isIdle())
+				return loader;
+
+		return null;
 	}
 
 	/**
-	 * Override to set number of loader threads. Default is 4.
+	 * Override to set number of loaders, i.e. the maximum number of
+	 * tiles loaded at the same time by this layer. Default is 4.
 	 */
 	protected int getNumLoaders() {
 		return NUM_LOADERS;
 	}
 
+	/**
+	 * Set the TileLoaderPool to run the loaders of this layer. Must be set
+	 * before the layer is added to the map. Default is
+	 * {@link TileLoaderPool#getDefault()}.
+	 */
+	public void setLoaderPool(TileLoaderPool pool) {
+		if (pool == null)
+			throw new IllegalArgumentException("pool is null");
+
+		mLoaderPool.remove(this);
+		mLoaderPool = pool;
+
+		if (mTileLoader != null)
+			pool.add(this);
+	}
+
 	@Override
 	public void onMapEvent(Event event, MapPosition mapPosition) {
 
@@ -93,6 +127,8 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 
 	@Override
 	public void onDetach() {
+		mLoaderPool.remove(this);
+
 		for (TileLoader loader : mTileLoader) {
 			loader.pause();
 			loader.interrupt();
@@ -101,8 +137,7 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 	}
 
 	void notifyLoaders() {
-		for (TileLoader loader : mTileLoader)
-			loader.go();
+		mLoaderPool.schedule();
 	}
 
 	protected void pauseLoaders(boolean wait) {
@@ -122,6 +157,8 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 	protected void resumeLoaders() {
 		for (TileLoader loader : mTileLoader)
 			loader.proceed();
+
+		mLoaderPool.schedule();
 	}
 
 	public TileManager getManager() {
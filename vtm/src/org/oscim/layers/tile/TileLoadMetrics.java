@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.oscim.tiling.ITileDataSink;
+
+/**
+ * Stage timings and counters of loading one tile, passed to the
+ * {@link TileManager.LoadListener}s of the TileManager.
+ *
+ * Metrics are only collected while a LoadListener is registered. Each
+ * TileLoader reuses its instance for the next tile, so listeners must
+ * copy what they need.
+ *
+ * The loading time of a tile is split into:
+ * <ul>
+ * <li>queue: from adding the tile to the JobQueue until a loader starts
+ * with it.</li>
+ * <li>fetch: reading the tile data, reported by the ITileDataSource.</li>
+ * <li>theme: matching elements against the RenderTheme.</li>
+ * <li>build: adding elements to the render layers, by the loader and
+ * its hooks, and preparing the vertices.</li>
+ * <li>decode: the remaining time of loading, i.e. mostly parsing the
+ * tile data.</li>
+ * </ul>
+ */
+public class TileLoadMetrics {
+
+	/** the loaded tile */
+	public MapTile tile;
+
+	/** false when the tile failed to load or was canceled */
+	public boolean success;
+
+	/** true when the tile data was read from a local cache */
+	public boolean cacheHit;
+
+	public long queueNanos;
+	public long fetchNanos;
+	public long decodeNanos;
+	public long themeNanos;
+	public long buildNanos;
+
+	/** total loading time, without queue time */
+	public long loadNanos;
+
+	/** number of elements passed to the loader */
+	public int elements;
+
+	/** number of vertices of the tile render layers */
+	public int vertices;
+
+	private long mStart;
+	private long mFetchStart;
+
+	/**
+	 * @return the metrics to be filled by the ITileDataSource for the
+	 *         current tile of 'sink', or null when no metrics are
+	 *         collected.
+	 */
+	public static TileLoadMetrics get(ITileDataSink sink) {
+		if (sink instanceof TileLoader)
+			return ((TileLoader) sink).mMetrics;
+
+		return null;
+	}
+
+	/**
+	 * To be called by the ITileDataSource before it reads tile data.
+	 */
+	public void beginFetch() {
+		mFetchStart = System.nanoTime();
+	}
+
+	/**
+	 * To be called by the ITileDataSource when the tile data was read.
+	 * Several fetches of one tile are summed up.
+	 */
+	public void endFetch() {
+		fetchNanos += System.nanoTime() - mFetchStart;
+	}
+
+	/**
+	 * To be called by the ITileDataSource when the tile is read from a
+	 * local cache.
+	 */
+	public void setCacheHit() {
+		cacheHit = true;
+	}
+
+	/** called by TileLoader when it starts loading 'tile' */
+	void begin(MapTile tile) {
+		this.tile = tile;
+		mStart = System.nanoTime();
+		queueNanos = tile.jobTime == 0 ? 0 : mStart - tile.jobTime;
+
+		success = false;
+		cacheHit = false;
+		fetchNanos = decodeNanos = themeNanos = buildNanos = loadNanos = 0;
+		elements = vertices = 0;
+	}
+
+	/** called by TileLoader when loading is completed */
+	void end(boolean success) {
+		this.success = success;
+		loadNanos = System.nanoTime() - mStart;
+		decodeNanos = Math.max(0, loadNanos - fetchNanos - themeNanos - buildNanos);
+	}
+}
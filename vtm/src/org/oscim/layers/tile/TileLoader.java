@@ -16,68 +16,180 @@
  */
 package org.oscim.layers.tile;
 
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
 import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
 import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
 
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.tiling.ITileDataSink;
-import org.oscim.utils.PausableThread;
-
-public abstract class TileLoader extends PausableThread implements ITileDataSink {
-	private static int id;
-
-	private final String THREAD_NAME;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.UrlTileDataSource;
+
+/**
+ * A TileLoader loads one tile at a time. Loading is run by the
+ * {@link TileLoaderPool} of the TileLayer. Loaders of a
+ * {@link UrlTileDataSource} may get several tiles at once for which the
+ * requests are pipelined.
+ */
+public abstract class TileLoader implements ITileDataSink {
 	private final TileManager mTileManager;
 
 	/** currently processed tile */
 	protected MapTile mTile;
 
+	/**
+	 * metrics of the current tile, null when no
+	 * {@link TileManager.LoadListener} is registered
+	 */
+	protected TileLoadMetrics mMetrics;
+
+	private final TileLoadMetrics mLoadMetrics = new TileLoadMetrics();
+
+	private boolean mPausing;
+	private boolean mRunning;
+	private boolean mInterrupted;
+
 	public TileLoader(TileManager tileManager) {
-		super();
 		mTileManager = tileManager;
-		THREAD_NAME = "TileLoader" + (id++);
 	}
 
 	protected abstract boolean loadTile(MapTile tile);
 
-	public void go() {
-		synchronized (this) {
-			notify();
-		}
+	public abstract void cleanup();
+
+	/**
+	 * @return the ITileDataSource queried by loadTile(), or null.
+	 */
+	protected ITileDataSource getTileDataSource() {
+		return null;
 	}
 
-	@Override
-	protected void doWork() {
-		mTile = mTileManager.getTileJob();
+	/**
+	 * @return true when loadTile() mostly waits for network I/O. These
+	 *         loaders are run by the I/O executor of TileLoaderPool.
+	 */
+	protected boolean isBlocking() {
+		return getTileDataSource() instanceof UrlTileDataSource;
+	}
 
-		if (mTile == null)
-			return;
+	/**
+	 * @return maximum number of tiles to pass to run() at once.
+	 */
+	int getBatchSize() {
+		ITileDataSource dataSource = getTileDataSource();
+		if (dataSource instanceof UrlTileDataSource)
+			return ((UrlTileDataSource) dataSource).getBatchSize();
+
+		return 1;
+	}
 
+	/**
+	 * Called by TileLoaderPool on an executor thread. The tiles are loaded
+	 * in order, tiles which were canceled meanwhile are skipped.
+	 */
+	void run(MapTile[] tiles, int count) {
+		UrlTileDataSource urlSource = null;
+		if (count > 1 && getTileDataSource() instanceof UrlTileDataSource) {
+			urlSource = (UrlTileDataSource) getTileDataSource();
+			urlSource.setNextTiles(tiles, count);
+		}
 		try {
-			loadTile(mTile);
-		} catch (Exception e) {
-			e.printStackTrace();
-			completed(FAILED);
+			for (int i = 0; i < count; i++) {
+				MapTile tile = tiles[i];
+				mTile = tile;
+
+				if (mTileManager.hasLoadListener()) {
+					mMetrics = mLoadMetrics;
+					mMetrics.begin(tile);
+				}
+
+				if (tile.state(CANCEL) || isCanceled()) {
+					completed(FAILED);
+					continue;
+				}
+				try {
+					loadTile(tile);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				/* loadTile() failed without calling completed() */
+				if (mTile != null)
+					completed(FAILED);
+			}
+		} finally {
+			if (urlSource != null)
+				urlSource.setNextTiles(null, 0);
 		}
 	}
 
-	@Override
-	protected String getThreadName() {
-		return THREAD_NAME;
+	/**
+	 * @return true when the TileLoaderPool may start a job.
+	 */
+	synchronized boolean isIdle() {
+		return !(mRunning || mPausing || mInterrupted);
 	}
 
-	@Override
-	protected int getThreadPriority() {
-		return (Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2;
+	synchronized void setRunning(boolean running) {
+		mRunning = running;
+		if (!running)
+			notifyAll();
 	}
 
-	@Override
-	protected boolean hasWork() {
-		return mTileManager.hasTileJobs();
+	/**
+	 * @return true if this loader is paused and not loading a tile.
+	 */
+	public synchronized boolean isPausing() {
+		return mPausing && !mRunning;
 	}
 
-	public abstract void cleanup();
+	/**
+	 * The loader should stop its work temporarily.
+	 */
+	public synchronized void pause() {
+		mPausing = true;
+	}
+
+	/**
+	 * @return true when the loader should stop loading the current tile.
+	 */
+	public synchronized boolean isCanceled() {
+		return mPausing;
+	}
+
+	/**
+	 * The paused loader should continue with its work.
+	 */
+	public synchronized void proceed() {
+		mPausing = false;
+	}
+
+	/**
+	 * Causes the current thread to wait until the current job is done.
+	 */
+	public synchronized void awaitPausing() {
+		while (mRunning) {
+			try {
+				wait(10);
+			} catch (InterruptedException e) {
+				/* restore the interrupted status */
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop loading, the loader will not be used again.
+	 */
+	public synchronized void interrupt() {
+		mInterrupted = true;
+		mPausing = true;
+	}
+
+	public synchronized boolean isInterrupted() {
+		return mInterrupted;
+	}
 
 	/**
 	 * Callback to be called by TileDataSource when finished
@@ -93,6 +205,12 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
 		if (isInterrupted())
 			success = false;
 
+		if (mMetrics != null) {
+			mMetrics.end(success);
+			mTileManager.fireLoadMetrics(mMetrics);
+			mMetrics = null;
+		}
+
 		mTileManager.jobCompleted(mTile, success);
 		mTile = null;
 	}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the TileLoaders of several TileLayers on shared executors.
+ * 
+ * Loaders of local data sources run on the CPU executor, loaders that
+ * wait for network I/O ({@link TileLoader#isBlocking()}) on a separate
+ * I/O executor, so that they cannot starve tile decoding. At most one job
+ * per executor thread is started, the other jobs stay in the JobQueues
+ * where they are still prioritized. Free threads are handed to the
+ * layers with pending jobs round-robin, so that one layer with many jobs
+ * cannot starve the others.
+ * 
+ * Loaders which can pipeline requests ({@link TileLoader#getBatchSize()})
+ * get the next few jobs of their JobQueue at once.
+ * 
+ * By default all TileLayers use {@link #getDefault()}. The executors can
+ * be replaced by passing e.g. a ForkJoinPool:
+ * 
+ * <pre>
+ * TileLoaderPool pool = new TileLoaderPool(cpuPool, 4, ioPool, 8);
+ * baseLayer.setLoaderPool(pool);
+ * buildingLayer.setLoaderPool(pool);
+ * </pre>
+ */
+public class TileLoaderPool {
+
+	/** number of threads for loaders which wait for network I/O */
+	private static final int IO_THREADS = 4;
+
+	private static TileLoaderPool sDefault;
+
+	/**
+	 * @return the TileLoaderPool shared by all TileLayers, with one CPU
+	 *         thread per available core.
+	 */
+	public static synchronized TileLoaderPool getDefault() {
+		if (sDefault == null) {
+			int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+			sDefault = new TileLoaderPool(cores, IO_THREADS);
+		}
+		return sDefault;
+	}
+
+	private final ExecutorService mCpuExecutor;
+	private final ExecutorService mIoExecutor;
+
+	private final ArrayList<TileLayer> mLayers = new ArrayList<TileLayer>();
+
+	/** maximum number of running jobs, for CPU and I/O executor */
+	private final int[] mSlots = new int[2];
+
+	/** number of running jobs, for CPU and I/O executor */
+	private final int[] mActive = new int[2];
+
+	/** layer which gets the next free slot */
+	private int mNext;
+
+	private final Stats mStats = new Stats();
+
+	/**
+	 * Create a pool with its own fixed size executor for all loaders.
+	 * 
+	 * @param threads
+	 *            number of loader threads.
+	 */
+	public TileLoaderPool(int threads) {
+		this(Executors.newFixedThreadPool(threads, new LoaderThreadFactory("cpu")), threads);
+	}
+
+	/**
+	 * @param executor
+	 *            executor to run all loaders.
+	 * @param slots
+	 *            maximum number of jobs passed to the executor at once,
+	 *            usually its number of threads.
+	 */
+	public TileLoaderPool(ExecutorService executor, int slots) {
+		this(executor, slots, null, 0);
+	}
+
+	/**
+	 * Create a pool with its own fixed size executors.
+	 * 
+	 * @param cpuThreads
+	 *            number of threads for local data sources.
+	 * @param ioThreads
+	 *            number of threads for network data sources.
+	 */
+	public TileLoaderPool(int cpuThreads, int ioThreads) {
+		this(Executors.newFixedThreadPool(cpuThreads, new LoaderThreadFactory("cpu")),
+		     cpuThreads,
+		     Executors.newFixedThreadPool(ioThreads, new LoaderThreadFactory("io")),
+		     ioThreads);
+	}
+
+	/**
+	 * @param cpuExecutor
+	 *            executor for local data sources.
+	 * @param cpuSlots
+	 *            maximum number of jobs passed to cpuExecutor at once,
+	 *            usually its number of threads.
+	 * @param ioExecutor
+	 *            executor for network data sources, or null to run them
+	 *            on cpuExecutor.
+	 * @param ioSlots
+	 *            maximum number of jobs passed to ioExecutor at once.
+	 */
+	public TileLoaderPool(ExecutorService cpuExecutor, int cpuSlots,
+	        ExecutorService ioExecutor, int ioSlots) {
+		if (cpuSlots < 1 || (ioExecutor != null && ioSlots < 1))
+			throw new IllegalArgumentException("slots < 1");
+
+		mCpuExecutor = cpuExecutor;
+		mIoExecutor = ioExecutor;
+		mSlots[0] = cpuSlots;
+		mSlots[1] = ioSlots;
+	}
+
+	synchronized void add(TileLayer layer) {
+		if (!mLayers.contains(layer))
+			mLayers.add(layer);
+	}
+
+	synchronized void remove(TileLayer layer) {
+		mLayers.remove(layer);
+	}
+
+	/**
+	 * Start jobs while there are free slots. Called when new jobs were
+	 * added and when a job is done.
+	 */
+	public void schedule() {
+		synchronized (this) {
+			while (startNextJob())
+				;
+		}
+	}
+
+	/** called with lock held */
+	private boolean startNextJob() {
+		int n = mLayers.size();
+
+		for (int k = 0; k < n; k++) {
+			int idx = (mNext + k) % n;
+			TileLayer layer = mLayers.get(idx);
+			JobQueue jobs = layer.mTileManager.jobQueue;
+
+			if (jobs.isEmpty())
+				continue;
+
+			TileLoader loader = layer.getIdleLoader();
+			if (loader == null)
+				continue;
+
+			int type = (mIoExecutor != null && loader.isBlocking()) ? 1 : 0;
+			if (mActive[type] >= mSlots[type])
+				continue;
+
+			MapTile tile = jobs.poll();
+			if (tile == null)
+				continue;
+
+			int batch = loader.getBatchSize();
+			MapTile[] tiles = new MapTile[batch];
+			tiles[0] = tile;
+
+			int count = 1;
+			while (count < batch && (tile = jobs.poll()) != null)
+				tiles[count++] = tile;
+
+			mNext = idx + 1;
+			start(loader, tiles, count, type);
+			return true;
+		}
+		return false;
+	}
+
+	/** called with lock held */
+	private void start(final TileLoader loader, final MapTile[] tiles,
+	        final int count, final int type) {
+		loader.setRunning(true);
+		mActive[type]++;
+		mStats.waiting++;
+
+		final long queued = System.nanoTime();
+
+		Runnable job = new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				synchronized (TileLoaderPool.this) {
+					mStats.waiting--;
+					mStats.loading++;
+					mStats.waitTime += (start - queued) * count;
+				}
+
+				try {
+					loader.run(tiles, count);
+				} finally {
+					long end = System.nanoTime();
+					synchronized (TileLoaderPool.this) {
+						mStats.loading--;
+						mStats.completed += count;
+						mStats.loadTime += end - start;
+						mActive[type]--;
+					}
+					loader.setRunning(false);
+					schedule();
+				}
+			}
+		};
+
+		try {
+			(type == 0 ? mCpuExecutor : mIoExecutor).execute(job);
+		} catch (RejectedExecutionException e) {
+			mActive[type]--;
+			mStats.waiting--;
+			loader.setRunning(false);
+
+			/* pass the tiles back to TileManager */
+			for (int i = 0; i < count; i++) {
+				loader.mTile = tiles[i];
+				loader.completed(FAILED);
+			}
+		}
+	}
+
+	/**
+	 * Counters of the loading pipeline, see {@link #getStats(Stats)}.
+	 */
+	public static class Stats {
+		/** jobs in the JobQueues of all layers */
+		public int queued;
+
+		/** jobs passed to an executor, not yet started */
+		public int waiting;
+
+		/** jobs currently loading */
+		public int loading;
+
+		/** number of finished tiles */
+		public long completed;
+
+		/** total time from passing to an executor until start in ns */
+		public long waitTime;
+
+		/** total time of loading in ns */
+		public long loadTime;
+
+		/** @return average executor wait time per tile in ms */
+		public double getAverageWaitTime() {
+			return completed == 0 ? 0 : waitTime / 1e6 / completed;
+		}
+
+		/** @return average load time per tile in ms */
+		public double getAverageLoadTime() {
+			return completed == 0 ? 0 : loadTime / 1e6 / completed;
+		}
+
+		void set(Stats o) {
+			queued = o.queued;
+			waiting = o.waiting;
+			loading = o.loading;
+			completed = o.completed;
+			waitTime = o.waitTime;
+			loadTime = o.loadTime;
+		}
+	}
+
+	/**
+	 * Get the current counters.
+	 * 
+	 * @param stats
+	 *            to be filled, may be null.
+	 * @return stats
+	 */
+	public synchronized Stats getStats(Stats stats) {
+		if (stats == null)
+			stats = new Stats();
+
+		stats.set(mStats);
+		stats.queued = 0;
+		for (TileLayer l : mLayers)
+			stats.queued += l.mTileManager.jobQueue.size();
+
+		return stats;
+	}
+
+	/**
+	 * Shutdown the executors. The pool cannot be used afterwards.
+	 */
+	public void shutdown() {
+		mCpuExecutor.shutdown();
+		if (mIoExecutor != null)
+			mIoExecutor.shutdown();
+	}
+
+	static class LoaderThreadFactory implements ThreadFactory {
+		private final String mName;
+		private int mCount;
+
+		LoaderThreadFactory(String name) {
+			mName = name;
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "TileLoader-" + mName + "-" + (mCount++));
+			t.setDaemon(true);
+			t.setPriority((Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2);
+			return t;
+		}
+	}
+}
@@ -66,6 +66,21 @@ public class TileManager {
 	private static final int CACHE_THRESHOLD = 30;
 	private static final int CACHE_CLEAR_THRESHOLD = 10;
 
+	/** number of position updates to look ahead when prioritizing jobs */
+	private static final float DIRECTION_BIAS = 8;
+
+	/** default number of tiles to prefetch */
+	private static final int PREFETCH_BUDGET = 16;
+
+	/** default limit of bytes held by cached tiles */
+	private static final long MEMORY_LIMIT = 32 * 1024 * 1024;
+
+	/**
+	 * number of updates after which the distance of a tile that was not
+	 * visible counts double when removing tiles from cache
+	 */
+	private static final float LRU_AGE = 64;
+
 	private final Map mMap;
 	private final Viewport mViewport;
 
@@ -87,17 +102,39 @@ public class TileManager {
 	/* counter to check whether current TileSet has changed */
 	private int mUpdateSerial;
 
+	/* number of updates, to find the least recently visible tiles */
+	private int mUpdateCount;
+
+	/** bytes held by the data of cached tiles */
+	private long mMemoryUsage;
+	private long mMemoryLimit = MEMORY_LIMIT;
+
 	/* lock for TileSets while updating MapTile locks - still needed? */
 	private final Object mTilelock = new Object();
 
 	private TileSet mCurrentTiles;
 	/* package */TileSet mNewTiles;
 
-	/* job queue filled in TileManager and polled by TileLoaders */
-	private final JobQueue jobQueue;
+	/* job queue filled in TileManager and polled by TileLoaderPool */
+	final JobQueue jobQueue;
+
+	/** previous position to bias job distances in moving direction */
+	private final MapPosition mPrevPos = new MapPosition();
+	private final MapPosition mJobPos = new MapPosition();
+	private float mDirectionBias = DIRECTION_BIAS;
 
 	private final float[] mMapPlane = new float[8];
 
+	/** tiles about to become visible, loaded after the visible tiles */
+	private final ArrayList<MapTile> mPrefetch;
+	private final MapPosition mPrefetchPos = new MapPosition();
+	private int mPrefetchBudget = PREFETCH_BUDGET;
+
+	/** x/y of prefetch candidates at zoom level of mPrefetchBox */
+	private int[] mCandidates = new int[64];
+	private float[] mCandidateDist = new float[32];
+	private int mCandidateCnt;
+
 	private final QuadTree<TileNode, MapTile> mIndex = new QuadTree<TileNode, MapTile>() {
 
 		@Override
@@ -129,6 +166,19 @@ public class TileManager {
 		void onTileManagerEvent(Event event, MapTile tile);
 	};
 
+	/**
+	 * Receives the {@link TileLoadMetrics} of each loaded tile.
+	 */
+	public interface LoadListener {
+		/**
+		 * Called on the TileLoader thread when a tile is loaded or failed
+		 * to load. 'metrics' is reused after this method returns.
+		 */
+		void onTileLoaded(TileLoadMetrics metrics);
+	}
+
+	private volatile LoadListener[] mLoadListeners = new LoadListener[0];
+
 	public TileManager(Map map, int minZoom, int maxZoom, int cacheLimit) {
 		mMap = map;
 		mMaxZoom = maxZoom;
@@ -140,6 +190,7 @@ public class TileManager {
 
 		jobQueue = new JobQueue();
 		mJobs = new ArrayList<MapTile>();
+		mPrefetch = new ArrayList<MapTile>();
 		mTiles = new MapTile[mCacheLimit];
 
 		mTilesSize = 0;
@@ -147,11 +198,88 @@ public class TileManager {
 		mUpdateSerial = 0;
 	}
 
+	/**
+	 * Add a listener for the load metrics of tiles. Collecting metrics is
+	 * only enabled while a LoadListener is registered.
+	 */
+	public synchronized void addLoadListener(LoadListener l) {
+		LoadListener[] listeners = Arrays.copyOf(mLoadListeners,
+		                                         mLoadListeners.length + 1);
+		listeners[listeners.length - 1] = l;
+		mLoadListeners = listeners;
+	}
+
+	public synchronized void removeLoadListener(LoadListener l) {
+		LoadListener[] listeners = mLoadListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] != l)
+				continue;
+
+			LoadListener[] tmp = new LoadListener[listeners.length - 1];
+			System.arraycopy(listeners, 0, tmp, 0, i);
+			System.arraycopy(listeners, i + 1, tmp, i, tmp.length - i);
+			mLoadListeners = tmp;
+			return;
+		}
+	}
+
+	boolean hasLoadListener() {
+		return mLoadListeners.length > 0;
+	}
+
+	/** called by TileLoader thread */
+	void fireLoadMetrics(TileLoadMetrics metrics) {
+		for (LoadListener l : mLoadListeners)
+			l.onTileLoaded(metrics);
+	}
+
 	public void setZoomTable(int[] zoomLevel) {
 		mZoomTable = zoomLevel;
 
 	}
 
+	/**
+	 * Prioritize jobs in the direction the map moves. Tile distances are
+	 * measured from the map center moved by 'bias' times the distance of
+	 * the last position update, limited to one tile. 0 disables the bias.
+	 */
+	public void setDirectionBias(float bias) {
+		mDirectionBias = bias;
+	}
+
+	/**
+	 * Set the maximum number of tiles which are queued in advance while
+	 * the map is animated, i.e. tiles at the leading edge of a fling or
+	 * of the next zoom level while zooming in. Prefetch jobs are loaded
+	 * after all visible tiles and are dropped from the queue when the
+	 * animation is canceled or changes its target. 0 disables prefetching.
+	 */
+	public void setPrefetchBudget(int tiles) {
+		mPrefetchBudget = tiles;
+	}
+
+	/**
+	 * Set the number of bytes the data of cached tiles may hold, i.e.
+	 * their vertices, buffer objects and textures. When the limit is
+	 * exceeded tiles are removed by distance to the map center, weighted
+	 * by the time since they were visible.
+	 */
+	public void setMemoryLimit(long bytes) {
+		mMemoryLimit = bytes;
+	}
+
+	public long getMemoryLimit() {
+		return mMemoryLimit;
+	}
+
+	/**
+	 * @return estimated number of bytes held by the data of cached
+	 *         tiles, accounted when tiles are loaded.
+	 */
+	public long getMemoryUsage() {
+		return mMemoryUsage;
+	}
+
 	public void init() {
 		/* pass VBOs and VertexItems back to pools */
 		for (int i = 0; i < mTilesSize; i++) {
@@ -189,15 +317,8 @@ public class TileManager {
 		if (mNewTiles == null || mNewTiles.tiles.length == 0)
 			init();
 
-		/* clear JobQueue and set tiles to state == NONE.
-		 * one could also append new tiles and sort in JobQueue
-		 * but this has the nice side-effect that MapWorkers dont
-		 * start with old jobs while new jobs are calculated, which
-		 * should increase the chance that they are free when new
-		 * jobs come in. */
-		jobQueue.clear();
-
 		if (pos.zoomLevel < mMinZoom) {
+			jobQueue.clear();
 			if (mCurrentTiles.cnt > 0 && pos.zoomLevel < mMinZoom - 4) {
 				synchronized (mTilelock) {
 					mCurrentTiles.releaseTiles();
@@ -206,18 +327,12 @@ public class TileManager {
 			return false;
 		}
 
-		int tileZoom = FastMath.clamp(pos.zoomLevel, mMinZoom, mMaxZoom);
+		mUpdateCount++;
 
-		if (mZoomTable != null) {
-			int match = 0;
-			for (int z : mZoomTable) {
-				if (z <= tileZoom && z > match)
-					match = z;
-			}
-			if (match == 0)
-				return false;
-
-			tileZoom = match;
+		int tileZoom = tileZoom(pos.zoomLevel);
+		if (tileZoom < 0) {
+			jobQueue.clear();
+			return false;
 		}
 
 		mViewport.getMapExtents(mMapPlane, Tile.SIZE / 2);
@@ -267,15 +382,41 @@ public class TileManager {
 			mMap.render();
 		}
 
-		/* Add tile jobs to queue */
-		if (mJobs.isEmpty())
+		prefetch(pos, tileZoom);
+
+		/* Update the queue with the tiles to load. Tiles that are still
+		 * queued keep their place, others are dropped. */
+		if (mJobs.isEmpty() && mPrefetch.isEmpty()) {
+			jobQueue.clear();
+			mPrevPos.copy(pos);
+
+			if (mMemoryUsage > mMemoryLimit)
+				limitCache(pos, 0);
+
 			return false;
+		}
 
-		MapTile[] jobs = new MapTile[mJobs.size()];
-		jobs = mJobs.toArray(jobs);
-		updateDistances(jobs, jobs.length, pos);
+		int numJobs = mJobs.size();
+		MapTile[] jobs = new MapTile[numJobs + mPrefetch.size()];
+		for (int i = 0; i < numJobs; i++)
+			jobs[i] = mJobs.get(i);
+		updateDistances(jobs, numJobs, biasPosition(pos, tileZoom));
+
+		if (!mPrefetch.isEmpty()) {
+			/* queue prefetch jobs after the visible tiles */
+			float maxDistance = 0;
+			for (int i = 0; i < numJobs; i++)
+				maxDistance = Math.max(maxDistance, jobs[i].distance);
+
+			for (int i = 0, n = mPrefetch.size(); i < n; i++) {
+				MapTile t = mPrefetch.get(i);
+				t.distance += maxDistance + 1;
+				jobs[numJobs + i] = t;
+			}
+			mPrefetch.clear();
+		}
 
-		/* sets tiles to state == LOADING */
+		/* sets new tiles to state == LOADING */
 		jobQueue.setJobs(jobs);
 
 		mJobs.clear();
@@ -293,13 +434,167 @@ public class TileManager {
 		int remove = mTilesCount - (mCacheLimit - mCacheReduce);
 
 		if (remove > CACHE_THRESHOLD ||
-		        mTilesForUpload > MAX_TILES_IN_QUEUE)
+		        mTilesForUpload > MAX_TILES_IN_QUEUE ||
+		        mMemoryUsage > mMemoryLimit)
 
 			limitCache(pos, remove);
 
 		return true;
 	}
 
+	/**
+	 * @return the tile zoom level for 'zoomLevel' or -1 when the zoom
+	 *         table has no matching level.
+	 */
+	private int tileZoom(int zoomLevel) {
+		int tileZoom = FastMath.clamp(zoomLevel, mMinZoom, mMaxZoom);
+
+		if (mZoomTable != null) {
+			int match = 0;
+			for (int z : mZoomTable) {
+				if (z <= tileZoom && z > match)
+					match = z;
+			}
+			if (match == 0)
+				return -1;
+
+			tileZoom = match;
+		}
+		return tileZoom;
+	}
+
+	/**
+	 * Add the tiles that become visible at the target position of the
+	 * current animation to mPrefetch. Without animation the next zoom
+	 * level is prefetched when the map is scaled up, e.g. by a pinch
+	 * gesture. Tiles closest to the current position are taken first.
+	 */
+	private void prefetch(MapPosition pos, int tileZoom) {
+		if (mPrefetchBudget <= 0)
+			return;
+
+		MapPosition target = mPrefetchPos;
+		if (!mMap.animator().getTargetPosition(target)) {
+			MapPosition prev = mPrevPos;
+			if (prev.scale >= pos.scale)
+				return;
+
+			/* look ahead in the direction of scaling, up to the next
+			 * zoom level */
+			double scale = pos.scale;
+			if (mDirectionBias > 0)
+				scale *= Math.pow(pos.scale / prev.scale, mDirectionBias);
+			target.copy(pos);
+			target.setScale(Math.min(scale, 1 << (pos.zoomLevel + 1)));
+		}
+
+		int zoom = tileZoom(target.zoomLevel);
+		if (zoom < 0)
+			return;
+
+		/* the current tiles are loaded anyway */
+		if (zoom == tileZoom && target.x == pos.x && target.y == pos.y)
+			return;
+
+		/* zoom in one level at a time */
+		if (zoom > tileZoom + 1 && mZoomTable == null)
+			zoom = tileZoom + 1;
+
+		mCandidateCnt = 0;
+		mPrefetchBox.scan(target.x, target.y, target.scale, zoom, mMapPlane);
+
+		int cnt = mCandidateCnt;
+		if (cnt == 0)
+			return;
+
+		if (mCandidateDist.length < cnt)
+			mCandidateDist = new float[mCandidates.length >> 1];
+
+		/* distance to current map center in tiles */
+		double scale = 1 << zoom;
+		double cx = pos.x * scale;
+		double cy = pos.y * scale;
+		int[] candidates = mCandidates;
+		float[] dist = mCandidateDist;
+		for (int i = 0; i < cnt; i++) {
+			double dx = candidates[i << 1] + 0.5 - cx;
+			double dy = candidates[(i << 1) + 1] + 0.5 - cy;
+			dist[i] = (float) (dx * dx + dy * dy);
+		}
+
+		/* select the closest tiles within budget */
+		for (int n = Math.min(cnt, mPrefetchBudget); n > 0; n--) {
+			int min = 0;
+			for (int i = 1; i < cnt; i++)
+				if (dist[i] < dist[min])
+					min = i;
+
+			int x = candidates[min << 1];
+			int y = candidates[(min << 1) + 1];
+			MapTile tile = mIndex.getTile(x, y, zoom);
+			if (tile == null) {
+				TileNode node = mIndex.add(x, y, zoom);
+				tile = node.item = new MapTile(node, x, y, zoom);
+				addToCache(tile);
+			}
+			tile.distance = dist[min];
+			tile.lastVisible = mUpdateCount;
+			mPrefetch.add(tile);
+
+			dist[min] = Float.MAX_VALUE;
+		}
+	}
+
+	private final ScanBox mPrefetchBox = new ScanBox() {
+
+		@Override
+		protected void setVisible(int y, int x1, int x2) {
+			int xmax = 1 << mZoom;
+
+			for (int x = x1; x < x2; x++) {
+				int xx = x;
+				if (x < 0 || x >= xmax) {
+					/* flip-around date line */
+					if (x < 0)
+						xx = xmax + x;
+					else
+						xx = x - xmax;
+
+					if (xx < 0 || xx >= xmax)
+						continue;
+				}
+
+				/* skip tiles that are loaded and visible ones which
+				 * are added to the jobs by mScanBox */
+				MapTile t = mIndex.getTile(xx, y, mZoom);
+				if (t != null && ((t.isActive() && t.state != LOADING) || t.isLocked()))
+					continue;
+
+				int[] candidates = mCandidates;
+				int cnt = mCandidateCnt << 1;
+
+				/* check if tile is already added */
+				boolean added = false;
+				for (int i = 0; i < cnt; i += 2)
+					if (candidates[i] == xx && candidates[i + 1] == y) {
+						added = true;
+						break;
+					}
+				if (added)
+					continue;
+
+				if (cnt == candidates.length) {
+					mCandidates = new int[cnt * 2];
+					System.arraycopy(candidates, 0, mCandidates, 0, cnt);
+					candidates = mCandidates;
+				}
+				candidates[cnt] = xx;
+				candidates[cnt + 1] = y;
+				mCandidateCnt++;
+			}
+		}
+	};
+
 	/** only used in setmapDatabase -- deprecate? */
 	public void clearJobs() {
 		jobQueue.clear();
@@ -350,14 +645,17 @@ public class TileManager {
 	MapTile addTile(int x, int y, int zoomLevel) {
 		MapTile tile = mIndex.getTile(x, y, zoomLevel);
 
+		/* add tiles that are not loaded or still queued. JobQueue
+		 * skips duplicates and tiles which are currently loading. */
 		if (tile == null) {
 			TileNode n = mIndex.add(x, y, zoomLevel);
 			tile = n.item = new MapTile(n, x, y, zoomLevel);
 			mJobs.add(tile);
 			addToCache(tile);
-		} else if (!tile.isActive()) {
+		} else if (!tile.isActive() || tile.state == LOADING) {
 			mJobs.add(tile);
 		}
+		tile.lastVisible = mUpdateCount;
 
 		if ((zoomLevel > mMinZoom) && (mZoomTable == null)) {
 			/* prefetch parent */
@@ -366,13 +664,11 @@ public class TileManager {
 				TileNode n = mIndex.add(x >> 1, y >> 1, zoomLevel - 1);
 				p = n.item = new MapTile(n, x >> 1, y >> 1, zoomLevel - 1);
 				addToCache(p);
-				// hack to not add tile twice to queue
-				p.state = LOADING;
 				mJobs.add(p);
-			} else if (!p.isActive()) {
-				p.state = LOADING;
+			} else if (!p.isActive() || p.state == LOADING) {
 				mJobs.add(p);
 			}
+			p.lastVisible = mUpdateCount;
 		}
 		return tile;
 	}
@@ -416,6 +712,8 @@ public class TileManager {
 			mIndex.removeItem(t);
 		}
 
+		mMemoryUsage -= t.memory;
+		t.memory = 0;
 		mTilesCount--;
 	}
 
@@ -445,11 +743,27 @@ public class TileManager {
 			remove--;
 		}
 
-		if (remove < CACHE_CLEAR_THRESHOLD && newTileCnt < MAX_TILES_IN_QUEUE)
+		if (remove < CACHE_CLEAR_THRESHOLD && newTileCnt < MAX_TILES_IN_QUEUE
+		        && mMemoryUsage <= mMemoryLimit)
 			return;
 
-		updateDistances(tiles, size, pos);
-		TileDistanceSort.sort(tiles, 0, size);
+		/* remove tiles first that were not visible for a while. queued
+		 * tiles keep their job distance, the JobQueue is ordered by it */
+		long x = (long) (pos.x * (1 << DISTANCE_ZOOM));
+		long y = (long) (pos.y * (1 << DISTANCE_ZOOM));
+		for (int i = 0; i < size; i++) {
+			MapTile t = tiles[i];
+			if (t != null)
+				t.cacheDistance = (getDistance(t, x, y, pos.zoomLevel) + 1)
+				        * (1 + (mUpdateCount - t.lastVisible) / LRU_AGE);
+		}
+		TileDistanceSort.sortByCacheDistance(tiles, 0, size);
+
+		/* free memory down to 7/8 of the limit to not run this on
+		 * each update */
+		long memoryTarget = mMemoryLimit;
+		if (mMemoryUsage > mMemoryLimit)
+			memoryTarget -= mMemoryLimit >> 3;
 
 		/* sorting also repacks the 'sparse' filled array
 		 * so end of mTiles is at mTilesCount now */
@@ -458,13 +772,13 @@ public class TileManager {
 		// log.debug("remove:" + remove + "  new:" + newTileCnt);
 		// log.debug("cur: " + mapPosition);
 
-		for (int i = size - 1; i >= 0 && remove > 0; i--) {
+		for (int i = size - 1; i >= 0 && (remove > 0 || mMemoryUsage > memoryTarget); i--) {
 			MapTile t = tiles[i];
 			if (t.isLocked()) {
 				/* dont remove tile used by TileRenderer, or somewhere else
 				 * try again in next run. */
 				if (dbg)
-					log.debug("{} locked (state={}, d={})", t, t.state, t.distance);
+					log.debug("{} locked (state={}, d={})", t, t.state, t.cacheDistance);
 				continue;
 
 			}
@@ -475,13 +789,13 @@ public class TileManager {
 				 * VectorTileLoader */
 				t.state = CANCEL;
 				if (dbg)
-					log.debug("{} canceled (d={})", t, t.distance);
+					log.debug("{} canceled (d={})", t, t.cacheDistance);
 			}
 
 			if (t.state == NEW_DATA) {
 				/* clear unused tile */
 				if (dbg)
-					log.debug("{} unused (d=({})", t, t.distance);
+					log.debug("{} unused (d=({})", t, t.cacheDistance);
 				newTileCnt--;
 			}
 
@@ -528,10 +842,17 @@ public class TileManager {
 					          (success ? "canceled" : "failed"),
 					          tile);
 					tile.clear();
+					mMemoryUsage -= tile.memory;
+					tile.memory = 0;
 					return;
 				}
 
 				tile.state = NEW_DATA;
+
+				int memory = tile.getMemoryUsage();
+				mMemoryUsage += memory - tile.memory;
+				tile.memory = memory;
+
 				events.fire(TILE_LOADED, tile);
 
 				mTilesForUpload += 1;
@@ -545,39 +866,77 @@ public class TileManager {
 
 	}
 
+	/**
+	 * @return position moved ahead in the direction of the last
+	 *         position update
+	 */
+	private MapPosition biasPosition(MapPosition pos, int tileZoom) {
+		MapPosition prev = mPrevPos;
+		MapPosition biased = mJobPos;
+		biased.copy(pos);
+
+		if (mDirectionBias > 0 && prev.zoomLevel == pos.zoomLevel) {
+			double dx = (pos.x - prev.x) * mDirectionBias;
+			double dy = (pos.y - prev.y) * mDirectionBias;
+
+			/* limit to one tile */
+			double max = 1.0 / (1 << tileZoom);
+			double d = Math.sqrt(dx * dx + dy * dy);
+			if (d > max) {
+				dx *= max / d;
+				dy *= max / d;
+			}
+			biased.x += dx;
+			biased.y += dy;
+		}
+		prev.copy(pos);
+		return biased;
+	}
+
+	/** zoom-level of the coordinates passed to getDistance() */
+	private static final int DISTANCE_ZOOM = 20;
+
 	private static void updateDistances(MapTile[] tiles, int size, MapPosition pos) {
-		/* TODO there is probably a better quad-tree distance function */
-		int zoom = 20;
-		long x = (long) (pos.x * (1 << zoom));
-		long y = (long) (pos.y * (1 << zoom));
+		long x = (long) (pos.x * (1 << DISTANCE_ZOOM));
+		long y = (long) (pos.y * (1 << DISTANCE_ZOOM));
 
 		for (int i = 0; i < size; i++) {
 			MapTile t = tiles[i];
 			if (t == null)
 				continue;
 
-			int diff = (zoom - t.zoomLevel);
-			long dx, dy;
-
-			if (diff == 0) {
-				dx = t.tileX - x;
-				dy = t.tileY - y;
-			} else { // diff > 0
-				long mx = x >> diff;
-				long my = y >> diff;
+			t.distance = getDistance(t, x, y, pos.zoomLevel);
+		}
+	}
 
-				dx = t.tileX - mx;
-				dy = t.tileY - my;
-			}
+	/**
+	 * @param x, y tile coordinates of the map center at DISTANCE_ZOOM
+	 * @return squared distance of tile 't', weighted by the difference to
+	 *         the zoom-level of the map center.
+	 */
+	private static float getDistance(MapTile t, long x, long y, int zoomLevel) {
+		/* TODO there is probably a better quad-tree distance function */
+		int diff = (DISTANCE_ZOOM - t.zoomLevel);
+		long dx, dy;
+
+		if (diff == 0) {
+			dx = t.tileX - x;
+			dy = t.tileY - y;
+		} else { // diff > 0
+			long mx = x >> diff;
+			long my = y >> diff;
+
+			dx = t.tileX - mx;
+			dy = t.tileY - my;
+		}
 
-			int dz = (pos.zoomLevel - t.zoomLevel);
-			if (dz == 0)
-				dz = 1;
-			else if (dz < -1)
-				dz *= 0.75;
+		int dz = (zoomLevel - t.zoomLevel);
+		if (dz == 0)
+			dz = 1;
+		else if (dz < -1)
+			dz *= 0.75;
 
-			t.distance = (dx * dx + dy * dy) * (dz * dz);
-		}
+		return (dx * dx + dy * dy) * (dz * dz);
 	}
 
 	private final ScanBox mScanBox = new ScanBox() {
@@ -69,4 +69,9 @@ public class BitmapTileLoader extends TileLoader {
 	@Override
 	public void cleanup() {
 	}
+
+	@Override
+	protected ITileDataSource getTileDataSource() {
+		return mTileDataSource;
+	}
 }
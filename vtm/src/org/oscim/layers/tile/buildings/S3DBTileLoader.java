@@ -55,6 +55,11 @@ class S3DBTileLoader extends TileLoader {
 		mTileDataSource.destroy();
 	}
 
+	@Override
+	protected ITileDataSource getTileDataSource() {
+		return mTileDataSource;
+	}
+
 	@Override
 	protected boolean loadTile(MapTile tile) {
 		mTile = tile;
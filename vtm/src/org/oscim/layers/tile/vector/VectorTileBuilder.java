@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.renderer.elements.ElementLayers;
+import org.oscim.renderer.elements.LineLayer;
+import org.oscim.renderer.elements.LineTexLayer;
+import org.oscim.renderer.elements.MeshLayer;
+import org.oscim.renderer.elements.PolygonLayer;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds MapElements to the ElementLayers of a tile as instructed by the
+ * RenderStyles of an {@link IRenderTheme}. Lines and areas are added
+ * here, symbols, texts and extrusions are left to subclasses.
+ * 
+ * Used by {@link VectorTileLoader} and by loaders which run without
+ * TileManager, e.g. to render tiles offline.
+ */
+public class VectorTileBuilder implements IRenderTheme.Callback {
+
+	static final Logger log = LoggerFactory.getLogger(VectorTileBuilder.class);
+
+	/* slower to load (requires tesselation) and uses
+	 * more memory but should be faster to render */
+	protected final static boolean USE_MESH_POLY = false;
+
+	/** currently processed tile */
+	protected MapTile mTile;
+
+	protected ElementLayers mLayers;
+
+	/** currently processed MapElement */
+	protected MapElement mElement;
+
+	/** current line layer (will be used for outline layers) */
+	protected LineLayer mCurLineLayer;
+
+	/** Current layer for adding elements */
+	protected int mCurLayer;
+
+	/** Line-scale-factor depending on zoom and latitude */
+	protected float mLineScale = 1.0f;
+
+	/**
+	 * Start adding elements of 'tile' to 'layers'.
+	 */
+	public void begin(MapTile tile, ElementLayers layers) {
+		mTile = tile;
+		mLayers = layers;
+
+		/* account for area changes with latitude */
+		double lat = MercatorProjection.toLatitude(tile.y);
+		mLineScale = (float) Math.pow(VectorTileLoader.STROKE_INCREASE,
+		                              tile.zoomLevel - VectorTileLoader.STROKE_MIN_ZOOM);
+		if (mLineScale < 1)
+			mLineScale = 1;
+
+		/* scale line width relative to latitude + PI * thumb */
+		mLineScale *= 0.4f + 0.6f * ((float) Math.sin(Math.abs(lat) * (Math.PI / 180)));
+	}
+
+	public void end() {
+		mTile = null;
+		mLayers = null;
+		clearState();
+	}
+
+	/**
+	 * Add 'element' with the styles the theme matched for it.
+	 * 
+	 * @param levels the number of levels of the theme
+	 */
+	public void render(MapElement element, RenderStyle[] style, int levels) {
+		mElement = element;
+
+		if (element.type == GeometryType.POINT) {
+			renderNode(style);
+		} else {
+			mCurLayer = VectorTileLoader.getValidLayer(element.layer) * levels;
+			renderWay(style);
+		}
+		clearState();
+	}
+
+	//	private final static LineStyle DEBUG_LINE =
+	//	        new LineStyle(Integer.MAX_VALUE / 12, Color.MAGENTA, 1.2f);
+	//
+	//	private final static TextStyle DEBUG_TEXT = new TextBuilder()
+	//	    .setFontSize(12)
+	//	    .setColor(Color.RED)
+	//	    .setCaption(true)
+	//	    .setTextKey(Tag.KEY_NAME)
+	//	    .build();
+
+	protected void renderWay(RenderStyle[] style) {
+		if (style == null) {
+			//	DEBUG_LINE.renderWay(this);
+			//	String t = mElement.tags.toString();
+			//	mElement.tags.clear();
+			//	mElement.tags.add(new Tag(Tag.KEY_NAME, t));
+			//	DEBUG_TEXT.renderWay(this);
+			return;
+		}
+		for (int i = 0, n = style.length; i < n; i++)
+			style[i].renderWay(this);
+	}
+
+	protected void renderNode(RenderStyle[] style) {
+		if (style == null)
+			return;
+
+		for (int i = 0, n = style.length; i < n; i++)
+			style[i].renderNode(this);
+	}
+
+	protected void clearState() {
+		mCurLineLayer = null;
+		mElement = null;
+	}
+
+	/*** RenderThemeCallback ***/
+	@Override
+	public void renderWay(LineStyle line, int level) {
+		int numLayer = mCurLayer + level;
+
+		if (line.stipple == 0) {
+			if (line.outline && mCurLineLayer == null) {
+				log.debug("missing line for outline! " + mElement.tags
+				        + " lvl:" + level + " layer:" + mElement.layer);
+				return;
+			}
+
+			LineLayer ll = mLayers.getLineLayer(numLayer);
+
+			if (ll.line == null) {
+				ll.line = line;
+				ll.scale = line.fixed ? 1 : mLineScale;
+			}
+
+			if (line.outline) {
+				ll.addOutline(mCurLineLayer);
+				return;
+			}
+
+			ll.addLine(mElement);
+
+			/* keep reference for outline layer(s) */
+			mCurLineLayer = ll;
+
+		} else {
+			LineTexLayer ll = mLayers.getLineTexLayer(numLayer);
+
+			if (ll.line == null) {
+				ll.line = line;
+
+				float w = line.width;
+				if (!line.fixed)
+					w *= mLineScale;
+
+				ll.width = w;
+			}
+
+			ll.addLine(mElement);
+		}
+	}
+
+	@Override
+	public void renderArea(AreaStyle area, int level) {
+		int numLayer = mCurLayer + level;
+		if (USE_MESH_POLY) {
+			MeshLayer l = mLayers.getMeshLayer(numLayer);
+			l.area = area;
+			l.addMesh(mElement);
+		} else {
+			PolygonLayer l = mLayers.getPolygonLayer(numLayer);
+			l.area = area;
+			l.addPolygon(mElement.points, mElement.index);
+		}
+	}
+
+	@Override
+	public void renderSymbol(SymbolStyle symbol) {
+	}
+
+	@Override
+	public void renderExtrusion(ExtrusionStyle extrusion, int level) {
+	}
+
+	@Override
+	public void renderCircle(CircleStyle circle, int level) {
+	}
+
+	@Override
+	public void renderText(TextStyle text) {
+	}
+}
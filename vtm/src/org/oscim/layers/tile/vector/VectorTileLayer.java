@@ -125,6 +125,21 @@ public class VectorTileLayer extends TileLayer {
 		return mTheme;
 	}
 
+	private boolean mPrepareVertices;
+
+	/**
+	 * When enabled loaders copy the tile vertices into native buffers
+	 * after loading. This way the render thread only needs to upload the
+	 * buffer instead of assembling it from pool items.
+	 */
+	public void setPrepareVertices(boolean enable) {
+		mPrepareVertices = enable;
+	}
+
+	public boolean getPrepareVertices() {
+		return mPrepareVertices;
+	}
+
 	public interface TileLoaderProcessHook {
 		public boolean process(MapTile tile, ElementLayers layers, MapElement element);
 	}
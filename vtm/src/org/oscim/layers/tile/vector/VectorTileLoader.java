@@ -18,26 +18,19 @@ package org.oscim.layers.tile.vector;
 
 import static org.oscim.layers.tile.MapTile.State.CANCEL;
 
-import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
-import org.oscim.core.MercatorProjection;
 import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLoadMetrics;
 import org.oscim.layers.tile.TileLoader;
 import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderProcessHook;
 import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderThemeHook;
+import org.oscim.renderer.ElementRenderer;
 import org.oscim.renderer.elements.ElementLayers;
-import org.oscim.renderer.elements.LineLayer;
-import org.oscim.renderer.elements.LineTexLayer;
-import org.oscim.renderer.elements.MeshLayer;
-import org.oscim.renderer.elements.PolygonLayer;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.RenderTheme;
-import org.oscim.theme.styles.AreaStyle;
-import org.oscim.theme.styles.CircleStyle;
 import org.oscim.theme.styles.ExtrusionStyle;
-import org.oscim.theme.styles.LineStyle;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
@@ -45,7 +38,7 @@ import org.oscim.tiling.ITileDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class VectorTileLoader extends TileLoader implements IRenderTheme.Callback {
+public class VectorTileLoader extends TileLoader {
 
 	static final Logger log = LoggerFactory.getLogger(VectorTileLoader.class);
 
@@ -60,19 +53,31 @@ public class VectorTileLoader extends TileLoader implements IRenderTheme.Callbac
 	/** current TileDataSource used by this MapTileLoader */
 	protected ITileDataSource mTileDataSource;
 
-	/** currently processed MapElement */
-	protected MapElement mElement;
-
-	/** current line layer (will be used for outline layers) */
-	protected LineLayer mCurLineLayer;
+	protected ElementLayers mLayers;
 
-	/** Current layer for adding elements */
-	protected int mCurLayer;
+	/** adds the elements to mLayers */
+	protected final VectorTileBuilder mBuilder = new VectorTileBuilder() {
+		@Override
+		public void renderSymbol(SymbolStyle symbol) {
+			for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
+				if (h.render(mTile, mLayers, mElement, symbol, 0))
+					break;
+		}
 
-	/** Line-scale-factor depending on zoom and latitude */
-	protected float mLineScale = 1.0f;
+		@Override
+		public void renderExtrusion(ExtrusionStyle extrusion, int level) {
+			for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
+				if (h.render(mTile, mLayers, mElement, extrusion, level))
+					break;
+		}
 
-	protected ElementLayers mLayers;
+		@Override
+		public void renderText(TextStyle text) {
+			for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
+				if (h.render(mTile, mLayers, mElement, text, 0))
+					break;
+		}
+	};
 
 	private final VectorTileLayer mTileLayer;
 
@@ -87,6 +92,11 @@ public class VectorTileLoader extends TileLoader implements IRenderTheme.Callbac
 			mTileDataSource.destroy();
 	}
 
+	@Override
+	protected ITileDataSource getTileDataSource() {
+		return mTileDataSource;
+	}
+
 	@Override
 	public boolean loadTile(MapTile tile) {
 
@@ -102,16 +112,9 @@ public class VectorTileLoader extends TileLoader implements IRenderTheme.Callbac
 
 		//mTileLayer.getLoaderHooks();
 
-		/* account for area changes with latitude */
-		double lat = MercatorProjection.toLatitude(tile.y);
-		mLineScale = (float) Math.pow(STROKE_INCREASE, tile.zoomLevel - STROKE_MIN_ZOOM);
-		if (mLineScale < 1)
-			mLineScale = 1;
-
-		/* scale line width relative to latitude + PI * thumb */
-		mLineScale *= 0.4f + 0.6f * ((float) Math.sin(Math.abs(lat) * (Math.PI / 180)));
 		mLayers = new ElementLayers();
 		tile.data = mLayers;
+		mBuilder.begin(tile, mLayers);
 
 		try {
 			/* query data source, which calls process() callback */
@@ -129,8 +132,21 @@ public class VectorTileLoader extends TileLoader implements IRenderTheme.Callbac
 
 	@Override
 	public void completed(QueryResult result) {
+		TileLoadMetrics m = mMetrics;
+		if (result == QueryResult.SUCCESS && mLayers != null) {
+			long t = (m == null) ? 0 : System.nanoTime();
+
+			if (mTileLayer.getPrepareVertices())
+				ElementRenderer.prepareLayers(mLayers, true);
+
+			if (m != null) {
+				m.buildNanos += System.nanoTime() - t;
+				m.vertices = mLayers.getNumVertices();
+			}
+		}
+
 		super.completed(result);
-		clearState();
+		mBuilder.end();
 	}
 
 	protected static int getValidLayer(int layer) {
@@ -172,148 +188,38 @@ public class VectorTileLoader extends TileLoader implements IRenderTheme.Callbac
 		if (isCanceled() || mTile.state(CANCEL))
 			return;
 
-		for (TileLoaderProcessHook h : mTileLayer.loaderProcessHooks())
-			if (h.process(mTile, mLayers, element))
-				return;
-
-		TagSet tags = filterTags(element.tags);
-		if (tags == null)
-			return;
-
-		mElement = element;
-
-		/* get and apply render instructions */
-		if (element.type == GeometryType.POINT) {
-			renderNode(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
-		} else {
-			mCurLayer = getValidLayer(element.layer) * renderTheme.getLevels();
-			renderWay(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+		TileLoadMetrics m = mMetrics;
+		long t = 0;
+		if (m != null) {
+			m.elements++;
+			t = System.nanoTime();
 		}
-		clearState();
-	}
-
-	//	private final static LineStyle DEBUG_LINE =
-	//	        new LineStyle(Integer.MAX_VALUE / 12, Color.MAGENTA, 1.2f);
-	//
-	//	private final static TextStyle DEBUG_TEXT = new TextBuilder()
-	//	    .setFontSize(12)
-	//	    .setColor(Color.RED)
-	//	    .setCaption(true)
-	//	    .setTextKey(Tag.KEY_NAME)
-	//	    .build();
-
-	protected void renderWay(RenderStyle[] style) {
-		if (style == null) {
-			//	DEBUG_LINE.renderWay(this);
-			//	String t = mElement.tags.toString();
-			//	mElement.tags.clear();
-			//	mElement.tags.add(new Tag(Tag.KEY_NAME, t));
-			//	DEBUG_TEXT.renderWay(this);
-			return;
-		}
-		for (int i = 0, n = style.length; i < n; i++)
-			style[i].renderWay(this);
-	}
-
-	protected void renderNode(RenderStyle[] style) {
-		if (style == null)
-			return;
-
-		for (int i = 0, n = style.length; i < n; i++)
-			style[i].renderNode(this);
-	}
-
-	protected void clearState() {
-		mCurLineLayer = null;
-		mElement = null;
-	}
 
-	/*** RenderThemeCallback ***/
-	@Override
-	public void renderWay(LineStyle line, int level) {
-		int numLayer = mCurLayer + level;
-
-		if (line.stipple == 0) {
-			if (line.outline && mCurLineLayer == null) {
-				log.debug("missing line for outline! " + mElement.tags
-				        + " lvl:" + level + " layer:" + mElement.layer);
+		for (TileLoaderProcessHook h : mTileLayer.loaderProcessHooks()) {
+			if (h.process(mTile, mLayers, element)) {
+				if (m != null)
+					m.buildNanos += System.nanoTime() - t;
 				return;
 			}
-
-			LineLayer ll = mLayers.getLineLayer(numLayer);
-
-			if (ll.line == null) {
-				ll.line = line;
-				ll.scale = line.fixed ? 1 : mLineScale;
-			}
-
-			if (line.outline) {
-				ll.addOutline(mCurLineLayer);
-				return;
-			}
-
-			ll.addLine(mElement);
-
-			/* keep reference for outline layer(s) */
-			mCurLineLayer = ll;
-
-		} else {
-			LineTexLayer ll = mLayers.getLineTexLayer(numLayer);
-
-			if (ll.line == null) {
-				ll.line = line;
-
-				float w = line.width;
-				if (!line.fixed)
-					w *= mLineScale;
-
-				ll.width = w;
-			}
-
-			ll.addLine(mElement);
 		}
-	}
 
-	/* slower to load (requires tesselation) and uses
-	 * more memory but should be faster to render */
-	protected final static boolean USE_MESH_POLY = false;
+		TagSet tags = filterTags(element.tags);
+		if (tags == null)
+			return;
 
-	@Override
-	public void renderArea(AreaStyle area, int level) {
-		int numLayer = mCurLayer + level;
-		if (USE_MESH_POLY) {
-			MeshLayer l = mLayers.getMeshLayer(numLayer);
-			l.area = area;
-			l.addMesh(mElement);
-		} else {
-			PolygonLayer l = mLayers.getPolygonLayer(numLayer);
-			l.area = area;
-			l.addPolygon(mElement.points, mElement.index);
+		/* get render instructions */
+		RenderStyle[] style = renderTheme.matchElement(element.type, tags,
+		                                               mTile.zoomLevel);
+		if (m != null) {
+			long now = System.nanoTime();
+			m.themeNanos += now - t;
+			t = now;
 		}
-	}
-
-	@Override
-	public void renderSymbol(SymbolStyle symbol) {
-		for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
-			if (h.render(mTile, mLayers, mElement, symbol, 0))
-				break;
-	}
-
-	@Override
-	public void renderExtrusion(ExtrusionStyle extrusion, int level) {
-		for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
-			if (h.render(mTile, mLayers, mElement, extrusion, level))
-				break;
-	}
 
-	@Override
-	public void renderCircle(CircleStyle circle, int level) {
-	}
+		/* apply render instructions */
+		mBuilder.render(element, style, renderTheme.getLevels());
 
-	@Override
-	public void renderText(TextStyle text) {
-		for (TileLoaderThemeHook h : mTileLayer.loaderThemeHooks())
-			if (h.render(mTile, mLayers, mElement, text, 0))
-				break;
+		if (m != null)
+			m.buildNanos += System.nanoTime() - t;
 	}
 }
@@ -34,6 +34,13 @@ final class Label extends TextItem {
 	public int active;
 	public OBB2D bbox;
 
+	/** cells covered in LabelGrid */
+	int cellX1, cellY1, cellX2, cellY2;
+	/** last LabelGrid query that returned this label */
+	int query;
+	/** insertion order in LabelGrid */
+	int order;
+
 	public Label clone(TextItem ti) {
 		this.string = ti.string;
 		this.text = ti.text;
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.oscim.utils.geom.OBB2D;
+
+/**
+ * Uniform grid over the label area (screen coordinates relative to the
+ * map center) to find candidates for collision tests without walking the
+ * whole list of placed labels.
+ *
+ * Labels are registered in all cells covered by their axis-aligned
+ * bounds. Labels outside of the grid are clamped to the border cells.
+ *
+ * Query results are returned in insertion order, so that conflicts are
+ * resolved independent of the cell layout. Note that this is not the
+ * order of the label list in LabelPlacement, which the linear scan used:
+ * when a label conflicts with several others, a different one may win.
+ */
+final class LabelGrid {
+
+	final static int CELL_SHIFT = 6;
+	final static int CELL_SIZE = 1 << CELL_SHIFT;
+
+	private final static int CELL_ITEMS = 8;
+
+	/** grid origin, i.e. (-extents, -extents) */
+	private int mOrigin;
+	private int mCols;
+
+	private Label[][] mCells = new Label[0][];
+	private int[] mCellCnt = new int[0];
+	private int mNumCells;
+
+	/** query results */
+	Label[] results = new Label[64];
+
+	/** incremented on each query to not return labels twice */
+	private int mQuery;
+
+	/** incremented on each add */
+	private int mOrder;
+
+	/**
+	 * Clear the grid and set it up to cover [-extents, extents]
+	 * in x and y.
+	 */
+	void reset(int extents) {
+		clear();
+
+		int cols = ((extents * 2) >> CELL_SHIFT) + 1;
+
+		mOrigin = -extents;
+		mCols = cols;
+		mNumCells = cols * cols;
+
+		if (mCells.length < mNumCells) {
+			mCells = new Label[mNumCells][];
+			mCellCnt = new int[mNumCells];
+		}
+	}
+
+	void clear() {
+		for (int i = 0; i < mNumCells; i++) {
+			Label[] cell = mCells[i];
+			for (int j = 0, n = mCellCnt[i]; j < n; j++)
+				cell[j] = null;
+
+			mCellCnt[i] = 0;
+		}
+		mOrder = 0;
+	}
+
+	private int cell(float v) {
+		int c = (int) ((v - mOrigin) / CELL_SIZE);
+		if (c < 0)
+			return 0;
+		if (c >= mCols)
+			return mCols - 1;
+		return c;
+	}
+
+	void add(Label l) {
+		l.order = mOrder++;
+
+		OBB2D bbox = l.bbox;
+		float[] v = bbox.vec;
+
+		float minX = Math.min(Math.min(v[0], v[2]), Math.min(v[4], v[6]));
+		float minY = Math.min(Math.min(v[1], v[3]), Math.min(v[5], v[7]));
+		float maxX = Math.max(Math.max(v[0], v[2]), Math.max(v[4], v[6]));
+		float maxY = Math.max(Math.max(v[1], v[3]), Math.max(v[5], v[7]));
+
+		if (!l.text.caption) {
+			/* way labels are also tested by their line end-points */
+			minX = Math.min(minX, Math.min(l.x1, l.x2));
+			minY = Math.min(minY, Math.min(l.y1, l.y2));
+			maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+			maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+		}
+
+		l.cellX1 = cell(minX);
+		l.cellY1 = cell(minY);
+		l.cellX2 = cell(maxX);
+		l.cellY2 = cell(maxY);
+
+		for (int y = l.cellY1; y <= l.cellY2; y++) {
+			for (int x = l.cellX1; x <= l.cellX2; x++) {
+				int c = y * mCols + x;
+				Label[] cell = mCells[c];
+				int n = mCellCnt[c];
+
+				if (cell == null) {
+					cell = mCells[c] = new Label[CELL_ITEMS];
+				} else if (n == cell.length) {
+					Label[] tmp = new Label[n * 2];
+					System.arraycopy(cell, 0, tmp, 0, n);
+					cell = mCells[c] = tmp;
+				}
+				cell[n] = l;
+				mCellCnt[c] = n + 1;
+			}
+		}
+	}
+
+	void remove(Label l) {
+		for (int y = l.cellY1; y <= l.cellY2; y++) {
+			for (int x = l.cellX1; x <= l.cellX2; x++) {
+				int c = y * mCols + x;
+				Label[] cell = mCells[c];
+				int n = mCellCnt[c];
+
+				for (int i = 0; i < n; i++) {
+					if (cell[i] != l)
+						continue;
+
+					/* keep insertion order of remaining labels */
+					System.arraycopy(cell, i + 1, cell, i, n - i - 1);
+					cell[n - 1] = null;
+					mCellCnt[c] = n - 1;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect labels whose cells overlap the given area into
+	 * {@link #results}, in insertion order. Note: results is replaced
+	 * when more space is needed, read it after the query.
+	 *
+	 * @return number of labels found
+	 */
+	int query(float x1, float y1, float x2, float y2) {
+		int q = ++mQuery;
+		int cnt = 0;
+
+		int cx1 = cell(x1);
+		int cy1 = cell(y1);
+		int cx2 = cell(x2);
+		int cy2 = cell(y2);
+
+		for (int y = cy1; y <= cy2; y++) {
+			for (int x = cx1; x <= cx2; x++) {
+				int c = y * mCols + x;
+				Label[] cell = mCells[c];
+
+				for (int i = 0, n = mCellCnt[c]; i < n; i++) {
+					Label l = cell[i];
+					if (l.query == q)
+						continue;
+
+					l.query = q;
+
+					if (cnt == results.length) {
+						Label[] tmp = new Label[cnt * 2];
+						System.arraycopy(results, 0, tmp, 0, cnt);
+						results = tmp;
+					}
+					results[cnt++] = l;
+				}
+			}
+		}
+		sortByOrder(results, cnt);
+		return cnt;
+	}
+
+	private final static Comparator<Label> ORDER = new Comparator<Label>() {
+		@Override
+		public int compare(Label l1, Label l2) {
+			return l1.order < l2.order ? -1 : (l1.order == l2.order ? 0 : 1);
+		}
+	};
+
+	/** results from one cell are already sorted */
+	private static void sortByOrder(Label[] a, int cnt) {
+		if (cnt > 32) {
+			Arrays.sort(a, 0, cnt, ORDER);
+			return;
+		}
+		/* insertion sort */
+		for (int i = 1; i < cnt; i++) {
+			Label l = a[i];
+			int j = i - 1;
+			if (a[j].order < l.order)
+				continue;
+
+			for (; j >= 0 && a[j].order > l.order; j--)
+				a[j + 1] = a[j];
+
+			a[j + 1] = l;
+		}
+	}
+
+	/**
+	 * Query candidates for Label l. When 'add' is given the area
+	 * around the line end-points of way labels is extended by 'add'.
+	 */
+	int query(Label l, float add) {
+		float[] v = l.bbox.vec;
+
+		float minX = Math.min(Math.min(v[0], v[2]), Math.min(v[4], v[6]));
+		float minY = Math.min(Math.min(v[1], v[3]), Math.min(v[5], v[7]));
+		float maxX = Math.max(Math.max(v[0], v[2]), Math.max(v[4], v[6]));
+		float maxY = Math.max(Math.max(v[1], v[3]), Math.max(v[5], v[7]));
+
+		if (add > 0) {
+			minX = Math.min(minX, Math.min(l.x1, l.x2) - add);
+			minY = Math.min(minY, Math.min(l.y1, l.y2) - add);
+			maxX = Math.max(maxX, Math.max(l.x1, l.x2) + add);
+			maxY = Math.max(maxY, Math.max(l.y1, l.y2) + add);
+		}
+
+		return query(minX, minY, maxX, maxY);
+	}
+
+	/** drop references to query results */
+	void clearResults(int cnt) {
+		for (int i = 0; i < cnt; i++)
+			results[i] = null;
+	}
+}
@@ -14,6 +14,7 @@ import org.oscim.renderer.elements.SymbolLayer;
 import org.oscim.renderer.elements.TextItem;
 import org.oscim.utils.FastMath;
 import org.oscim.utils.geom.OBB2D;
+import org.oscim.utils.pool.Inlist;
 
 public class LabelPlacement {
 	static final boolean dbg = false;
@@ -35,6 +36,9 @@ public class LabelPlacement {
 	/** list of current labels */
 	private Label mLabels;
 
+	/** spatial index of mLabels for overlap tests */
+	/* package */final LabelGrid mGrid = new LabelGrid();
+
 	private float mSquareRadius;
 
 	/**
@@ -48,15 +52,16 @@ public class LabelPlacement {
 		mTileRenderer = tileRenderer;
 	}
 
-	/** remove Label l from mLabels and return l.next */
-	private Label removeLabel(Label l) {
-		Label ret = (Label) l.next;
-		mLabels = (Label) mPool.release(mLabels, l);
-
-		return ret;
+	/** remove Label l from mLabels and add it back to pool */
+	private void removeLabel(Label l) {
+		mLabels = (Label) Inlist.remove((TextItem) mLabels, l);
+		mGrid.remove(l);
+		mPool.releaseAndGetNext(l);
 	}
 
 	public void addLabel(Label l) {
+		mGrid.add(l);
+
 		for (Label o = mLabels; o != null; o = (Label) o.next) {
 			/* find other label with same text style */
 			if (l.text == o.text) {
@@ -81,45 +86,53 @@ public class LabelPlacement {
 		mLabels = l;
 	}
 
-	private byte checkOverlap(Label l) {
+	/* package */byte checkOverlap(Label l) {
+		int cnt = mGrid.query(l, 100);
+		/* query() may replace results when it needs more space */
+		Label[] labels = mGrid.results;
+		byte result = 0;
+
+		for (int i = 0; i < cnt; i++) {
+			Label o = labels[i];
 
-		for (Label o = mLabels; o != null;) {
 			//check bounding box
-			if (!Label.bboxOverlaps(l, o, 100)) {
-				o = (Label) o.next;
+			if (!Label.bboxOverlaps(l, o, 100))
 				continue;
-			}
 
 			if (Label.shareText(l, o)) {
 				// keep the label that was active earlier
-				if (o.active <= l.active)
-					return 1;
-
+				if (o.active <= l.active) {
+					result = 1;
+					break;
+				}
 				// keep the label with longer segment
 				if (o.length < l.length) {
-					o = removeLabel(o);
+					removeLabel(o);
 					continue;
 				}
 				// keep other
-				return 2;
+				result = 2;
+				break;
 			}
 			if (l.bbox.overlaps(o.bbox)) {
-				if (o.active <= l.active)
-					return 1;
-
+				if (o.active <= l.active) {
+					result = 1;
+					break;
+				}
 				if (!o.text.caption
 				        && (o.text.priority > l.text.priority
 				        || o.length < l.length)) {
 
-					o = removeLabel(o);
+					removeLabel(o);
 					continue;
 				}
 				// keep other
-				return 1;
+				result = 1;
+				break;
 			}
-			o = (Label) o.next;
 		}
-		return 0;
+		mGrid.clearResults(cnt);
+		return result;
 	}
 
 	private boolean isVisible(float x, float y) {
@@ -263,16 +276,21 @@ public class LabelPlacement {
 			                     l.text.fontHeight + MIN_CAPTION_DIST,
 			                     l.text.dy);
 
-			for (Label o = mLabels; o != null;) {
+			int cnt = mGrid.query(l, 0);
+			Label[] labels = mGrid.results;
+
+			for (int i = 0; i < cnt; i++) {
+				Label o = labels[i];
 				if (l.bbox.overlaps(o.bbox)) {
 					if (l.text.priority < o.text.priority) {
-						o = removeLabel(o);
+						removeLabel(o);
 						continue;
 					}
+					mGrid.clearResults(cnt);
 					continue O;
 				}
-				o = (Label) o.next;
 			}
+			mGrid.clearResults(cnt);
 
 			addLabel(l);
 			l.item = TextItem.copy(ti);
@@ -312,6 +330,10 @@ public class LabelPlacement {
 		int mh = (mMap.getHeight() + Tile.SIZE) / 2;
 		mSquareRadius = mw * mw + mh * mh;
 
+		/* labels are only added when one of their points is
+		 * within the visible radius */
+		mGrid.reset((int) Math.sqrt(mSquareRadius));
+
 		/* scale of tiles zoom-level relative to current position */
 		double scale = pos.scale / (1 << zoom);
 
@@ -498,6 +520,7 @@ public class LabelPlacement {
 	}
 
 	public void cleanup() {
+		mGrid.clear();
 		mLabels = (Label) mPool.releaseAll(mLabels);
 		mTileSet.releaseTiles();
 	}
@@ -2,10 +2,13 @@ package org.oscim.layers.vector;
 
 import org.oscim.core.BoundingBox;
 import org.oscim.core.GeometryBuffer;
+import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapPosition;
+import org.oscim.core.MercatorProjection;
 import org.oscim.core.Tile;
 import org.oscim.event.Event;
 import org.oscim.layers.Layer;
+import org.oscim.layers.vector.FeatureIndex.Feature;
 import org.oscim.map.Map;
 import org.oscim.map.Map.UpdateListener;
 import org.oscim.map.Viewport;
@@ -22,8 +25,15 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 
 	protected final static double UNSCALE_COORD = 4;
 
+	/** geometries are clipped to [-CLIP_EXTENT, CLIP_EXTENT] */
+	protected final static float CLIP_EXTENT = 1024;
+
 	protected final GeometryBuffer mGeom = new GeometryBuffer(128, 4);
-	protected final TileClipper mClipper = new TileClipper(-1024, -1024, 1024, 1024);
+	protected final TileClipper mClipper = new TileClipper(-CLIP_EXTENT, -CLIP_EXTENT,
+	                                                       CLIP_EXTENT, CLIP_EXTENT);
+
+	/** Features added with add(), see processIndex() */
+	protected final FeatureIndex<T> mIndex = new FeatureIndex<T>(CLIP_EXTENT);
 
 	protected final Worker mWorker;
 	protected long mUpdateDelay = 100;
@@ -61,8 +71,63 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 		mWorker.submit(0);
 	}
 
+	/**
+	 * Add a feature to the index, call update() when done.
+	 * 
+	 * @param points projected coordinates, see MercatorProjection
+	 * @param index the number of coordinates for each line or ring as in
+	 *            GeometryBuffer
+	 */
+	public Feature<T> add(T item, GeometryType type, double[] points, short[] index) {
+		synchronized (mIndex) {
+			return mIndex.add(item, type, points, index);
+		}
+	}
+
+	/**
+	 * Remove a feature from the index, call update() when done.
+	 */
+	public boolean remove(Feature<T> feature) {
+		synchronized (mIndex) {
+			return mIndex.remove(feature);
+		}
+	}
+
 	abstract protected void processFeatures(Task t, BoundingBox b);
 
+	/**
+	 * Pass the features of the index which overlap 'bbox' to addFeature().
+	 * Features which were already processed at the same position, i.e.
+	 * while panning, reuse their transformed and clipped geometry.
+	 * 
+	 * @return number of features which needed to be transformed
+	 */
+	protected int processIndex(final Task t, BoundingBox bbox) {
+		double scale = t.position.scale * Tile.SIZE / UNSCALE_COORD;
+
+		synchronized (mIndex) {
+			return mIndex.query(t.position, scale,
+			                    MercatorProjection.longitudeToX(bbox.getMinLongitude()),
+			                    MercatorProjection.latitudeToY(bbox.getMaxLatitude()),
+			                    MercatorProjection.longitudeToX(bbox.getMaxLongitude()),
+			                    MercatorProjection.latitudeToY(bbox.getMinLatitude()),
+			                    new FeatureIndex.Callback<T>() {
+				                    @Override
+				                    public void process(Feature<T> f, GeometryBuffer g) {
+					                    addFeature(t, f.get(), g);
+				                    }
+			                    });
+		}
+	}
+
+	/**
+	 * Add the geometry of a feature from the index to the task layers.
+	 * 
+	 * @param g the clipped geometry relative to t.position
+	 */
+	protected void addFeature(Task t, T item, GeometryBuffer g) {
+	}
+
 	protected class Task {
 		public final ElementLayers layers = new ElementLayers();
 		public final MapPosition position = new MapPosition();
@@ -70,6 +135,10 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 
 	protected class Worker extends SimpleWorker<Task> {
 
+		/** position to which the geometries are relative. kept while
+		 * panning as long as the viewport is within the clip region */
+		private final MapPosition mOrigin = new MapPosition();
+
 		public Worker(Map map) {
 			super(map, 50, new Task(), new Task());
 		}
@@ -95,12 +164,32 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 
 			t.position.x = (long) (t.position.x * scale) / scale;
 			t.position.y = (long) (t.position.y * scale) / scale;
+
+			if (t.position.scale == mOrigin.scale && isInside(mOrigin, bbox)) {
+				t.position.x = mOrigin.x;
+				t.position.y = mOrigin.y;
+			} else {
+				mOrigin.copy(t.position);
+			}
+
 			processFeatures(t, bbox);
 
 			mMap.render();
 			return true;
 		}
 
+		private boolean isInside(MapPosition pos, BoundingBox bbox) {
+			double scale = pos.scale * Tile.SIZE / UNSCALE_COORD;
+			double x1 = MercatorProjection.longitudeToX(bbox.getMinLongitude());
+			double x2 = MercatorProjection.longitudeToX(bbox.getMaxLongitude());
+			double y1 = MercatorProjection.latitudeToY(bbox.getMaxLatitude());
+			double y2 = MercatorProjection.latitudeToY(bbox.getMinLatitude());
+
+			return (x1 - pos.x) * scale >= -CLIP_EXTENT
+			        && (x2 - pos.x) * scale <= CLIP_EXTENT
+			        && (y1 - pos.y) * scale >= -CLIP_EXTENT
+			        && (y2 - pos.y) * scale <= CLIP_EXTENT;
+		}
 	}
 
 	public class Renderer extends ElementRenderer {
@@ -0,0 +1,564 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.vector;
+
+import java.util.ArrayList;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+import org.oscim.utils.geom.SimplifyDP;
+import org.oscim.utils.geom.TileClipper;
+import org.oscim.utils.pool.Inlist;
+import org.oscim.utils.quadtree.BoxTree;
+import org.oscim.utils.quadtree.BoxTree.BoxItem;
+import org.oscim.utils.quadtree.BoxTree.BoxNode;
+
+/**
+ * Spatial index of features with geometries in projected map coordinates
+ * (see MercatorProjection).
+ *
+ * Geometries are projected once when added. Simplified geometries are
+ * cached per zoom-level and the clipped geometry relative to the last
+ * query origin is kept for each returned feature. Queries with the same
+ * origin, e.g. while panning, only transform features which were not
+ * returned before.
+ *
+ * Not thread-safe, AbstractVectorLayer synchronizes on the index.
+ */
+public class FeatureIndex<T> {
+
+	/** Zoom-levels above use the original geometry */
+	public static int MAX_SIMPLIFY_ZOOM = 16;
+
+	/** tree coordinates: projected [0,1] to [-EXTENTS, EXTENTS] */
+	private final static int EXTENTS = 1 << 29;
+	private final static double TREE_SCALE = 1 << 30;
+	private final static int MAX_DEPTH = 16;
+
+	public interface Callback<T> {
+		/**
+		 * @param g the geometry relative to the query origin. Only
+		 *            valid during the call.
+		 */
+		void process(Feature<T> f, GeometryBuffer g);
+	}
+
+	public static class Feature<T> extends BoxItem<T> {
+		public final GeometryType type;
+
+		/** origin of 'points' in projected coordinates */
+		final double x;
+		final double y;
+		/** extent in projected coordinates */
+		final double width;
+		final double height;
+
+		/** projected coordinates relative to x,y. doubles as floats
+		 * lose the precision of large features at high zoom-levels */
+		final double[] points;
+		final short[] index;
+
+		/** simplified geometries per zoom-level */
+		Simplified simplified;
+
+		/** geometry relative to query origin of 'generation' */
+		int generation;
+		float[] clipPoints;
+		short[] clipIndex;
+
+		Feature(T item, GeometryType type, double x, double y,
+		        double width, double height, double[] points, short[] index) {
+			this.item = item;
+			this.type = type;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.points = points;
+			this.index = index;
+		}
+
+		public T get() {
+			return item;
+		}
+	}
+
+	static class Simplified extends Inlist<Simplified> {
+		int zoomLevel;
+		/** pixel coordinates at zoomLevel relative to feature origin,
+		 * null when the feature is smaller than a pixel */
+		float[] points;
+		short[] index;
+	}
+
+	class Tree extends BoxTree<Feature<T>, T> {
+		Feature<T> remove;
+		boolean removed;
+
+		Tree() {
+			super(EXTENTS, MAX_DEPTH);
+		}
+
+		@Override
+		public int process(Feature<T> box, Feature<T> it) {
+			if (remove != null) {
+				if (it != remove)
+					return 0;
+				removed = true;
+				return -1;
+			}
+			visit(it);
+			return 0;
+		}
+
+		@Override
+		public boolean process(BoxNode<Feature<T>> nodes) {
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean collectAll(BoxNode<Feature<T>> node) {
+			for (Feature<T> f = node.item; f != null; f = (Feature<T>) f.next) {
+				f.simplified = null;
+				f.clipPoints = null;
+				f.clipIndex = null;
+			}
+			return true;
+		}
+	}
+
+	private final Tree mTree = new Tree();
+	private final Feature<T> mQueryBox = new Feature<T>(null, GeometryType.NONE,
+	                                                    0, 0, 0, 0, null, null);
+
+	private final TileClipper mClipper;
+	private final float mClipMin;
+	private final float mClipMax;
+
+	private final SimplifyDP mSimplify = new SimplifyDP();
+	private final GeometryBuffer mGeom = new GeometryBuffer(128, 4);
+
+	/** features with clipped geometry of current generation */
+	private final ArrayList<Feature<T>> mProcessed = new ArrayList<Feature<T>>();
+
+	private int mGeneration;
+	private double mOriginX;
+	private double mOriginY;
+	private double mScale = -1;
+	private int mZoomLevel;
+
+	/* current query */
+	private Callback<T> mCallback;
+	private int mMisses;
+
+	private int mSize;
+
+	/** squared Douglas-Peucker tolerance in pixels */
+	private float mSqTolerance = 0.5f * 0.5f;
+	/** features smaller than this number of pixels are dropped */
+	private float mMinSize = 1;
+
+	/**
+	 * @param clipExtent clip geometries to [-clipExtent, clipExtent]
+	 *            relative to the query origin.
+	 */
+	public FeatureIndex(float clipExtent) {
+		mClipMin = -clipExtent;
+		mClipMax = clipExtent;
+		mClipper = new TileClipper(mClipMin, mClipMin, mClipMax, mClipMax);
+	}
+
+	/**
+	 * @param tolerance Douglas-Peucker tolerance in pixels
+	 * @param minSize minimum extent in pixels of lines and polygons
+	 */
+	public void setSimplification(float tolerance, float minSize) {
+		mSqTolerance = tolerance * tolerance;
+		mMinSize = minSize;
+		clearCache();
+	}
+
+	/**
+	 * Add a feature.
+	 *
+	 * @param item the feature data
+	 * @param type POINT, LINE or POLY
+	 * @param points projected coordinates
+	 * @param index as in GeometryBuffer, the number of coordinates for
+	 *            each line or ring, terminated by -1 or end of array.
+	 * @return the added feature, to be passed to remove()
+	 */
+	public Feature<T> add(T item, GeometryType type, double[] points, short[] index) {
+		int numIndex = 0;
+		int numPoints = 0;
+		for (int n = index.length; numIndex < n; numIndex++) {
+			if (index[numIndex] < 0)
+				break;
+			numPoints += index[numIndex];
+		}
+		if (numPoints == 0)
+			throw new IllegalArgumentException("empty geometry");
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+		for (int i = 0; i < numPoints; i += 2) {
+			minX = Math.min(minX, points[i]);
+			maxX = Math.max(maxX, points[i]);
+			minY = Math.min(minY, points[i + 1]);
+			maxY = Math.max(maxY, points[i + 1]);
+		}
+
+		double[] p = new double[numPoints];
+		for (int i = 0; i < numPoints; i += 2) {
+			p[i] = points[i] - minX;
+			p[i + 1] = points[i + 1] - minY;
+		}
+
+		short[] idx = new short[numIndex];
+		System.arraycopy(index, 0, idx, 0, numIndex);
+
+		Feature<T> f = new Feature<T>(item, type, minX, minY,
+		                              maxX - minX, maxY - minY, p, idx);
+		f.x1 = toTree(minX, false);
+		f.y1 = toTree(minY, false);
+		f.x2 = toTree(maxX, true);
+		f.y2 = toTree(maxY, true);
+
+		/* BoxTree only finds items with an extent */
+		if (f.x2 == f.x1)
+			f.x2++;
+		if (f.y2 == f.y1)
+			f.y2++;
+
+		mTree.insert(f);
+		mSize++;
+
+		return f;
+	}
+
+	/**
+	 * Remove a feature returned by add().
+	 *
+	 * @return true when the feature was in the index.
+	 */
+	public boolean remove(Feature<T> f) {
+		mTree.remove = f;
+		mTree.removed = false;
+		mTree.query(f);
+		mTree.remove = null;
+
+		if (!mTree.removed)
+			return false;
+
+		f.clipPoints = null;
+		f.clipIndex = null;
+		mSize--;
+		return true;
+	}
+
+	public void clear() {
+		mTree.clear();
+		mProcessed.clear();
+		mSize = 0;
+		invalidate();
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Drop the geometries relative to the last query origin.
+	 */
+	public void invalidate() {
+		for (int i = 0, n = mProcessed.size(); i < n; i++) {
+			Feature<T> f = mProcessed.get(i);
+			f.clipPoints = null;
+			f.clipIndex = null;
+		}
+		mProcessed.clear();
+		mGeneration++;
+		mScale = -1;
+	}
+
+	/**
+	 * Drop all cached geometries.
+	 */
+	public void clearCache() {
+		invalidate();
+		mTree.all();
+	}
+
+	/**
+	 * Pass all features which overlap the box to 'cb'.
+	 *
+	 * @param origin position to which the geometries are relative,
+	 *            its zoomLevel selects the simplified geometries.
+	 * @param scale from projected coordinates to geometry coordinates
+	 * @param x1 ... y2 the box in projected coordinates
+	 * @return number of features which were not processed before
+	 *         for the same origin and scale.
+	 */
+	public int query(MapPosition origin, double scale,
+	        double x1, double y1, double x2, double y2, Callback<T> cb) {
+
+		if (origin.x != mOriginX || origin.y != mOriginY
+		        || scale != mScale || origin.zoomLevel != mZoomLevel) {
+			invalidate();
+			mOriginX = origin.x;
+			mOriginY = origin.y;
+			mScale = scale;
+			mZoomLevel = origin.zoomLevel;
+		}
+
+		Feature<T> box = mQueryBox;
+		box.x1 = toTree(Math.min(x1, x2), false);
+		box.y1 = toTree(Math.min(y1, y2), false);
+		box.x2 = toTree(Math.max(x1, x2), true);
+		box.y2 = toTree(Math.max(y1, y2), true);
+
+		mCallback = cb;
+		mMisses = 0;
+		mTree.query(box);
+		mCallback = null;
+
+		return mMisses;
+	}
+
+	void visit(Feature<T> f) {
+		GeometryBuffer g = mGeom;
+
+		if (f.generation != mGeneration) {
+			f.generation = mGeneration;
+			mMisses++;
+
+			if (!transform(f, g))
+				return;
+
+			f.clipPoints = new float[g.pointPos];
+			System.arraycopy(g.points, 0, f.clipPoints, 0, g.pointPos);
+			f.clipIndex = new short[length(g.index)];
+			System.arraycopy(g.index, 0, f.clipIndex, 0, f.clipIndex.length);
+			mProcessed.add(f);
+
+		} else if (f.clipPoints == null) {
+			/* clipped or too small */
+			return;
+		} else {
+			g.clear();
+			g.type = f.type;
+			set(g, f.clipPoints, f.clipIndex);
+		}
+
+		mCallback.process(f, g);
+	}
+
+	/**
+	 * Transform geometry of 'f' at the current origin into 'g' and clip.
+	 *
+	 * @return false when nothing remains.
+	 */
+	private boolean transform(Feature<T> f, GeometryBuffer g) {
+		g.clear();
+
+		Simplified simple = null;
+		short[] index = f.index;
+
+		if (f.type != GeometryType.POINT && mZoomLevel <= MAX_SIMPLIFY_ZOOM) {
+			simple = getSimplified(f, mZoomLevel);
+			if (simple.points == null)
+				return false;
+
+			index = simple.index;
+		}
+
+		double dx = (f.x - mOriginX) * mScale;
+		double dy = (f.y - mOriginY) * mScale;
+
+		int numPoints = 0;
+		for (int i = 0; i < index.length; i++)
+			numPoints += index[i];
+
+		float[] points = g.ensurePointSize(numPoints >> 1, false);
+
+		if (f.type == GeometryType.POINT) {
+			/* only keep points inside of clip region */
+			double[] src = f.points;
+			double s = mScale;
+			int out = 0;
+			for (int i = 0; i < numPoints; i += 2) {
+				float x = (float) (dx + src[i] * s);
+				float y = (float) (dy + src[i + 1] * s);
+				if (x < mClipMin || x > mClipMax || y < mClipMin || y > mClipMax)
+					continue;
+				points[out++] = x;
+				points[out++] = y;
+			}
+			if (out == 0)
+				return false;
+
+			g.type = GeometryType.POINT;
+			g.index[0] = (short) out;
+			g.index[1] = -1;
+			g.pointPos = out;
+			return true;
+		}
+
+		if (simple != null) {
+			float[] src = simple.points;
+			double s = mScale / (Tile.SIZE << mZoomLevel);
+			for (int i = 0; i < numPoints; i += 2) {
+				points[i] = (float) (dx + src[i] * s);
+				points[i + 1] = (float) (dy + src[i + 1] * s);
+			}
+		} else {
+			double[] src = f.points;
+			double s = mScale;
+			for (int i = 0; i < numPoints; i += 2) {
+				points[i] = (float) (dx + src[i] * s);
+				points[i + 1] = (float) (dy + src[i + 1] * s);
+			}
+		}
+
+		short[] idx = g.ensureIndexSize(index.length + 1, false);
+		System.arraycopy(index, 0, idx, 0, index.length);
+		idx[index.length] = -1;
+
+		g.type = f.type;
+		g.pointPos = numPoints;
+		g.indexPos = index.length - 1;
+
+		return mClipper.clip(g);
+	}
+
+	/**
+	 * @return the cached or newly simplified geometry of 'f' at 'zoomLevel'.
+	 */
+	private Simplified getSimplified(Feature<T> f, int zoomLevel) {
+		for (Simplified s = f.simplified; s != null; s = s.next)
+			if (s.zoomLevel == zoomLevel)
+				return s;
+
+		Simplified s = new Simplified();
+		s.zoomLevel = zoomLevel;
+		s.next = f.simplified;
+		f.simplified = s;
+
+		double scale = Tile.SIZE << zoomLevel;
+		if (Math.max(f.width, f.height) * scale < mMinSize)
+			return s;
+
+		float[] points = new float[f.points.length];
+		for (int i = 0; i < points.length; i++)
+			points[i] = (float) (f.points[i] * scale);
+
+		short[] index = new short[f.index.length];
+		int minLength = (f.type == GeometryType.POLY) ? 6 : 4;
+		boolean skipPoly = false;
+
+		int inPos = 0;
+		int outPos = 0;
+		int outIndex = 0;
+
+		for (int i = 0; i < f.index.length; i++) {
+			int len = f.index[i];
+
+			if (len == 0) {
+				/* next polygon */
+				skipPoly = false;
+				if (outIndex > 0 && index[outIndex - 1] != 0)
+					index[outIndex++] = 0;
+				continue;
+			}
+
+			int end;
+			if (skipPoly)
+				end = outPos;
+			else if (len < 6)
+				end = copy(points, inPos, len, outPos);
+			else
+				end = mSimplify.simplify(points, inPos, len, outPos, mSqTolerance);
+
+			inPos += len;
+
+			if (end - outPos < minLength) {
+				/* drop line or hole, or the polygon when the outer ring is
+				 * gone */
+				if (f.type == GeometryType.POLY
+				        && (outIndex == 0 || index[outIndex - 1] == 0))
+					skipPoly = true;
+				continue;
+			}
+			index[outIndex++] = (short) (end - outPos);
+			outPos = end;
+		}
+
+		/* trailing polygon separator */
+		if (outIndex > 0 && index[outIndex - 1] == 0)
+			outIndex--;
+
+		if (outIndex == 0)
+			return s;
+
+		s.points = new float[outPos];
+		System.arraycopy(points, 0, s.points, 0, outPos);
+		s.index = new short[outIndex];
+		System.arraycopy(index, 0, s.index, 0, outIndex);
+
+		return s;
+	}
+
+	private static int copy(float[] points, int inPos, int length, int outPos) {
+		if (inPos != outPos)
+			System.arraycopy(points, inPos, points, outPos, length);
+		return outPos + length;
+	}
+
+	private static int length(short[] index) {
+		for (int i = 0; i < index.length; i++)
+			if (index[i] < 0)
+				return i;
+		return index.length;
+	}
+
+	private static void set(GeometryBuffer g, float[] points, short[] index) {
+		float[] p = g.ensurePointSize(points.length >> 1, false);
+		System.arraycopy(points, 0, p, 0, points.length);
+
+		short[] idx = g.ensureIndexSize(index.length + 1, false);
+		System.arraycopy(index, 0, idx, 0, index.length);
+		idx[index.length] = -1;
+
+		g.pointPos = points.length;
+		g.indexPos = index.length - 1;
+	}
+
+	private static int toTree(double v, boolean ceil) {
+		double t = v * TREE_SCALE;
+		t = ceil ? Math.ceil(t) : Math.floor(t);
+		if (t < 0)
+			t = 0;
+		else if (t > TREE_SCALE)
+			t = TREE_SCALE;
+
+		return (int) t - EXTENTS;
+	}
+}
@@ -51,6 +51,7 @@ public class Animator {
 	private final Point mScroll = new Point();
 	private final Point mPivot = new Point();
 	private final Point mVelocity = new Point();
+	private final Point mTargetMove = new Point();
 
 	private float mDuration = 500;
 	private long mAnimEnd = -1;
@@ -267,6 +268,76 @@ public class Animator {
 		return newScale / (mStartPos.scale + mDeltaPos.scale);
 	}
 
+	/**
+	 * Get the position where the current animation will end, e.g. to
+	 * load tiles that are about to become visible.
+	 *
+	 * @param pos MapPosition to be set to the target position.
+	 * @return false when no animation is running.
+	 */
+	public synchronized boolean getTargetPosition(MapPosition pos) {
+		if (mState == ANIM_NONE)
+			return false;
+
+		pos.copy(mCurPos);
+
+		double tileScale = mCurPos.scale * Tile.SIZE;
+		if ((mState & ANIM_SCALE) != 0) {
+			pos.setScale(mStartPos.scale + mDeltaPos.scale);
+
+			/* scaling keeps the map point under the pivot fixed */
+			if ((mState & ANIM_MOVE) == 0 && (mPivot.x != 0 || mPivot.y != 0)) {
+				double s = (1 / mStartPos.scale - 1 / pos.scale) / Tile.SIZE;
+				Point p = applyRotation(mPivot.x, mPivot.y, mCurPos.bearing);
+				pos.x = mStartPos.x + p.x * s;
+				pos.y = mStartPos.y + p.y * s;
+			}
+		}
+
+		if ((mState & ANIM_MOVE) != 0) {
+			pos.x = mStartPos.x + mDeltaPos.x;
+			pos.y = mStartPos.y + mDeltaPos.y;
+		}
+
+		if ((mState & ANIM_FLING) != 0) {
+			/* remaining distance in pixels */
+			Point p = applyRotation(mVelocity.x - mScroll.x,
+			                        mVelocity.y - mScroll.y,
+			                        mCurPos.bearing);
+			pos.x -= p.x / tileScale;
+			pos.y -= p.y / tileScale;
+		}
+
+		if ((mState & ANIM_ROTATE) != 0)
+			pos.bearing = mStartPos.bearing + mDeltaPos.bearing;
+
+		if ((mState & ANIM_TILT) != 0)
+			pos.tilt = mStartPos.tilt + mDeltaPos.tilt;
+
+		pos.y = clamp(pos.y, 0, 1);
+		while (pos.x > 1)
+			pos.x -= 1;
+		while (pos.x < 0)
+			pos.x += 1;
+
+		return true;
+	}
+
+	private Point applyRotation(double mx, double my, float bearing) {
+		Point p = mTargetMove;
+		if (bearing == 0) {
+			p.x = mx;
+			p.y = my;
+		} else {
+			double rad = Math.toRadians(bearing);
+			double rcos = Math.cos(rad);
+			double rsin = Math.sin(rad);
+			p.x = mx * rcos + my * rsin;
+			p.y = mx * -rsin + my * rcos;
+		}
+		return p;
+	}
+
 	public synchronized void cancel() {
 		mState = ANIM_NONE;
 	}
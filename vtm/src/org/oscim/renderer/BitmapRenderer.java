@@ -62,6 +62,7 @@ public class BitmapRenderer extends ElementRenderer {
 			l.setBitmap(mBitmap, mWidth, mHeight);
 			layers.setTextureLayers(l);
 
+			initialized = true;
 			mUpdateBitmap = true;
 		}
 
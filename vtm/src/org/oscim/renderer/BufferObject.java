@@ -57,6 +57,7 @@ public final class BufferObject extends Inlist<BufferObject> {
 		}
 
 		GL.glBindBuffer(target, id);
+		FrameProfiler.countUpload(newSize);
 
 		/* reuse memory allocated for vbo when possible and allocated
 		 * memory is less then four times the new data */
@@ -71,6 +72,13 @@ public final class BufferObject extends Inlist<BufferObject> {
 		}
 	}
 
+	/**
+	 * @return allocated bytes
+	 */
+	public int getSize() {
+		return size;
+	}
+
 	public void bind() {
 		GL.glBindBuffer(target, id);
 	}
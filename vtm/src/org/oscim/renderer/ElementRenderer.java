@@ -163,10 +163,16 @@ public abstract class ElementRenderer extends LayerRenderer {
 		if (addFill)
 			newSize += 8;
 
+		if (layers.isPrepared())
+			return uploadPrepared(layers, newSize);
+
 		ShortBuffer sbuf;
 		if (layers.useVBO) {
 			sbuf = MapRenderer.getShortBuffer(newSize);
 		} else {
+			if (layers.vertexArrayBuffer != null)
+				ElementLayers.releaseBuffer(layers.vertexArrayBuffer);
+
 			layers.vertexArrayBuffer = ByteBuffer
 			    .allocateDirect(newSize * 2)
 			    .order(ByteOrder.nativeOrder());
@@ -192,6 +198,41 @@ public abstract class ElementRenderer extends LayerRenderer {
 		return true;
 	}
 
+	private static boolean uploadPrepared(ElementLayers layers, int newSize) {
+		ByteBuffer buf = layers.compilePrepared();
+
+		if (newSize * 2 != buf.limit()) {
+			log.debug("wrong size: "
+			        + " new size: " + newSize
+			        + " prepared size: " + buf.limit() / 2);
+			ElementLayers.releaseBuffer(buf);
+			return false;
+		}
+		if (layers.useVBO) {
+			layers.vbo.loadBufferData(buf, newSize * 2);
+			ElementLayers.releaseBuffer(buf);
+		} else {
+			/* pooled buffer is released by ElementLayers.clear() */
+			if (layers.vertexArrayBuffer != null)
+				ElementLayers.releaseBuffer(layers.vertexArrayBuffer);
+
+			layers.vertexArrayBuffer = buf;
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the vertices of 'layers' which can be compiled without GL into
+	 * a native buffer, so that uploadLayers() on the GL thread only needs
+	 * to add the remaining layers and upload the buffer. Call when the
+	 * layers are complete, e.g. by the loader thread of a tile.
+	 * 
+	 * @param addFill must be the same as for uploadLayers()
+	 */
+	public static void prepareLayers(ElementLayers layers, boolean addFill) {
+		layers.prepare(addFill ? fillCoords : null);
+	}
+
 	/**
 	 * Utility: Set matrices.mvp matrix relative to the difference of current
 	 * MapPosition and the last updated Overlay MapPosition.
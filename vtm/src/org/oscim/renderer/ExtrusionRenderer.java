@@ -74,13 +74,13 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
 			int sumIndices = el.numIndices[0] + el.numIndices[1] + el.numIndices[2];
 			if (sumIndices > 0)
-				GL.glDrawElements(GL20.GL_TRIANGLES, sumIndices,
-				                  GL20.GL_UNSIGNED_SHORT, 0);
+				GLState.drawElements(GL20.GL_TRIANGLES, sumIndices,
+				                     GL20.GL_UNSIGNED_SHORT, 0);
 
 			if (el.numIndices[2] > 0) {
 				int offset = sumIndices * 2;
-				GL.glDrawElements(GL20.GL_TRIANGLES, el.numIndices[4],
-				                  GL20.GL_UNSIGNED_SHORT, offset);
+				GLState.drawElements(GL20.GL_TRIANGLES, el.numIndices[4],
+				                     GL20.GL_UNSIGNED_SHORT, offset);
 			}
 		}
 	}
@@ -177,24 +177,24 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
 					/* draw roof */
 					GL.glUniform1i(s.uMode, 0);
-					GL.glDrawElements(GL20.GL_TRIANGLES,
-					                  el.numIndices[2],
-					                  GL20.GL_UNSIGNED_SHORT,
-					                  (el.numIndices[0]
-					                  + el.numIndices[1]) * 2);
+					GLState.drawElements(GL20.GL_TRIANGLES,
+					                     el.numIndices[2],
+					                     GL20.GL_UNSIGNED_SHORT,
+					                     (el.numIndices[0]
+					                     + el.numIndices[1]) * 2);
 
 					/* draw sides 1 */
 					GL.glUniform1i(s.uMode, 1);
-					GL.glDrawElements(GL20.GL_TRIANGLES,
-					                  el.numIndices[0],
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_TRIANGLES,
+					                     el.numIndices[0],
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 
 					/* draw sides 2 */
 					GL.glUniform1i(s.uMode, 2);
-					GL.glDrawElements(GL20.GL_TRIANGLES,
-					                  el.numIndices[1],
-					                  GL20.GL_UNSIGNED_SHORT,
-					                  el.numIndices[0] * 2);
+					GLState.drawElements(GL20.GL_TRIANGLES,
+					                     el.numIndices[1],
+					                     GL20.GL_UNSIGNED_SHORT,
+					                     el.numIndices[0] * 2);
 
 					if (mTranslucent) {
 						/* drawing gl_lines with the same coordinates does not
@@ -211,10 +211,10 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 					        + el.numIndices[1]
 					        + el.numIndices[2]);
 
-					GL.glDrawElements(GL20.GL_LINES,
-					                  el.numIndices[3],
-					                  GL20.GL_UNSIGNED_SHORT,
-					                  offset);
+					GLState.drawElements(GL20.GL_LINES,
+					                     el.numIndices[3],
+					                     GL20.GL_UNSIGNED_SHORT,
+					                     offset);
 
 				}
 
@@ -226,10 +226,10 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 					        + el.numIndices[2]
 					        + el.numIndices[3]);
 
-					GL.glDrawElements(GL20.GL_TRIANGLES,
-					                  el.numIndices[4],
-					                  GL20.GL_UNSIGNED_SHORT,
-					                  offset);
+					GLState.drawElements(GL20.GL_TRIANGLES,
+					                     el.numIndices[4],
+					                     GL20.GL_UNSIGNED_SHORT,
+					                     offset);
 				}
 			}
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+/**
+ * Collects frame times of MapRenderer, update and render times of each
+ * LayerRenderer, the number of draw calls and GL state changes (counted
+ * by {@link GLState}) and the bytes uploaded to buffer objects and
+ * textures per frame.
+ *
+ * Frames are only measured while enabled, statistics cover the last
+ * {@link #HISTORY} frames. Use {@link MapRenderer#getProfiler()} to get
+ * the profiler and {@link #getStats(Stats)} to read the statistics from
+ * any thread.
+ */
+public class FrameProfiler {
+
+	/** number of frames kept */
+	public static final int HISTORY = 120;
+
+	/** milliseconds per histogram bin */
+	public static final int BIN_MS = 4;
+
+	/** number of histogram bins, the last counts all longer frames */
+	public static final int NUM_BINS = 8;
+
+	/** bytes uploaded in the current frame */
+	private static int uploadBytes;
+
+	/**
+	 * Count bytes uploaded to GL. Only use on GL Thread!
+	 */
+	public static void countUpload(int bytes) {
+		uploadBytes += bytes;
+	}
+
+	public static class Stats {
+		/** number of frames in history */
+		public int frames;
+
+		/** duration of the last frame, average and maximum in history */
+		public long frameNanos;
+		public long avgFrameNanos;
+		public long maxFrameNanos;
+
+		/** counters of the last frame */
+		public int drawCalls;
+		public int stateChanges;
+		public int uploadBytes;
+
+		/** average counters in history */
+		public float avgDrawCalls;
+		public float avgStateChanges;
+		public float avgUploadBytes;
+
+		/** number of frames per bin of BIN_MS in history */
+		public final int[] histogram = new int[NUM_BINS];
+
+		/** class names of LayerRenderers in drawing order */
+		public String[] layers = new String[0];
+
+		/** average update() and render() duration of each LayerRenderer */
+		public long[] updateNanos = new long[0];
+		public long[] renderNanos = new long[0];
+	}
+
+	private volatile boolean mEnabled;
+
+	/* ring buffers of the last frames */
+	private final long[] mFrameNanos = new long[HISTORY];
+	private final int[] mDrawCalls = new int[HISTORY];
+	private final int[] mStateChanges = new int[HISTORY];
+	private final int[] mUploadBytes = new int[HISTORY];
+
+	/* per layer, HISTORY entries each */
+	private long[] mUpdateNanos = new long[0];
+	private long[] mRenderNanos = new long[0];
+
+	private LayerRenderer[] mLayers = new LayerRenderer[0];
+
+	/** next position in ring buffers */
+	private int mPos;
+	private int mFrames;
+
+	private long mFrameStart;
+	private long mLayerStart;
+
+	public void setEnabled(boolean enabled) {
+		mEnabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return mEnabled;
+	}
+
+	/**
+	 * Clear collected statistics.
+	 */
+	public synchronized void reset() {
+		mFrames = 0;
+		mPos = 0;
+	}
+
+	/** called by MapRenderer at begin of frame */
+	void beginFrame() {
+		GLState.drawCalls = 0;
+		GLState.stateChanges = 0;
+		uploadBytes = 0;
+		mFrameStart = System.nanoTime();
+	}
+
+	/** called by MapRenderer before the layers are updated */
+	synchronized void setLayers(LayerRenderer[] layers) {
+		if (layers == mLayers)
+			return;
+
+		mLayers = layers;
+		mUpdateNanos = new long[layers.length * HISTORY];
+		mRenderNanos = new long[layers.length * HISTORY];
+		mFrames = 0;
+		mPos = 0;
+	}
+
+	/** called by MapRenderer before update of a layer */
+	void beginLayer() {
+		mLayerStart = System.nanoTime();
+	}
+
+	/** called by MapRenderer after update of layer 'i' */
+	void layerUpdated(int i) {
+		long now = System.nanoTime();
+		mUpdateNanos[i * HISTORY + mPos] = now - mLayerStart;
+		mLayerStart = now;
+	}
+
+	/** called by MapRenderer after render of layer 'i' */
+	void layerRendered(int i) {
+		long now = System.nanoTime();
+		mRenderNanos[i * HISTORY + mPos] = now - mLayerStart;
+		mLayerStart = now;
+	}
+
+	/** called by MapRenderer at end of frame */
+	synchronized void endFrame() {
+		int pos = mPos;
+		mFrameNanos[pos] = System.nanoTime() - mFrameStart;
+		mDrawCalls[pos] = GLState.drawCalls;
+		mStateChanges[pos] = GLState.stateChanges;
+		mUploadBytes[pos] = uploadBytes;
+
+		mPos = (pos + 1) % HISTORY;
+		if (mFrames < HISTORY)
+			mFrames++;
+	}
+
+	/**
+	 * Get statistics of the last frames.
+	 *
+	 * @param stats to be updated, or null to allocate new Stats.
+	 * @return 'stats'
+	 */
+	public synchronized Stats getStats(Stats stats) {
+		if (stats == null)
+			stats = new Stats();
+
+		int frames = mFrames;
+		stats.frames = frames;
+
+		int numLayers = mLayers.length;
+		if (stats.layers.length != numLayers) {
+			stats.layers = new String[numLayers];
+			stats.updateNanos = new long[numLayers];
+			stats.renderNanos = new long[numLayers];
+		}
+		for (int i = 0; i < numLayers; i++)
+			stats.layers[i] = mLayers[i].getClass().getName();
+
+		for (int i = 0; i < NUM_BINS; i++)
+			stats.histogram[i] = 0;
+
+		if (frames == 0) {
+			stats.frameNanos = stats.avgFrameNanos = stats.maxFrameNanos = 0;
+			stats.drawCalls = stats.stateChanges = stats.uploadBytes = 0;
+			stats.avgDrawCalls = stats.avgStateChanges = stats.avgUploadBytes = 0;
+			for (int i = 0; i < numLayers; i++)
+				stats.updateNanos[i] = stats.renderNanos[i] = 0;
+			return stats;
+		}
+
+		int last = (mPos + HISTORY - 1) % HISTORY;
+		stats.frameNanos = mFrameNanos[last];
+		stats.drawCalls = mDrawCalls[last];
+		stats.stateChanges = mStateChanges[last];
+		stats.uploadBytes = mUploadBytes[last];
+
+		long sum = 0, max = 0;
+		long draws = 0, changes = 0, bytes = 0;
+
+		/* the ring buffers are filled from 0 until HISTORY frames
+		 * were recorded, so the first 'frames' entries are valid */
+		for (int i = 0; i < frames; i++) {
+			long t = mFrameNanos[i];
+			sum += t;
+			max = Math.max(max, t);
+			draws += mDrawCalls[i];
+			changes += mStateChanges[i];
+			bytes += mUploadBytes[i];
+
+			int bin = (int) (t / (BIN_MS * 1000000L));
+			stats.histogram[Math.min(bin, NUM_BINS - 1)]++;
+		}
+		stats.avgFrameNanos = sum / frames;
+		stats.maxFrameNanos = max;
+		stats.avgDrawCalls = (float) draws / frames;
+		stats.avgStateChanges = (float) changes / frames;
+		stats.avgUploadBytes = (float) bytes / frames;
+
+		for (int l = 0; l < numLayers; l++) {
+			long update = 0, render = 0;
+			for (int i = 0; i < frames; i++) {
+				update += mUpdateNanos[l * HISTORY + i];
+				render += mRenderNanos[l * HISTORY + i];
+			}
+			stats.updateNanos[l] = update / frames;
+			stats.renderNanos[l] = render / frames;
+		}
+		return stats;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.renderer.FrameProfiler.Stats;
+
+/**
+ * Draws the statistics of {@link FrameProfiler} as text overlay.
+ */
+public class FrameProfilerRenderer extends BitmapRenderer {
+
+	/** milliseconds between overlay updates */
+	private static final int UPDATE_INTERVAL = 500;
+
+	private static final int SIZE = 512;
+	private static final int TEXT_SIZE = 14;
+	private static final int LINE_HEIGHT = 17;
+	private static final int MARGIN = 4;
+
+	/** number of '#' for a histogram bin with all frames */
+	private static final int BAR_LENGTH = 40;
+
+	private final Stats mStats = new Stats();
+	private final StringBuilder mSb = new StringBuilder(128);
+
+	private Bitmap mBitmap;
+	private Canvas mCanvas;
+	private Paint mPaint;
+
+	private long mLastUpdate;
+
+	@Override
+	protected synchronized void update(GLViewport v) {
+		FrameProfiler profiler = MapRenderer.getProfiler();
+		if (!profiler.isEnabled()) {
+			setReady(false);
+			return;
+		}
+
+		if (mBitmap == null) {
+			mBitmap = CanvasAdapter.g.getBitmap(SIZE, SIZE, 0);
+			mCanvas = CanvasAdapter.g.getCanvas();
+			mCanvas.setBitmap(mBitmap);
+			mPaint = CanvasAdapter.g.getPaint();
+			mPaint.setTextSize(TEXT_SIZE);
+			mPaint.setColor(Color.WHITE);
+			setBitmap(mBitmap, SIZE, SIZE, SIZE, SIZE);
+		}
+
+		if (MapRenderer.frametime - mLastUpdate >= UPDATE_INTERVAL) {
+			mLastUpdate = MapRenderer.frametime;
+			synchronized (mBitmap) {
+				draw(profiler.getStats(mStats));
+			}
+			updateBitmap();
+		}
+		super.update(v);
+	}
+
+	private void draw(Stats s) {
+		mBitmap.eraseColor(0x80000000);
+		int y = MARGIN + TEXT_SIZE;
+
+		StringBuilder sb = mSb;
+		sb.setLength(0);
+		sb.append("frame ");
+		millis(sb, s.frameNanos).append("ms avg ");
+		millis(sb, s.avgFrameNanos).append(" max ");
+		millis(sb, s.maxFrameNanos);
+		y = line(sb, y);
+
+		sb.append("draw ").append(s.drawCalls)
+		    .append(" state ").append(s.stateChanges)
+		    .append(" upload ").append((int) (s.avgUploadBytes / 1024))
+		    .append("kB");
+		y = line(sb, y);
+
+		for (int i = 0; i < s.layers.length; i++) {
+			String name = s.layers[i];
+			sb.append(name, Math.max(name.lastIndexOf('.'),
+			                         name.lastIndexOf('$')) + 1,
+			          name.length());
+			sb.append(" u ");
+			millis(sb, s.updateNanos[i]).append(" r ");
+			millis(sb, s.renderNanos[i]);
+			y = line(sb, y);
+		}
+
+		for (int i = 0; i < FrameProfiler.NUM_BINS; i++) {
+			sb.append(i * FrameProfiler.BIN_MS);
+			if (i < FrameProfiler.NUM_BINS - 1)
+				sb.append('-').append((i + 1) * FrameProfiler.BIN_MS);
+			else
+				sb.append('+');
+			sb.append("ms ");
+
+			int bar = s.frames == 0 ? 0 : s.histogram[i] * BAR_LENGTH / s.frames;
+			for (int j = 0; j < bar; j++)
+				sb.append('#');
+			sb.append(' ').append(s.histogram[i]);
+			y = line(sb, y);
+		}
+	}
+
+	/** append 'nanos' as milliseconds with two decimals */
+	private static StringBuilder millis(StringBuilder sb, long nanos) {
+		long t = nanos / 10000;
+		sb.append(t / 100).append('.');
+		t %= 100;
+		if (t < 10)
+			sb.append('0');
+		return sb.append(t);
+	}
+
+	/** draw and clear 'sb' */
+	private int line(StringBuilder sb, int y) {
+		mCanvas.drawText(sb.toString(), MARGIN, y, mPaint);
+		sb.setLength(0);
+		return y + LINE_HEIGHT;
+	}
+}
@@ -34,6 +34,10 @@ public class GLState {
 
 	private static int currentTexId;
 
+	/** number of draw calls and state changes, read by FrameProfiler */
+	static int drawCalls;
+	static int stateChanges;
+
 	static void init(GL20 gl) {
 		GL = gl;
 
@@ -57,6 +61,7 @@ public class GLState {
 		} else if (shaderProgram != shader) {
 			GL.glUseProgram(shaderProgram);
 			shader = shaderProgram;
+			stateChanges++;
 			return true;
 		}
 		return false;
@@ -71,6 +76,7 @@ public class GLState {
 		else
 			GL.glDisable(GL20.GL_BLEND);
 		blend = enable;
+		stateChanges++;
 	}
 
 	public static void test(boolean depthTest, boolean stencilTest) {
@@ -82,6 +88,7 @@ public class GLState {
 				GL.glDisable(GL20.GL_DEPTH_TEST);
 
 			depth = depthTest;
+			stateChanges++;
 		}
 
 		if (stencil != stencilTest) {
@@ -92,6 +99,7 @@ public class GLState {
 				GL.glDisable(GL20.GL_STENCIL_TEST);
 
 			stencil = stencilTest;
+			stateChanges++;
 		}
 	}
 
@@ -103,11 +111,13 @@ public class GLState {
 			if (!vertexArray[0]) {
 				GL.glEnableVertexAttribArray(0);
 				vertexArray[0] = true;
+				stateChanges++;
 			}
 		} else {
 			if (vertexArray[0]) {
 				GL.glDisableVertexAttribArray(0);
 				vertexArray[0] = false;
+				stateChanges++;
 			}
 		}
 
@@ -115,11 +125,13 @@ public class GLState {
 			if (!vertexArray[1]) {
 				GL.glEnableVertexAttribArray(1);
 				vertexArray[1] = true;
+				stateChanges++;
 			}
 		} else {
 			if (vertexArray[1]) {
 				GL.glDisableVertexAttribArray(1);
 				vertexArray[1] = false;
+				stateChanges++;
 			}
 		}
 	}
@@ -128,9 +140,11 @@ public class GLState {
 		if (id < 0) {
 			GL.glBindTexture(GL20.GL_TEXTURE_2D, 0);
 			currentTexId = 0;
+			stateChanges++;
 		} else if (currentTexId != id) {
 			GL.glBindTexture(GL20.GL_TEXTURE_2D, id);
 			currentTexId = id;
+			stateChanges++;
 		}
 	}
 
@@ -144,5 +158,16 @@ public class GLState {
 
 		clearColor = color;
 		GL.glClearColor(color[0], color[1], color[2], color[3]);
+		stateChanges++;
+	}
+
+	public static void drawArrays(int mode, int first, int count) {
+		GL.glDrawArrays(mode, first, count);
+		drawCalls++;
+	}
+
+	public static void drawElements(int mode, int count, int type, int offset) {
+		GL.glDrawElements(mode, count, type, offset);
+		drawCalls++;
 	}
 }
@@ -95,6 +95,16 @@ public class MapRenderer {
 
 	private static BufferPool mBufferPool;
 
+	private static final FrameProfiler mProfiler = new FrameProfiler();
+
+	/**
+	 * @return the FrameProfiler of the render thread. Profiling is
+	 *         disabled by default.
+	 */
+	public static FrameProfiler getProfiler() {
+		return mProfiler;
+	}
+
 	/**
 	 * @param map
 	 *            the MapView
@@ -169,13 +179,21 @@ public class MapRenderer {
 
 	public void onDrawFrame() {
 		frametime = System.currentTimeMillis();
-		draw();
+
+		boolean profile = mProfiler.isEnabled();
+		if (profile)
+			mProfiler.beginFrame();
+
+		draw(profile);
 
 		mBufferPool.releaseBuffers();
 		TextureItem.disposeTextures();
+
+		if (profile)
+			mProfiler.endFrame();
 	}
 
-	private void draw() {
+	private void draw(boolean profile) {
 		GLState.setClearColor(mClearColor);
 
 		GL.glDepthMask(true);
@@ -206,6 +224,9 @@ public class MapRenderer {
 		/* update layers */
 		LayerRenderer[] layers = mMap.layers().getLayerRenderer();
 
+		if (profile)
+			mProfiler.setLayers(layers);
+
 		for (int i = 0, n = layers.length; i < n; i++) {
 			LayerRenderer renderer = layers[i];
 
@@ -214,11 +235,20 @@ public class MapRenderer {
 				renderer.isInitialized = true;
 			}
 
+			if (profile)
+				mProfiler.beginLayer();
+
 			renderer.update(mViewport);
 
+			if (profile)
+				mProfiler.layerUpdated(i);
+
 			if (renderer.isReady)
 				renderer.render(mViewport);
 
+			if (profile)
+				mProfiler.layerRendered(i);
+
 			if (GLAdapter.debug)
 				GLUtils.checkGlError(renderer.getClass().getName());
 		}
@@ -223,7 +223,7 @@ public class OffscreenRenderer extends LayerRenderer {
 
 		GLState.test(false, false);
 		GLState.blend(true);
-		GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
+		GLState.drawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
 		GLUtils.checkGlError("....");
 	}
 }
@@ -232,8 +232,8 @@ public class BitmapLayer extends TextureLayer {
 					if (numIndices > maxIndices)
 						numIndices = maxIndices;
 
-					GL.glDrawElements(GL20.GL_TRIANGLES, numIndices,
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_TRIANGLES, numIndices,
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 				}
 			}
 
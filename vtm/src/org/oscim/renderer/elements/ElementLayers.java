@@ -22,6 +22,7 @@ import static org.oscim.renderer.elements.RenderElement.POLYGON;
 import static org.oscim.renderer.elements.RenderElement.TEXLINE;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 
 import org.oscim.backend.GL20;
@@ -52,6 +53,13 @@ public class ElementLayers extends TileData {
 	private final static int TEXTURE_VERTEX_SHORTS = 6;
 	private final static int SHORT_BYTES = 2;
 
+	/** number of native buffers kept for prepare() */
+	private final static int MAX_POOLED_BUFFERS = 8;
+	/** allocate native buffers in multiples of 16kb */
+	private final static int BUFFER_ALIGN = (1 << 14) - 1;
+
+	private final static ByteBuffer[] sBufferPool = new ByteBuffer[MAX_POOLED_BUFFERS];
+
 	/** mixed Polygon- and LineLayer */
 	private RenderElement baseLayers;
 
@@ -69,9 +77,18 @@ public class ElementLayers extends TileData {
 	public BufferObject vbo;
 	public boolean useVBO = true;
 
-	/* holds vertex data for rendering when not using VBO */
+	/* holds vertex data for rendering when not using VBO, returned
+	 * to the buffer pool by clear() */
 	public ByteBuffer vertexArrayBuffer;
 
+	/**
+	 * Native buffer holding the vertices of Polygon-, Line- and
+	 * LineTexLayers after prepare(), until uploaded by compile().
+	 */
+	private ByteBuffer mPrepared;
+	/** number of shorts in mPrepared */
+	private int mPreparedSize;
+
 	/**
 	 * To not need to switch VertexAttribPointer positions all the time:
 	 * 1. polygons are packed in VBO at offset 0
@@ -157,6 +174,8 @@ public class ElementLayers extends TileData {
 		for (RenderElement l = baseLayers; l != null; l = l.next)
 			l.clear();
 
+		releasePrepared();
+
 		baseLayers = layers;
 	}
 
@@ -265,7 +284,53 @@ public class ElementLayers extends TileData {
 		return size;
 	}
 
+	/**
+	 * @return the number of vertices of all layers
+	 */
+	public int getNumVertices() {
+		int vertices = 0;
+
+		for (RenderElement l = baseLayers; l != null; l = l.next)
+			vertices += l.numVertices;
+
+		for (RenderElement l = textureLayers; l != null; l = l.next)
+			vertices += l.numVertices;
+
+		return vertices;
+	}
+
+	@Override
+	protected int getMemoryUsage() {
+		int size = 0;
+
+		for (RenderElement l = baseLayers; l != null; l = l.next)
+			size += l.getMemoryUsage();
+
+		for (RenderElement l = textureLayers; l != null; l = l.next)
+			size += l.getMemoryUsage();
+
+		if (vbo != null)
+			size += vbo.getSize();
+
+		if (vertexArrayBuffer != null)
+			size += vertexArrayBuffer.capacity();
+
+		if (mPrepared != null)
+			size += mPrepared.capacity();
+
+		return size;
+	}
+
 	public void compile(ShortBuffer sbuf, boolean addFill) {
+		compileBaseLayers(sbuf, addFill);
+		compileLayers(sbuf);
+	}
+
+	/**
+	 * Add vertices of Polygon-, Line- and LineTexLayers. These do not
+	 * need any GL resources.
+	 */
+	private void compileBaseLayers(ShortBuffer sbuf, boolean addFill) {
 
 		addLayerItems(sbuf, baseLayers, POLYGON, addFill ? 4 : 0);
 
@@ -275,7 +340,18 @@ public class ElementLayers extends TileData {
 		//offset[TEXLINE] = size * SHORT_BYTES;
 
 		for (RenderElement l = baseLayers; l != null; l = l.next) {
-			if (l.type == TEXLINE || l.type == MESH) {
+			if (l.type == TEXLINE) {
+				l.compile(sbuf);
+			}
+		}
+	}
+
+	/**
+	 * Add vertices of Mesh- and TextureLayers. Only use on GL Thread!
+	 */
+	private void compileLayers(ShortBuffer sbuf) {
+		for (RenderElement l = baseLayers; l != null; l = l.next) {
+			if (l.type == MESH) {
 				l.compile(sbuf);
 			}
 		}
@@ -285,6 +361,113 @@ public class ElementLayers extends TileData {
 		}
 	}
 
+	/**
+	 * Copy the vertices of Polygon-, Line- and LineTexLayers into a
+	 * native buffer owned by this ElementLayers. Unlike compile() this
+	 * can be called from any thread, e.g. by a TileLoader when the
+	 * layers are complete. compilePrepared() then only needs to add
+	 * Mesh- and TextureLayers before the buffer is uploaded.
+	 * 
+	 * @param fill coordinates to put in front of polygon vertices,
+	 *            or null.
+	 */
+	public void prepare(short[] fill) {
+		int size = getSize();
+		if (size <= 0 || mPrepared != null)
+			return;
+
+		if (fill != null)
+			size += fill.length;
+
+		ByteBuffer buf = obtainBuffer(size * SHORT_BYTES);
+		ShortBuffer sbuf = buf.asShortBuffer();
+
+		if (fill != null)
+			sbuf.put(fill);
+
+		compileBaseLayers(sbuf, fill != null);
+
+		mPrepared = buf;
+		mPreparedSize = sbuf.position();
+	}
+
+	/**
+	 * @return true when prepare() copied the base layers and the data
+	 *         was not yet compiled.
+	 */
+	public boolean isPrepared() {
+		return mPrepared != null;
+	}
+
+	/**
+	 * Add the remaining layers to the buffer filled by prepare(). Only
+	 * use on GL Thread!
+	 * 
+	 * @return the buffer holding all vertices. The caller owns it and
+	 *         must pass it to releaseBuffer() when it is not used
+	 *         anymore, e.g. after glBufferData.
+	 */
+	public ByteBuffer compilePrepared() {
+		ByteBuffer buf = mPrepared;
+		mPrepared = null;
+
+		ShortBuffer sbuf = buf.asShortBuffer();
+		sbuf.position(mPreparedSize);
+		compileLayers(sbuf);
+
+		buf.clear();
+		buf.limit(sbuf.position() * SHORT_BYTES);
+		return buf;
+	}
+
+	private void releasePrepared() {
+		if (mPrepared != null)
+			mPrepared = releaseBuffer(mPrepared);
+	}
+
+	/**
+	 * Get a native ByteBuffer with at least 'bytes' capacity from pool.
+	 */
+	static ByteBuffer obtainBuffer(int bytes) {
+		synchronized (sBufferPool) {
+			for (int i = 0; i < MAX_POOLED_BUFFERS; i++) {
+				ByteBuffer b = sBufferPool[i];
+				if (b != null && b.capacity() >= bytes) {
+					sBufferPool[i] = null;
+					b.clear();
+					return b;
+				}
+			}
+		}
+		return ByteBuffer
+		    .allocateDirect((bytes + BUFFER_ALIGN) & ~BUFFER_ALIGN)
+		    .order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Return buffer obtained by compilePrepared() to pool. When the pool
+	 * is full the smallest buffer is dropped.
+	 * 
+	 * @return null
+	 */
+	public static ByteBuffer releaseBuffer(ByteBuffer buf) {
+		synchronized (sBufferPool) {
+			int min = -1;
+			for (int i = 0; i < MAX_POOLED_BUFFERS; i++) {
+				ByteBuffer b = sBufferPool[i];
+				if (b == null) {
+					sBufferPool[i] = buf;
+					return null;
+				}
+				if (min < 0 || b.capacity() < sBufferPool[min].capacity())
+					min = i;
+			}
+			if (sBufferPool[min].capacity() < buf.capacity())
+				sBufferPool[min] = buf;
+		}
+		return null;
+	}
+
 	/**
 	 * optimization for Line- and PolygonLayer:
 	 * collect all pool items and add back in one go.
@@ -361,7 +544,8 @@ public class ElementLayers extends TileData {
 		if (vbo != null)
 			vbo = BufferObject.release(vbo);
 
-		vertexArrayBuffer = null;
+		if (vertexArrayBuffer != null)
+			vertexArrayBuffer = releaseBuffer(vertexArrayBuffer);
 	}
 
 	@Override
@@ -696,6 +696,22 @@ public class ExtrusionLayer extends RenderElement {
 		}
 	}
 
+	@Override
+	protected int getMemoryUsage() {
+		if (mIndices == null)
+			return 0;
+
+		int items = 0;
+		for (int i = 0; i <= IND_MESH; i++)
+			for (VertexItem vi = mIndices[i]; vi != null; vi = vi.next)
+				items++;
+
+		for (VertexItem vi = mVertices; vi != null; vi = vi.next)
+			items++;
+
+		return items * VertexItem.SIZE * 2;
+	}
+
 	public ExtrusionLayer next() {
 		return (ExtrusionLayer) next;
 	}
@@ -57,6 +57,21 @@ public class ExtrusionLayers extends TileData {
 
 	}
 
+	@Override
+	protected int getMemoryUsage() {
+		int size = 0;
+		for (ExtrusionLayer l = getLayers(); l != null; l = l.next())
+			size += l.getMemoryUsage();
+
+		if (compiled) {
+			if (vboIndices != null)
+				size += vboIndices.getSize();
+			if (vboVertices != null)
+				size += vboVertices.getSize();
+		}
+		return size;
+	}
+
 	public boolean compileLayers() {
 		ExtrusionLayer el = layers;
 
@@ -805,8 +805,8 @@ public final class LineLayer extends RenderElement {
 						GL.glUniform1f(uLineMode, capMode);
 					}
 
-					GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP,
-					                l.offset, l.numVertices);
+					GLState.drawArrays(GL20.GL_TRIANGLE_STRIP,
+					                   l.offset, l.numVertices);
 
 					continue;
 				}
@@ -852,8 +852,8 @@ public final class LineLayer extends RenderElement {
 						GL.glUniform1f(uLineMode, capMode);
 					}
 
-					GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP,
-					                ref.offset, ref.numVertices);
+					GLState.drawArrays(GL20.GL_TRIANGLE_STRIP,
+					                   ref.offset, ref.numVertices);
 				}
 			}
 
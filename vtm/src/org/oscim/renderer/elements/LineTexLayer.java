@@ -406,8 +406,8 @@ public final class LineTexLayer extends RenderElement {
 					GL.glVertexAttribPointer(aLen1, 2, GL20.GL_SHORT, false, STRIDE,
 					                         add + LEN_OFFSET);
 
-					GL.glDrawElements(GL20.GL_TRIANGLES, numIndices,
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_TRIANGLES, numIndices,
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 				}
 
 				/* second pass */
@@ -431,8 +431,8 @@ public final class LineTexLayer extends RenderElement {
 					GL.glVertexAttribPointer(aLen1, 2, GL20.GL_SHORT, false, STRIDE,
 					                         add + STRIDE + LEN_OFFSET);
 
-					GL.glDrawElements(GL20.GL_TRIANGLES, numIndices,
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_TRIANGLES, numIndices,
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 				}
 				//GlUtils.checkGlError(TAG);
 			}
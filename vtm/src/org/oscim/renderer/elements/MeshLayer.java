@@ -162,13 +162,13 @@ public class MeshLayer extends RenderElement {
 				GL.glVertexAttribPointer(s.aPos, 2, GL20.GL_SHORT,
 				                         false, 0, ml.offset);
 
-				GL.glDrawElements(GL20.GL_TRIANGLES, ml.numIndices,
-				                  GL20.GL_UNSIGNED_SHORT, 0);
+				GLState.drawElements(GL20.GL_TRIANGLES, ml.numIndices,
+				                     GL20.GL_UNSIGNED_SHORT, 0);
 
 				if (dbgRender) {
 					GLUtils.setColor(s.uColor, ColorUtil.shiftHue(ml.area.color, 0.5), 0.8f);
-					GL.glDrawElements(GL20.GL_LINES, ml.numIndices,
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_LINES, ml.numIndices,
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 				}
 			}
 
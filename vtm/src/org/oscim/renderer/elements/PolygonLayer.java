@@ -214,7 +214,7 @@ public final class PolygonLayer extends RenderElement {
 				GL.glStencilFunc(GL20.GL_EQUAL, 0xff, CLIP_BIT | 1 << c);
 
 				/* draw tile fill coordinates */
-				GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
+				GLState.drawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
 
 				/* disable texture shader */
 				if (s != polyShader)
@@ -299,7 +299,7 @@ public final class PolygonLayer extends RenderElement {
 				/* set stencil mask to draw to */
 				GL.glStencilMask(1 << cur++);
 
-				GL.glDrawArrays(GL20.GL_TRIANGLE_FAN, l.offset, l.numVertices);
+				GLState.drawArrays(GL20.GL_TRIANGLE_FAN, l.offset, l.numVertices);
 
 				/* draw up to 7 layers into stencil buffer */
 				if (cur == STENCIL_BITS - 1) {
@@ -379,7 +379,7 @@ public final class PolygonLayer extends RenderElement {
 			GL.glStencilOp(GL20.GL_KEEP, GL20.GL_KEEP, GL20.GL_REPLACE);
 
 			/* draw a quad for the tile region */
-			GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
+			GLState.drawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
 
 			if (first) {
 				if (clipMode == CLIP_DEPTH) {
@@ -419,7 +419,7 @@ public final class PolygonLayer extends RenderElement {
 			/* zero out area to draw to */
 			GL.glStencilOp(GL20.GL_KEEP, GL20.GL_KEEP, GL20.GL_ZERO);
 
-			GL.glDrawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
+			GLState.drawArrays(GL20.GL_TRIANGLE_STRIP, 0, 4);
 
 			// FIXME needed here?
 			if (color == 0)
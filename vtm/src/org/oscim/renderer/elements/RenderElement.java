@@ -47,6 +47,14 @@ public abstract class RenderElement extends Inlist<RenderElement> {
 		this.type = type;
 	}
 
+	/**
+	 * @return the vertex data of this layer, e.g. for rendering without
+	 *         GL. Null when the layer has been compiled.
+	 */
+	public VertexItem getVertexItems() {
+		return vertexItems;
+	}
+
 	/** clear all resources. */
 	protected void clear() {
 		if (vertexItems != null)
@@ -54,6 +62,14 @@ public abstract class RenderElement extends Inlist<RenderElement> {
 		numVertices = 0;
 	}
 
+	/** @return bytes held by vertex items of this layer. */
+	protected int getMemoryUsage() {
+		int size = 0;
+		for (VertexItem it = vertexItems; it != null; it = it.next)
+			size += VertexItem.SIZE * 2;
+		return size;
+	}
+
 	/** compile vertex data to vbo. */
 	protected void compile(ShortBuffer sbuf) {
 
@@ -24,6 +24,7 @@ import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.GL20;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.backend.canvas.Color;
+import org.oscim.renderer.FrameProfiler;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
 import org.oscim.utils.pool.Inlist;
@@ -268,6 +269,8 @@ public class TextureItem extends Inlist<TextureItem> {
 				// use faster subimage upload 
 				t.bitmap.uploadToTexture(true);
 			}
+			/* RGBA */
+			FrameProfiler.countUpload(t.width * t.height * 4);
 
 			if (TextureLayer.Renderer.debug)
 				GLUtils.checkGlError(TextureItem.class.getName());
@@ -68,6 +68,15 @@ public abstract class TextureLayer extends RenderElement {
 
 	abstract public boolean prepare();
 
+	@Override
+	protected int getMemoryUsage() {
+		int size = super.getMemoryUsage();
+		/* RGBA texture */
+		for (TextureItem t = textures; t != null; t = t.next)
+			size += t.width * t.height * 4;
+		return size;
+	}
+
 	protected void clear() {
 		while (textures != null)
 			textures = textures.dispose();
@@ -202,8 +211,8 @@ public abstract class TextureLayer extends RenderElement {
 					if (numIndices > maxIndices)
 						numIndices = maxIndices;
 
-					GL.glDrawElements(GL20.GL_TRIANGLES, numIndices,
-					                  GL20.GL_UNSIGNED_SHORT, 0);
+					GLState.drawElements(GL20.GL_TRIANGLES, numIndices,
+					                     GL20.GL_UNSIGNED_SHORT, 0);
 
 				}
 			}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Paint.Cap;
+import org.oscim.backend.canvas.Paint.FontFamily;
+import org.oscim.backend.canvas.Paint.FontStyle;
+import org.oscim.renderer.atlas.TextureAtlas;
+import org.oscim.renderer.atlas.TextureAtlas.Rect;
+import org.oscim.renderer.atlas.TextureRegion;
+import org.oscim.renderer.elements.TextureItem;
+import org.oscim.theme.IRenderTheme.ThemeException;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.rule.RuleBuilder.RuleType;
+import org.oscim.theme.styles.AreaStyle.AreaBuilder;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.LineStyle.LineBuilder;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle.TextBuilder;
+
+/**
+ * Restores a RenderTheme written by {@link BinaryThemeWriter}, without
+ * parsing the XML theme again. Symbol and pattern bitmaps are loaded from
+ * their asset paths, like XmlThemeBuilder does.
+ * <p>
+ * The file starts with the hash of the XML data it was compiled from, so
+ * that a theme is only restored when its XML source did not change.
+ */
+public class BinaryThemeBuilder {
+
+	/** 'VTMT' */
+	static final int MAGIC = 0x56544D54;
+	static final int VERSION = 1;
+
+	static final int STYLE_LINE = 1;
+	static final int STYLE_AREA = 2;
+	static final int STYLE_TEXT = 3;
+	static final int STYLE_SYMBOL = 4;
+	static final int STYLE_CIRCLE = 5;
+	static final int STYLE_EXTRUSION = 6;
+
+	/**
+	 * @return 64 bit FNV-1a hash of the XML theme data.
+	 */
+	public static long hash(byte[] data) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < data.length; i++) {
+			h ^= (data[i] & 0xff);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Memory-map 'file' and read the theme.
+	 * 
+	 * @return the theme, or null when 'file' was not compiled from XML data
+	 *         with 'hash' or by another version of BinaryThemeWriter.
+	 * @throws ThemeException if the file is corrupt.
+	 */
+	public static IRenderTheme read(File file, long hash) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			return read(buf, hash);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @see #read(File, long)
+	 */
+	public static IRenderTheme read(ByteBuffer buf, long hash) {
+		if (buf.remaining() < 16 || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+			return null;
+
+		if (buf.getLong() != hash)
+			return null;
+
+		try {
+			return new BinaryThemeBuilder(buf).readTheme();
+		} catch (ThemeException e) {
+			throw e;
+		} catch (BufferUnderflowException e) {
+			throw new ThemeException("truncated binary theme");
+		} catch (RuntimeException e) {
+			/* corrupt content: invalid indices, enum names or counts */
+			throw new ThemeException("invalid binary theme: " + e);
+		}
+	}
+
+	private final ByteBuffer mBuf;
+
+	private String[] mStrings;
+	private TextureRegion[][] mRegions;
+	private TextureItem[] mTextures;
+	private RenderStyle[] mStyles;
+
+	private BinaryThemeBuilder(ByteBuffer buf) {
+		mBuf = buf;
+	}
+
+	private RenderTheme readTheme() {
+		ByteBuffer buf = mBuf;
+
+		int mapBackground = buf.getInt();
+		float baseTextSize = buf.getFloat();
+		int levels = buf.getInt();
+
+		readStrings();
+		readAtlases();
+		readTextures();
+
+		mStyles = new RenderStyle[readCount()];
+		for (int i = 0; i < mStyles.length; i++)
+			mStyles[i] = readStyle();
+
+		Rule[] rules = new Rule[readCount()];
+		for (int i = 0; i < rules.length; i++)
+			rules[i] = readRule().onComplete(null);
+
+		return new RenderTheme(mapBackground, baseTextSize, rules, levels);
+	}
+
+	private void readStrings() {
+		ByteBuffer buf = mBuf;
+		mStrings = new String[readCount()];
+
+		byte[] tmp = new byte[256];
+		for (int i = 0; i < mStrings.length; i++) {
+			int length = buf.getShort() & 0xffff;
+			if (tmp.length < length)
+				tmp = new byte[length];
+			buf.get(tmp, 0, length);
+			try {
+				/* rules compare tag keys and values by reference */
+				mStrings[i] = new String(tmp, 0, length, "UTF-8").intern();
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the following items, each takes at least
+	 *         one byte.
+	 */
+	private int readCount() {
+		int count = mBuf.getInt();
+		if (count < 0 || count > mBuf.remaining())
+			throw new ThemeException("invalid count: " + count);
+		return count;
+	}
+
+	private String readString() {
+		int id = mBuf.getInt();
+		return id < 0 ? null : mStrings[id];
+	}
+
+	private void readAtlases() {
+		ByteBuffer buf = mBuf;
+		mRegions = new TextureRegion[readCount()][];
+
+		for (int i = 0; i < mRegions.length; i++) {
+			Bitmap bitmap = CanvasAdapter.g.loadBitmapAsset(readString());
+			TextureAtlas atlas = new TextureAtlas(bitmap);
+
+			TextureRegion[] regions = mRegions[i] = new TextureRegion[readCount()];
+			for (int j = 0; j < regions.length; j++) {
+				String name = readString();
+				Rect r = new Rect(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+				atlas.addTextureRegion(name, r);
+				regions[j] = atlas.getTextureRegion(name);
+			}
+		}
+	}
+
+	private void readTextures() {
+		mTextures = new TextureItem[readCount()];
+
+		for (int i = 0; i < mTextures.length; i++) {
+			String src = readString();
+			try {
+				Bitmap bitmap = CanvasAdapter.g.loadBitmapAsset(src);
+				if (bitmap != null)
+					mTextures[i] = new TextureItem(bitmap, true);
+			} catch (Exception e) {
+				XmlThemeBuilder.log.debug(e.getMessage());
+			}
+		}
+	}
+
+	private TextureRegion readRegion() {
+		int atlas = mBuf.getInt();
+		int region = mBuf.getInt();
+		return atlas < 0 ? null : mRegions[atlas][region];
+	}
+
+	private RenderStyle readStyle() {
+		ByteBuffer buf = mBuf;
+		int type = buf.get();
+
+		switch (type) {
+			case STYLE_LINE: {
+				LineBuilder b = new LineBuilder().reset();
+				b.level = buf.getInt();
+				b.style = readString();
+				b.width = buf.getFloat();
+				b.color = buf.getInt();
+				b.cap = Cap.valueOf(readString());
+				b.outline = buf.get() != 0;
+				b.fixed = buf.get() != 0;
+				b.fadeScale = buf.getInt();
+				b.blur = buf.getFloat();
+				b.stipple = buf.getInt();
+				b.stippleColor = buf.getInt();
+				b.stippleWidth = buf.getFloat();
+				return b.build();
+			}
+			case STYLE_AREA: {
+				AreaBuilder b = new AreaBuilder().reset();
+				b.level = buf.getInt();
+				b.style = readString();
+				b.color = buf.getInt();
+				b.fadeScale = buf.getInt();
+				b.blendColor = buf.getInt();
+				b.blendScale = buf.getInt();
+				int texture = buf.getInt();
+				b.texture = texture < 0 ? null : mTextures[texture];
+				b.outlineColor = buf.getInt();
+				b.outlineWidth = buf.getFloat();
+				return b.build();
+			}
+			case STYLE_TEXT: {
+				TextBuilder b = new TextBuilder();
+				b.style = readString();
+				b.textKey = readString();
+				b.caption = buf.get() != 0;
+				b.dy = buf.getFloat();
+				b.priority = buf.getInt();
+				b.fontSize = buf.getFloat();
+				b.fontFamily = FontFamily.valueOf(readString());
+				b.fontStyle = FontStyle.valueOf(readString());
+				b.color = buf.getInt();
+				b.stroke = buf.getInt();
+				b.strokeWidth = buf.getFloat();
+				b.texture = readRegion();
+				return b.buildInternal();
+			}
+			case STYLE_SYMBOL:
+				return new SymbolStyle(readRegion());
+
+			case STYLE_CIRCLE: {
+				float radius = buf.getFloat();
+				boolean scaleRadius = buf.get() != 0;
+				int fill = buf.getInt();
+				int stroke = buf.getInt();
+				float strokeWidth = buf.getFloat();
+				int level = buf.getInt();
+				return new CircleStyle(Float.valueOf(radius), scaleRadius,
+				                       fill, stroke, strokeWidth, level);
+			}
+			case STYLE_EXTRUSION: {
+				int level = buf.getInt();
+				int colorSide = buf.getInt();
+				int colorTop = buf.getInt();
+				int colorLine = buf.getInt();
+				int defaultHeight = buf.getInt();
+				return new ExtrusionStyle(level, colorSide, colorTop, colorLine,
+				                          defaultHeight);
+			}
+		}
+		throw new ThemeException("unknown style type: " + type);
+	}
+
+	private RuleBuilder readRule() {
+		ByteBuffer buf = mBuf;
+
+		RuleType type = RuleType.values()[buf.get()];
+		int element = buf.getInt();
+		int zoom = buf.getInt();
+		int selector = buf.get();
+
+		String[] keys = new String[readCount()];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = readString();
+
+		String[] values = new String[readCount()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = readString();
+
+		RuleBuilder b = new RuleBuilder(type, element, zoom, selector, keys, values);
+
+		for (int i = 0, n = buf.getInt(); i < n; i++)
+			b.addStyle(mStyles[buf.getInt()]);
+
+		for (int i = 0, n = buf.getInt(); i < n; i++)
+			b.addSubRule(readRule());
+
+		return b;
+	}
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import static org.oscim.theme.BinaryThemeBuilder.MAGIC;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_AREA;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_CIRCLE;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_EXTRUSION;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_LINE;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_SYMBOL;
+import static org.oscim.theme.BinaryThemeBuilder.STYLE_TEXT;
+import static org.oscim.theme.BinaryThemeBuilder.VERSION;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.oscim.renderer.atlas.TextureRegion;
+import org.oscim.renderer.elements.TextureItem;
+import org.oscim.theme.IRenderTheme.ThemeException;
+import org.oscim.theme.XmlThemeBuilder.AtlasSource;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.AreaStyle.AreaBuilder;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.LineStyle.LineBuilder;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+
+/**
+ * Writes the RenderTheme built by XmlThemeBuilder in the binary format of
+ * {@link BinaryThemeBuilder}: a string table, the atlas layouts, the styles
+ * and the rule tree referencing styles by index. Styles shared between
+ * rules stay shared.
+ */
+public class BinaryThemeWriter {
+
+	/**
+	 * Parse the XML theme and write it to 'file'.
+	 */
+	public static void compile(ThemeFile theme, File file) throws IOException {
+		byte[] xml = ThemeLoader.readTheme(theme);
+		if (xml == null)
+			throw new IOException("could not read theme " + theme);
+
+		write(XmlThemeBuilder.parse(new ByteArrayInputStream(xml)),
+		      BinaryThemeBuilder.hash(xml), file);
+	}
+
+	/**
+	 * Write the theme of 'builder' parsed from XML data with 'hash'. The
+	 * file is replaced when complete, so that readers never see a partial
+	 * file.
+	 */
+	static void write(XmlThemeBuilder builder, long hash, File file) throws IOException {
+		byte[] data = new BinaryThemeWriter(builder).write(hash);
+
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete())
+			throw new IOException("could not replace " + file);
+		if (!tmp.renameTo(file))
+			throw new IOException("could not rename " + tmp);
+	}
+
+	private final XmlThemeBuilder mBuilder;
+
+	private final HashMap<String, Integer> mStringIds = new HashMap<String, Integer>();
+	private final ArrayList<String> mStrings = new ArrayList<String>();
+
+	private final IdentityHashMap<RenderStyle, Integer> mStyleIds =
+	        new IdentityHashMap<RenderStyle, Integer>();
+	private final ArrayList<RenderStyle> mStyles = new ArrayList<RenderStyle>();
+
+	private final IdentityHashMap<TextureItem, Integer> mTextureIds =
+	        new IdentityHashMap<TextureItem, Integer>();
+	private final ArrayList<TextureItem> mTextures = new ArrayList<TextureItem>();
+
+	/** atlas and region index of each TextureRegion */
+	private final IdentityHashMap<TextureRegion, int[]> mRegionIds =
+	        new IdentityHashMap<TextureRegion, int[]>();
+
+	private final ByteArrayOutputStream mBody = new ByteArrayOutputStream(64 * 1024);
+	private final DataOutputStream mOut = new DataOutputStream(mBody);
+
+	private BinaryThemeWriter(XmlThemeBuilder builder) {
+		mBuilder = builder;
+	}
+
+	private byte[] write(long hash) throws IOException {
+		RenderTheme theme = mBuilder.mRenderTheme;
+		if (theme == null)
+			throw new ThemeException("no theme");
+
+		Rule[] rules = theme.getRules();
+		for (Rule r : rules)
+			collectStyles(r);
+
+		writeAtlases();
+		writeTextures();
+
+		mOut.writeInt(mStyles.size());
+		for (RenderStyle style : mStyles)
+			writeStyle(style);
+
+		mOut.writeInt(rules.length);
+		for (Rule r : rules)
+			writeRule(r);
+
+		/* header and string table, then the body referencing the strings */
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(mBody.size() + 16 * 1024);
+		DataOutputStream out = new DataOutputStream(bos);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(hash);
+		out.writeInt(theme.getMapBackground());
+		out.writeFloat(theme.getBaseTextSize());
+		out.writeInt(theme.getLevels());
+
+		out.writeInt(mStrings.size());
+		for (String s : mStrings) {
+			byte[] b = s.getBytes("UTF-8");
+			if (b.length > 0xffff)
+				throw new ThemeException("string too long: " + s);
+			out.writeShort(b.length);
+			out.write(b);
+		}
+		mBody.writeTo(out);
+		out.flush();
+
+		return bos.toByteArray();
+	}
+
+	private void collectStyles(Rule r) {
+		for (RenderStyle style : r.styles) {
+			if (mStyleIds.containsKey(style))
+				continue;
+
+			mStyleIds.put(style, Integer.valueOf(mStyles.size()));
+			mStyles.add(style);
+
+			if (style instanceof AreaStyle) {
+				TextureItem texture = ((AreaStyle) style).texture;
+				if (texture != null && !mTextureIds.containsKey(texture)) {
+					mTextureIds.put(texture, Integer.valueOf(mTextures.size()));
+					mTextures.add(texture);
+				}
+			}
+		}
+		for (Rule subRule : r.subRules)
+			collectStyles(subRule);
+	}
+
+	private void writeString(String s) throws IOException {
+		if (s == null) {
+			mOut.writeInt(-1);
+			return;
+		}
+		Integer id = mStringIds.get(s);
+		if (id == null) {
+			id = Integer.valueOf(mStrings.size());
+			mStringIds.put(s, id);
+			mStrings.add(s);
+		}
+		mOut.writeInt(id.intValue());
+	}
+
+	private void writeAtlases() throws IOException {
+		ArrayList<AtlasSource> atlases = mBuilder.mAtlasSources;
+		mOut.writeInt(atlases.size());
+
+		for (int i = 0, n = atlases.size(); i < n; i++) {
+			AtlasSource a = atlases.get(i);
+			writeString(a.img);
+			mOut.writeInt(a.regions.size());
+
+			for (int j = 0, m = a.regions.size(); j < m; j++) {
+				String name = a.regions.get(j);
+				TextureRegion region = a.atlas.getTextureRegion(name.intern());
+				writeString(name);
+				mOut.writeInt(region.rect.x);
+				mOut.writeInt(region.rect.y);
+				mOut.writeInt(region.rect.w);
+				mOut.writeInt(region.rect.h);
+				mRegionIds.put(region, new int[] { i, j });
+			}
+		}
+	}
+
+	private void writeTextures() throws IOException {
+		mOut.writeInt(mTextures.size());
+		for (TextureItem texture : mTextures) {
+			String src = mBuilder.mTextureSources.get(texture);
+			if (src == null)
+				throw new ThemeException("unknown source of area texture");
+			writeString(src);
+		}
+	}
+
+	private void writeRegion(TextureRegion region) throws IOException {
+		int[] id = (region == null) ? null : mRegionIds.get(region);
+		if (region != null && id == null)
+			throw new ThemeException("unknown atlas region");
+
+		mOut.writeInt(id == null ? -1 : id[0]);
+		mOut.writeInt(id == null ? -1 : id[1]);
+	}
+
+	private void writeStyle(RenderStyle style) throws IOException {
+		DataOutputStream out = mOut;
+
+		if (style instanceof LineStyle) {
+			LineBuilder b = new LineBuilder().set((LineStyle) style);
+			out.writeByte(STYLE_LINE);
+			out.writeInt(b.level);
+			writeString(b.style);
+			out.writeFloat(b.width);
+			out.writeInt(b.color);
+			writeString(b.cap.name());
+			out.writeBoolean(b.outline);
+			out.writeBoolean(b.fixed);
+			out.writeInt(b.fadeScale);
+			out.writeFloat(b.blur);
+			out.writeInt(b.stipple);
+			out.writeInt(b.stippleColor);
+			out.writeFloat(b.stippleWidth);
+
+		} else if (style instanceof AreaStyle) {
+			AreaBuilder b = new AreaBuilder().set((AreaStyle) style);
+			out.writeByte(STYLE_AREA);
+			out.writeInt(b.level);
+			writeString(b.style);
+			out.writeInt(b.color);
+			out.writeInt(b.fadeScale);
+			out.writeInt(b.blendColor);
+			out.writeInt(b.blendScale);
+			out.writeInt(b.texture == null ? -1 : mTextureIds.get(b.texture).intValue());
+			out.writeInt(b.outlineColor);
+			out.writeFloat(b.outlineWidth);
+
+		} else if (style instanceof TextStyle) {
+			TextStyle t = (TextStyle) style;
+			out.writeByte(STYLE_TEXT);
+			writeString(t.style);
+			writeString(t.textKey);
+			out.writeBoolean(t.caption);
+			out.writeFloat(t.dy);
+			out.writeInt(t.priority);
+			out.writeFloat(t.fontSize);
+			writeString(t.fontFamily.name());
+			writeString(t.fontStyle.name());
+			out.writeInt(t.color);
+			out.writeInt(t.strokeColor);
+			out.writeFloat(t.strokeWidth);
+			writeRegion(t.texture);
+
+		} else if (style instanceof SymbolStyle) {
+			out.writeByte(STYLE_SYMBOL);
+			writeRegion(((SymbolStyle) style).texture);
+
+		} else if (style instanceof CircleStyle) {
+			CircleStyle c = (CircleStyle) style;
+			out.writeByte(STYLE_CIRCLE);
+			out.writeFloat(c.radius);
+			out.writeBoolean(c.scaleRadius);
+			out.writeInt(c.fill);
+			out.writeInt(c.outline);
+			out.writeFloat(c.strokeWidth);
+			out.writeInt(c.level);
+
+		} else if (style instanceof ExtrusionStyle) {
+			ExtrusionStyle e = (ExtrusionStyle) style;
+			out.writeByte(STYLE_EXTRUSION);
+			out.writeInt(e.level);
+			out.writeInt(e.colorSide);
+			out.writeInt(e.colorTop);
+			out.writeInt(e.colorLine);
+			out.writeInt(e.defaultHeight);
+
+		} else {
+			throw new ThemeException("cannot write style " + style.getClass().getName());
+		}
+	}
+
+	private void writeRule(Rule r) throws IOException {
+		DataOutputStream out = mOut;
+
+		out.writeByte(r.getType().ordinal());
+		out.writeInt(r.element);
+		out.writeInt(r.zoom);
+		out.writeByte(r.getSelector());
+
+		String[] keys = r.getKeys();
+		out.writeInt(keys.length);
+		for (String key : keys)
+			writeString(key);
+
+		String[] values = r.getValues();
+		out.writeInt(values.length);
+		for (String value : values)
+			writeString(value);
+
+		out.writeInt(r.styles.length);
+		for (RenderStyle style : r.styles)
+			out.writeInt(mStyleIds.get(style).intValue());
+
+		out.writeInt(r.subRules.length);
+		for (Rule subRule : r.subRules)
+			writeRule(subRule);
+	}
+}
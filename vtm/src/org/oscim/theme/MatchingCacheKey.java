@@ -20,14 +20,23 @@ import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 
 class MatchingCacheKey {
+	/** reuse arrays for tag sets up to this size */
+	private static final int MAX_BUFFERED_TAGS = 16;
+
 	int mHash;
 	Tag[] mTags;
 
+	/** temporary Tag arrays by length, only used for lookup keys */
+	private Tag[][] mTagBuffers;
+
 	MatchingCacheKey() {
+		mTagBuffers = new Tag[MAX_BUFFERED_TAGS][];
 	}
 
+	/** create a persistent copy of a lookup key */
 	MatchingCacheKey(MatchingCacheKey key) {
-		mTags = key.mTags;
+		mTags = new Tag[key.mTags.length];
+		System.arraycopy(key.mTags, 0, mTags, 0, mTags.length);
 		mHash = key.mHash;
 	}
 
@@ -49,10 +58,18 @@ class MatchingCacheKey {
 				return true;
 		}
 
-		/* Clone tags as they belong to TileDataSource.
-		 * Also needed for comparison if previous tags
-		 * were equal. */
-		mTags = new Tag[numTags];
+		/* Copy tags as they belong to TileDataSource. The array is
+		 * reused for the next lookup and must be copied when this
+		 * key is added to the cache. */
+		Tag[] buf = null;
+		if (numTags < MAX_BUFFERED_TAGS) {
+			buf = mTagBuffers[numTags];
+			if (buf == null)
+				buf = mTagBuffers[numTags] = new Tag[numTags];
+		} else {
+			buf = new Tag[numTags];
+		}
+		mTags = buf;
 
 		int result = 7;
 		for (int i = 0; i < numTags; i++) {
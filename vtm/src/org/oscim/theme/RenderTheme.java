@@ -16,15 +16,19 @@
  */
 package org.oscim.theme;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 import org.oscim.theme.rule.Rule;
 import org.oscim.theme.rule.Rule.Element;
 import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.rule.RuleIndex;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.LRUCache;
 import org.slf4j.Logger;
@@ -40,8 +44,10 @@ public class RenderTheme implements IRenderTheme {
 
 	private final int mLevels;
 	private final Rule[] mRules;
+	/** index of rules by tag keys, null for short lists */
+	private final RuleIndex mRuleIndex;
 
-	class RenderStyleCache {
+	static class RenderStyleCache {
 		final int matchType;
 		final LRUCache<MatchingCacheKey, RenderStyleItem> cache;
 		final MatchingCacheKey cacheKey;
@@ -63,14 +69,31 @@ public class RenderTheme implements IRenderTheme {
 		}
 	}
 
-	class RenderStyleItem {
+	static class RenderStyleItem {
 		RenderStyleItem next;
 		int zoom;
 		RenderStyle[] list;
 		MatchingCacheKey key;
 	}
 
-	private final RenderStyleCache[] mStyleCache;
+	/**
+	 * Match caches of each thread that calls matchElement, i.e. usually one
+	 * per TileLoader. This way no locking is required.
+	 */
+	private final ThreadLocal<RenderStyleCache[]> mStyleCache =
+	        new ThreadLocal<RenderStyleCache[]>() {
+		        @Override
+		        protected RenderStyleCache[] initialValue() {
+			        return createStyleCache();
+		        }
+	        };
+
+	/**
+	 * All caches created by mStyleCache, to clear them on destroy. Weakly
+	 * referenced so that the caches of exited threads can be collected.
+	 */
+	private final ArrayList<WeakReference<RenderStyleCache[]>> mStyleCaches =
+	        new ArrayList<WeakReference<RenderStyleCache[]>>();
 
 	public RenderTheme(int mapBackground, float baseTextSize, Rule[] rules, int levels) {
 		if (rules == null)
@@ -80,23 +103,54 @@ public class RenderTheme implements IRenderTheme {
 		mBaseTextSize = baseTextSize;
 		mLevels = levels;
 		mRules = rules;
+		mRuleIndex = rules.length >= RuleIndex.MIN_RULES ? new RuleIndex(rules) : null;
+	}
 
-		mStyleCache = new RenderStyleCache[3];
-		mStyleCache[0] = new RenderStyleCache(Element.NODE);
-		mStyleCache[1] = new RenderStyleCache(Element.LINE);
-		mStyleCache[2] = new RenderStyleCache(Element.POLY);
+	private RenderStyleCache[] createStyleCache() {
+		RenderStyleCache[] caches = new RenderStyleCache[3];
+		caches[0] = new RenderStyleCache(Element.NODE);
+		caches[1] = new RenderStyleCache(Element.LINE);
+		caches[2] = new RenderStyleCache(Element.POLY);
+
+		synchronized (mStyleCaches) {
+			/* drop references to caches of exited threads */
+			for (Iterator<WeakReference<RenderStyleCache[]>> it =
+			        mStyleCaches.iterator(); it.hasNext();) {
+				if (it.next().get() == null)
+					it.remove();
+			}
+			mStyleCaches.add(new WeakReference<RenderStyleCache[]>(caches));
+		}
+		return caches;
 	}
 
 	@Override
 	public void destroy() {
 
-		for (int i = 0; i < 3; i++)
-			mStyleCache[i].cache.clear();
+		synchronized (mStyleCaches) {
+			for (WeakReference<RenderStyleCache[]> ref : mStyleCaches) {
+				RenderStyleCache[] caches = ref.get();
+				if (caches == null)
+					continue;
+				for (int i = 0; i < 3; i++)
+					caches[i].cache.clear();
+			}
+
+			mStyleCaches.clear();
+		}
 
 		for (Rule rule : mRules)
 			rule.dispose();
 	}
 
+	float getBaseTextSize() {
+		return mBaseTextSize;
+	}
+
+	Rule[] getRules() {
+		return mRules;
+	}
+
 	@Override
 	public int getLevels() {
 		return mLevels;
@@ -126,129 +180,149 @@ public class RenderTheme implements IRenderTheme {
 			return null;
 		}
 
-		RenderStyleCache cache = mStyleCache[type - 1];
+		RenderStyleCache cache = mStyleCache.get()[type - 1];
 
 		/* NOTE: maximum zoom level supported is 32 */
 		int zoomMask = 1 << zoomLevel;
 
-		synchronized (cache) {
-
-			if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
-				/* previous instructions zoom does not match */
-				cache.cacheKey.set(tags, null);
-			} else {
-				/* compare if tags match previous instructions */
-				if (cache.cacheKey.set(tags, cache.prevItem.key)) {
-					ri = cache.prevItem;
-					//log.debug(hitCount + "/" + sameCount.incrementAndGet()
-					//        + "/" + missCount + "same hit " + tags);
-				}
+		if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
+			/* previous instructions zoom does not match */
+			cache.cacheKey.set(tags, null);
+		} else {
+			/* compare if tags match previous instructions */
+			if (cache.cacheKey.set(tags, cache.prevItem.key)) {
+				ri = cache.prevItem;
+				//log.debug(hitCount + "/" + sameCount.incrementAndGet()
+				//        + "/" + missCount + "same hit " + tags);
 			}
+		}
 
-			if (ri == null) {
-				/* get instruction for current cacheKey */
-				ris = cache.getRenderInstructions();
+		if (ri == null) {
+			/* get instruction for current cacheKey */
+			ris = cache.getRenderInstructions();
 
-				for (ri = ris; ri != null; ri = ri.next) {
-					if ((ri.zoom & zoomMask) != 0) {
-						/* cache hit */
+			for (ri = ris; ri != null; ri = ri.next) {
+				if ((ri.zoom & zoomMask) != 0) {
+					/* cache hit */
 
-						//log.debug(hitCount.incrementAndGet()
-						//       + "/" + sameCount + "/" + missCount
-						//       + " cache hit " + tags);
-						break;
-					}
+					//log.debug(hitCount.incrementAndGet()
+					//       + "/" + sameCount + "/" + missCount
+					//       + " cache hit " + tags);
+					break;
 				}
 			}
+		}
 
-			if (ri == null) {
-				/* cache miss */
-				//missCount.incrementAndGet();
-
-				List<RenderStyle> matches = cache.instructionList;
-				matches.clear();
-
-				for (Rule rule : mRules)
-					rule.matchElement(cache.matchType, cache.cacheKey.mTags, zoomMask, matches);
-
-				int size = matches.size();
-				if (size > 1) {
-					for (int i = 0; i < size - 1; i++) {
-						RenderStyle r = matches.get(i);
-						for (int j = i + 1; j < size; j++) {
-							if (matches.get(j) == r) {
-								log.debug("fix duplicate instruction! "
-								        + Arrays.deepToString(cache.cacheKey.mTags)
-								        + " zoom:" + zoomLevel + " "
-								        + r.getClass().getName());
-								matches.remove(j--);
-								size--;
-							}
+		if (ri == null) {
+			/* cache miss */
+			//missCount.incrementAndGet();
+
+			List<RenderStyle> matches = cache.instructionList;
+			matches.clear();
+
+			matchRules(cache.matchType, cache.cacheKey.mTags, zoomMask, matches);
+
+			int size = matches.size();
+			if (size > 1) {
+				for (int i = 0; i < size - 1; i++) {
+					RenderStyle r = matches.get(i);
+					for (int j = i + 1; j < size; j++) {
+						if (matches.get(j) == r) {
+							log.debug("fix duplicate instruction! "
+							        + Arrays.deepToString(cache.cacheKey.mTags)
+							        + " zoom:" + zoomLevel + " "
+							        + r.getClass().getName());
+							matches.remove(j--);
+							size--;
 						}
 					}
 				}
-				/* check if same instructions are used in another level */
-				for (ri = ris; ri != null; ri = ri.next) {
-					if (size == 0) {
-						if (ri.list != null)
-							continue;
+			}
+			/* check if same instructions are used in another level */
+			for (ri = ris; ri != null; ri = ri.next) {
+				if (size == 0) {
+					if (ri.list != null)
+						continue;
 
-						/* both matchinglists are empty */
-						break;
-					}
+					/* both matchinglists are empty */
+					break;
+				}
 
-					if (ri.list == null)
-						continue;
+				if (ri.list == null)
+					continue;
 
-					if (ri.list.length != size)
-						continue;
+				if (ri.list.length != size)
+					continue;
 
-					int i = 0;
-					for (RenderStyle r : ri.list) {
-						if (r != matches.get(i))
-							break;
-						i++;
-					}
-					if (i == size)
-						/* both matching lists contain the same items */
+				int i = 0;
+				for (RenderStyle r : ri.list) {
+					if (r != matches.get(i))
 						break;
+					i++;
 				}
+				if (i == size)
+					/* both matching lists contain the same items */
+					break;
+			}
 
-				if (ri != null) {
-					/* we found a same matchting list on another zoomlevel add
-					 * this zoom level to the existing RenderInstructionItem. */
-					ri.zoom |= zoomMask;
+			if (ri != null) {
+				/* we found a same matchting list on another zoomlevel add
+				 * this zoom level to the existing RenderInstructionItem. */
+				ri.zoom |= zoomMask;
 
-					//log.debug(zoomLevel + " same instructions " + size + " "
-					//				+ Arrays.deepToString(tags));
-				} else {
-					//log.debug(zoomLevel + " new instructions " + size + " "
-					//				+ Arrays.deepToString(tags));
+				//log.debug(zoomLevel + " same instructions " + size + " "
+				//				+ Arrays.deepToString(tags));
+			} else {
+				//log.debug(zoomLevel + " new instructions " + size + " "
+				//				+ Arrays.deepToString(tags));
 
-					ri = new RenderStyleItem();
-					ri.zoom = zoomMask;
+				ri = new RenderStyleItem();
+				ri.zoom = zoomMask;
 
-					if (size > 0) {
-						ri.list = new RenderStyle[size];
-						matches.toArray(ri.list);
-					}
+				if (size > 0) {
+					ri.list = new RenderStyle[size];
+					matches.toArray(ri.list);
+				}
 
-					/* attach this list to the one found for MatchingKey */
-					if (ris != null) {
-						ri.next = ris.next;
-						ri.key = ris.key;
-						ris.next = ri;
-					} else {
-						ri.key = new MatchingCacheKey(cache.cacheKey);
-						cache.cache.put(ri.key, ri);
-					}
+				/* attach this list to the one found for MatchingKey */
+				if (ris != null) {
+					ri.next = ris.next;
+					ri.key = ris.key;
+					ris.next = ri;
+				} else {
+					ri.key = new MatchingCacheKey(cache.cacheKey);
+					cache.cache.put(ri.key, ri);
 				}
 			}
-			cache.prevItem = ri;
 		}
+		cache.prevItem = ri;
 		return ri.list;
 	}
 
+	/**
+	 * Match tags against the rules which can possibly match.
+	 * 
+	 * @param type
+	 *            one of Element NODE, LINE or POLY
+	 * @param zoomMask
+	 *            zoom-level bitmask
+	 */
+	void matchRules(int type, Tag[] tags, int zoomMask, List<RenderStyle> matches) {
+		if (mRuleIndex == null) {
+			for (Rule rule : mRules)
+				rule.matchElement(type, tags, zoomMask, matches);
+			return;
+		}
+		for (int w = 0, n = mRuleIndex.words(); w < n; w++) {
+			long selected = mRuleIndex.select(type, tags, zoomMask, w);
+			while (selected != 0) {
+				int bit = Long.numberOfTrailingZeros(selected);
+				selected &= ~(1L << bit);
+				mRules[(w << 6) + bit].matchElement(type, tags, zoomMask, matches);
+			}
+		}
+	}
+
 	@Override
 	public void scaleTextSize(float scaleFactor) {
 		for (Rule rule : mRules)
@@ -17,7 +17,11 @@
 
 package org.oscim.theme;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 
 import org.oscim.backend.CanvasAdapter;
@@ -55,12 +59,81 @@ public class ThemeLoader {
 	public static IRenderTheme load(InputStream inputStream) throws ThemeException {
 
 		try {
-			IRenderTheme t = XmlThemeBuilder.read(inputStream);
-			if (t != null)
-				t.scaleTextSize(CanvasAdapter.textScale + (CanvasAdapter.dpi / 240 - 1) * 0.5f);
-			return t;
+			return init(XmlThemeBuilder.read(inputStream));
 		} finally {
 			IOUtils.closeQuietly(inputStream);
 		}
 	}
+
+	/**
+	 * Load theme from 'binaryFile' when it was compiled from the current XML
+	 * of 'theme'. Otherwise parse the XML and write 'binaryFile' for the
+	 * next time.
+	 * 
+	 * @see BinaryThemeWriter#compile(ThemeFile, File)
+	 */
+	public static IRenderTheme load(ThemeFile theme, File binaryFile) throws ThemeException {
+		byte[] xml = readTheme(theme);
+		if (xml == null)
+			return null;
+
+		long hash = BinaryThemeBuilder.hash(xml);
+
+		if (binaryFile.exists()) {
+			try {
+				IRenderTheme t = BinaryThemeBuilder.read(binaryFile, hash);
+				if (t != null)
+					return init(t);
+
+				log.debug("{} outdated", binaryFile);
+			} catch (IOException e) {
+				log.debug("{} {}", binaryFile, e.getMessage());
+			} catch (ThemeException e) {
+				log.debug("{} {}", binaryFile, e.getMessage());
+			}
+		}
+
+		XmlThemeBuilder builder = XmlThemeBuilder.parse(new ByteArrayInputStream(xml));
+		if (builder.mRenderTheme == null)
+			return null;
+
+		try {
+			BinaryThemeWriter.write(builder, hash, binaryFile);
+		} catch (IOException e) {
+			log.debug("could not write {}: {}", binaryFile, e.getMessage());
+		} catch (ThemeException e) {
+			log.debug("could not write {}: {}", binaryFile, e.getMessage());
+		}
+		return init(builder.mRenderTheme);
+	}
+
+	private static IRenderTheme init(IRenderTheme t) {
+		if (t != null)
+			t.scaleTextSize(CanvasAdapter.textScale + (CanvasAdapter.dpi / 240 - 1) * 0.5f);
+		return t;
+	}
+
+	/**
+	 * @return the XML data of 'theme' or null when it cannot be read.
+	 */
+	static byte[] readTheme(ThemeFile theme) {
+		InputStream is = null;
+		try {
+			is = theme.getRenderThemeAsStream();
+			if (is == null)
+				return null;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = is.read(buf)) >= 0)
+				out.write(buf, 0, n);
+			return out.toByteArray();
+		} catch (IOException e) {
+			log.error(e.getMessage());
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
 }
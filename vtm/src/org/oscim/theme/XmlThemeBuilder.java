@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Stack;
 
 import org.oscim.backend.CanvasAdapter;
@@ -94,6 +95,14 @@ public class XmlThemeBuilder extends DefaultHandler {
 	public static IRenderTheme read(InputStream inputStream)
 	        throws ThemeException {
 
+		return parse(inputStream).mRenderTheme;
+	}
+
+	/**
+	 * Parse the theme and keep the asset sources, to write it with
+	 * {@link BinaryThemeWriter}.
+	 */
+	static XmlThemeBuilder parse(InputStream inputStream) throws ThemeException {
 		XmlThemeBuilder renderThemeHandler = new XmlThemeBuilder();
 
 		try {
@@ -102,7 +111,19 @@ public class XmlThemeBuilder extends DefaultHandler {
 			throw new ThemeException(e.getMessage());
 		}
 
-		return renderThemeHandler.mRenderTheme;
+		return renderThemeHandler;
+	}
+
+	/** Asset path of an atlas image and the names of its regions. */
+	static class AtlasSource {
+		final String img;
+		final TextureAtlas atlas;
+		final ArrayList<String> regions = new ArrayList<String>();
+
+		AtlasSource(String img, TextureAtlas atlas) {
+			this.img = img;
+			this.atlas = atlas;
+		}
 	}
 
 	/**
@@ -140,7 +161,12 @@ public class XmlThemeBuilder extends DefaultHandler {
 	private int mMapBackground = 0xffffffff;
 	private float mBaseTextSize = 1;
 
-	private RenderTheme mRenderTheme;
+	RenderTheme mRenderTheme;
+
+	/** sources of the theme assets */
+	final ArrayList<AtlasSource> mAtlasSources = new ArrayList<AtlasSource>();
+	final IdentityHashMap<TextureItem, String> mTextureSources =
+	        new IdentityHashMap<TextureItem, String>();
 
 	@Override
 	public void endDocument() {
@@ -541,8 +567,10 @@ public class XmlThemeBuilder extends DefaultHandler {
 		if (src != null) {
 			try {
 				Bitmap bitmap = CanvasAdapter.g.loadBitmapAsset(src);
-				if (bitmap != null)
+				if (bitmap != null) {
 					b.texture = new TextureItem(bitmap, true);
+					mTextureSources.put(b.texture, src);
+				}
 			} catch (Exception e) {
 				log.debug(e.getMessage());
 			}
@@ -577,6 +605,7 @@ public class XmlThemeBuilder extends DefaultHandler {
 
 		Bitmap bitmap = CanvasAdapter.g.loadBitmapAsset(IMG_PATH + img);
 		mTextureAtlas = new TextureAtlas(bitmap);
+		mAtlasSources.add(new AtlasSource(IMG_PATH + img, mTextureAtlas));
 	}
 
 	private void createTextureRegion(String elementName, Attributes attributes) {
@@ -605,6 +634,7 @@ public class XmlThemeBuilder extends DefaultHandler {
 		validateExists("pos", r, elementName);
 
 		mTextureAtlas.addTextureRegion(regionName.intern(), r);
+		mAtlasSources.get(mAtlasSources.size() - 1).regions.add(regionName);
 	}
 
 	private void checkElement(String elementName, Element element) throws SAXException {
@@ -45,6 +45,7 @@ public class Rule {
 
 	public final static RenderStyle[] EMPTY_STYLE = new RenderStyle[0];
 	public final static Rule[] EMPTY_RULES = new Rule[0];
+	final static String[] EMPTY_KV = {};
 
 	public final Rule[] subRules;
 	public final RenderStyle[] styles;
@@ -54,6 +55,9 @@ public class Rule {
 	public final boolean selectFirstMatch;
 	public final boolean selectWhenMatched;
 
+	/** index of subRules by tag keys, null for short lists */
+	private final RuleIndex mSubRuleIndex;
+
 	Rule(int element, int zoom, int selector, Rule[] subRules, RenderStyle[] styles) {
 		this.element = element;
 		this.zoom = zoom;
@@ -63,41 +67,86 @@ public class Rule {
 
 		selectFirstMatch = (selector & Selector.FIRST) != 0;
 		selectWhenMatched = (selector & Selector.WHEN_MATCHED) != 0;
+
+		if (this.subRules.length >= RuleIndex.MIN_RULES)
+			mSubRuleIndex = new RuleIndex(this.subRules);
+		else
+			mSubRuleIndex = null;
 	}
 
 	public boolean matchesTags(Tag[] tags) {
 		return true;
 	}
 
+	/**
+	 * @return the type, keys and values this rule was created from, e.g.
+	 *         to write it with a {@link RuleBuilder} again.
+	 */
+	public RuleType getType() {
+		return RuleType.POSITIVE;
+	}
+
+	public String[] getKeys() {
+		return EMPTY_KV;
+	}
+
+	public String[] getValues() {
+		return EMPTY_KV;
+	}
+
+	public int getSelector() {
+		return (selectFirstMatch ? Selector.FIRST : 0)
+		        | (selectWhenMatched ? Selector.WHEN_MATCHED : 0);
+	}
+
 	public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
 		if (((element & type) == 0) || ((zoom & zoomLevel) == 0) || !matchesTags(tags))
 			return false;
 
 		boolean matched = false;
-		if (subRules != EMPTY_RULES) {
-			if (selectFirstMatch) {
-				/* only add first matching rule and when-matched rules iff a
-				 * previous rule matched */
-				for (Rule r : subRules) {
-					/* continue if matched xor selectWhenMatch */
-					if (matched ^ r.selectWhenMatched)
-						continue;
-
-					if (r.matchElement(type, tags, zoomLevel, result))
-						matched = true;
-				}
-			} else {
-				/* add all rules and when-matched rules iff a previous rule
-				 * matched */
-				for (Rule r : subRules) {
-					if (r.selectWhenMatched && !matched)
-						continue;
-
-					if (r.matchElement(type, tags, zoomLevel, result))
+
+		if (mSubRuleIndex != null) {
+			/* only evaluate subRules which can match. the others
+			 * would not change 'matched', so selection is the same. */
+			for (int w = 0, n = mSubRuleIndex.words(); w < n; w++) {
+				long selected = mSubRuleIndex.select(type, tags, zoomLevel, w);
+				while (selected != 0) {
+					int bit = Long.numberOfTrailingZeros(selected);
+					selected &= ~(1L << bit);
+
+					if (matchSubRule(subRules[(w << 6) + bit], matched,
+					                 type, tags, zoomLevel, result))
 						matched = true;
 				}
 			}
+		} else {
+			for (Rule r : subRules) {
+				if (matchSubRule(r, matched, type, tags, zoomLevel, result))
+					matched = true;
+			}
+		}
+		return matchStyles(matched, result);
+	}
+
+	private boolean matchSubRule(Rule r, boolean matched, int type, Tag[] tags,
+	        int zoomLevel, List<RenderStyle> result) {
+		if (selectFirstMatch) {
+			/* only add first matching rule and when-matched rules iff a
+			 * previous rule matched */
+
+			/* continue if matched xor selectWhenMatch */
+			if (matched ^ r.selectWhenMatched)
+				return false;
+		} else {
+			/* add all rules and when-matched rules iff a previous rule
+			 * matched */
+			if (r.selectWhenMatched && !matched)
+				return false;
 		}
+		return r.matchElement(type, tags, zoomLevel, result);
+	}
+
+	private boolean matchStyles(boolean matched, List<RenderStyle> result) {
 
 		if (styles == EMPTY_STYLE)
 			/* matched if styles where added */
@@ -180,6 +229,11 @@ public class Rule {
 			mKey = key;
 		}
 
+		@Override
+		public String[] getKeys() {
+			return new String[] { mKey };
+		}
+
 		@Override
 		public boolean matchesTags(Tag[] tags) {
 			for (Tag tag : tags)
@@ -199,6 +253,11 @@ public class Rule {
 			mValue = value;
 		}
 
+		@Override
+		public String[] getValues() {
+			return new String[] { mValue };
+		}
+
 		@Override
 		public boolean matchesTags(Tag[] tags) {
 			for (Tag tag : tags)
@@ -221,6 +280,16 @@ public class Rule {
 			mValue = value;
 		}
 
+		@Override
+		public String[] getKeys() {
+			return new String[] { mKey };
+		}
+
+		@Override
+		public String[] getValues() {
+			return new String[] { mValue };
+		}
+
 		@Override
 		public boolean matchesTags(Tag[] tags) {
 			for (Tag tag : tags)
@@ -251,6 +320,16 @@ public class Rule {
 				mValues = values;
 		}
 
+		@Override
+		public String[] getKeys() {
+			return mKeys == null ? EMPTY_KV : mKeys;
+		}
+
+		@Override
+		public String[] getValues() {
+			return mValues == null ? EMPTY_KV : mValues;
+		}
+
 		@Override
 		public boolean matchesTags(Tag[] tags) {
 			if (mKeys == null) {
@@ -305,6 +384,21 @@ public class Rule {
 			this.exclusive = type == RuleType.EXCLUDE;
 		}
 
+		@Override
+		public RuleType getType() {
+			return exclusive ? RuleType.EXCLUDE : RuleType.NEGATIVE;
+		}
+
+		@Override
+		public String[] getKeys() {
+			return keys;
+		}
+
+		@Override
+		public String[] getValues() {
+			return values;
+		}
+
 		@Override
 		public boolean matchesTags(Tag[] tags) {
 			if (!containsKeys(tags))
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme.rule;
+
+import java.util.HashMap;
+
+import org.oscim.core.Tag;
+import org.oscim.theme.rule.RuleBuilder.RuleType;
+
+/**
+ * Index of a list of rules by the tag keys they require.
+ *
+ * Rules that can only match when one of their keys is present are
+ * selected through the keys of the tags to match. All other rules are
+ * always selected. Rules that do not match the element type are dropped.
+ * The selected rules are returned as bitset over the original list, one
+ * 64 rule word at a time, so that they can be evaluated in their original
+ * order without allocation.
+ */
+public class RuleIndex {
+	/**
+	 * Minimum number of rules to build an index for. For short lists the
+	 * key lookup costs more than testing the rules.
+	 */
+	public static final int MIN_RULES = 8;
+
+	private static final int[] TYPES = {
+	        Rule.Element.NODE,
+	        Rule.Element.LINE,
+	        Rule.Element.POLY };
+
+	private final int mWords;
+
+	/** zoom-levels for which any rule can match, by element type */
+	private final int[] mZoom = new int[TYPES.length];
+
+	/** rules without keys, by element type */
+	private final long[][] mUnindexed = new long[TYPES.length][];
+
+	/** rules requiring a key, by element type */
+	private final HashMap<String, long[]>[] mKeyRules;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public RuleIndex(Rule[] rules) {
+		mWords = (rules.length + 63) >> 6;
+		mKeyRules = new HashMap[TYPES.length];
+
+		for (int t = 0; t < TYPES.length; t++) {
+			int type = TYPES[t];
+			mUnindexed[t] = new long[mWords];
+			mKeyRules[t] = new HashMap<String, long[]>();
+
+			for (int i = 0; i < rules.length; i++) {
+				Rule r = rules[i];
+				if ((r.element & type) == 0)
+					continue;
+
+				mZoom[t] |= r.zoom;
+
+				/* positive rules with keys only match when one of the
+				 * keys is present, negative rules when it is absent. */
+				String[] keys = r.getKeys();
+				if (r.getType() != RuleType.POSITIVE || keys.length == 0) {
+					mUnindexed[t][i >> 6] |= 1L << (i & 63);
+					continue;
+				}
+				for (String key : keys) {
+					long[] bits = mKeyRules[t].get(key);
+					if (bits == null) {
+						bits = new long[mWords];
+						mKeyRules[t].put(key, bits);
+					}
+					bits[i >> 6] |= 1L << (i & 63);
+				}
+			}
+		}
+	}
+
+	private static int typeIndex(int type) {
+		switch (type) {
+			case Rule.Element.NODE:
+				return 0;
+			case Rule.Element.LINE:
+				return 1;
+			case Rule.Element.POLY:
+				return 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of bitset words for select().
+	 */
+	public int words() {
+		return mWords;
+	}
+
+	/**
+	 * Select the rules which can possibly match.
+	 *
+	 * @param type
+	 *            one of Element NODE, LINE or POLY
+	 * @param tags
+	 *            tags to match
+	 * @param zoomLevel
+	 *            zoom-level bitmask
+	 * @param word
+	 *            bitset word, i.e. rules [word * 64, word * 64 + 63]
+	 * @return bitset of the rules to evaluate.
+	 */
+	public long select(int type, Tag[] tags, int zoomLevel, int word) {
+		int t = typeIndex(type);
+		if (t < 0 || (mZoom[t] & zoomLevel) == 0)
+			return 0;
+
+		long result = mUnindexed[t][word];
+
+		HashMap<String, long[]> keyRules = mKeyRules[t];
+		if (keyRules.isEmpty())
+			return result;
+
+		for (Tag tag : tags) {
+			long[] bits = keyRules.get(tag.key);
+			if (bits != null)
+				result |= bits[word];
+		}
+		return result;
+	}
+}
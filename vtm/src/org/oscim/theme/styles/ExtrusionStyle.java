@@ -23,6 +23,10 @@ public class ExtrusionStyle extends RenderStyle {
 
 	public ExtrusionStyle(int level, int colorSides, int colorTop, int colorLine, int defaultHeight) {
 
+		this.colorSide = colorSides;
+		this.colorTop = colorTop;
+		this.colorLine = colorLine;
+
 		this.colors = new float[16];
 		fillColors(colorSides, colorTop, colorLine, colors);
 
@@ -66,7 +70,10 @@ public class ExtrusionStyle extends RenderStyle {
 		return (ExtrusionStyle) mCurrent;
 	}
 
-	private final int level;
+	public final int level;
+	public final int colorSide;
+	public final int colorTop;
+	public final int colorLine;
 	public final float[] colors;
 	public final int defaultHeight;
 }
@@ -148,6 +148,11 @@ public final class TextStyle extends RenderStyle {
 		this.dy = tb.dy;
 		this.priority = tb.priority;
 		this.texture = tb.texture;
+		this.fontFamily = tb.fontFamily;
+		this.fontStyle = tb.fontStyle;
+		this.color = tb.color;
+		this.strokeColor = tb.stroke;
+		this.strokeWidth = tb.strokeWidth;
 
 		paint = CanvasAdapter.g.getPaint();
 		paint.setTextAlign(Align.CENTER);
@@ -186,6 +191,12 @@ public final class TextStyle extends RenderStyle {
 
 	public final TextureRegion texture;
 
+	public final FontFamily fontFamily;
+	public final FontStyle fontStyle;
+	public final int color;
+	public final int strokeColor;
+	public final float strokeWidth;
+
 	@Override
 	public void renderNode(Callback cb) {
 		cb.renderText(this);
@@ -18,6 +18,7 @@ package org.oscim.tiling;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.Tile;
 
@@ -56,6 +57,17 @@ public interface ITileCache {
 		int getBytes();
 	}
 
+	/**
+	 * TileReader of a cache which reads the tile data into memory.
+	 */
+	public interface BufferedTileReader extends TileReader {
+		/**
+		 * @return the tile data from position to limit. The buffer is
+		 *         valid until the InputStream of the reader is closed.
+		 */
+		ByteBuffer getBuffer();
+	}
+
 	public interface TileWriter {
 		Tile getTile();
 
@@ -63,4 +75,15 @@ public interface ITileCache {
 
 		void complete(boolean success);
 	}
+
+	/**
+	 * ITileCache which can store several tiles in one transaction. All
+	 * tiles completed by the calling thread between begin and end are
+	 * committed together.
+	 */
+	public interface Transactional {
+		void beginTransaction();
+
+		void endTransaction();
+	}
 }
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent ITileCache for the JVM.
+ *
+ * Tiles are appended to segment files in the cache directory, the index
+ * of all tiles is kept in memory and rebuilt from the segment headers on
+ * startup. Each record has a checksum which is verified on read, a record
+ * that was not completely written before a crash is truncated on startup.
+ *
+ * The size of the cache directory is limited by {@link #setCacheSize(long)}.
+ * When full, the least recently used tiles are dropped from the index and
+ * the segments with the least remaining tiles are rewritten or deleted.
+ *
+ * Tiles can be read from several threads at the same time. The buffers
+ * for reading are reused once the InputStream of a TileReader is closed.
+ */
+public class DiskTileCache implements ITileCache {
+	static final Logger log = LoggerFactory.getLogger(DiskTileCache.class);
+
+	/** default size limit of the cache directory */
+	public static final long DEFAULT_SIZE = 64 << 20;
+
+	/** record header: magic, zoom, x, y, length, crc */
+	static final int HEADER_SIZE = 24;
+
+	private static final int MAGIC = 0x56544331;
+	private static final String SUFFIX = ".seg";
+
+	/** number of segments for the cache size */
+	private static final int SEGMENTS = 8;
+	private static final long MIN_SEGMENT_SIZE = 256 << 10;
+
+	/** fraction of the cache size to keep when the cache is full */
+	private static final float FILL_RATIO = 0.75f;
+
+	/** maximum number of read buffers kept for reuse */
+	private static final int READ_BUFFERS = 8;
+
+	static final class Segment {
+		final int id;
+		final File file;
+
+		RandomAccessFile raf;
+		FileChannel channel;
+
+		/** bytes written */
+		long size;
+
+		/** bytes of records in index */
+		long live;
+
+		boolean closed;
+
+		Segment(File dir, int id) throws IOException {
+			this.id = id;
+			this.file = new File(dir, id + SUFFIX);
+			open();
+		}
+
+		private void open() throws IOException {
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+		}
+
+		/** the channel is closed when a reading thread is interrupted */
+		synchronized FileChannel channel() throws IOException {
+			if (closed)
+				throw new ClosedChannelException();
+
+			if (!channel.isOpen())
+				open();
+
+			return channel;
+		}
+
+		synchronized void delete() {
+			close();
+			if (!file.delete())
+				log.debug("could not delete {}", file);
+		}
+
+		synchronized void close() {
+			closed = true;
+			try {
+				raf.close();
+			} catch (IOException e) {
+				log.debug(e.getMessage());
+			}
+		}
+	}
+
+	static final class Entry {
+		Segment segment;
+		long offset;
+		final int length;
+
+		Entry(Segment segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		int recordSize() {
+			return HEADER_SIZE + length;
+		}
+	}
+
+	class CacheTileReader implements BufferedTileReader {
+		final InputStream mInputStream;
+		final ByteBuffer mBuffer;
+		final Tile mTile;
+		final int mSize;
+
+		/**
+		 * @param record read from segment, the array is returned to
+		 *            the read buffers when the InputStream is closed.
+		 */
+		public CacheTileReader(Tile tile, final ByteBuffer record, int size) {
+			mTile = tile;
+			mSize = size;
+
+			record.position(HEADER_SIZE);
+			record.limit(HEADER_SIZE + size);
+			mBuffer = record;
+
+			mInputStream = new ByteArrayInputStream(record.array(), HEADER_SIZE, size) {
+				private boolean closed;
+
+				@Override
+				public synchronized void close() {
+					if (closed)
+						return;
+					closed = true;
+					releaseReadBuffer(record);
+				}
+			};
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return mBuffer;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return mInputStream;
+		}
+
+		@Override
+		public int getBytes() {
+			return mSize;
+		}
+	}
+
+	class CacheTileWriter implements TileWriter {
+		final ByteArrayOutputStream mOutputStream;
+		final Tile mTile;
+
+		CacheTileWriter(Tile tile, ByteArrayOutputStream os) {
+			mTile = tile;
+			mOutputStream = os;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return mOutputStream;
+		}
+
+		@Override
+		public void complete(boolean success) {
+			saveTile(mTile, mOutputStream, success);
+		}
+	}
+
+	private final File mDir;
+
+	/** all tiles in least recently used order */
+	private final LinkedHashMap<Long, Entry> mIndex =
+	        new LinkedHashMap<Long, Entry>(1024, 0.75f, true);
+
+	/** segments by id, the last one is appended to */
+	private final ArrayList<Segment> mSegments = new ArrayList<Segment>();
+
+	private final ArrayList<ByteArrayOutputStream> mCacheBuffers =
+	        new ArrayList<ByteArrayOutputStream>();
+
+	private final ArrayList<ByteBuffer> mReadBuffers = new ArrayList<ByteBuffer>();
+
+	private long mMaxSize;
+	private long mSegmentSize;
+
+	/** size of all segments */
+	private long mDiskSize;
+
+	/** size of all records in index */
+	private long mLiveSize;
+
+	public DiskTileCache(File dir) throws IOException {
+		this(dir, DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param dir
+	 *            the cache directory, created if it does not exist.
+	 * @param size
+	 *            size limit of the cache directory in bytes.
+	 */
+	public DiskTileCache(File dir, long size) throws IOException {
+		mDir = dir;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("cannot create " + dir);
+
+		setSize(size);
+
+		synchronized (this) {
+			for (int id : findSegments(dir))
+				loadSegment(new Segment(dir, id));
+
+			if (mSegments.isEmpty())
+				addSegment();
+
+			trim();
+		}
+	}
+
+	private static int[] findSegments(File dir) {
+		String[] names = dir.list();
+		if (names == null)
+			return new int[0];
+
+		int[] ids = new int[names.length];
+		int cnt = 0;
+		for (String name : names) {
+			if (!name.endsWith(SUFFIX))
+				continue;
+			try {
+				int id = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+				ids[cnt++] = id;
+			} catch (NumberFormatException e) {
+				log.debug("skip {}", name);
+			}
+		}
+		ids = Arrays.copyOf(ids, cnt);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	static long key(Tile tile) {
+		return ((long) tile.zoomLevel << 58) | ((long) tile.tileX << 29) | tile.tileY;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long position)
+	        throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, position + buf.position());
+			if (n < 0)
+				throw new IOException("unexpected end of file");
+		}
+	}
+
+	/** read the record headers of a segment into the index */
+	private void loadSegment(Segment s) throws IOException {
+		FileChannel channel = s.channel();
+		long fileSize = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+		long pos = 0;
+		while (pos + HEADER_SIZE <= fileSize) {
+			header.clear();
+			readFully(channel, header, pos);
+			header.flip();
+
+			if (header.getInt() != MAGIC)
+				break;
+
+			long key = ((long) header.getInt() << 58)
+			        | ((long) header.getInt() << 29)
+			        | header.getInt();
+
+			int length = header.getInt();
+			if (length < 0 || pos + HEADER_SIZE + length > fileSize)
+				break;
+
+			putEntry(key, new Entry(s, pos, length));
+			pos += HEADER_SIZE + length;
+		}
+
+		if (pos < fileSize) {
+			/* incomplete write */
+			log.debug("truncate {} at {} of {}", s.file, pos, fileSize);
+			channel.truncate(pos);
+		}
+		s.size = pos;
+		mDiskSize += pos;
+		mSegments.add(s);
+	}
+
+	private Segment addSegment() throws IOException {
+		int id = mSegments.isEmpty() ? 0 : mSegments.get(mSegments.size() - 1).id + 1;
+		Segment s = new Segment(mDir, id);
+		/* left over from a crash after deleting its records */
+		s.channel().truncate(0);
+		mSegments.add(s);
+		return s;
+	}
+
+	private void putEntry(long key, Entry e) {
+		Entry old = mIndex.put(key, e);
+		if (old != null)
+			removeEntry(old);
+
+		e.segment.live += e.recordSize();
+		mLiveSize += e.recordSize();
+	}
+
+	private void removeEntry(Entry e) {
+		e.segment.live -= e.recordSize();
+		mLiveSize -= e.recordSize();
+	}
+
+	@Override
+	public TileWriter writeTile(Tile tile) {
+		ByteArrayOutputStream os;
+
+		synchronized (mCacheBuffers) {
+			if (mCacheBuffers.size() == 0)
+				os = new ByteArrayOutputStream(32 * 1024);
+			else
+				os = mCacheBuffers.remove(mCacheBuffers.size() - 1);
+		}
+		return new CacheTileWriter(tile, os);
+	}
+
+	void saveTile(Tile tile, ByteArrayOutputStream data, boolean success) {
+		byte[] bytes = null;
+
+		if (success)
+			bytes = data.toByteArray();
+
+		synchronized (mCacheBuffers) {
+			data.reset();
+			mCacheBuffers.add(data);
+		}
+
+		if (!success)
+			return;
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+		buf.putInt(MAGIC);
+		buf.putInt(tile.zoomLevel);
+		buf.putInt(tile.tileX);
+		buf.putInt(tile.tileY);
+		buf.putInt(bytes.length);
+		buf.putInt((int) crc.getValue());
+		buf.put(bytes);
+		buf.flip();
+
+		synchronized (this) {
+			try {
+				Entry e = append(buf);
+				putEntry(key(tile), e);
+				trim();
+			} catch (IOException e) {
+				log.debug("{} write failed: {}", tile, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Append a record to the current segment.
+	 *
+	 * @param record
+	 *            header and data
+	 * @return the Entry for the record, not yet in index.
+	 */
+	private Entry append(ByteBuffer record) throws IOException {
+		int size = record.remaining();
+
+		Segment s = mSegments.get(mSegments.size() - 1);
+		if (s.size > 0 && s.size + size > mSegmentSize)
+			s = addSegment();
+
+		FileChannel channel = s.channel();
+		long pos = s.size;
+		while (record.hasRemaining())
+			channel.write(record, pos + record.position());
+
+		s.size += size;
+		mDiskSize += size;
+
+		return new Entry(s, pos, size - HEADER_SIZE);
+	}
+
+	/** Enforce the cache size. Called with lock held. */
+	private void trim() {
+		if (mDiskSize <= mMaxSize)
+			return;
+
+		/* drop least recently used tiles */
+		long keep = (long) (mMaxSize * FILL_RATIO);
+		Iterator<Entry> it = mIndex.values().iterator();
+		while (mLiveSize > keep && it.hasNext()) {
+			removeEntry(it.next());
+			it.remove();
+		}
+
+		/* rewrite segments with the least live records */
+		for (int cnt = mSegments.size(); cnt > 0 && mDiskSize > mMaxSize; cnt--) {
+			Segment min = null;
+			for (int i = 0, n = mSegments.size() - 1; i < n; i++) {
+				Segment s = mSegments.get(i);
+				if (min == null || s.live * min.size < min.live * s.size)
+					min = s;
+			}
+			if (min == null)
+				break;
+
+			compact(min);
+		}
+	}
+
+	/** move the records of 's' to the current segment and delete it */
+	private void compact(Segment s) {
+		if (s.live > 0) {
+			Iterator<Entry> it = mIndex.values().iterator();
+			while (it.hasNext()) {
+				Entry e = it.next();
+				if (e.segment != s)
+					continue;
+
+				/* Entry is updated in place to keep LRU order */
+				try {
+					ByteBuffer buf = ByteBuffer.allocate(e.recordSize());
+					readFully(s.channel(), buf, e.offset);
+					buf.flip();
+
+					Entry moved = append(buf);
+					s.live -= e.recordSize();
+					moved.segment.live += e.recordSize();
+					e.segment = moved.segment;
+					e.offset = moved.offset;
+				} catch (IOException ex) {
+					log.debug("drop tile: {}", ex.getMessage());
+					removeEntry(e);
+					it.remove();
+				}
+			}
+		}
+		mSegments.remove(s);
+		mDiskSize -= s.size;
+		s.delete();
+	}
+
+	@Override
+	public TileReader getTile(Tile tile) {
+		long key = key(tile);
+		Segment s;
+		long offset;
+		int length;
+
+		synchronized (this) {
+			Entry e = mIndex.get(key);
+			if (e == null)
+				return null;
+
+			s = e.segment;
+			offset = e.offset;
+			length = e.length;
+		}
+
+		ByteBuffer buf = obtainReadBuffer(HEADER_SIZE + length);
+		try {
+			readFully(s.channel(), buf, offset);
+		} catch (IOException ex) {
+			/* segment was compacted meanwhile */
+			log.debug("{} read failed: {}", tile, ex.getMessage());
+			releaseReadBuffer(buf);
+			return null;
+		}
+
+		byte[] data = buf.array();
+		CRC32 crc = new CRC32();
+		crc.update(data, HEADER_SIZE, length);
+
+		if (buf.getInt(0) != MAGIC || buf.getInt(HEADER_SIZE - 4) != (int) crc.getValue()) {
+			log.debug("{} checksum error", tile);
+			releaseReadBuffer(buf);
+			synchronized (this) {
+				Entry e = mIndex.get(key);
+				if (e != null && e.segment == s && e.offset == offset) {
+					mIndex.remove(key);
+					removeEntry(e);
+				}
+			}
+			return null;
+		}
+
+		return new CacheTileReader(tile, buf, length);
+	}
+
+	/** @return buffer with position 0 and limit 'size' */
+	private ByteBuffer obtainReadBuffer(int size) {
+		ByteBuffer buf = null;
+		synchronized (mReadBuffers) {
+			if (mReadBuffers.size() > 0)
+				buf = mReadBuffers.remove(mReadBuffers.size() - 1);
+		}
+		if (buf == null || buf.capacity() < size) {
+			/* round up to limit reallocation */
+			buf = ByteBuffer.allocate(Math.max(32 * 1024, Integer.highestOneBit(size - 1) << 1));
+		}
+		buf.clear();
+		buf.limit(size);
+		return buf;
+	}
+
+	void releaseReadBuffer(ByteBuffer buf) {
+		synchronized (mReadBuffers) {
+			if (mReadBuffers.size() < READ_BUFFERS)
+				mReadBuffers.add(buf);
+		}
+	}
+
+	private void setSize(long size) {
+		mMaxSize = size;
+		mSegmentSize = Math.max(MIN_SEGMENT_SIZE, size / SEGMENTS);
+	}
+
+	/**
+	 * @param size
+	 *            size limit of the cache directory in bytes.
+	 */
+	@Override
+	public synchronized void setCacheSize(long size) {
+		setSize(size);
+		trim();
+	}
+
+	/**
+	 * @return the current size of the cache directory in bytes.
+	 */
+	public synchronized long getCacheSize() {
+		return mDiskSize;
+	}
+
+	/**
+	 * @return number of cached tiles.
+	 */
+	public synchronized int getTileCount() {
+		return mIndex.size();
+	}
+
+	/**
+	 * Close all files. The cache cannot be used afterwards.
+	 */
+	public synchronized void dispose() {
+		for (Segment s : mSegments)
+			s.close();
+
+		mSegments.clear();
+		mIndex.clear();
+	}
+}
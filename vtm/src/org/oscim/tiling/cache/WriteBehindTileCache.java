@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ITileCache which writes tiles to another cache on a background thread,
+ * so that loader threads do not wait for e.g. a database insert.
+ *
+ * Completed tiles are queued and written in batches, in one transaction
+ * when the cache implements {@link ITileCache.Transactional}. A tile that
+ * is written again while queued replaces the queued data. When the queue
+ * is full, {@link TileWriter#complete(boolean)} blocks until the writer
+ * caught up. Queued tiles are returned by {@link #getTile(Tile)}.
+ */
+public class WriteBehindTileCache implements ITileCache {
+	static final Logger log = LoggerFactory.getLogger(WriteBehindTileCache.class);
+
+	/** default maximum number of queued tiles */
+	public static final int QUEUE_SIZE = 64;
+
+	/** default maximum number of tiles written in one transaction */
+	public static final int BATCH_SIZE = 16;
+
+	static final class Pending {
+		final Tile tile;
+		final byte[] data;
+
+		Pending(Tile tile, byte[] data) {
+			this.tile = tile;
+			this.data = data;
+		}
+	}
+
+	class CacheTileReader implements BufferedTileReader {
+		final Pending mPending;
+		final InputStream mInputStream;
+
+		CacheTileReader(Pending p) {
+			mPending = p;
+			mInputStream = new ByteArrayInputStream(p.data);
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return ByteBuffer.wrap(mPending.data);
+		}
+
+		@Override
+		public Tile getTile() {
+			return mPending.tile;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return mInputStream;
+		}
+
+		@Override
+		public int getBytes() {
+			return mPending.data.length;
+		}
+	}
+
+	class CacheTileWriter implements TileWriter {
+		final ByteArrayOutputStream mOutputStream;
+		final Tile mTile;
+
+		CacheTileWriter(Tile tile, ByteArrayOutputStream os) {
+			mTile = tile;
+			mOutputStream = os;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return mOutputStream;
+		}
+
+		@Override
+		public void complete(boolean success) {
+			byte[] bytes = null;
+
+			if (success)
+				bytes = mOutputStream.toByteArray();
+
+			synchronized (mCacheBuffers) {
+				mOutputStream.reset();
+				mCacheBuffers.add(mOutputStream);
+			}
+
+			if (success)
+				enqueue(mTile, bytes);
+		}
+	}
+
+	private final ITileCache mCache;
+	private final int mQueueSize;
+	private final int mBatchSize;
+
+	/** queued tiles by key, in order of their first write */
+	private final LinkedHashMap<Long, Pending> mPending =
+	        new LinkedHashMap<Long, Pending>();
+
+	private final ArrayList<ByteArrayOutputStream> mCacheBuffers =
+	        new ArrayList<ByteArrayOutputStream>();
+
+	private Thread mWriter;
+	private boolean mDisposed;
+
+	/** statistics */
+	private int mWritten;
+	private int mBatches;
+	private int mCoalesced;
+
+	public WriteBehindTileCache(ITileCache cache) {
+		this(cache, QUEUE_SIZE, BATCH_SIZE);
+	}
+
+	/**
+	 * @param cache
+	 *            the cache to write to.
+	 * @param queueSize
+	 *            maximum number of queued tiles.
+	 * @param batchSize
+	 *            maximum number of tiles written in one transaction.
+	 */
+	public WriteBehindTileCache(ITileCache cache, int queueSize, int batchSize) {
+		if (queueSize < 1 || batchSize < 1)
+			throw new IllegalArgumentException("size < 1");
+
+		mCache = cache;
+		mQueueSize = queueSize;
+		mBatchSize = batchSize;
+	}
+
+	@Override
+	public TileWriter writeTile(Tile tile) {
+		ByteArrayOutputStream os;
+
+		synchronized (mCacheBuffers) {
+			if (mCacheBuffers.size() == 0)
+				os = new ByteArrayOutputStream(32 * 1024);
+			else
+				os = mCacheBuffers.remove(mCacheBuffers.size() - 1);
+		}
+		return new CacheTileWriter(tile, os);
+	}
+
+	@Override
+	public TileReader getTile(Tile tile) {
+		Pending p;
+		synchronized (this) {
+			p = mPending.get(DiskTileCache.key(tile));
+		}
+		if (p != null)
+			return new CacheTileReader(p);
+
+		return mCache.getTile(tile);
+	}
+
+	@Override
+	public void setCacheSize(long size) {
+		mCache.setCacheSize(size);
+	}
+
+	void enqueue(Tile tile, byte[] data) {
+		Long key = Long.valueOf(DiskTileCache.key(tile));
+		/* the MapTile may be reused for another tile when it is written */
+		Pending p = new Pending(new Tile(tile.tileX, tile.tileY, tile.zoomLevel), data);
+
+		synchronized (this) {
+			/* wait for the writer when the queue is full */
+			while (!mDisposed && mPending.size() >= mQueueSize && !mPending.containsKey(key)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					log.debug("{} not cached: interrupted", tile);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			if (!mDisposed) {
+				if (mPending.put(key, p) != null)
+					mCoalesced++;
+
+				if (mWriter == null)
+					start();
+
+				notifyAll();
+				return;
+			}
+		}
+		/* disposed: write through */
+		write(p);
+	}
+
+	private void start() {
+		mWriter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ArrayList<Pending> batch = new ArrayList<Pending>(mBatchSize);
+				while (nextBatch(batch)) {
+					writeBatch(batch);
+					batch.clear();
+				}
+			}
+		}, "TileCacheWriter");
+		mWriter.setDaemon(true);
+		mWriter.start();
+	}
+
+	/**
+	 * Wait for queued tiles. The tiles stay in the queue until written, so
+	 * that they can still be read meanwhile.
+	 * 
+	 * @return false when disposed and all tiles are written.
+	 */
+	synchronized boolean nextBatch(ArrayList<Pending> batch) {
+		while (mPending.isEmpty()) {
+			if (mDisposed)
+				return false;
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				/* restarted by the next write */
+				mWriter = null;
+				notifyAll();
+				return false;
+			}
+		}
+		Iterator<Pending> it = mPending.values().iterator();
+		while (it.hasNext() && batch.size() < mBatchSize)
+			batch.add(it.next());
+
+		return true;
+	}
+
+	void writeBatch(ArrayList<Pending> batch) {
+		Transactional tx = (mCache instanceof Transactional) ? (Transactional) mCache : null;
+
+		if (tx != null)
+			tx.beginTransaction();
+		try {
+			for (Pending p : batch)
+				write(p);
+		} finally {
+			if (tx != null)
+				tx.endTransaction();
+		}
+
+		synchronized (this) {
+			for (Pending p : batch) {
+				/* keep tiles which were written again meanwhile */
+				Long key = Long.valueOf(DiskTileCache.key(p.tile));
+				if (mPending.get(key) == p)
+					mPending.remove(key);
+			}
+			mWritten += batch.size();
+			mBatches++;
+			notifyAll();
+		}
+	}
+
+	private void write(Pending p) {
+		try {
+			TileWriter w = mCache.writeTile(p.tile);
+			boolean success = false;
+			try {
+				w.getOutputStream().write(p.data);
+				success = true;
+			} finally {
+				w.complete(success);
+			}
+		} catch (IOException e) {
+			log.debug("{} write failed: {}", p.tile, e.getMessage());
+		} catch (RuntimeException e) {
+			/* e.g. SQLiteException, keep the writer running */
+			log.debug("{} write failed: {}", p.tile, e);
+		}
+	}
+
+	/**
+	 * Wait until all queued tiles are written.
+	 */
+	public synchronized void flush() throws InterruptedException {
+		while (!mPending.isEmpty() && mWriter != null)
+			wait();
+	}
+
+	/**
+	 * Write all queued tiles and stop the writer thread. Tiles completed
+	 * afterwards are written directly to the cache.
+	 */
+	public void dispose() {
+		Thread writer;
+		synchronized (this) {
+			mDisposed = true;
+			notifyAll();
+			writer = mWriter;
+		}
+		if (writer == null)
+			return;
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			log.debug("dispose interrupted");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of queued tiles.
+	 */
+	public synchronized int getQueueSize() {
+		return mPending.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "WriteBehindTileCache[written:" + mWritten
+		        + " batches:" + mBatches
+		        + " coalesced:" + mCoalesced
+		        + " queued:" + mPending.size() + "]";
+	}
+}
@@ -38,4 +38,45 @@ public interface HttpEngine {
 		HttpEngine create(UrlTileSource tileSource);
 	}
 
+	/**
+	 * HttpEngine which can send the requests for several tiles on one
+	 * connection before reading the responses (HTTP/1.1 pipelining).
+	 * The responses are read with read() and requestCompleted() in the
+	 * order of the requests.
+	 */
+	public interface Pipelined extends HttpEngine {
+		/**
+		 * Send the request for 'tile' after the pending requests on the
+		 * current connection.
+		 * 
+		 * @return false when the request could not be sent, e.g. when
+		 *         no request is pending, the connection will be closed
+		 *         by the server or too many requests are pending.
+		 */
+		boolean pipelineRequest(Tile tile);
+
+		/**
+		 * @return the number of requests whose response was not read.
+		 */
+		int getPendingRequests();
+
+		/**
+		 * @return the tile of the response to be read next, or null.
+		 */
+		Tile getPendingResponse();
+
+		/**
+		 * @return true if the response for 'tile' was not read.
+		 */
+		boolean isPending(Tile tile);
+
+		/**
+		 * Read and discard the next response, e.g. of a tile which was
+		 * canceled meanwhile.
+		 * 
+		 * @return false if the connection was closed.
+		 */
+		boolean skipResponse();
+	}
+
 }
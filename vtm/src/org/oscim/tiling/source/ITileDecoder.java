@@ -18,6 +18,7 @@ package org.oscim.tiling.source;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSink;
@@ -26,4 +27,17 @@ public interface ITileDecoder {
 
 	boolean decode(Tile tile, ITileDataSink sink, InputStream is)
 	        throws IOException;
+
+	/**
+	 * ITileDecoder which can decode tiles that are already in memory
+	 * without InputStream.
+	 */
+	public interface BufferDecoder extends ITileDecoder {
+		/**
+		 * Decode the remaining bytes of 'buf'. The position of 'buf'
+		 * is not modified.
+		 */
+		boolean decode(Tile tile, ITileDataSink sink, ByteBuffer buf)
+		        throws IOException;
+	}
 }
@@ -36,8 +36,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Lightweight HTTP connection for tile loading. Does not do redirects,
  * https, full header parsing or other stuff.
+ * 
+ * Requests for further tiles can be pipelined on the connection, see
+ * {@link HttpEngine.Pipelined}. Responses must have a Content-Length.
  */
-public class LwHttp implements HttpEngine {
+public class LwHttp implements HttpEngine.Pipelined {
 	static final Logger log = LoggerFactory.getLogger(LwHttp.class);
 	static final boolean dbg = false;
 
@@ -49,6 +52,9 @@ public class LwHttp implements HttpEngine {
 	private final static int RESPONSE_EXPECTED_LIVES = 100;
 	private final static long RESPONSE_TIMEOUT = (long) 10E9; // 10 second in nanosecond
 
+	/** maximum number of requests sent before reading the responses */
+	public final static int MAX_PENDING = 8;
+
 	private final static int BUFFER_SIZE = 8192;
 	private final byte[] buffer = new byte[BUFFER_SIZE];
 
@@ -65,6 +71,10 @@ public class LwHttp implements HttpEngine {
 	/** Server requested to close the connection */
 	private boolean mMustClose;
 
+	/** tiles of the requests sent, in order of the responses */
+	private final Tile[] mPending = new Tile[MAX_PENDING];
+	private int mNumPending;
+
 	private final byte[] REQUEST_GET_START;
 	private final byte[] REQUEST_GET_END;
 	private final byte[] mRequestBuffer;
@@ -224,6 +234,10 @@ public class LwHttp implements HttpEngine {
 			if (bytesRead >= contentLength)
 				return -1;
 
+			/* do not read into the next response */
+			if (byteCount > contentLength - bytesRead)
+				byteCount = contentLength - bytesRead;
+
 			int len = super.read(buffer, offset, byteCount);
 
 			if (dbg)
@@ -244,9 +258,13 @@ public class LwHttp implements HttpEngine {
 		}
 	}
 
+	@Override
 	public InputStream read() throws IOException {
 
 		Buffer is = mResponseStream;
+		if (is == null)
+			throw new IOException("connection closed");
+
 		is.mark(BUFFER_SIZE);
 		is.start(BUFFER_SIZE);
 
@@ -320,6 +338,10 @@ public class LwHttp implements HttpEngine {
 		is.skip(end);
 		is.start(contentLength);
 
+		/* cannot find the next response without length */
+		if (contentLength < 0)
+			mMustClose = true;
+
 		if (gzip) {
 			return new GZIPInputStream(is);
 		}
@@ -330,7 +352,10 @@ public class LwHttp implements HttpEngine {
 	public void sendRequest(Tile tile) throws IOException {
 
 		if (mSocket != null) {
-			if (--mMaxRequests < 0)
+			if (mNumPending > 0) {
+				log.debug("unread responses {}", mNumPending);
+				close();
+			} else if (--mMaxRequests < 0)
 				close();
 			else if (System.nanoTime() - mLastRequest > RESPONSE_TIMEOUT)
 				close();
@@ -356,6 +381,80 @@ public class LwHttp implements HttpEngine {
 			mMaxRequests = RESPONSE_EXPECTED_LIVES;
 		}
 
+		int len = formatRequest(tile);
+
+		try {
+			writeRequest(mRequestBuffer, len);
+		} catch (IOException e) {
+			log.debug("recreate connection");
+			close();
+			lwHttpConnect();
+			writeRequest(mRequestBuffer, len);
+		}
+		mPending[mNumPending++] = tile;
+	}
+
+	@Override
+	public boolean pipelineRequest(Tile tile) {
+		if (mSocket == null || mMustClose || mNumPending == 0)
+			return false;
+
+		if (mNumPending == MAX_PENDING || mMaxRequests <= 0)
+			return false;
+
+		mMaxRequests--;
+
+		int len = formatRequest(tile);
+		try {
+			writeRequest(mRequestBuffer, len);
+		} catch (IOException e) {
+			log.debug("pipeline request: {}", e.getMessage());
+			/* the request may be incomplete. read the pending
+			 * responses but do not reuse the connection */
+			mMustClose = true;
+			return false;
+		}
+		mPending[mNumPending++] = tile;
+		return true;
+	}
+
+	@Override
+	public int getPendingRequests() {
+		return mNumPending;
+	}
+
+	@Override
+	public Tile getPendingResponse() {
+		return mNumPending == 0 ? null : mPending[0];
+	}
+
+	@Override
+	public boolean isPending(Tile tile) {
+		for (int i = 0; i < mNumPending; i++)
+			if (mPending[i] == tile)
+				return true;
+
+		return false;
+	}
+
+	@Override
+	public boolean skipResponse() {
+		if (mNumPending == 0)
+			return mSocket != null;
+
+		boolean success = false;
+		try {
+			success = read() != null;
+		} catch (IOException e) {
+			log.debug("skip response: {}", e.getMessage());
+		}
+		requestCompleted(success);
+
+		return mSocket != null;
+	}
+
+	/** @return length of request in mRequestBuffer */
+	private int formatRequest(Tile tile) {
 		int pos = REQUEST_GET_START.length;
 		int len = REQUEST_GET_END.length;
 
@@ -366,14 +465,7 @@ public class LwHttp implements HttpEngine {
 		if (dbg)
 			log.debug("request: {}", new String(mRequestBuffer, 0, len));
 
-		try {
-			writeRequest(mRequestBuffer, len);
-		} catch (IOException e) {
-			log.debug("recreate connection");
-			close();
-			lwHttpConnect();
-			writeRequest(mRequestBuffer, len);
-		}
+		return len;
 	}
 
 	private void writeRequest(byte[] request, int length) throws IOException {
@@ -408,6 +500,11 @@ public class LwHttp implements HttpEngine {
 		mSocket = null;
 		mCommandStream = null;
 		mResponseStream = null;
+
+		/* responses of pending requests are lost */
+		for (int i = 0; i < mNumPending; i++)
+			mPending[i] = null;
+		mNumPending = 0;
 	}
 
 	@Override
@@ -426,6 +523,11 @@ public class LwHttp implements HttpEngine {
 		mLastRequest = System.nanoTime();
 		mResponseStream.setCache(null);
 
+		if (mNumPending > 0) {
+			System.arraycopy(mPending, 1, mPending, 0, --mNumPending);
+			mPending[mNumPending] = null;
+		}
+
 		if (!mResponseStream.finishedReading()) {
 			log.debug("invalid buffer position");
 			close();
@@ -18,12 +18,20 @@ package org.oscim.tiling.source;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.GeometryBuffer;
+import org.oscim.core.StringPool;
 import org.oscim.utils.UTF8Decoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Base class of protobuf tile decoders. Input is either read from an
+ * InputStream into the decoder buffer, or taken from a ByteBuffer with
+ * {@link #setInput(ByteBuffer)}. The decode methods work on the byte[]
+ * of the buffer in both cases.
+ */
 public abstract class PbfDecoder implements ITileDecoder {
 	static final Logger log = LoggerFactory.getLogger(PbfDecoder.class);
 
@@ -77,6 +85,9 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	private InputStream mInputStream;
 
+	/** the decoder buffer while 'buffer' is the array of an input ByteBuffer */
+	private byte[] mStreamBuffer;
+
 	private final UTF8Decoder mStringDecoder;
 
 	public PbfDecoder() {
@@ -84,6 +95,10 @@ public abstract class PbfDecoder implements ITileDecoder {
 	}
 
 	public void setInputStream(InputStream is) {
+		if (mStreamBuffer != null) {
+			buffer = mStreamBuffer;
+			mStreamBuffer = null;
+		}
 		mInputStream = is;
 
 		bufferFill = 0;
@@ -93,14 +108,46 @@ public abstract class PbfDecoder implements ITileDecoder {
 		mMsgPos = 0;
 	}
 
+	/**
+	 * Decode from the remaining bytes of 'buf'. The array of heap buffers
+	 * is used directly, other buffers are copied into the decoder buffer.
+	 * The position of 'buf' is not modified. 'buf' must not be modified
+	 * until decoding is done.
+	 */
+	public void setInput(ByteBuffer buf) {
+		if (mStreamBuffer == null)
+			mStreamBuffer = buffer;
+
+		mInputStream = null;
+		int length = buf.remaining();
+
+		if (buf.hasArray()) {
+			buffer = buf.array();
+			bufferPos = buf.arrayOffset() + buf.position();
+		} else {
+			if (mStreamBuffer.length < length)
+				mStreamBuffer = new byte[length];
+
+			buffer = mStreamBuffer;
+			bufferPos = 0;
+
+			int position = buf.position();
+			buf.get(buffer, 0, length);
+			buf.position(position);
+		}
+		bufferFill = bufferPos + length;
+		mBufferOffset = -bufferPos;
+		mMsgPos = length;
+	}
+
 	protected int decodeVarint32() throws IOException {
 
 		int bytesLeft = 0;
 		int val = 0;
 
 		for (int shift = 0; shift < 32; shift += 7) {
-			if (bytesLeft == 0)
-				bytesLeft = fillBuffer(1);
+			if (bytesLeft == 0 && (bytesLeft = fillBuffer(1)) == 0)
+				throw TRUNCATED_MSG;
 
 			byte b = buffer[bufferPos++];
 			val |= (b & 0x7f) << shift;
@@ -120,8 +167,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 		long val = 0;
 
 		for (int shift = 0; shift < 64; shift += 7) {
-			if (bytesLeft == 0)
-				bytesLeft = fillBuffer(1);
+			if (bytesLeft == 0 && (bytesLeft = fillBuffer(1)) == 0)
+				throw TRUNCATED_MSG;
 
 			byte b = buffer[bufferPos++];
 			val |= (long) (b & 0x7f) << shift;
@@ -139,7 +186,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 		String result;
 
 		final int size = decodeVarint32();
-		fillBuffer(size);
+		if (fillBuffer(size) < size)
+			throw TRUNCATED_MSG;
 
 		if (mStringDecoder == null)
 			result = new String(buffer, bufferPos, size, "UTF-8");
@@ -152,9 +200,26 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	}
 
+	/**
+	 * Decode a string which is likely to repeat, like tag keys and values.
+	 * 
+	 * @return the interned string from {@link StringPool}, no String is
+	 *         allocated when it is already pooled.
+	 */
+	protected String decodeInternedString() throws IOException {
+		final int size = decodeVarint32();
+		if (fillBuffer(size) < size)
+			throw TRUNCATED_MSG;
+
+		String result = StringPool.intern(buffer, bufferPos, size);
+		bufferPos += size;
+
+		return result;
+	}
+
 	protected float decodeFloat() throws IOException {
-		if (bufferPos + 4 > bufferFill)
-			fillBuffer(4);
+		if (bufferPos + 4 > bufferFill && fillBuffer(4) < 4)
+			throw TRUNCATED_MSG;
 
 		int val = (buffer[bufferPos++] & 0xFF
 		        | (buffer[bufferPos++] & 0xFF) << 8
@@ -165,8 +230,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 	}
 
 	protected double decodeDouble() throws IOException {
-		if (bufferPos + 8 > bufferFill)
-			fillBuffer(8);
+		if (bufferPos + 8 > bufferFill && fillBuffer(8) < 8)
+			throw TRUNCATED_MSG;
 
 		long val = ((long) buffer[bufferPos++] & 0xFF
 		        | ((long) buffer[bufferPos++] & 0xFF) << 8
@@ -181,8 +246,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 	}
 
 	protected boolean decodeBool() throws IOException {
-		if (bufferPos + 1 > bufferFill)
-			fillBuffer(1);
+		if (bufferPos + 1 > bufferFill && fillBuffer(1) < 1)
+			throw TRUNCATED_MSG;
 
 		return buffer[bufferPos++] != 0;
 	}
@@ -192,7 +257,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 		float[] points = geom.points;
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		int cnt = 0;
 		int lastX = 0;
@@ -254,7 +320,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 	        throws IOException {
 
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		int cnt = 0;
 		int lastX = 0;
@@ -321,7 +388,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	public void decodeVarintArray(int num, short[] array) throws IOException {
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		final byte[] buf = buffer;
 		int pos = bufferPos;
@@ -376,7 +444,9 @@ public abstract class PbfDecoder implements ITileDecoder {
 			array = new short[32];
 		}
 
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
+
 		int cnt = 0;
 
 		final byte[] buf = buffer;
@@ -478,6 +548,10 @@ public abstract class PbfDecoder implements ITileDecoder {
 		if (bytesLeft >= size)
 			return bytesLeft;
 
+		// all input from ByteBuffer is in buffer
+		if (mInputStream == null)
+			return bytesLeft;
+
 		int maxSize = buffer.length;
 
 		if (size > maxSize) {
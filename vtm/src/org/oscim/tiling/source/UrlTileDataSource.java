@@ -16,17 +16,22 @@
  */
 package org.oscim.tiling.source;
 
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
 import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
 import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 
+import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLoadMetrics;
 import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.BufferedTileReader;
 import org.oscim.tiling.ITileCache.TileReader;
 import org.oscim.tiling.ITileCache.TileWriter;
 import org.oscim.tiling.ITileDataSink;
@@ -35,31 +40,139 @@ import org.oscim.utils.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * When the HttpEngine supports pipelining and the tiles to be queried
+ * next are passed by {@link #setNextTiles(MapTile[], int)}, the requests
+ * for these tiles are sent ahead on the same connection, so that one
+ * round-trip is shared by several tiles. Responses of tiles which were
+ * canceled meanwhile are skipped without closing the connection.
+ * 
+ * A {@link ITileDecoder.BufferDecoder} decodes cached tiles directly from
+ * the buffer of a {@link BufferedTileReader}, and network responses from
+ * one buffer that is reused for all tiles.
+ *
+ * Network responses are written to the cache when the tile is completed.
+ * Wrap the cache in a {@link org.oscim.tiling.cache.WriteBehindTileCache}
+ * to move the writes off the loader thread.
+ */
 public class UrlTileDataSource implements ITileDataSource {
 	static final Logger log = LoggerFactory.getLogger(UrlTileDataSource.class);
+	static final boolean dbg = false;
+
+	/** default number of requests sent ahead */
+	public static final int PIPELINE_DEPTH = 4;
 
 	protected final HttpEngine mConn;
 	protected final ITileDecoder mTileDecoder;
 	protected final UrlTileSource mTileSource;
 	protected final boolean mUseCache;
 
+	/** mTileDecoder when it can decode from ByteBuffer */
+	private final ITileDecoder.BufferDecoder mBufferDecoder;
+
+	/** buffer for reading responses for mBufferDecoder */
+	private ByteBuffer mReadBuffer;
+
+	/** mConn when it supports pipelining */
+	private final HttpEngine.Pipelined mPipeline;
+	private int mPipelineDepth = PIPELINE_DEPTH;
+
+	/** tiles to be queried next, in order */
+	private MapTile[] mNextTiles;
+	private int mNumNextTiles;
+
+	/** cache entries of mNextTiles found while sending requests ahead */
+	private TileReader[] mNextCached;
+
 	public UrlTileDataSource(UrlTileSource tileSource, ITileDecoder tileDecoder, HttpEngine conn) {
 		mTileDecoder = tileDecoder;
 		mTileSource = tileSource;
 		mUseCache = (tileSource.tileCache != null);
 		mConn = conn;
+		mPipeline = (conn instanceof HttpEngine.Pipelined)
+		        ? (HttpEngine.Pipelined) conn : null;
+		mBufferDecoder = (tileDecoder instanceof ITileDecoder.BufferDecoder)
+		        ? (ITileDecoder.BufferDecoder) tileDecoder : null;
+	}
+
+	/**
+	 * @param depth maximum number of requests pending on the connection,
+	 *            1 disables pipelining.
+	 */
+	public void setPipelineDepth(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("depth < 1");
+
+		mPipelineDepth = depth;
+	}
+
+	/**
+	 * @return the number of tiles for which requests can be sent ahead,
+	 *         i.e. how many tiles to pass to setNextTiles().
+	 */
+	public int getBatchSize() {
+		return mPipeline == null ? 1 : mPipelineDepth;
+	}
+
+	/**
+	 * Set the tiles that will be queried next, in order of their priority.
+	 * Requests for these tiles are sent ahead when the HttpEngine supports
+	 * pipelining. Tiles that are canceled before their query are skipped.
+	 * 
+	 * @param tiles the tiles, or null when done with the previous tiles.
+	 * @param count number of tiles
+	 */
+	public void setNextTiles(MapTile[] tiles, int count) {
+		/* release cache entries of tiles which were not queried */
+		if (mNextCached != null) {
+			for (int i = 0; i < mNextCached.length; i++) {
+				if (mNextCached[i] != null)
+					IOUtils.closeQuietly(mNextCached[i].getInputStream());
+				mNextCached[i] = null;
+			}
+		}
+		if (tiles == null || mPipeline == null) {
+			mNextTiles = null;
+			mNumNextTiles = 0;
+			return;
+		}
+		mNextTiles = tiles;
+		mNumNextTiles = count;
+
+		if (mUseCache && (mNextCached == null || mNextCached.length < count))
+			mNextCached = new TileReader[count];
 	}
 
 	@Override
 	public void query(MapTile tile, ITileDataSink sink) {
 		ITileCache cache = mTileSource.tileCache;
+		TileLoadMetrics metrics = TileLoadMetrics.get(sink);
 
 		if (mUseCache) {
-			TileReader c = cache.getTile(tile);
+			if (metrics != null)
+				metrics.beginFetch();
+
+			TileReader c = getCached(tile);
+			if (c == null)
+				c = cache.getTile(tile);
+
+			if (metrics != null)
+				metrics.endFetch();
+
 			if (c != null) {
+				if (metrics != null)
+					metrics.setCacheHit();
+
 				InputStream is = c.getInputStream();
 				try {
-					if (mTileDecoder.decode(tile, sink, is)) {
+					boolean ok;
+					if (mBufferDecoder != null && c instanceof BufferedTileReader)
+						ok = mBufferDecoder.decode(tile, sink,
+						                           ((BufferedTileReader) c).getBuffer());
+					else
+						ok = mTileDecoder.decode(tile, sink, is);
+
+					if (ok) {
 						sink.completed(SUCCESS);
 						return;
 					}
@@ -74,16 +187,40 @@ public class UrlTileDataSource implements ITileDataSource {
 		boolean success = false;
 		TileWriter cacheWriter = null;
 		try {
-			mConn.sendRequest(tile);
+			if (metrics != null) {
+				metrics.cacheHit = false;
+				metrics.beginFetch();
+			}
+
+			if (mPipeline != null)
+				sendRequests(tile);
+			else
+				mConn.sendRequest(tile);
+
 			InputStream is = mConn.read();
 			if (is == null) {
+				if (metrics != null)
+					metrics.endFetch();
+
 				log.debug("{} Network Error", tile);
 			} else {
 				if (mUseCache) {
 					cacheWriter = cache.writeTile(tile);
 					mConn.setCache(cacheWriter.getOutputStream());
 				}
-				success = mTileDecoder.decode(tile, sink, is);
+				if (mBufferDecoder != null) {
+					ByteBuffer buf = readResponse(is);
+					if (metrics != null)
+						metrics.endFetch();
+
+					success = mBufferDecoder.decode(tile, sink, buf);
+				} else {
+					/* the response is read while decoding */
+					if (metrics != null)
+						metrics.endFetch();
+
+					success = mTileDecoder.decode(tile, sink, is);
+				}
 			}
 		} catch (SocketException e) {
 			log.debug("{} Socket exception: {}", tile, e.getMessage());
@@ -101,8 +238,103 @@ public class UrlTileDataSource implements ITileDataSource {
 		sink.completed(success ? SUCCESS : FAILED);
 	}
 
+	/**
+	 * Read the response into mReadBuffer, which grows as needed.
+	 * 
+	 * @return mReadBuffer with the response from position to limit.
+	 */
+	private ByteBuffer readResponse(InputStream is) throws IOException {
+		if (mReadBuffer == null)
+			mReadBuffer = ByteBuffer.allocate(1 << 16);
+
+		byte[] data = mReadBuffer.array();
+		int size = 0;
+		int len;
+		while ((len = is.read(data, size, data.length - size)) >= 0) {
+			size += len;
+			if (size < data.length)
+				continue;
+
+			ByteBuffer tmp = ByteBuffer.allocate(data.length * 2);
+			System.arraycopy(data, 0, tmp.array(), 0, size);
+			mReadBuffer = tmp;
+			data = tmp.array();
+		}
+		mReadBuffer.clear();
+		mReadBuffer.limit(size);
+		return mReadBuffer;
+	}
+
+	/** @return the cache entry found for 'tile' by sendRequests() */
+	private TileReader getCached(MapTile tile) {
+		int i = indexOfNext(tile);
+		if (i < 0 || mNextCached == null)
+			return null;
+
+		TileReader c = mNextCached[i];
+		mNextCached[i] = null;
+		return c;
+	}
+
+	private int indexOfNext(MapTile tile) {
+		for (int i = 0; i < mNumNextTiles; i++)
+			if (mNextTiles[i] == tile)
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Ensure that the response for 'tile' is read next and send the
+	 * requests for the following tiles.
+	 */
+	private void sendRequests(MapTile tile) throws IOException {
+		HttpEngine.Pipelined conn = mPipeline;
+
+		/* drop responses of tiles which were canceled or read from cache */
+		Tile next;
+		while ((next = conn.getPendingResponse()) != null && next != tile) {
+			if (dbg)
+				log.debug("{} skip response", next);
+
+			conn.skipResponse();
+		}
+
+		if (next == null)
+			conn.sendRequest(tile);
+
+		int i = indexOfNext(tile);
+		if (i < 0)
+			return;
+
+		ITileCache cache = mTileSource.tileCache;
+
+		for (i++; i < mNumNextTiles; i++) {
+			if (conn.getPendingRequests() >= mPipelineDepth)
+				break;
+
+			MapTile t = mNextTiles[i];
+			if (t.state(CANCEL) || conn.isPending(t))
+				continue;
+
+			/* do not request tiles that are in the cache */
+			if (mUseCache) {
+				if (mNextCached[i] != null)
+					continue;
+
+				mNextCached[i] = cache.getTile(t);
+				if (mNextCached[i] != null)
+					continue;
+			}
+
+			if (!conn.pipelineRequest(t))
+				break;
+		}
+	}
+
 	@Override
 	public void destroy() {
+		setNextTiles(null, 0);
 		mConn.close();
 	}
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.oscim.core.StringPool;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+
+/**
+ * Decodes the data of a map file block. Subclasses provide the block data
+ * and the primitive decoding methods for their storage, i.e.
+ * {@link ReadBuffer} for a byte array read from the file and
+ * {@link MappedReadBuffer} for a memory-mapped file.
+ */
+abstract class AbstractReadBuffer {
+	private static final Logger LOG = Logger.getLogger(AbstractReadBuffer.class.getName());
+
+	/**
+	 * Maximum buffer size which is supported by this implementation.
+	 */
+	static final int MAXIMUM_BUFFER_SIZE = 8000000;
+
+	int mBufferPosition;
+
+	/** position of the tags of the last way skipped by skipWays() */
+	int lastTagPosition;
+
+	/**
+	 * Reads the given amount of bytes at 'address' of the file into the read
+	 * buffer and resets the internal buffer position.
+	 * 
+	 * @param address
+	 *            the position in the file to read from.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	abstract boolean readFromFile(long address, int length) throws IOException;
+
+	/**
+	 * Returns one signed byte from the read buffer.
+	 * 
+	 * @return the byte value.
+	 */
+	public abstract byte readByte();
+
+	/**
+	 * Converts four bytes from the read buffer to a signed int.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readInt();
+
+	/**
+	 * Converts eight bytes from the read buffer to a signed long.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the long value.
+	 */
+	public abstract long readLong();
+
+	/**
+	 * Converts two bytes from the read buffer to a signed int.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readShort();
+
+	/**
+	 * Converts a variable amount of bytes from the read buffer to a signed int.
+	 * <p>
+	 * The first bit is for continuation info, the other six (last byte) or
+	 * seven (all other bytes) bits are for data. The second bit in the last
+	 * byte indicates the sign of the number.
+	 * 
+	 * @return the value.
+	 */
+	public abstract int readSignedInt();
+
+	/**
+	 * Converts a variable amount of bytes from the read buffer to a signed int
+	 * array.
+	 * 
+	 * @param values
+	 *            result values
+	 * @param length
+	 *            number of values to read
+	 */
+	public abstract void readSignedInt(int[] values, int length);
+
+	/**
+	 * Converts a variable amount of bytes from the read buffer to an unsigned
+	 * int.
+	 * <p>
+	 * The first bit is for continuation info, the other seven bits are for
+	 * data.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readUnsignedInt();
+
+	/**
+	 * Decodes the given amount of bytes from the read buffer to a string.
+	 * 
+	 * @param stringLength
+	 *            the length of the string in bytes.
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	public abstract String readUTF8EncodedString(int stringLength);
+
+	/**
+	 * Decodes the given amount of bytes from the read buffer to a string
+	 * from {@link StringPool}.
+	 * 
+	 * @param stringLength
+	 *            the length of the string in bytes.
+	 * @return the interned string (may be null).
+	 */
+	public abstract String readInternedString(int stringLength);
+
+	/**
+	 * @return the current size of the read buffer.
+	 */
+	abstract int getBufferSize();
+
+	/**
+	 * Skip ways which do not match queryTileBitmask.
+	 * 
+	 * @return the number of remaining ways, or -1 on invalid data.
+	 */
+	abstract int skipWays(int queryTileBitmask, int elements);
+
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a string.
+	 * 
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	public String readUTF8EncodedString() {
+		return readUTF8EncodedString(readUnsignedInt());
+	}
+
+	/**
+	 * @return ...
+	 */
+	public int getPositionAndSkip() {
+		int pos = mBufferPosition;
+		int length = readUnsignedInt();
+		skipBytes(length);
+		return pos;
+	}
+
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a string
+	 * from {@link StringPool}. Use for values which are likely to repeat.
+	 * 
+	 * @return the interned string (may be null).
+	 */
+	public String readInternedString() {
+		return readInternedString(readUnsignedInt());
+	}
+
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a string
+	 * from {@link StringPool}.
+	 * 
+	 * @param position
+	 *            buffer offset position of string
+	 * @return the interned string (may be null).
+	 */
+	public String readInternedStringAt(int position) {
+		int curPosition = mBufferPosition;
+		mBufferPosition = position;
+		String result = readInternedString(readUnsignedInt());
+		mBufferPosition = curPosition;
+		return result;
+	}
+
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a string.
+	 * 
+	 * @param position
+	 *            buffer offset position of string
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	public String readUTF8EncodedStringAt(int position) {
+		int curPosition = mBufferPosition;
+		mBufferPosition = position;
+		String result = readUTF8EncodedString(readUnsignedInt());
+		mBufferPosition = curPosition;
+		return result;
+	}
+
+	/**
+	 * @return the current buffer position.
+	 */
+	int getBufferPosition() {
+		return mBufferPosition;
+	}
+
+	/**
+	 * Sets the buffer position to the given offset.
+	 * 
+	 * @param bufferPosition
+	 *            the buffer position.
+	 */
+	void setBufferPosition(int bufferPosition) {
+		mBufferPosition = bufferPosition;
+	}
+
+	/**
+	 * Skips the given number of bytes in the read buffer.
+	 * 
+	 * @param bytes
+	 *            the number of bytes to skip.
+	 */
+	void skipBytes(int bytes) {
+		mBufferPosition += bytes;
+	}
+
+	boolean readTags(TagSet tags, Tag[] wayTags, byte numberOfTags) {
+		tags.clear();
+
+		int maxTag = wayTags.length;
+
+		for (byte i = 0; i < numberOfTags; i++) {
+			int tagId = readUnsignedInt();
+			if (tagId < 0 || tagId >= maxTag) {
+				LOG.warning("invalid tag ID: " + tagId);
+				return true;
+			}
+			tags.add(wayTags[tagId]);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.util.ArrayList;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.tiling.ITileDataSink;
+
+/**
+ * Records copies of the MapElements passed to it to replay them later in
+ * the same order. The copies are reused after {@link #clear()}.
+ */
+class ElementRecorder implements ITileDataSink {
+
+	private final ArrayList<MapElement> mElements = new ArrayList<MapElement>();
+	private int mCount;
+
+	@Override
+	public void process(MapElement element) {
+		MapElement e;
+		if (mCount < mElements.size()) {
+			e = mElements.get(mCount);
+		} else {
+			e = new MapElement(64, 4);
+			mElements.add(e);
+		}
+		mCount++;
+
+		e.type = element.type;
+		e.layer = element.layer;
+
+		/* index is terminated by -1 or by its length */
+		short[] index = e.ensureIndexSize(element.index.length, false);
+		System.arraycopy(element.index, 0, index, 0, element.index.length);
+		if (index.length > element.index.length)
+			index[element.index.length] = -1;
+		e.indexPos = element.indexPos;
+
+		float[] points = e.ensurePointSize(element.pointPos >> 1, false);
+		System.arraycopy(element.points, 0, points, 0, element.pointPos);
+		e.pointPos = element.pointPos;
+
+		TagSet tags = e.tags;
+		int numTags = element.tags.numTags;
+		if (tags.tags.length < numTags)
+			tags.tags = new Tag[numTags];
+		System.arraycopy(element.tags.tags, 0, tags.tags, 0, numTags);
+		tags.numTags = numTags;
+	}
+
+	/** pass the recorded elements to 'sink' */
+	void replay(ITileDataSink sink) {
+		for (int i = 0; i < mCount; i++)
+			sink.process(mElements.get(i));
+	}
+
+	void clear() {
+		mCount = 0;
+	}
+
+	MapElement get(int i) {
+		return mElements.get(i);
+	}
+
+	/** @return number of recorded elements */
+	int size() {
+		return mCount;
+	}
+
+	@Override
+	public void setTileImage(Bitmap bitmap) {
+	}
+
+	@Override
+	public void completed(QueryResult result) {
+	}
+}
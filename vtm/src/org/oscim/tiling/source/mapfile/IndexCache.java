@@ -45,6 +45,7 @@ class IndexCache {
 
 	private final Map<IndexCacheEntryKey, byte[]> map;
 	private final RandomAccessFile randomAccessFile;
+	private final MappedFile mappedFile;
 
 	/**
 	 * @param randomAccessFile
@@ -56,14 +57,29 @@ class IndexCache {
 	 */
 	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
 		this.randomAccessFile = randomAccessFile;
+		this.mappedFile = null;
 		this.map = Collections.synchronizedMap(new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
 	}
 
+	/**
+	 * Reads index entries directly from the mapped file. No cache and no
+	 * locking is needed in this case.
+	 * 
+	 * @param mappedFile
+	 *            the mapped map file.
+	 */
+	IndexCache(MappedFile mappedFile) {
+		this.randomAccessFile = null;
+		this.mappedFile = mappedFile;
+		this.map = null;
+	}
+
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
 	void destroy() {
-		this.map.clear();
+		if (this.map != null)
+			this.map.clear();
 	}
 
 	/**
@@ -78,7 +94,19 @@ class IndexCache {
 	 *            the number of the block in the map file.
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
-	synchronized long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		if (this.mappedFile == null)
+			return getCachedIndexEntry(subFileParameter, blockNumber);
+
+		if (blockNumber >= subFileParameter.numberOfBlocks)
+			return -1;
+
+		return this.mappedFile.getFiveBytesLong(subFileParameter.indexStartAddress
+		        + blockNumber * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+	}
+
+	private synchronized long getCachedIndexEntry(SubFileParameter subFileParameter,
+	        long blockNumber) {
 		try {
 			// check if the block number is out of bounds
 			if (blockNumber >= subFileParameter.numberOfBlocks) {
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+/**
+ * Projects latitudes in microdegrees to Mercator pixel coordinates of one
+ * zoom level by linear interpolation between precomputed values, instead
+ * of calling Math.sin and Math.log for each vertex.
+ * <p>
+ * The table covers the latitude range of the blocks of one query. The
+ * step between entries is chosen from the curvature of the projection at
+ * the pole-most latitude of the range, so that the interpolation error
+ * stays below {@link #MAX_ERROR} pixel.
+ */
+final class LatitudeTable {
+
+	/** maximum interpolation error in pixel */
+	static final double MAX_ERROR = 1 / 32.0;
+
+	/** maximum number of intervals */
+	static final int MAX_SIZE = 1 << 12;
+
+	/** latitude limit of the table in microdegrees */
+	static final double MAX_LATITUDE = 89000000;
+
+	private static final double PI180 = (Math.PI / 180) / 1000000.0;
+
+	private double[] mValues = new double[65];
+
+	/** number of intervals */
+	private int mSize;
+
+	/** covered range in microdegrees */
+	private double mMinLat;
+	private double mMaxLat;
+
+	/** intervals per microdegree */
+	private double mScale;
+
+	/**
+	 * Fill the table for the range 'minLat' to 'maxLat'.
+	 *
+	 * @param minLat
+	 *            minimum latitude in microdegrees.
+	 * @param maxLat
+	 *            maximum latitude in microdegrees.
+	 * @param divy
+	 *            map size in pixel / (4 * PI) at the zoom level.
+	 * @return false when the range cannot be covered, i.e. the table
+	 *         must not be used.
+	 */
+	boolean set(double minLat, double maxLat, double divy) {
+		mSize = 0;
+		if (!(minLat < maxLat) || minLat < -MAX_LATITUDE || maxLat > MAX_LATITUDE)
+			return false;
+
+		/* second derivative of project() is largest at the pole-most
+		 * latitude: 2 * divy * sin(lat) / cos(lat)^2 per radian^2 */
+		double lat = Math.max(Math.abs(minLat), Math.abs(maxLat)) * PI180;
+		double cos = Math.cos(lat);
+		double maxCurvature = 2 * divy * Math.sin(lat) / (cos * cos) * PI180 * PI180;
+
+		/* error of linear interpolation is at most step^2 / 8 * curvature */
+		double range = maxLat - minLat;
+		int size = 1;
+		if (maxCurvature > 0) {
+			double step = Math.sqrt(8 * MAX_ERROR / maxCurvature);
+			size = (int) Math.ceil(range / step);
+		}
+		if (size > MAX_SIZE)
+			return false;
+
+		if (mValues.length < size + 1)
+			mValues = new double[size + 1];
+
+		for (int i = 0; i <= size; i++)
+			mValues[i] = exact(minLat + range * i / size, divy);
+
+		mSize = size;
+		mMinLat = minLat;
+		mMaxLat = maxLat;
+		mScale = size / range;
+		return true;
+	}
+
+	/**
+	 * @return true when 'lat' in microdegrees is covered by the table.
+	 */
+	boolean contains(double lat) {
+		return lat >= mMinLat && lat <= mMaxLat && mSize > 0;
+	}
+
+	/**
+	 * @param lat
+	 *            latitude in microdegrees, must be covered by the table.
+	 * @return projected latitude in pixel, relative to the equator.
+	 */
+	double project(double lat) {
+		double pos = (lat - mMinLat) * mScale;
+		int i = (int) pos;
+		if (i >= mSize)
+			i = mSize - 1;
+
+		double v = mValues[i];
+		return v + (pos - i) * (mValues[i + 1] - v);
+	}
+
+	/**
+	 * @return projected latitude in pixel, relative to the equator.
+	 */
+	static double exact(double lat, double divy) {
+		double sinLat = Math.sin(lat * PI180);
+		return Math.log((1.0 + sinLat) / (1.0 - sinLat)) * divy;
+	}
+}
@@ -22,6 +22,10 @@ import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.oscim.core.GeometryBuffer;
 import org.oscim.core.GeometryBuffer.GeometryType;
@@ -30,6 +34,7 @@ import org.oscim.core.MercatorProjection;
 import org.oscim.core.Tag;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLoadMetrics;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
@@ -130,7 +135,7 @@ public class MapDatabase implements ITileDataSource {
 	private long mFileSize;
 	private boolean mDebugFile;
 	private RandomAccessFile mInputFile;
-	private ReadBuffer mReadBuffer;
+	private AbstractReadBuffer mReadBuffer;
 	private String mSignatureBlock;
 	private String mSignaturePoi;
 	private String mSignatureWay;
@@ -145,6 +150,9 @@ public class MapDatabase implements ITileDataSource {
 
 	private final MapFileTileSource mTileSource;
 
+	/** metrics of the current query, block reads count as fetch */
+	private TileLoadMetrics mMetrics;
+
 	@Override
 	public void query(MapTile tile, ITileDataSink sink) {
 
@@ -153,6 +161,27 @@ public class MapDatabase implements ITileDataSource {
 			return;
 		}
 
+		mMetrics = TileLoadMetrics.get(sink);
+
+		OverviewCache cache = mTileSource.mOverviewCache;
+		if (cache != null && cache.isCached(tile)) {
+			queryOverview(cache, tile, sink);
+			mMetrics = null;
+			return;
+		}
+
+		boolean success = queryBlocks(tile, sink);
+		mMetrics = null;
+		sink.completed(success ? SUCCESS : FAILED);
+	}
+
+	/**
+	 * Decode the blocks of 'tile'.
+	 * 
+	 * @return false when the query failed.
+	 */
+	private boolean queryBlocks(MapTile tile, ITileDataSink sink) {
+
 		if (mIntBuffer == null)
 			mIntBuffer = new int[MAXIMUM_WAY_NODES_SEQUENCE_LENGTH * 2];
 
@@ -185,25 +214,104 @@ public class MapDatabase implements ITileDataSource {
 			if (subFileParameter == null) {
 				log.warn("no sub-file for zoom level: "
 				        + queryParameters.queryZoomLevel);
-
-				sink.completed(FAILED);
-				return;
+				return false;
 			}
 
 			QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
 			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+
+			mLatitudes = null;
+			if (mTileSource.mFastProjection)
+				setLatitudeTable(queryParameters, subFileParameter);
+
 			processBlocks(sink, queryParameters, subFileParameter);
 		} catch (IOException e) {
 			log.error(e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/** latitude projection of the current query, null when not used */
+	private LatitudeTable mLatitudes;
+	private LatitudeTable mLatitudeTable;
+
+	/**
+	 * Set mLatitudes to cover the latitudes of the blocks of the query.
+	 */
+	private void setLatitudeTable(QueryParameters queryParameters,
+	        SubFileParameter subFileParameter) {
+
+		if (mLatitudeTable == null)
+			mLatitudeTable = new LatitudeTable();
+
+		int zoom = subFileParameter.baseZoomLevel;
+		long top = subFileParameter.boundaryTileTop + queryParameters.fromBlockY;
+		long bottom = subFileParameter.boundaryTileTop + queryParameters.toBlockY + 1;
+
+		double maxLat = Projection.tileYToLatitude(top, zoom) * 1e6;
+		double minLat = Projection.tileYToLatitude(bottom, zoom) * 1e6;
+		double divy = (Tile.SIZE << mTile.zoomLevel) / PIx4;
+
+		if (mLatitudeTable.set(minLat, maxLat, divy))
+			mLatitudes = mLatitudeTable;
+	}
+
+	private OverviewCache.Reader mOverviewReader;
+	private ElementRecorder mOverviewRecorder;
+
+	/**
+	 * Replay 'tile' from the overview cache, or decode it and add it to
+	 * the cache.
+	 */
+	private void queryOverview(OverviewCache cache, MapTile tile, ITileDataSink sink) {
+		if (mOverviewReader == null || !mOverviewReader.isReaderOf(cache))
+			mOverviewReader = cache.new Reader();
+
+		try {
+			if (mOverviewReader.query(tile, sink)) {
+				if (mMetrics != null)
+					mMetrics.setCacheHit();
+
+				sink.completed(SUCCESS);
+				return;
+			}
+		} catch (IOException e) {
+			log.warn("overview cache: " + e.getMessage());
+		}
+
+		if (mOverviewRecorder == null)
+			mOverviewRecorder = new ElementRecorder();
+
+		ElementRecorder recorder = mOverviewRecorder;
+		recorder.clear();
+
+		if (!queryBlocks(tile, recorder)) {
 			sink.completed(FAILED);
 			return;
 		}
 
+		try {
+			cache.put(tile, recorder);
+		} catch (IOException e) {
+			log.warn("overview cache: " + e.getMessage());
+		}
+
+		recorder.replay(sink);
+		recorder.clear();
 		sink.completed(SUCCESS);
 	}
 
 	public MapDatabase(MapFileTileSource tileSource) throws IOException {
 		mTileSource = tileSource;
+
+		if (tileSource.mMappedFile != null) {
+			// read blocks directly from the shared mapping
+			mFileSize = tileSource.mMappedFile.size();
+			mReadBuffer = new MappedReadBuffer(tileSource.mMappedFile);
+			return;
+		}
+
 		try {
 			// open the file in read only mode
 			mInputFile = new RandomAccessFile(tileSource.mapFile, "r");
@@ -220,6 +328,16 @@ public class MapDatabase implements ITileDataSource {
 
 	@Override
 	public void destroy() {
+		if (mWorkers != null) {
+			for (int i = 1; i < mWorkers.length; i++)
+				if (mWorkers[i] != null)
+					mWorkers[i].destroy();
+			mWorkers = null;
+		}
+		mRecorders.clear();
+		mOverviewReader = null;
+		mOverviewRecorder = null;
+
 		mReadBuffer = null;
 		if (mInputFile != null) {
 
@@ -313,117 +431,305 @@ public class MapDatabase implements ITileDataSource {
 	private long mCurrentRow;
 	private long mCurrentCol;
 
+	/** result of {@link #readBlock} */
+	private static final int BLOCK_READ = 0;
+	private static final int BLOCK_EMPTY = 1;
+	private static final int BLOCK_INVALID = 2;
+
 	private void processBlocks(ITileDataSink mapDataSink,
 	        QueryParameters queryParameters,
 	        SubFileParameter subFileParameter) throws IOException {
-		boolean queryIsWater = true;
-		// boolean queryReadWaterInfo = false;
-
-		// read and process all blocks from top to bottom and from left to right
-		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; row++) {
-			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; column++) {
-				mCurrentCol = column - queryParameters.fromBlockX;
-				mCurrentRow = row - queryParameters.fromBlockY;
-
-				// calculate the actual block number of the needed block in the
-				// file
-				long blockNumber = row * subFileParameter.blocksWidth + column;
-
-				// get the current index entry
-				long currentBlockIndexEntry =
-				        mTileSource.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
-
-				// check if the current query would still return a water tile
-				if (queryIsWater) {
-					// check the water flag of the current block in its index
-					// entry
-					queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
-					// queryReadWaterInfo = true;
-				}
 
-				// get and check the current block pointer
-				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
-				if (currentBlockPointer < 1
-				        || currentBlockPointer > subFileParameter.subFileSize) {
-					log.warn("invalid current block pointer: " + currentBlockPointer);
-					log.warn("subFileSize: " + subFileParameter.subFileSize);
-					return;
-				}
+		long numCols = queryParameters.toBlockX - queryParameters.fromBlockX + 1;
+		long numRows = queryParameters.toBlockY - queryParameters.fromBlockY + 1;
+		if (numCols <= 0 || numRows <= 0)
+			return;
 
-				long nextBlockPointer;
-				// check if the current block is the last block in the file
-				if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
-					// set the next block pointer to the end of the file
-					nextBlockPointer = subFileParameter.subFileSize;
-				} else {
-					// get and check the next block pointer
-					nextBlockPointer =
-					        mTileSource.databaseIndexCache.getIndexEntry(subFileParameter,
-					                                                     blockNumber + 1)
-					                & BITMASK_INDEX_OFFSET;
-					if (nextBlockPointer < 1
-					        || nextBlockPointer > subFileParameter.subFileSize) {
-						log.warn("invalid next block pointer: " + nextBlockPointer);
-						log.warn("sub-file size: " + subFileParameter.subFileSize);
-						return;
-					}
-				}
+		long numBlocks = numCols * numRows;
 
-				// calculate the size of the current block
-				int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
-				if (currentBlockSize < 0) {
-					log.warn("current block size must not be negative: "
-					        + currentBlockSize);
-					return;
-				} else if (currentBlockSize == 0) {
-					// the current block is empty, continue with the next block
-					continue;
-				} else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
-					// the current block is too large, continue with the next
-					// block
-					log.warn("current block size too large: " + currentBlockSize);
-					continue;
-				} else if (currentBlockPointer + currentBlockSize > mFileSize) {
-					log.warn("current block larger than file size: "
-					        + currentBlockSize);
-					return;
-				}
+		if (mTileSource.mBlockExecutor != null
+		        && numBlocks >= MapFileTileSource.PARALLEL_MIN_BLOCKS) {
+			processBlocksParallel(mapDataSink, queryParameters, subFileParameter,
+			                      (int) numBlocks);
+			return;
+		}
 
-				// seek to the current block in the map file
-				mInputFile.seek(subFileParameter.startAddress + currentBlockPointer);
+		processBlocks(mapDataSink, queryParameters, subFileParameter, 0, (int) numBlocks);
+	}
 
-				// read the current block into the buffer
-				if (!mReadBuffer.readFromFile(currentBlockSize)) {
-					// skip the current block
-					log.warn("reading current block has failed: " + currentBlockSize);
-					return;
-				}
+	/**
+	 * Read and process the blocks 'start' to 'end' (exclusive), counted
+	 * from top to bottom and from left to right.
+	 * 
+	 * @return false if an invalid block was found, i.e. the remaining
+	 *         blocks must not be processed.
+	 */
+	private boolean processBlocks(ITileDataSink mapDataSink,
+	        QueryParameters queryParameters,
+	        SubFileParameter subFileParameter, int start, int end) throws IOException {
 
-				// calculate the top-left coordinates of the underlying tile
-				double tileLatitudeDeg =
-				        Projection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
-				                                   subFileParameter.baseZoomLevel);
-				double tileLongitudeDeg =
-				        Projection.tileXToLongitude(subFileParameter.boundaryTileLeft + column,
-				                                    subFileParameter.baseZoomLevel);
+		long numCols = queryParameters.toBlockX - queryParameters.fromBlockX + 1;
 
-				mTileLatitude = (int) (tileLatitudeDeg * 1E6);
-				mTileLongitude = (int) (tileLongitudeDeg * 1E6);
+		for (int i = start; i < end; i++) {
+			long row = queryParameters.fromBlockY + i / numCols;
+			long column = queryParameters.fromBlockX + i % numCols;
+
+			int result = readBlock(queryParameters, subFileParameter, row, column);
+			if (result == BLOCK_INVALID)
+				return false;
 
+			if (result == BLOCK_READ)
 				processBlock(queryParameters, subFileParameter, mapDataSink);
+		}
+		return true;
+	}
+
+	/**
+	 * Read the block at 'row' and 'column' of the sub-file into the buffer.
+	 * 
+	 * @return BLOCK_READ when the block can be processed, BLOCK_EMPTY when
+	 *         it should be skipped and BLOCK_INVALID when the query must
+	 *         be stopped.
+	 */
+	private int readBlock(QueryParameters queryParameters,
+	        SubFileParameter subFileParameter, long row, long column) throws IOException {
+
+		mCurrentCol = column - queryParameters.fromBlockX;
+		mCurrentRow = row - queryParameters.fromBlockY;
+
+		// calculate the actual block number of the needed block in the
+		// file
+		long blockNumber = row * subFileParameter.blocksWidth + column;
+
+		// get the current index entry
+		long currentBlockIndexEntry =
+		        mTileSource.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+
+		// get and check the current block pointer
+		long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
+		if (currentBlockPointer < 1
+		        || currentBlockPointer > subFileParameter.subFileSize) {
+			log.warn("invalid current block pointer: " + currentBlockPointer);
+			log.warn("subFileSize: " + subFileParameter.subFileSize);
+			return BLOCK_INVALID;
+		}
+
+		long nextBlockPointer;
+		// check if the current block is the last block in the file
+		if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+			// set the next block pointer to the end of the file
+			nextBlockPointer = subFileParameter.subFileSize;
+		} else {
+			// get and check the next block pointer
+			nextBlockPointer =
+			        mTileSource.databaseIndexCache.getIndexEntry(subFileParameter,
+			                                                     blockNumber + 1)
+			                & BITMASK_INDEX_OFFSET;
+			if (nextBlockPointer < 1
+			        || nextBlockPointer > subFileParameter.subFileSize) {
+				log.warn("invalid next block pointer: " + nextBlockPointer);
+				log.warn("sub-file size: " + subFileParameter.subFileSize);
+				return BLOCK_INVALID;
 			}
 		}
 
-		// the query is finished, was the water flag set for all blocks?
-		// if (queryIsWater && queryReadWaterInfo) {
-		// Tag[] tags = new Tag[1];
-		// tags[0] = TAG_NATURAL_WATER;
-		//
-		// System.arraycopy(WATER_TILE_COORDINATES, 0, mWayNodes,
-		// mWayNodePosition, 8);
-		// mWayNodePosition += 8;
-		// mapDatabaseCallback.renderWaterBackground(tags, wayDataContainer);
-		// }
+		// calculate the size of the current block
+		int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
+		if (currentBlockSize < 0) {
+			log.warn("current block size must not be negative: "
+			        + currentBlockSize);
+			return BLOCK_INVALID;
+		} else if (currentBlockSize == 0) {
+			// the current block is empty, continue with the next block
+			return BLOCK_EMPTY;
+		} else if (currentBlockSize > AbstractReadBuffer.MAXIMUM_BUFFER_SIZE) {
+			// the current block is too large, continue with the next
+			// block
+			log.warn("current block size too large: " + currentBlockSize);
+			return BLOCK_EMPTY;
+		} else if (currentBlockPointer + currentBlockSize > mFileSize) {
+			log.warn("current block larger than file size: "
+			        + currentBlockSize);
+			return BLOCK_INVALID;
+		}
+
+		// read the current block into the buffer
+		if (mMetrics != null)
+			mMetrics.beginFetch();
+
+		boolean read = mReadBuffer.readFromFile(subFileParameter.startAddress
+		        + currentBlockPointer, currentBlockSize);
+
+		if (mMetrics != null)
+			mMetrics.endFetch();
+
+		if (!read) {
+			// skip the current block
+			log.warn("reading current block has failed: " + currentBlockSize);
+			return BLOCK_INVALID;
+		}
+
+		// calculate the top-left coordinates of the underlying tile
+		double tileLatitudeDeg =
+		        Projection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
+		                                   subFileParameter.baseZoomLevel);
+		double tileLongitudeDeg =
+		        Projection.tileXToLongitude(subFileParameter.boundaryTileLeft + column,
+		                                    subFileParameter.baseZoomLevel);
+
+		mTileLatitude = (int) (tileLatitudeDeg * 1E6);
+		mTileLongitude = (int) (tileLongitudeDeg * 1E6);
+
+		return BLOCK_READ;
+	}
+
+	/** decoders of the threads taking part in parallel block processing */
+	private MapDatabase[] mWorkers;
+
+	/** recorded elements of each chunk of blocks */
+	private final ArrayList<ElementRecorder> mRecorders = new ArrayList<ElementRecorder>();
+
+	/**
+	 * Split the blocks into chunks of consecutive blocks which are decoded
+	 * on the block executor and by the current thread. The recorded
+	 * elements are passed to 'mapDataSink' in the order of the chunks.
+	 */
+	private void processBlocksParallel(ITileDataSink mapDataSink,
+	        QueryParameters queryParameters,
+	        SubFileParameter subFileParameter, int numBlocks) throws IOException {
+
+		int parallelism = Math.min(mTileSource.mBlockParallelism, numBlocks);
+
+		if (mWorkers == null || mWorkers.length < parallelism) {
+			MapDatabase[] workers = new MapDatabase[mTileSource.mBlockParallelism];
+			if (mWorkers != null)
+				System.arraycopy(mWorkers, 0, workers, 0, mWorkers.length);
+			workers[0] = this;
+			mWorkers = workers;
+		}
+
+		/* a few chunks per thread to even out the work */
+		int numChunks = Math.min(numBlocks, parallelism * 2);
+		while (mRecorders.size() < numChunks)
+			mRecorders.add(new ElementRecorder());
+
+		BlockJob job = new BlockJob(queryParameters, subFileParameter, numBlocks, numChunks);
+
+		try {
+			for (int i = 1; i < parallelism; i++)
+				mTileSource.mBlockExecutor.execute(job);
+		} catch (RejectedExecutionException e) {
+			log.warn("block executor: " + e.getMessage());
+		}
+
+		/* take part with this decoder and wait for the running chunks */
+		job.process(0);
+		job.await();
+
+		for (int i = 0; i < numChunks; i++) {
+			mRecorders.get(i).replay(mapDataSink);
+
+			if (job.errors[i] != null)
+				throw job.errors[i];
+
+			if (job.invalid[i])
+				break;
+		}
+
+		for (int i = 0; i < numChunks; i++)
+			mRecorders.get(i).clear();
+	}
+
+	/** set the query state of 'db' on this worker */
+	private void setQuery(MapDatabase db) {
+		if (mIntBuffer == null)
+			mIntBuffer = new int[MAXIMUM_WAY_NODES_SEQUENCE_LENGTH * 2];
+
+		mTile = db.mTile;
+		minLat = db.minLat;
+		minLon = db.minLon;
+		mLatitudes = db.mLatitudes;
+	}
+
+	/**
+	 * Decodes the chunks of blocks of one query. Each thread running the
+	 * job takes the next chunk until all are taken, so that a query
+	 * never waits for a job which has not been started by the executor.
+	 */
+	private final class BlockJob implements Runnable {
+		final QueryParameters queryParameters;
+		final SubFileParameter subFileParameter;
+		final int numBlocks;
+		final int numChunks;
+
+		final IOException[] errors;
+		final boolean[] invalid;
+
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicInteger nextWorker = new AtomicInteger(1);
+		final CountDownLatch done;
+
+		BlockJob(QueryParameters queryParameters, SubFileParameter subFileParameter,
+		        int numBlocks, int numChunks) {
+			this.queryParameters = queryParameters;
+			this.subFileParameter = subFileParameter;
+			this.numBlocks = numBlocks;
+			this.numChunks = numChunks;
+			errors = new IOException[numChunks];
+			invalid = new boolean[numChunks];
+			done = new CountDownLatch(numChunks);
+		}
+
+		@Override
+		public void run() {
+			/* nothing left to do when started late */
+			if (nextChunk.get() >= numChunks)
+				return;
+
+			process(nextWorker.getAndIncrement());
+		}
+
+		void process(int worker) {
+			MapDatabase db = null;
+
+			for (int chunk; (chunk = nextChunk.getAndIncrement()) < numChunks;) {
+				try {
+					if (db == null) {
+						db = mWorkers[worker];
+						if (db == null)
+							db = mWorkers[worker] = new MapDatabase(mTileSource);
+						db.setQuery(MapDatabase.this);
+					}
+					int start = (int) ((long) chunk * numBlocks / numChunks);
+					int end = (int) ((long) (chunk + 1) * numBlocks / numChunks);
+
+					invalid[chunk] = !db.processBlocks(mRecorders.get(chunk),
+					                                   queryParameters, subFileParameter,
+					                                   start, end);
+				} catch (IOException e) {
+					errors[chunk] = e;
+				} catch (RuntimeException e) {
+					errors[chunk] = new IOException(e.toString());
+				} finally {
+					done.countDown();
+				}
+			}
+		}
+
+		void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					/* workers may still use the decoders */
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
 	}
 
 	/**
@@ -841,12 +1147,12 @@ public class MapDatabase implements ITileDataSource {
 				}
 				if (hasHouseNr) {
 					int textPos = mReadBuffer.readUnsignedInt();
-					String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
+					String str = mReadBuffer.readInternedStringAt(stringOffset + textPos);
 					mElem.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
 				}
 				if (hasRef) {
 					int textPos = mReadBuffer.readUnsignedInt();
-					String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
+					String str = mReadBuffer.readInternedStringAt(stringOffset + textPos);
 					mElem.tags.add(new Tag(Tag.KEY_REF, str, false));
 				}
 			} else {
@@ -855,11 +1161,11 @@ public class MapDatabase implements ITileDataSource {
 					mElem.tags.add(new Tag(Tag.KEY_NAME, str, false));
 				}
 				if (hasHouseNr) {
-					String str = mReadBuffer.readUTF8EncodedString();
+					String str = mReadBuffer.readInternedString();
 					mElem.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
 				}
 				if (hasRef) {
-					String str = mReadBuffer.readUTF8EncodedString();
+					String str = mReadBuffer.readInternedString();
 					mElem.tags.add(new Tag(Tag.KEY_REF, str, false));
 				}
 			}
@@ -975,6 +1281,8 @@ public class MapDatabase implements ITileDataSource {
 		divx = 180000000.0 / (z >> 1);
 		divy = z / PIx4;
 
+		LatitudeTable table = mLatitudes;
+
 		for (int pos = 0, outPos = 0, i = 0, m = indices.length; i < m; i++) {
 			int len = indices[i];
 			if (len == 0)
@@ -989,8 +1297,15 @@ public class MapDatabase implements ITileDataSource {
 			for (int end = pos + len; pos < end; pos += 2) {
 
 				lon = (float) ((coords[pos]) / divx - dx);
-				double sinLat = Math.sin(coords[pos + 1] * PI180);
-				lat = (float) (Tile.SIZE - (Math.log((1.0 + sinLat) / (1.0 - sinLat)) * divy + dy));
+
+				double py, latE6 = coords[pos + 1];
+				if (table != null && table.contains(latE6)) {
+					py = table.project(latE6);
+				} else {
+					double sinLat = Math.sin(latE6 * PI180);
+					py = Math.log((1.0 + sinLat) / (1.0 - sinLat)) * divy;
+				}
+				lat = (float) (Tile.SIZE - (py + dy));
 
 				if (cnt != 0) {
 					// drop small distance intermediate nodes
@@ -20,7 +20,14 @@ package org.oscim.tiling.source.mapfile;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
 
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.source.mapfile.header.MapFileHeader;
@@ -45,6 +52,148 @@ public class MapFileTileSource extends TileSource {
 	File mapFile;
 	RandomAccessFile mInputFile;
 
+	/** shared mapping of the map file when memory mapping is enabled */
+	MappedFile mMappedFile;
+	private boolean mMemoryMapped;
+
+	/** sidecar file of decoded low zoom tiles */
+	OverviewCache mOverviewCache;
+	private File mOverviewFile;
+	private int mOverviewMaxZoom;
+
+	/**
+	 * Minimum number of blocks covered by a query to decode them in
+	 * parallel, see {@link #setBlockExecutor(Executor, int)}.
+	 */
+	public static int PARALLEL_MIN_BLOCKS = 4;
+
+	/** executor for parallel block decoding, null when disabled */
+	Executor mBlockExecutor;
+	int mBlockParallelism;
+
+	boolean mFastProjection;
+
+	/**
+	 * Read the map file through a memory mapping which is shared by all
+	 * data sources (i.e. TileLoaders) instead of reading each block into
+	 * a buffer. Must be set before {@link #open()}.
+	 * <p>
+	 * Note that this needs enough address space to map the whole file.
+	 */
+	public void setMemoryMapped(boolean enable) {
+		mMemoryMapped = enable;
+	}
+
+	/**
+	 * Project the latitudes of ways by linear interpolation in a table
+	 * which is computed for the blocks of each query, instead of calling
+	 * Math.sin and Math.log for each vertex. The projected coordinates
+	 * differ by less than 1/32 pixel from the exact projection.
+	 */
+	public void setFastProjection(boolean enable) {
+		mFastProjection = enable;
+	}
+
+	/**
+	 * Decode the blocks of one tile in parallel when the tile covers at
+	 * least {@link #PARALLEL_MIN_BLOCKS} blocks, i.e. at zoom levels below
+	 * the base zoom level of a sub-file. The elements are passed to the
+	 * ITileDataSink in the same order as when decoded serially.
+	 * <p>
+	 * The querying thread takes part in decoding, so the executor can be
+	 * shared with other work, e.g. a ForkJoinPool or the executor of the
+	 * TileLoaderPool, without waiting for jobs it has not started. Each
+	 * data source opens up to 'parallelism - 1' additional readers of the
+	 * map file when it is not memory mapped.
+	 * 
+	 * @param executor
+	 *            executor for decoding blocks, null to disable.
+	 * @param parallelism
+	 *            maximum number of threads decoding blocks of one tile,
+	 *            including the querying thread.
+	 */
+	public void setBlockExecutor(Executor executor, int parallelism) {
+		if (executor != null && parallelism < 2)
+			throw new IllegalArgumentException("parallelism < 2");
+
+		mBlockExecutor = executor;
+		mBlockParallelism = parallelism;
+	}
+
+	/**
+	 * Keep the decoded elements of tiles up to 'maxZoom' in the sidecar
+	 * file 'file', e.g. the map file name with '.overview' appended. Tiles
+	 * are added when they are first loaded or by
+	 * {@link #buildOverviewCache()}. The cache is cleared when the date or
+	 * size of the map file changes. Must be set before {@link #open()}.
+	 * <p>
+	 * Coordinates are stored with 1/16 pixel precision.
+	 * 
+	 * @param file
+	 *            the cache file, null to disable.
+	 * @param maxZoom
+	 *            maximum zoom level of cached tiles.
+	 */
+	public void setOverviewCache(File file, int maxZoom) {
+		mOverviewFile = file;
+		mOverviewMaxZoom = maxZoom;
+	}
+
+	/**
+	 * Load all tiles of the map up to the maximum zoom level of the
+	 * overview cache which are not cached yet.
+	 * 
+	 * @return the number of added tiles.
+	 */
+	public int buildOverviewCache() {
+		if (mOverviewCache == null)
+			return 0;
+
+		ITileDataSink sink = new ITileDataSink() {
+			@Override
+			public void process(MapElement element) {
+			}
+
+			@Override
+			public void setTileImage(Bitmap bitmap) {
+			}
+
+			@Override
+			public void completed(QueryResult result) {
+			}
+		};
+
+		ITileDataSource db = getDataSource();
+		if (db == null)
+			return 0;
+
+		BoundingBox bbox = fileInfo.boundingBox;
+		double x1 = MercatorProjection.longitudeToX(bbox.getMinLongitude());
+		double x2 = MercatorProjection.longitudeToX(bbox.getMaxLongitude());
+		double y1 = MercatorProjection.latitudeToY(bbox.getMaxLatitude());
+		double y2 = MercatorProjection.latitudeToY(bbox.getMinLatitude());
+
+		int added = mOverviewCache.size();
+
+		for (int z = 0; z <= mOverviewMaxZoom; z++) {
+			for (int y = clamp(y1, z), ymax = clamp(y2, z); y <= ymax; y++) {
+				for (int x = clamp(x1, z), xmax = clamp(x2, z); x <= xmax; x++) {
+					MapTile tile = new MapTile(null, x, y, z);
+					if (!mOverviewCache.contains(tile))
+						db.query(tile, sink);
+				}
+			}
+		}
+		db.destroy();
+
+		return mOverviewCache.size() - added;
+	}
+
+	private static int clamp(double pos, int zoomLevel) {
+		int max = (1 << zoomLevel) - 1;
+		return Math.max(0, Math.min(max, (int) (pos * (1 << zoomLevel))));
+	}
+
 	public boolean setMapFile(String filename) {
 		setOption("file", filename);
 
@@ -95,10 +244,24 @@ public class MapFileTileSource extends TileSource {
 			}
 			fileInfo = fileHeader.getMapFileInfo();
 			mapFile = file;
-			databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+
+			if (mMemoryMapped) {
+				mMappedFile = new MappedFile(file);
+				databaseIndexCache = new IndexCache(mMappedFile);
+			} else {
+				databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+			}
 
 			experimental = fileInfo.fileVersion == 4;
 
+			if (mOverviewFile != null) {
+				try {
+					mOverviewCache = new OverviewCache(mOverviewFile, mOverviewMaxZoom, fileInfo);
+				} catch (IOException e) {
+					log.warn("overview cache: " + e.getMessage());
+				}
+			}
+
 			log.debug("File version: " + fileInfo.fileVersion);
 			return OpenResult.SUCCESS;
 		} catch (IOException e) {
@@ -123,6 +286,7 @@ public class MapFileTileSource extends TileSource {
 	public void close() {
 		IOUtils.closeQuietly(mInputFile);
 		mInputFile = null;
+		mMappedFile = null;
 		fileHeader = null;
 		fileInfo = null;
 		mapFile = null;
@@ -131,6 +295,11 @@ public class MapFileTileSource extends TileSource {
 			databaseIndexCache.destroy();
 			databaseIndexCache = null;
 		}
+
+		if (mOverviewCache != null) {
+			mOverviewCache.close();
+			mOverviewCache = null;
+		}
 	}
 
 	public MapInfo getMapInfo() {
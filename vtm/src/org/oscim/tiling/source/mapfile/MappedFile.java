@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of a map file, shared by all MapDatabase
+ * instances of a MapFileTileSource.
+ *
+ * A single mapping is limited to 2GB, so the file is split into chunks.
+ * Chunks overlap by the maximum block size so that every block (and index
+ * block) can be read from the chunk that contains its start address.
+ *
+ * Only absolute get methods are used on the shared buffers, so they can
+ * be read concurrently without locking.
+ */
+class MappedFile {
+	/** Start address distance of two chunks. */
+	static final long CHUNK_SIZE = 1 << 30;
+
+	/** Overlap of a chunk with the following chunk. */
+	private static final long CHUNK_OVERLAP = AbstractReadBuffer.MAXIMUM_BUFFER_SIZE;
+
+	private final ByteBuffer[] mChunks;
+	private final long mSize;
+
+	MappedFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			mSize = channel.size();
+
+			int numChunks = (int) ((mSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			mChunks = new ByteBuffer[Math.max(numChunks, 1)];
+
+			for (int i = 0; i < numChunks; i++) {
+				long start = i * CHUNK_SIZE;
+				long length = Math.min(mSize - start, CHUNK_SIZE + CHUNK_OVERLAP);
+				mChunks[i] = channel.map(MapMode.READ_ONLY, start, length);
+			}
+			if (numChunks == 0)
+				mChunks[0] = ByteBuffer.allocate(0);
+		} finally {
+			/* the mapping stays valid after the channel is closed */
+			in.close();
+		}
+	}
+
+	long size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns a view on 'length' bytes at 'address' that starts at
+	 * position 0, or null when the range is outside of the file.
+	 */
+	ByteBuffer slice(long address, int length) {
+		if (address < 0 || length < 0 || address + length > mSize)
+			return null;
+
+		int chunk = (int) (address / CHUNK_SIZE);
+		int offset = (int) (address - chunk * CHUNK_SIZE);
+
+		ByteBuffer buf = mChunks[chunk].duplicate();
+		if (offset + length > buf.capacity())
+			return null;
+
+		buf.limit(offset + length);
+		buf.position(offset);
+		return buf.slice();
+	}
+
+	/**
+	 * Converts five bytes at 'address' to an unsigned long.
+	 * <p>
+	 * The byte order is big-endian.
+	 *
+	 * @return the long value or -1 when address is outside of the file.
+	 */
+	long getFiveBytesLong(long address) {
+		if (address < 0 || address + 5 > mSize)
+			return -1;
+
+		int chunk = (int) (address / CHUNK_SIZE);
+		int offset = (int) (address - chunk * CHUNK_SIZE);
+		ByteBuffer buf = mChunks[chunk];
+
+		return (buf.get(offset) & 0xffL) << 32
+		        | (buf.get(offset + 1) & 0xffL) << 24
+		        | (buf.get(offset + 2) & 0xffL) << 16
+		        | (buf.get(offset + 3) & 0xffL) << 8
+		        | (buf.get(offset + 4) & 0xffL);
+	}
+}
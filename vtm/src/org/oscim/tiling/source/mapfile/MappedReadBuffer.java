@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import org.oscim.core.StringPool;
+
+/**
+ * Decodes blocks directly from a {@link MappedFile} instead of copying
+ * them into a byte array first.
+ */
+class MappedReadBuffer extends AbstractReadBuffer {
+	private static final String CHARSET_UTF8 = "UTF-8";
+	private static final Logger LOG = Logger.getLogger(MappedReadBuffer.class.getName());
+
+	private final MappedFile mFile;
+
+	/** view on the current block */
+	private ByteBuffer mBuffer;
+
+	/** temporary storage for string decoding */
+	private byte[] mStringBuffer = new byte[64];
+
+	MappedReadBuffer(MappedFile file) {
+		mFile = file;
+	}
+
+	@Override
+	boolean readFromFile(long address, int length) {
+		if (length > MAXIMUM_BUFFER_SIZE) {
+			LOG.warning("invalid read length: " + length);
+			return false;
+		}
+		mBuffer = mFile.slice(address, length);
+		mBufferPosition = 0;
+
+		return mBuffer != null;
+	}
+
+	@Override
+	public byte readByte() {
+		return mBuffer.get(mBufferPosition++);
+	}
+
+	@Override
+	public int readInt() {
+		int pos = mBufferPosition;
+		mBufferPosition += 4;
+		return mBuffer.getInt(pos);
+	}
+
+	@Override
+	public long readLong() {
+		int pos = mBufferPosition;
+		mBufferPosition += 8;
+		return mBuffer.getLong(pos);
+	}
+
+	@Override
+	public int readShort() {
+		int pos = mBufferPosition;
+		mBufferPosition += 2;
+		return mBuffer.getShort(pos);
+	}
+
+	@Override
+	public int readSignedInt() {
+		ByteBuffer data = mBuffer;
+		int pos = mBufferPosition;
+		int value = 0;
+		int shift = 0;
+		byte b;
+
+		/* continuation bit set: 7 bits of data */
+		while (((b = data.get(pos++)) & 0x80) != 0) {
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		mBufferPosition = pos;
+
+		/* last byte: sign bit and 6 bits of data */
+		int flag = ((b & 0x40) >> 6);
+		value |= (b & 0x3f) << shift;
+
+		return (value ^ -flag) + flag;
+	}
+
+	@Override
+	public void readSignedInt(int[] values, int length) {
+		for (int i = 0; i < length; i++)
+			values[i] = readSignedInt();
+	}
+
+	@Override
+	public int readUnsignedInt() {
+		ByteBuffer data = mBuffer;
+		int pos = mBufferPosition;
+		int value = 0;
+		int shift = 0;
+		byte b;
+
+		while (((b = data.get(pos++)) & 0x80) != 0) {
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		mBufferPosition = pos;
+
+		return value | (b & 0x7f) << shift;
+	}
+
+	/**
+	 * Bulk copy 'length' bytes at the current position to mStringBuffer.
+	 */
+	private void readStringBytes(int length) {
+		if (mStringBuffer.length < length)
+			mStringBuffer = new byte[length];
+
+		/* mBuffer is a slice owned by this reader, absolute reads do
+		 * not depend on its position */
+		mBuffer.position(mBufferPosition);
+		mBuffer.get(mStringBuffer, 0, length);
+		mBufferPosition += length;
+	}
+
+	@Override
+	public String readInternedString(int stringLength) {
+		if (stringLength > 0 && mBufferPosition + stringLength <= mBuffer.limit()) {
+			readStringBytes(stringLength);
+			return StringPool.intern(mStringBuffer, 0, stringLength);
+		}
+		LOG.warning("invalid string length: " + stringLength);
+		return null;
+	}
+
+	@Override
+	public String readUTF8EncodedString(int stringLength) {
+		if (stringLength > 0 && mBufferPosition + stringLength <= mBuffer.limit()) {
+			readStringBytes(stringLength);
+			try {
+				return new String(mStringBuffer, 0, stringLength, CHARSET_UTF8);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		LOG.warning("invalid string length: " + stringLength);
+		return null;
+	}
+
+	@Override
+	int getBufferSize() {
+		return mBuffer.limit();
+	}
+
+	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
+
+	@Override
+	int skipWays(int queryTileBitmask, int elements) {
+		ByteBuffer data = mBuffer;
+		int pos = mBufferPosition;
+		int cnt = elements;
+
+		lastTagPosition = -1;
+
+		while (cnt > 0) {
+			// read way size (unsigned int)
+			int skip = 0;
+			int shift = 0;
+			byte b;
+			while (((b = data.get(pos++)) & 0x80) != 0) {
+				skip |= (b & 0x7f) << shift;
+				shift += 7;
+			}
+			skip |= (b & 0x7f) << shift;
+
+			// invalid way size
+			if (skip < 0) {
+				mBufferPosition = pos;
+				return -1;
+			}
+
+			// check if way matches queryTileBitmask
+			if ((data.getShort(pos) & queryTileBitmask) == 0) {
+
+				// remember last tags position
+				if ((data.get(pos + 2) & WAY_NUMBER_OF_TAGS_BITMASK) != 0)
+					lastTagPosition = pos + 2;
+
+				pos += skip;
+				cnt--;
+			} else {
+				pos += 2;
+				break;
+			}
+		}
+		mBufferPosition = pos;
+		return cnt;
+	}
+}
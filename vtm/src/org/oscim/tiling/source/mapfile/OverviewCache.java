@@ -0,0 +1,384 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.source.mapfile.header.MapFileInfo;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sidecar file of a map file which stores the decoded elements of low
+ * zoom tiles, so that they can be replayed without reading and
+ * simplifying the blocks of the map file again.
+ * <p>
+ * The file starts with a header that holds the date and size of the map
+ * file, a cache with a different header is cleared on open. Tiles are
+ * appended as records of tile key, length and data. Coordinates are
+ * stored as varint deltas in 1/{@link #COORD_SCALE} pixel, tags of the map
+ * file header as index into its tag tables.
+ */
+class OverviewCache {
+	static final Logger log = LoggerFactory.getLogger(OverviewCache.class);
+
+	private static final String MAGIC = "vtm overview";
+	private static final int VERSION = 1;
+
+	/** coordinates are stored in 1/COORD_SCALE pixel */
+	static final float COORD_SCALE = 16;
+
+	private static final int HEADER_SIZE = MAGIC.length() + 4 + 8 + 8;
+
+	/** tile key + data length */
+	private static final int RECORD_HEADER_SIZE = 8 + 4;
+
+	private static final GeometryType[] TYPES = GeometryType.values();
+
+	private final RandomAccessFile mFile;
+	private final int mMaxZoom;
+
+	/** record offsets by tile key */
+	private final HashMap<Long, Long> mIndex = new HashMap<Long, Long>();
+
+	/** tags of the map file header, and their position */
+	private final Tag[] mTags;
+	private final IdentityHashMap<Tag, Integer> mTagIds = new IdentityHashMap<Tag, Integer>();
+
+	private long mEnd;
+
+	/**
+	 * @param file
+	 *            the cache file, created when it does not exist.
+	 * @param maxZoom
+	 *            maximum zoom level of tiles to cache.
+	 * @param info
+	 *            map file info of the cached map file.
+	 */
+	OverviewCache(File file, int maxZoom, MapFileInfo info) throws IOException {
+		mMaxZoom = maxZoom;
+
+		Tag[] poiTags = info.poiTags;
+		Tag[] wayTags = info.wayTags;
+		mTags = new Tag[poiTags.length + wayTags.length];
+		System.arraycopy(poiTags, 0, mTags, 0, poiTags.length);
+		System.arraycopy(wayTags, 0, mTags, poiTags.length, wayTags.length);
+		for (int i = mTags.length - 1; i >= 0; i--)
+			mTagIds.put(mTags[i], Integer.valueOf(i));
+
+		mFile = new RandomAccessFile(file, "rw");
+		try {
+			if (!readIndex(info)) {
+				log.debug("new overview cache " + file);
+				mIndex.clear();
+				mFile.setLength(0);
+				mFile.seek(0);
+				mFile.write(MAGIC.getBytes("UTF-8"));
+				mFile.writeInt(VERSION);
+				mFile.writeLong(info.mapDate);
+				mFile.writeLong(info.fileSize);
+				mEnd = HEADER_SIZE;
+			}
+		} catch (IOException e) {
+			IOUtils.closeQuietly(mFile);
+			throw e;
+		}
+	}
+
+	/** @return false when the header does not match the map file */
+	private boolean readIndex(MapFileInfo info) throws IOException {
+		long length = mFile.length();
+		if (length < HEADER_SIZE)
+			return false;
+
+		byte[] magic = new byte[MAGIC.length()];
+		mFile.readFully(magic);
+		if (!MAGIC.equals(new String(magic, "UTF-8"))
+		        || mFile.readInt() != VERSION
+		        || mFile.readLong() != info.mapDate
+		        || mFile.readLong() != info.fileSize)
+			return false;
+
+		long pos = HEADER_SIZE;
+		while (pos + RECORD_HEADER_SIZE <= length) {
+			mFile.seek(pos);
+			long key = mFile.readLong();
+			int size = mFile.readInt();
+			if (size < 0 || pos + RECORD_HEADER_SIZE + size > length)
+				break;
+
+			mIndex.put(Long.valueOf(key), Long.valueOf(pos));
+			pos += RECORD_HEADER_SIZE + size;
+		}
+
+		/* drop a partially written record */
+		if (pos != length) {
+			log.debug("truncate overview cache at " + pos);
+			mFile.setLength(pos);
+		}
+		mEnd = pos;
+		return true;
+	}
+
+	/** @return true when tiles at the zoom level of 'tile' are cached */
+	boolean isCached(Tile tile) {
+		return tile.zoomLevel <= mMaxZoom;
+	}
+
+	/** @return number of cached tiles */
+	synchronized int size() {
+		return mIndex.size();
+	}
+
+	synchronized boolean contains(Tile tile) {
+		return mIndex.containsKey(Long.valueOf(key(tile)));
+	}
+
+	static long key(Tile tile) {
+		return ((long) tile.zoomLevel << 56)
+		        | ((long) tile.tileX << 28)
+		        | tile.tileY;
+	}
+
+	/**
+	 * Read the record of 'tile' into 'reader'.
+	 *
+	 * @return false when the tile is not cached.
+	 */
+	private synchronized boolean read(Tile tile, Reader reader) throws IOException {
+		Long pos = mIndex.get(Long.valueOf(key(tile)));
+		if (pos == null)
+			return false;
+
+		mFile.seek(pos.longValue() + 8);
+		int size = mFile.readInt();
+		if (reader.data.length < size)
+			reader.data = new byte[size];
+
+		mFile.readFully(reader.data, 0, size);
+		return true;
+	}
+
+	/**
+	 * Store the recorded elements of 'tile'. Nothing is written when the
+	 * tile is already cached.
+	 */
+	void put(Tile tile, ElementRecorder elements) throws IOException {
+		Writer w = new Writer();
+		w.writeVarint(elements.size());
+		for (int i = 0, n = elements.size(); i < n; i++)
+			w.writeElement(elements.get(i));
+
+		Long key = Long.valueOf(key(tile));
+
+		synchronized (this) {
+			if (mIndex.containsKey(key))
+				return;
+
+			mFile.seek(mEnd);
+			mFile.writeLong(key.longValue());
+			mFile.writeInt(w.pos);
+			mFile.write(w.data, 0, w.pos);
+
+			mIndex.put(key, Long.valueOf(mEnd));
+			mEnd += RECORD_HEADER_SIZE + w.pos;
+		}
+	}
+
+	synchronized void close() {
+		IOUtils.closeQuietly(mFile);
+		mIndex.clear();
+	}
+
+	/**
+	 * Decodes cached tiles. Each MapDatabase has its own Reader.
+	 */
+	final class Reader {
+		byte[] data = new byte[8192];
+		int pos;
+
+		private final MapElement mElem = new MapElement();
+
+		/** @return true when this Reader reads from 'cache' */
+		boolean isReaderOf(OverviewCache cache) {
+			return OverviewCache.this == cache;
+		}
+
+		/**
+		 * Pass the cached elements of 'tile' to 'sink'.
+		 *
+		 * @return false when the tile is not cached.
+		 */
+		boolean query(Tile tile, ITileDataSink sink) throws IOException {
+			if (!read(tile, this))
+				return false;
+
+			pos = 0;
+			MapElement e = mElem;
+
+			for (int i = readVarint(); i > 0; i--) {
+				e.clear();
+				e.type = TYPES[data[pos++]];
+				e.layer = readVarint();
+
+				e.tags.clear();
+				for (int t = readVarint(); t > 0; t--)
+					e.tags.add(readTag());
+
+				int numIndex = readVarint();
+				short[] index = e.ensureIndexSize(numIndex, false);
+				for (int j = 0; j < numIndex; j++)
+					index[j] = (short) readVarint();
+				if (numIndex < index.length)
+					index[numIndex] = -1;
+				e.indexPos = Math.max(0, numIndex - 1);
+
+				int numPoints = readVarint();
+				float[] points = e.ensurePointSize(numPoints >> 1, false);
+				int x = 0, y = 0;
+				for (int j = 0; j < numPoints; j += 2) {
+					x += readSignedVarint();
+					y += readSignedVarint();
+					points[j] = x / COORD_SCALE;
+					points[j + 1] = y / COORD_SCALE;
+				}
+				e.pointPos = numPoints;
+
+				sink.process(e);
+			}
+			return true;
+		}
+
+		private Tag readTag() throws UnsupportedEncodingException {
+			int id = readVarint();
+			if (id > 0)
+				return mTags[id - 1];
+
+			String key = readString();
+			return new Tag(key, readString(), false);
+		}
+
+		private String readString() throws UnsupportedEncodingException {
+			int len = readVarint();
+			String s = new String(data, pos, len, "UTF-8");
+			pos += len;
+			return s;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[pos++];
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+		}
+
+		private int readSignedVarint() {
+			int v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+	}
+
+	/** encodes the elements of one tile */
+	private final class Writer {
+		byte[] data = new byte[8192];
+		int pos;
+
+		void writeElement(MapElement e) throws UnsupportedEncodingException {
+			ensure(1);
+			data[pos++] = (byte) e.type.ordinal();
+			writeVarint(e.layer);
+
+			writeVarint(e.tags.numTags);
+			for (int i = 0; i < e.tags.numTags; i++) {
+				Tag tag = e.tags.tags[i];
+				Integer id = mTagIds.get(tag);
+				if (id != null) {
+					writeVarint(id.intValue() + 1);
+				} else {
+					writeVarint(0);
+					writeString(tag.key);
+					writeString(tag.value);
+				}
+			}
+
+			/* index is terminated by -1 or by its length, not used for points */
+			int numIndex = 0;
+			if (!e.isPoint())
+				while (numIndex < e.index.length && e.index[numIndex] >= 0)
+					numIndex++;
+
+			writeVarint(numIndex);
+			for (int i = 0; i < numIndex; i++)
+				writeVarint(e.index[i]);
+
+			writeVarint(e.pointPos);
+			int x = 0, y = 0;
+			for (int i = 0; i < e.pointPos; i += 2) {
+				int px = Math.round(e.points[i] * COORD_SCALE);
+				int py = Math.round(e.points[i + 1] * COORD_SCALE);
+				writeSignedVarint(px - x);
+				writeSignedVarint(py - y);
+				x = px;
+				y = py;
+			}
+		}
+
+		void writeString(String s) throws UnsupportedEncodingException {
+			byte[] b = s.getBytes("UTF-8");
+			writeVarint(b.length);
+			ensure(b.length);
+			System.arraycopy(b, 0, data, pos, b.length);
+			pos += b.length;
+		}
+
+		void writeVarint(int v) {
+			ensure(5);
+			while ((v & ~0x7f) != 0) {
+				data[pos++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			data[pos++] = (byte) v;
+		}
+
+		void writeSignedVarint(int v) {
+			writeVarint((v << 1) ^ (v >> 31));
+		}
+
+		private void ensure(int size) {
+			if (pos + size <= data.length)
+				return;
+
+			byte[] tmp = new byte[Math.max(data.length * 2, pos + size)];
+			System.arraycopy(data, 0, tmp, 0, pos);
+			data = tmp;
+		}
+	}
+}
@@ -21,23 +21,16 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.util.logging.Logger;
 
-import org.oscim.core.Tag;
-import org.oscim.core.TagSet;
+import org.oscim.core.StringPool;
 
 /**
  * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
  */
-public class ReadBuffer {
+public class ReadBuffer extends AbstractReadBuffer {
 	private static final String CHARSET_UTF8 = "UTF-8";
 	private static final Logger LOG = Logger.getLogger(ReadBuffer.class.getName());
 
-	/**
-	 * Maximum buffer size which is supported by this implementation.
-	 */
-	static final int MAXIMUM_BUFFER_SIZE = 8000000;
-
 	private byte[] mBufferData;
-	private int mBufferPosition;
 	private final RandomAccessFile mInputFile;
 
 	ReadBuffer(RandomAccessFile inputFile) {
@@ -49,6 +42,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the byte value.
 	 */
+	@Override
 	public byte readByte() {
 		return mBufferData[mBufferPosition++];
 	}
@@ -83,6 +77,24 @@ public class ReadBuffer {
 		return mInputFile.read(mBufferData, 0, length) == length;
 	}
 
+	/**
+	 * Reads the given amount of bytes at 'address' of the file into the read
+	 * buffer and resets the internal buffer position.
+	 * 
+	 * @param address
+	 *            the position in the file to read from.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	@Override
+	boolean readFromFile(long address, int length) throws IOException {
+		mInputFile.seek(address);
+		return readFromFile(length);
+	}
+
 	/**
 	 * Converts four bytes from the read buffer to a signed int.
 	 * <p>
@@ -90,6 +102,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the int value.
 	 */
+	@Override
 	public int readInt() {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
@@ -108,6 +121,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the long value.
 	 */
+	@Override
 	public long readLong() {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
@@ -131,6 +145,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the int value.
 	 */
+	@Override
 	public int readShort() {
 		mBufferPosition += 2;
 		return mBufferData[mBufferPosition - 2] << 8 | (mBufferData[mBufferPosition - 1] & 0xff);
@@ -145,6 +160,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the value.
 	 */
+	@Override
 	public int readSignedInt() {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
@@ -210,6 +226,7 @@ public class ReadBuffer {
 	 * @param length
 	 *            number of values to read
 	 */
+	@Override
 	public void readSignedInt(int[] values, int length) {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
@@ -276,6 +293,7 @@ public class ReadBuffer {
 	 * 
 	 * @return the int value.
 	 */
+	@Override
 	public int readUnsignedInt() {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
@@ -314,25 +332,6 @@ public class ReadBuffer {
 		        | ((data[pos + 4] & 0x7f) << 28);
 	}
 
-	/**
-	 * Decodes a variable amount of bytes from the read buffer to a string.
-	 * 
-	 * @return the UTF-8 decoded string (may be null).
-	 */
-	public String readUTF8EncodedString() {
-		return readUTF8EncodedString(readUnsignedInt());
-	}
-
-	/**
-	 * @return ...
-	 */
-	public int getPositionAndSkip() {
-		int pos = mBufferPosition;
-		int length = readUnsignedInt();
-		skipBytes(length);
-		return pos;
-	}
-
 	/**
 	 * Decodes the given amount of bytes from the read buffer to a string.
 	 * 
@@ -340,6 +339,7 @@ public class ReadBuffer {
 	 *            the length of the string in bytes.
 	 * @return the UTF-8 decoded string (may be null).
 	 */
+	@Override
 	public String readUTF8EncodedString(int stringLength) {
 		if (stringLength > 0 && mBufferPosition + stringLength <= mBufferData.length) {
 			mBufferPosition += stringLength;
@@ -355,73 +355,34 @@ public class ReadBuffer {
 	}
 
 	/**
-	 * Decodes a variable amount of bytes from the read buffer to a string.
+	 * Decodes the given amount of bytes from the read buffer to a string
+	 * from {@link StringPool}.
 	 * 
-	 * @param position
-	 *            buffer offset position of string
-	 * @return the UTF-8 decoded string (may be null).
-	 */
-	public String readUTF8EncodedStringAt(int position) {
-		int curPosition = mBufferPosition;
-		mBufferPosition = position;
-		String result = readUTF8EncodedString(readUnsignedInt());
-		mBufferPosition = curPosition;
-		return result;
-	}
-
-	/**
-	 * @return the current buffer position.
+	 * @param stringLength
+	 *            the length of the string in bytes.
+	 * @return the interned string (may be null).
 	 */
-	int getBufferPosition() {
-		return mBufferPosition;
+	@Override
+	public String readInternedString(int stringLength) {
+		if (stringLength > 0 && mBufferPosition + stringLength <= mBufferData.length) {
+			mBufferPosition += stringLength;
+			return StringPool.intern(mBufferData, mBufferPosition - stringLength, stringLength);
+		}
+		LOG.warning("invalid string length: " + stringLength);
+		return null;
 	}
 
 	/**
 	 * @return the current size of the read buffer.
 	 */
+	@Override
 	int getBufferSize() {
 		return mBufferData.length;
 	}
 
-	/**
-	 * Sets the buffer position to the given offset.
-	 * 
-	 * @param bufferPosition
-	 *            the buffer position.
-	 */
-	void setBufferPosition(int bufferPosition) {
-		mBufferPosition = bufferPosition;
-	}
-
-	/**
-	 * Skips the given number of bytes in the read buffer.
-	 * 
-	 * @param bytes
-	 *            the number of bytes to skip.
-	 */
-	void skipBytes(int bytes) {
-		mBufferPosition += bytes;
-	}
-
-	boolean readTags(TagSet tags, Tag[] wayTags, byte numberOfTags) {
-		tags.clear();
-
-		int maxTag = wayTags.length;
-
-		for (byte i = 0; i < numberOfTags; i++) {
-			int tagId = readUnsignedInt();
-			if (tagId < 0 || tagId >= maxTag) {
-				LOG.warning("invalid tag ID: " + tagId);
-				return true;
-			}
-			tags.add(wayTags[tagId]);
-		}
-		return true;
-	}
-
 	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
-	int lastTagPosition;
 
+	@Override
 	int skipWays(int queryTileBitmask, int elements) {
 		int pos = mBufferPosition;
 		byte[] data = mBufferData;
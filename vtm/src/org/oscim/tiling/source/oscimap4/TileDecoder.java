@@ -18,6 +18,7 @@ package org.oscim.tiling.source.oscimap4;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
@@ -25,11 +26,12 @@ import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.source.ITileDecoder;
 import org.oscim.tiling.source.PbfDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TileDecoder extends PbfDecoder {
+public class TileDecoder extends PbfDecoder implements ITileDecoder.BufferDecoder {
 	static final Logger log = LoggerFactory.getLogger(TileDecoder.class);
 
 	private static final int TAG_TILE_VERSION = 1;
@@ -86,6 +88,31 @@ public class TileDecoder extends PbfDecoder {
 		readUnsignedInt(is, buffer);
 		setInputStream(is);
 
+		return decode(tile, sink);
+	}
+
+	@Override
+	public boolean decode(Tile tile, ITileDataSink sink, ByteBuffer buf)
+	        throws IOException {
+
+		if (buf.remaining() < 4)
+			return false;
+
+		/* skip message length */
+		int position = buf.position();
+		buf.position(position + 4);
+		setInput(buf);
+		buf.position(position);
+
+		try {
+			return decode(tile, sink);
+		} finally {
+			/* do not keep the array of 'buf' */
+			setInputStream(null);
+		}
+	}
+
+	private boolean decode(Tile tile, ITileDataSink sink) throws IOException {
 		mTile = tile;
 		mMapDataSink = sink;
 
@@ -121,7 +148,7 @@ public class TileDecoder extends PbfDecoder {
 						          mTile, numKeys);
 						return false;
 					}
-					keys[curKey++] = decodeString();
+					keys[curKey++] = decodeInternedString();
 					break;
 
 				case TAG_TILE_TAG_VALUES:
@@ -130,7 +157,7 @@ public class TileDecoder extends PbfDecoder {
 						          mTile, numValues);
 						return false;
 					}
-					values[curValue++] = decodeString();
+					values[curValue++] = decodeInternedString();
 					break;
 
 				case TAG_TILE_NUM_TAGS:
@@ -20,6 +20,8 @@ import java.util.Arrays;
 
 import org.oscim.core.GeometryBuffer;
 import org.oscim.renderer.elements.VertexItem;
+import org.oscim.utils.geom.EarClipper;
+import org.oscim.utils.pool.Inlist;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +31,29 @@ public class Tessellator {
 	private static final int RESULT_VERTICES = 0;
 	private static final int RESULT_TRIANGLES = 1;
 
+	/**
+	 * Use libtess from 'vtm-jni'. When false, or when the native library
+	 * is not loaded, polygons are triangulated by {@link EarClipper}.
+	 * EarClipper does not add vertices at self-intersections.
+	 */
+	public static boolean USE_JNI = true;
+
+	private static final ThreadLocal<EarClipper> sEarClipper = new ThreadLocal<EarClipper>() {
+		@Override
+		protected EarClipper initialValue() {
+			return new EarClipper();
+		}
+	};
+
+	private static boolean useJni() {
+		return USE_JNI;
+	}
+
+	private static void jniFailed(UnsatisfiedLinkError e) {
+		log.debug("vtm-jni not available, use EarClipper: {}", e.getMessage());
+		USE_JNI = false;
+	}
+
 	/**
 	 * Special version for ExtrusionLayer to match indices with vertex
 	 * positions.
@@ -36,13 +61,22 @@ public class Tessellator {
 	public static int tessellate(float[] points, int ppos, int plen, short[] index,
 	        int ipos, int rings, int vertexOffset, VertexItem outTris) {
 
+		if (!useJni())
+			return tessellateJava(points, ppos, index, ipos, rings, vertexOffset, outTris);
+
 		int[] result = new int[2];
 
 		int numPoints = 0;
 		for (int i = 0; i < rings; i++)
 			numPoints += index[ipos + i];
 
-		long ctx = Tessellator.tessellate(points, ppos, index, ipos, rings, result);
+		long ctx;
+		try {
+			ctx = Tessellator.tessellate(points, ppos, index, ipos, rings, result);
+		} catch (UnsatisfiedLinkError e) {
+			jniFailed(e);
+			return tessellateJava(points, ppos, index, ipos, rings, vertexOffset, outTris);
+		}
 		if ((numPoints / 2) < result[RESULT_VERTICES]) {
 			log.debug("skip poly: " + Arrays.toString(result) + " " + numPoints);
 			Tessellator.tessFinish(ctx);
@@ -59,33 +93,8 @@ public class Tessellator {
 		                                           outTris.vertices,
 		                                           outTris.used)) > 0) {
 			int start = outTris.used;
-			int end = start + cnt;
-			short[] v = outTris.vertices;
-
-			for (int i = start; i < end; i++)
-				v[i] *= 2;
-
-			// when a ring has an odd number of points one (or rather two)
-			// additional vertices will be added. so the following rings
-			// needs extra offset
-			int shift = 0;
-			for (int i = 0, m = rings - 1; i < m; i++) {
-				shift += (index[ipos + i]);
-
-				// even number of points?
-				if (((index[ipos + i] >> 1) & 1) == 0)
-					continue;
-
-				for (int j = start; j < end; j++)
-					if (v[j] >= shift)
-						v[j] += 2;
-
-				shift += 2;
-			}
-
-			// shift by vertexOffset
-			for (int i = start; i < end; i++)
-				v[i] += vertexOffset;
+			toExtrusionIndices(outTris.vertices, start, start + cnt,
+			                   index, ipos, rings, vertexOffset);
 
 			outTris.used += cnt;
 			numIndices += cnt;
@@ -104,6 +113,57 @@ public class Tessellator {
 		return numIndices;
 	}
 
+	private static int tessellateJava(float[] points, int ppos, short[] index,
+	        int ipos, int rings, int vertexOffset, VertexItem outTris) {
+
+		if (outTris.used == VertexItem.SIZE)
+			outTris = VertexItem.pool.getNext(outTris);
+
+		int start = outTris.used;
+		int numIndices = sEarClipper.get().triangulate(points, ppos, index, ipos,
+		                                               rings, outTris, 0);
+
+		for (VertexItem it = outTris; it != null; it = it.next) {
+			toExtrusionIndices(it.vertices, start, it.used,
+			                   index, ipos, rings, vertexOffset);
+			start = 0;
+		}
+		return numIndices;
+	}
+
+	/**
+	 * Map indices of polygon points to the vertices of ExtrusionLayer
+	 * outlines.
+	 */
+	private static void toExtrusionIndices(short[] v, int start, int end,
+	        short[] index, int ipos, int rings, int vertexOffset) {
+
+		for (int i = start; i < end; i++)
+			v[i] *= 2;
+
+		// when a ring has an odd number of points one (or rather two)
+		// additional vertices will be added. so the following rings
+		// needs extra offset
+		int shift = 0;
+		for (int i = 0, m = rings - 1; i < m; i++) {
+			shift += (index[ipos + i]);
+
+			// even number of points?
+			if (((index[ipos + i] >> 1) & 1) == 0)
+				continue;
+
+			for (int j = start; j < end; j++)
+				if (v[j] >= shift)
+					v[j] += 2;
+
+			shift += 2;
+		}
+
+		// shift by vertexOffset
+		for (int i = start; i < end; i++)
+			v[i] += vertexOffset;
+	}
+
 	/**
 	 * Untested!
 	 */
@@ -160,6 +220,9 @@ public class Tessellator {
 	public static int tessellate(GeometryBuffer geom, float scale,
 	        VertexItem outPoints, VertexItem outTris, int vertexOffset) {
 
+		if (!useJni())
+			return tessellateJava(geom, scale, outPoints, outTris, vertexOffset, 0);
+
 		int numIndices = 0;
 		int indexPos = 0;
 		int pointPos = 0;
@@ -186,9 +249,17 @@ public class Tessellator {
 				geom.points[i + 1] = (int) (geom.points[i + 1] * s);
 			}
 
-			long ctx = Tessellator.tessellate(geom.points, pointPos,
-			                                  geom.index, indexPos,
-			                                  numRings, result);
+			long ctx;
+			try {
+				ctx = Tessellator.tessellate(geom.points, pointPos,
+				                             geom.index, indexPos,
+				                             numRings, result);
+			} catch (UnsatisfiedLinkError e) {
+				/* points of this polygon are scaled already */
+				jniFailed(e);
+				return tessellateJava(geom, s, outPoints, outTris, vertexOffset,
+				                      pointPos + numPoints);
+			}
 
 			if (result[RESULT_VERTICES] == 0 || result[RESULT_TRIANGLES] == 0) {
 				log.debug("ppos " + pointPos + " ipos:" + indexPos +
@@ -254,6 +325,68 @@ public class Tessellator {
 		return numIndices;
 	}
 
+	/**
+	 * @param scaled number of coordinates which are scaled already
+	 */
+	private static int tessellateJava(GeometryBuffer geom, float scale,
+	        VertexItem outPoints, VertexItem outTris, int vertexOffset, int scaled) {
+
+		EarClipper earClipper = sEarClipper.get();
+
+		int numIndices = 0;
+		int indexPos = 0;
+		int pointPos = 0;
+		int indexEnd = geom.index.length;
+		float[] points = geom.points;
+
+		for (int idx = 0; idx < indexEnd && geom.index[idx] > 0; idx++) {
+			indexPos = idx;
+
+			int numRings = 1;
+			int numPoints = geom.index[idx++];
+
+			for (; idx < indexEnd && geom.index[idx] > 0; idx++) {
+				numRings++;
+				numPoints += geom.index[idx];
+			}
+
+			int pointEnd = pointPos + numPoints;
+
+			for (int i = Math.max(pointPos, scaled); i < pointEnd; i++)
+				points[i] = (int) (points[i] * scale);
+
+			int cnt = earClipper.triangulate(points, pointPos, geom.index, indexPos,
+			                                 numRings, outTris, vertexOffset);
+			if (cnt == 0) {
+				log.debug("ppos " + pointPos + " ipos:" + indexPos +
+				        " rings:" + numRings + " " + Arrays.toString(geom.index));
+				pointPos = pointEnd;
+				continue;
+			}
+			numIndices += cnt;
+			outTris = Inlist.last(outTris);
+
+			/* add all points as vertices, indices refer to them */
+			for (int i = pointPos; i < pointEnd; i++) {
+				if (outPoints.used == VertexItem.SIZE)
+					outPoints = VertexItem.pool.getNext(outPoints);
+
+				outPoints.vertices[outPoints.used++] = (short) points[i];
+			}
+			vertexOffset += numPoints >> 1;
+			pointPos = pointEnd;
+
+			if (idx >= indexEnd || geom.index[idx] < 0)
+				break;
+		}
+
+		if (vertexOffset > Short.MAX_VALUE) {
+			log.debug("too much !!!" + Arrays.toString(geom.index));
+		}
+
+		return numIndices;
+	}
+
 	/**
 	 * @param points an array of x,y coordinates
 	 * @param pos position in points array
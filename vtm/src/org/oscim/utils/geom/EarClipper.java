@@ -0,0 +1,834 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.geom;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.oscim.renderer.elements.VertexItem;
+
+/**
+ * Polygon triangulation by ear clipping. Holes are joined to the outline
+ * by bridges, large polygons use a z-order index to find points within
+ * ears. Based on the algorithm of earcut by Mapbox (ISC License).
+ *
+ * Unlike the libtess based Tessellator no vertices are added: indices
+ * refer to the input points. Triangles have the winding order of the
+ * outline.
+ *
+ * Instances hold temporary nodes and are not thread-safe.
+ */
+public class EarClipper {
+
+	/** use z-order index for polygons with more points */
+	private final static int MIN_HASHED_POINTS = 80;
+
+	static final class Node {
+		/** index of vertex in input points */
+		int i;
+		double x, y;
+		/** z-order curve value */
+		int z;
+		boolean steiner;
+
+		Node prev, next;
+		Node prevZ, nextZ;
+	}
+
+	private final static Comparator<Node> COMPARE_X = new Comparator<Node>() {
+		@Override
+		public int compare(Node a, Node b) {
+			return Double.compare(a.x, b.x);
+		}
+	};
+
+	private Node[] mNodes = new Node[64];
+	private int mNumNodes;
+
+	private Node[] mHoles = new Node[8];
+
+	private double mMinX, mMinY, mInvSize;
+
+	/** reverse triangles to keep winding of the outline */
+	private boolean mReverse;
+
+	private VertexItem mOut;
+	private int mOffset;
+	private int mNumIndices;
+
+	/**
+	 * Triangulate a polygon.
+	 *
+	 * @param points x,y coordinates
+	 * @param ppos position of the first coordinate in 'points'
+	 * @param index number of coordinates of the outline, followed by the
+	 *            number of coordinates of each hole
+	 * @param ipos position of outline in 'index'
+	 * @param rings number of rings: outline + holes
+	 * @param out indices of triangle vertices are added to this item and
+	 *            following items from VertexItem.pool
+	 * @param vertexOffset added to the indices. Indices of the points of
+	 *            all rings are counted from 'ppos'.
+	 * @return number of indices added
+	 */
+	public int triangulate(float[] points, int ppos, short[] index, int ipos,
+	        int rings, VertexItem out, int vertexOffset) {
+
+		mOut = out;
+		mOffset = vertexOffset;
+		mNumIndices = 0;
+		mNumNodes = 0;
+
+		int outerLen = index[ipos];
+		Node outer = linkedList(points, ppos, ppos, outerLen, true);
+
+		if (outer != null && outer.next != outer.prev) {
+
+			if (rings > 1)
+				outer = eliminateHoles(points, ppos, index, ipos, rings, outer);
+
+			mInvSize = 0;
+			if (outerLen > MIN_HASHED_POINTS * 2) {
+				double minX, minY, maxX, maxY;
+				minX = maxX = points[ppos];
+				minY = maxY = points[ppos + 1];
+
+				for (int i = ppos + 2, end = ppos + outerLen; i < end; i += 2) {
+					double x = points[i];
+					double y = points[i + 1];
+					if (x < minX)
+						minX = x;
+					if (y < minY)
+						minY = y;
+					if (x > maxX)
+						maxX = x;
+					if (y > maxY)
+						maxY = y;
+				}
+				mMinX = minX;
+				mMinY = minY;
+				double size = Math.max(maxX - minX, maxY - minY);
+				mInvSize = (size != 0) ? 32767 / size : 0;
+			}
+			earcutLinked(outer, 0);
+		}
+
+		/* release references to nodes and output */
+		for (int i = 0; i < mNumNodes; i++) {
+			Node n = mNodes[i];
+			n.prev = n.next = n.prevZ = n.nextZ = null;
+		}
+		mOut = null;
+
+		return mNumIndices;
+	}
+
+	private void addIndex(int i) {
+		VertexItem out = mOut;
+		if (out.used == VertexItem.SIZE)
+			mOut = out = VertexItem.pool.getNext(out);
+
+		out.vertices[out.used++] = (short) (i + mOffset);
+	}
+
+	private void addTriangle(Node a, Node b, Node c) {
+		if (mReverse) {
+			addIndex(c.i);
+			addIndex(b.i);
+			addIndex(a.i);
+		} else {
+			addIndex(a.i);
+			addIndex(b.i);
+			addIndex(c.i);
+		}
+		mNumIndices += 3;
+	}
+
+	private Node createNode(int i, double x, double y) {
+		if (mNumNodes == mNodes.length)
+			mNodes = Arrays.copyOf(mNodes, mNumNodes * 2);
+
+		Node n = mNodes[mNumNodes];
+		if (n == null)
+			n = mNodes[mNumNodes] = new Node();
+
+		mNumNodes++;
+
+		n.i = i;
+		n.x = x;
+		n.y = y;
+		n.z = 0;
+		n.steiner = false;
+		n.prev = n.next = n.prevZ = n.nextZ = null;
+		return n;
+	}
+
+	/**
+	 * Create a circular doubly linked list from polygon points in the
+	 * specified winding order.
+	 */
+	private Node linkedList(float[] points, int ppos, int start, int len, boolean clockwise) {
+		int end = start + len;
+		Node last = null;
+
+		boolean inOrder = (clockwise == (signedArea(points, start, end) > 0));
+
+		if (inOrder) {
+			for (int i = start; i < end; i += 2)
+				last = insertNode((i - ppos) >> 1, points[i], points[i + 1], last);
+		} else {
+			for (int i = end - 2; i >= start; i -= 2)
+				last = insertNode((i - ppos) >> 1, points[i], points[i + 1], last);
+		}
+
+		if (clockwise)
+			mReverse = !inOrder;
+
+		if (last != null && equals(last, last.next)) {
+			removeNode(last);
+			last = last.next;
+		}
+		return last;
+	}
+
+	/** eliminate colinear or duplicate points */
+	private static Node filterPoints(Node start, Node end) {
+		if (start == null)
+			return start;
+		if (end == null)
+			end = start;
+
+		Node p = start;
+		boolean again;
+		do {
+			again = false;
+
+			if (!p.steiner && (equals(p, p.next) || area(p.prev, p, p.next) == 0)) {
+				removeNode(p);
+				p = end = p.prev;
+				if (p == p.next)
+					break;
+				again = true;
+			} else {
+				p = p.next;
+			}
+		} while (again || p != end);
+
+		return end;
+	}
+
+	/** main ear slicing loop which triangulates a polygon */
+	private void earcutLinked(Node ear, int pass) {
+		if (ear == null)
+			return;
+
+		/* interlink polygon nodes in z-order */
+		if (pass == 0 && mInvSize != 0)
+			indexCurve(ear);
+
+		Node stop = ear;
+		Node prev, next;
+
+		/* iterate through ears, slicing them one by one */
+		while (ear.prev != ear.next) {
+			prev = ear.prev;
+			next = ear.next;
+
+			if (mInvSize != 0 ? isEarHashed(ear) : isEar(ear)) {
+				addTriangle(prev, ear, next);
+
+				removeNode(ear);
+
+				/* skipping the next vertex leads to less sliver triangles */
+				ear = next.next;
+				stop = next.next;
+				continue;
+			}
+
+			ear = next;
+
+			/* if we looped through the whole remaining polygon and can't
+			 * find any more ears */
+			if (ear == stop) {
+				if (pass == 0) {
+					/* try filtering points and slicing again */
+					earcutLinked(filterPoints(ear, null), 1);
+				} else if (pass == 1) {
+					/* if this didn't work, try curing all small
+					 * self-intersections locally */
+					ear = cureLocalIntersections(filterPoints(ear, null));
+					earcutLinked(ear, 2);
+				} else if (pass == 2) {
+					/* as a last resort, try splitting the remaining
+					 * polygon into two */
+					splitEarcut(ear);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * check whether a polygon node forms a valid ear with adjacent nodes
+	 */
+	private static boolean isEar(Node ear) {
+		Node a = ear.prev, b = ear, c = ear.next;
+
+		/* reflex, can't be an ear */
+		if (area(a, b, c) >= 0)
+			return false;
+
+		double ax = a.x, bx = b.x, cx = c.x;
+		double ay = a.y, by = b.y, cy = c.y;
+
+		double x0 = Math.min(ax, Math.min(bx, cx));
+		double y0 = Math.min(ay, Math.min(by, cy));
+		double x1 = Math.max(ax, Math.max(bx, cx));
+		double y1 = Math.max(ay, Math.max(by, cy));
+
+		/* now make sure we don't have other points inside the potential
+		 * ear */
+		for (Node p = c.next; p != a; p = p.next) {
+			if (p.x >= x0 && p.x <= x1 && p.y >= y0 && p.y <= y1
+			        && pointInTriangle(ax, ay, bx, by, cx, cy, p.x, p.y)
+			        && area(p.prev, p, p.next) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isEarHashed(Node ear) {
+		Node a = ear.prev, b = ear, c = ear.next;
+
+		if (area(a, b, c) >= 0)
+			return false;
+
+		double ax = a.x, bx = b.x, cx = c.x;
+		double ay = a.y, by = b.y, cy = c.y;
+
+		/* triangle bbox */
+		double x0 = Math.min(ax, Math.min(bx, cx));
+		double y0 = Math.min(ay, Math.min(by, cy));
+		double x1 = Math.max(ax, Math.max(bx, cx));
+		double y1 = Math.max(ay, Math.max(by, cy));
+
+		/* z-order range for the current triangle bbox */
+		int minZ = zOrder(x0, y0);
+		int maxZ = zOrder(x1, y1);
+
+		Node p = ear.prevZ;
+		Node n = ear.nextZ;
+
+		/* look for points inside the triangle in both directions */
+		while (p != null && p.z >= minZ && n != null && n.z <= maxZ) {
+			if (inEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+				return false;
+			p = p.prevZ;
+
+			if (inEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+				return false;
+			n = n.nextZ;
+		}
+
+		/* look for remaining points in decreasing z-order */
+		while (p != null && p.z >= minZ) {
+			if (inEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+				return false;
+			p = p.prevZ;
+		}
+
+		/* look for remaining points in increasing z-order */
+		while (n != null && n.z <= maxZ) {
+			if (inEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+				return false;
+			n = n.nextZ;
+		}
+		return true;
+	}
+
+	private static boolean inEar(Node p, Node a, Node c,
+	        double x0, double y0, double x1, double y1,
+	        double ax, double ay, double bx, double by, double cx, double cy) {
+
+		return p.x >= x0 && p.x <= x1 && p.y >= y0 && p.y <= y1
+		        && p != a && p != c
+		        && pointInTriangle(ax, ay, bx, by, cx, cy, p.x, p.y)
+		        && area(p.prev, p, p.next) >= 0;
+	}
+
+	/** go through all polygon nodes and cure small local self-intersections */
+	private Node cureLocalIntersections(Node start) {
+		Node p = start;
+		do {
+			Node a = p.prev;
+			Node b = p.next.next;
+
+			if (!equals(a, b) && intersects(a, p, p.next, b)
+			        && locallyInside(a, b) && locallyInside(b, a)) {
+
+				addTriangle(a, p, b);
+
+				/* remove two nodes involved */
+				removeNode(p);
+				removeNode(p.next);
+
+				p = start = b;
+			}
+			p = p.next;
+		} while (p != start);
+
+		return filterPoints(p, null);
+	}
+
+	/**
+	 * try splitting polygon into two and triangulate them independently
+	 */
+	private void splitEarcut(Node start) {
+		/* look for a valid diagonal that divides the polygon into two */
+		Node a = start;
+		do {
+			Node b = a.next.next;
+			while (b != a.prev) {
+				if (a.i != b.i && isValidDiagonal(a, b)) {
+					/* split the polygon in two by the diagonal */
+					Node c = splitPolygon(a, b);
+
+					/* filter colinear points around the cuts */
+					a = filterPoints(a, a.next);
+					c = filterPoints(c, c.next);
+
+					/* run earcut on each half */
+					earcutLinked(a, 0);
+					earcutLinked(c, 0);
+					return;
+				}
+				b = b.next;
+			}
+			a = a.next;
+		} while (a != start);
+	}
+
+	/**
+	 * link every hole into the outer loop, producing a single-ring polygon
+	 * without holes
+	 */
+	private Node eliminateHoles(float[] points, int ppos, short[] index,
+	        int ipos, int rings, Node outer) {
+
+		if (mHoles.length < rings)
+			mHoles = new Node[rings];
+
+		int numHoles = 0;
+		int start = ppos + index[ipos];
+
+		for (int r = 1; r < rings; r++) {
+			int len = index[ipos + r];
+			Node list = linkedList(points, ppos, start, len, false);
+			start += len;
+
+			if (list == null)
+				continue;
+
+			if (list == list.next)
+				list.steiner = true;
+
+			mHoles[numHoles++] = getLeftmost(list);
+		}
+
+		Arrays.sort(mHoles, 0, numHoles, COMPARE_X);
+
+		/* process holes from left to right */
+		for (int i = 0; i < numHoles; i++) {
+			outer = eliminateHole(mHoles[i], outer);
+			mHoles[i] = null;
+		}
+		return outer;
+	}
+
+	/**
+	 * find a bridge between vertices that connects hole with an outer ring
+	 * and link it
+	 */
+	private Node eliminateHole(Node hole, Node outer) {
+		Node bridge = findHoleBridge(hole, outer);
+		if (bridge == null)
+			return outer;
+
+		Node bridgeReverse = splitPolygon(bridge, hole);
+
+		/* filter collinear points around the cuts */
+		filterPoints(bridgeReverse, bridgeReverse.next);
+		return filterPoints(bridge, bridge.next);
+	}
+
+	/**
+	 * David Eberly's algorithm for finding a bridge between hole and outer
+	 * polygon
+	 */
+	private static Node findHoleBridge(Node hole, Node outer) {
+		Node p = outer;
+		double hx = hole.x;
+		double hy = hole.y;
+		double qx = Double.NEGATIVE_INFINITY;
+		Node m = null;
+
+		/* find a segment intersected by a ray from the hole's leftmost
+		 * point to the left; segment's endpoint with lesser x will be
+		 * potential connection point */
+		do {
+			if (hy <= p.y && hy >= p.next.y && p.next.y != p.y) {
+				double x = p.x + (hy - p.y) * (p.next.x - p.x) / (p.next.y - p.y);
+				if (x <= hx && x > qx) {
+					qx = x;
+					m = p.x < p.next.x ? p : p.next;
+					/* hole touches outer segment; pick leftmost endpoint */
+					if (x == hx)
+						return m;
+				}
+			}
+			p = p.next;
+		} while (p != outer);
+
+		if (m == null)
+			return null;
+
+		/* look for points inside the triangle of hole point, segment
+		 * intersection and endpoint; if there are no points found, we have
+		 * a valid connection; otherwise choose the point of the minimum
+		 * angle with the ray as connection point */
+		Node stop = m;
+		double mx = m.x;
+		double my = m.y;
+		double tanMin = Double.POSITIVE_INFINITY;
+
+		p = m;
+		do {
+			if (hx >= p.x && p.x >= mx && hx != p.x
+			        && pointInTriangle(hy < my ? hx : qx, hy, mx, my,
+			                           hy < my ? qx : hx, hy, p.x, p.y)) {
+
+				double tan = Math.abs(hy - p.y) / (hx - p.x);
+
+				if (locallyInside(p, hole)
+				        && (tan < tanMin || (tan == tanMin
+				        && (p.x > m.x || (p.x == m.x && sectorContainsSector(m, p)))))) {
+					m = p;
+					tanMin = tan;
+				}
+			}
+			p = p.next;
+		} while (p != stop);
+
+		return m;
+	}
+
+	/** whether sector in vertex m contains sector in vertex p */
+	private static boolean sectorContainsSector(Node m, Node p) {
+		return area(m.prev, m, p.prev) < 0 && area(p.next, m, m.next) < 0;
+	}
+
+	/** interlink polygon nodes in z-order */
+	private void indexCurve(Node start) {
+		Node p = start;
+		do {
+			if (p.z == 0)
+				p.z = zOrder(p.x, p.y);
+			p.prevZ = p.prev;
+			p.nextZ = p.next;
+			p = p.next;
+		} while (p != start);
+
+		p.prevZ.nextZ = null;
+		p.prevZ = null;
+
+		sortLinked(p);
+	}
+
+	/**
+	 * Simon Tatham's linked list merge sort algorithm
+	 * http://www.chiark.greenend.org.uk/~sgtatham/algorithms/listsort.html
+	 */
+	private static Node sortLinked(Node list) {
+		int inSize = 1;
+		int numMerges;
+
+		do {
+			Node p = list;
+			Node tail = null;
+			list = null;
+			numMerges = 0;
+
+			while (p != null) {
+				numMerges++;
+				Node q = p;
+				int pSize = 0;
+				for (int i = 0; i < inSize; i++) {
+					pSize++;
+					q = q.nextZ;
+					if (q == null)
+						break;
+				}
+				int qSize = inSize;
+
+				while (pSize > 0 || (qSize > 0 && q != null)) {
+					Node e;
+					if (pSize != 0 && (qSize == 0 || q == null || p.z <= q.z)) {
+						e = p;
+						p = p.nextZ;
+						pSize--;
+					} else {
+						e = q;
+						q = q.nextZ;
+						qSize--;
+					}
+
+					if (tail != null)
+						tail.nextZ = e;
+					else
+						list = e;
+
+					e.prevZ = tail;
+					tail = e;
+				}
+				p = q;
+			}
+			tail.nextZ = null;
+			inSize *= 2;
+
+		} while (numMerges > 1);
+
+		return list;
+	}
+
+	/**
+	 * z-order of a point given coords and inverse of the longer side of
+	 * data bbox
+	 */
+	private int zOrder(double px, double py) {
+		/* coords are transformed into non-negative 15-bit integer range */
+		int x = (int) ((px - mMinX) * mInvSize);
+		int y = (int) ((py - mMinY) * mInvSize);
+
+		x = (x | (x << 8)) & 0x00FF00FF;
+		x = (x | (x << 4)) & 0x0F0F0F0F;
+		x = (x | (x << 2)) & 0x33333333;
+		x = (x | (x << 1)) & 0x55555555;
+
+		y = (y | (y << 8)) & 0x00FF00FF;
+		y = (y | (y << 4)) & 0x0F0F0F0F;
+		y = (y | (y << 2)) & 0x33333333;
+		y = (y | (y << 1)) & 0x55555555;
+
+		return x | (y << 1);
+	}
+
+	/** find the leftmost node of a polygon ring */
+	private static Node getLeftmost(Node start) {
+		Node p = start;
+		Node leftmost = start;
+		do {
+			if (p.x < leftmost.x || (p.x == leftmost.x && p.y < leftmost.y))
+				leftmost = p;
+			p = p.next;
+		} while (p != start);
+
+		return leftmost;
+	}
+
+	/** check if a point lies within a convex triangle */
+	private static boolean pointInTriangle(double ax, double ay, double bx, double by,
+	        double cx, double cy, double px, double py) {
+
+		return (cx - px) * (ay - py) >= (ax - px) * (cy - py)
+		        && (ax - px) * (by - py) >= (bx - px) * (ay - py)
+		        && (bx - px) * (cy - py) >= (cx - px) * (by - py);
+	}
+
+	/**
+	 * check if a diagonal between two polygon nodes is valid (lies in
+	 * polygon interior)
+	 */
+	private static boolean isValidDiagonal(Node a, Node b) {
+		/* doesn't intersect other edges */
+		if (a.next.i == b.i || a.prev.i == b.i || intersectsPolygon(a, b))
+			return false;
+
+		/* locally visible, does not create opposite-facing sectors */
+		if (locallyInside(a, b) && locallyInside(b, a) && middleInside(a, b)
+		        && (area(a.prev, a, b.prev) != 0 || area(a, b.prev, b) != 0))
+			return true;
+
+		/* special zero-length case */
+		return equals(a, b) && area(a.prev, a, a.next) > 0
+		        && area(b.prev, b, b.next) > 0;
+	}
+
+	/** signed area of a triangle */
+	private static double area(Node p, Node q, Node r) {
+		return (q.y - p.y) * (r.x - q.x) - (q.x - p.x) * (r.y - q.y);
+	}
+
+	/** check if two points are equal */
+	private static boolean equals(Node p1, Node p2) {
+		return p1.x == p2.x && p1.y == p2.y;
+	}
+
+	/** check if two segments intersect */
+	private static boolean intersects(Node p1, Node q1, Node p2, Node q2) {
+		int o1 = sign(area(p1, q1, p2));
+		int o2 = sign(area(p1, q1, q2));
+		int o3 = sign(area(p2, q2, p1));
+		int o4 = sign(area(p2, q2, q1));
+
+		/* general case */
+		if (o1 != o2 && o3 != o4)
+			return true;
+
+		/* p1, q1 and p2 are collinear and p2 lies on p1q1 */
+		if (o1 == 0 && onSegment(p1, p2, q1))
+			return true;
+		/* p1, q1 and q2 are collinear and q2 lies on p1q1 */
+		if (o2 == 0 && onSegment(p1, q2, q1))
+			return true;
+		/* p2, q2 and p1 are collinear and p1 lies on p2q2 */
+		if (o3 == 0 && onSegment(p2, p1, q2))
+			return true;
+		/* p2, q2 and q1 are collinear and q1 lies on p2q2 */
+		if (o4 == 0 && onSegment(p2, q1, q2))
+			return true;
+
+		return false;
+	}
+
+	/**
+	 * for collinear points p, q, r, check if point q lies on segment pr
+	 */
+	private static boolean onSegment(Node p, Node q, Node r) {
+		return q.x <= Math.max(p.x, r.x) && q.x >= Math.min(p.x, r.x)
+		        && q.y <= Math.max(p.y, r.y) && q.y >= Math.min(p.y, r.y);
+	}
+
+	private static int sign(double num) {
+		return num > 0 ? 1 : num < 0 ? -1 : 0;
+	}
+
+	/**
+	 * check if a polygon diagonal intersects any polygon segments
+	 */
+	private static boolean intersectsPolygon(Node a, Node b) {
+		Node p = a;
+		do {
+			if (p.i != a.i && p.next.i != a.i && p.i != b.i && p.next.i != b.i
+			        && intersects(p, p.next, a, b))
+				return true;
+			p = p.next;
+		} while (p != a);
+
+		return false;
+	}
+
+	/** check if a polygon diagonal is locally inside the polygon */
+	private static boolean locallyInside(Node a, Node b) {
+		if (area(a.prev, a, a.next) < 0)
+			return area(a, b, a.next) >= 0 && area(a, a.prev, b) >= 0;
+
+		return area(a, b, a.prev) < 0 || area(a, a.next, b) < 0;
+	}
+
+	/**
+	 * check if the middle point of a polygon diagonal is inside the polygon
+	 */
+	private static boolean middleInside(Node a, Node b) {
+		Node p = a;
+		boolean inside = false;
+		double px = (a.x + b.x) / 2;
+		double py = (a.y + b.y) / 2;
+		do {
+			if (((p.y > py) != (p.next.y > py)) && p.next.y != p.y
+			        && (px < (p.next.x - p.x) * (py - p.y) / (p.next.y - p.y) + p.x))
+				inside = !inside;
+			p = p.next;
+		} while (p != a);
+
+		return inside;
+	}
+
+	/**
+	 * link two polygon vertices with a bridge; if the vertices belong to
+	 * the same ring, it splits polygon into two; if one belongs to the
+	 * outer ring and another to a hole, it merges it into a single ring
+	 */
+	private Node splitPolygon(Node a, Node b) {
+		Node a2 = createNode(a.i, a.x, a.y);
+		Node b2 = createNode(b.i, b.x, b.y);
+		Node an = a.next;
+		Node bp = b.prev;
+
+		a.next = b;
+		b.prev = a;
+
+		a2.next = an;
+		an.prev = a2;
+
+		b2.next = a2;
+		a2.prev = b2;
+
+		bp.next = b2;
+		b2.prev = bp;
+
+		return b2;
+	}
+
+	/**
+	 * create a node and optionally link it with previous one (in a
+	 * circular doubly linked list)
+	 */
+	private Node insertNode(int i, double x, double y, Node last) {
+		Node p = createNode(i, x, y);
+
+		if (last == null) {
+			p.prev = p;
+			p.next = p;
+		} else {
+			p.next = last.next;
+			p.prev = last;
+			last.next.prev = p;
+			last.next = p;
+		}
+		return p;
+	}
+
+	private static void removeNode(Node p) {
+		p.next.prev = p.prev;
+		p.prev.next = p.next;
+
+		if (p.prevZ != null)
+			p.prevZ.nextZ = p.nextZ;
+
+		if (p.nextZ != null)
+			p.nextZ.prevZ = p.prevZ;
+	}
+
+	private static double signedArea(float[] points, int start, int end) {
+		double sum = 0;
+		for (int i = start, j = end - 2; i < end; i += 2) {
+			sum += (double) (points[j] - points[i]) * (points[i + 1] + points[j + 1]);
+			j = i;
+		}
+		return sum;
+	}
+}
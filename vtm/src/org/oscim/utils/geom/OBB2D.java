@@ -233,8 +233,9 @@ public class OBB2D {
 		ux *= hh;
 		uy *= hh;
 
-		vec[CORNER_X] = cx - (vx - ux);
-		vec[CORNER_Y] = cy - (vy - uy);
+		/* corners must be in order around the box for computeAxes */
+		vec[CORNER_X] = cx - (vx + ux);
+		vec[CORNER_Y] = cy - (vy + uy);
 
 		vec[CORNER_X + 2] = cx + (vx - ux);
 		vec[CORNER_Y + 2] = cy + (vy - uy);
@@ -242,8 +243,8 @@ public class OBB2D {
 		vec[CORNER_X + 4] = cx + (vx + ux);
 		vec[CORNER_Y + 4] = cy + (vy + uy);
 
-		vec[CORNER_X + 6] = cx - (vx + ux);
-		vec[CORNER_Y + 6] = cy - (vy + uy);
+		vec[CORNER_X + 6] = cx - (vx - ux);
+		vec[CORNER_Y + 6] = cy - (vy - uy);
 
 		computeAxes();
 	}
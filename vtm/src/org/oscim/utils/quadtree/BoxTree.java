@@ -151,7 +151,7 @@ public abstract class BoxTree<Box extends BoxItem<E>, E> extends QuadTree<BoxNod
 						// remove this itemchild = cur.child11;
 						//cur.item = Inlist.remove(cur.item, it);
 						if (it == cur.item)
-							prev = cur.item = it;
+							prev = cur.item = (Box) it.next;
 						else
 							prev.next = it.next;
 